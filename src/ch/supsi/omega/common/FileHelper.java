@@ -10,6 +10,7 @@ import javax.swing.JPanel;
 
 import ch.supsi.omega.segmentation.trajectory.TrajectoriesLoader;
 import ch.supsi.omega.segmentation.trajectory.Trajectory;
+import ch.supsi.omega.segmentation.trajectory.TrajectorySet;
 
 import com.galliva.gallibrary.GConfigurationManager;
 import com.galliva.gallibrary.GLogManager;
@@ -79,8 +80,55 @@ public class FileHelper extends JPanel {
 	 * @return a List<Trajectory> of tracks
 	 */
 	public List<Trajectory> loadTracks(String pathKey) {
-		String trajectoriesDirectory;
+		TrajectoriesLoader trajectoriesLoader = selectTracks(pathKey);
 
+		if (trajectoriesLoader == null)
+			return null;
+
+		// load the trajectories
+		try {
+			return trajectoriesLoader.loadTrajectories();
+		} catch (Exception e) {
+			JOptionPane.showMessageDialog(null,
+			        OmegaConstants.ERROR_NOTRAJECTORIES,
+			        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
+			return null;
+		}
+	}
+
+	/**
+	 * Same as loadTracks, for the views that only draw the tracks: the points
+	 * are kept in primitive arrays instead of TPoints.
+	 * 
+	 * @param pathKey
+	 *            the key of the directory value in the configuration file
+	 * @return the TrajectorySet of the tracks
+	 */
+	public TrajectorySet loadTrackSet(String pathKey) {
+		TrajectoriesLoader trajectoriesLoader = selectTracks(pathKey);
+
+		if (trajectoriesLoader == null)
+			return null;
+
+		// load the trajectories
+		try {
+			return trajectoriesLoader.loadTrajectorySet();
+		} catch (Exception e) {
+			JOptionPane.showMessageDialog(null,
+			        OmegaConstants.ERROR_NOTRAJECTORIES,
+			        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
+			return null;
+		}
+	}
+
+	/**
+	 * Display a JDialog in order to let the user select from where load the
+	 * tracks.
+	 * 
+	 * @return a TrajectoriesLoader of the selected directory, null if the user
+	 *         cancelled
+	 */
+	private TrajectoriesLoader selectTracks(String pathKey) {
 		// load the tracks
 		String dir = configurationManager.readConfig(pathKey);
 
@@ -98,21 +146,10 @@ public class FileHelper extends JPanel {
 			selectedDirectory = chooser.getSelectedFile().toString();
 			configurationManager.writeConfig("trajectoriesTrainDir",
 			        selectedDirectory);
-			trajectoriesDirectory = selectedDirectory;
-
-			// load the trajectories
-			try {
-				TrajectoriesLoader trajectoriesLoader = new TrajectoriesLoader(
-				        trajectoriesDirectory
-				                + System.getProperty("file.separator"),
-				        OmegaConstants.TRACKS_FILES_EXTENSION);
-				return trajectoriesLoader.loadTrajectories();
-			} catch (Exception e) {
-				JOptionPane.showMessageDialog(null,
-				        OmegaConstants.ERROR_NOTRAJECTORIES,
-				        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
-				return null;
-			}
+
+			return new TrajectoriesLoader(selectedDirectory
+			        + System.getProperty("file.separator"),
+			        OmegaConstants.TRACKS_FILES_EXTENSION);
 		} else
 			return null;
 	}
@@ -0,0 +1,57 @@
+package ch.supsi.omega.common;
+
+import java.util.Arrays;
+
+/**
+ * A list of primitive doubles, to collect values without boxing them.
+ * @author galliva
+ */
+public final class GrowableDoubleArray
+{
+	private double[]	values;
+	private int			size	= 0;
+
+	public GrowableDoubleArray()
+	{
+		this(16);
+	}
+
+	public GrowableDoubleArray(int capacity)
+	{
+		values = new double[Math.max(1, capacity)];
+	}
+
+	public void add(double value)
+	{
+		if (size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+
+		values[size++] = value;
+	}
+
+	public double get(int index)
+	{
+		if (index >= size)
+			throw new IndexOutOfBoundsException(String.format("index %d, size %d", index, size));
+
+		return values[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Empties the list, keeping its capacity.
+	 */
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public double[] toArray()
+	{
+		return Arrays.copyOf(values, size);
+	}
+}
@@ -0,0 +1,65 @@
+package ch.supsi.omega.common;
+
+import java.util.Arrays;
+
+/**
+ * A list of primitive ints, to collect values without boxing them.
+ * @author galliva
+ */
+public final class GrowableIntArray
+{
+	private int[]	values;
+	private int		size	= 0;
+
+	public GrowableIntArray()
+	{
+		this(16);
+	}
+
+	public GrowableIntArray(int capacity)
+	{
+		values = new int[Math.max(1, capacity)];
+	}
+
+	public void add(int value)
+	{
+		if (size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+
+		values[size++] = value;
+	}
+
+	public int get(int index)
+	{
+		if (index >= size)
+			throw new IndexOutOfBoundsException(String.format("index %d, size %d", index, size));
+
+		return values[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Empties the list, keeping its capacity.
+	 */
+	public void clear()
+	{
+		size = 0;
+	}
+
+	/**
+	 * @return the values from <code>from</code> to the end
+	 */
+	public int[] toArray(int from)
+	{
+		return Arrays.copyOfRange(values, Math.min(from, size), size);
+	}
+
+	public int[] toArray()
+	{
+		return toArray(0);
+	}
+}
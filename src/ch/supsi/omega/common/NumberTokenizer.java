@@ -0,0 +1,352 @@
+package ch.supsi.omega.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the numbers of an ASCII text file line by line, as the trajectory files
+ * (frame x y ...) and the labels files, without creating a String per number:
+ * the bytes are read in a reusable buffer and each number is parsed directly
+ * into a GrowableDoubleArray or a GrowableIntArray.
+ * <p>
+ * The numbers are separated by spaces or tabs; the lines end with \n, \r\n or
+ * \r. The doubles are parsed as Double.parseDouble would, only the unusual
+ * ones (more than 18 digits, large exponents, NaN...) go through it.
+ * @author galliva
+ */
+public final class NumberTokenizer implements Closeable
+{
+	private static final double[]	POWERS_OF_TEN	= { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	private static final long		MAX_EXACT		= 1L << 53;
+
+	private final InputStream		in;
+	private final byte[]				buffer;
+	private int							position			= 0;
+	private int							limit				= 0;
+	private boolean					endOfFile		= false;
+
+	private byte[]						token				= new byte[64];
+	private int							tokenLength		= 0;
+
+	public NumberTokenizer(File file) throws FileNotFoundException
+	{
+		this(new FileInputStream(file));
+	}
+
+	public NumberTokenizer(InputStream in)
+	{
+		this.in = in;
+		buffer = new byte[1 << 16];
+	}
+
+	/**
+	 * Reads the numbers of the next line.
+	 * @param values cleared, then filled with the numbers of the line
+	 * @return the number of values read, -1 at the end of the file
+	 * @throws NumberFormatException if a value is not a number, the rest of
+	 *         the line is skipped
+	 */
+	public int readLine(GrowableDoubleArray values) throws IOException
+	{
+		values.clear();
+
+		if (peek() < 0)
+			return -1;
+
+		while (nextToken())
+		{
+			values.add(parseDouble());
+		}
+
+		return values.size();
+	}
+
+	/**
+	 * Reads the integers of the next line.
+	 * @param values cleared, then filled with the integers of the line
+	 * @return the number of values read, -1 at the end of the file
+	 * @throws NumberFormatException if a value is not an integer, the rest of
+	 *         the line is skipped
+	 */
+	public int readLine(GrowableIntArray values) throws IOException
+	{
+		values.clear();
+
+		if (peek() < 0)
+			return -1;
+
+		while (nextToken())
+		{
+			values.add(parseInt());
+		}
+
+		return values.size();
+	}
+
+	/**
+	 * @return false at the end of the file
+	 */
+	public boolean skipLine() throws IOException
+	{
+		if (peek() < 0)
+			return false;
+
+		skipRestOfLine();
+
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+
+	private int peek() throws IOException
+	{
+		if (position == limit)
+		{
+			if (endOfFile)
+				return -1;
+
+			limit = in.read(buffer, 0, buffer.length);
+			position = 0;
+
+			if (limit <= 0)
+			{
+				limit = 0;
+				endOfFile = true;
+				return -1;
+			}
+		}
+
+		return buffer[position] & 0xff;
+	}
+
+	/**
+	 * Copies the next token of the line in the token buffer.
+	 * @return false at the end of the line, which is consumed
+	 */
+	private boolean nextToken() throws IOException
+	{
+		int c = peek();
+
+		while (c == ' ' || c == '\t')
+		{
+			position++;
+			c = peek();
+		}
+
+		if (c < 0)
+			return false;
+
+		if (c == '\n' || c == '\r')
+		{
+			consumeLineEnd();
+			return false;
+		}
+
+		tokenLength = 0;
+
+		while (c >= 0 && c != ' ' && c != '\t' && c != '\n' && c != '\r')
+		{
+			if (tokenLength == token.length)
+			{
+				byte[] larger = new byte[token.length * 2];
+				System.arraycopy(token, 0, larger, 0, tokenLength);
+				token = larger;
+			}
+
+			token[tokenLength++] = (byte) c;
+			position++;
+			c = peek();
+		}
+
+		return true;
+	}
+
+	private void consumeLineEnd() throws IOException
+	{
+		if (peek() == '\r')
+		{
+			position++;
+
+			if (peek() == '\n')
+				position++;
+		}
+		else if (peek() == '\n')
+			position++;
+	}
+
+	private void skipRestOfLine() throws IOException
+	{
+		int c = peek();
+
+		while (c >= 0 && c != '\n' && c != '\r')
+		{
+			position++;
+			c = peek();
+		}
+
+		consumeLineEnd();
+	}
+
+	private NumberFormatException invalidToken() throws IOException
+	{
+		String text = new String(token, 0, tokenLength, "US-ASCII");
+		skipRestOfLine();
+
+		return new NumberFormatException("For input string: \"" + text + "\"");
+	}
+
+	private int parseInt() throws IOException
+	{
+		int i = 0;
+		boolean negative = false;
+
+		if (tokenLength > 0 && (token[0] == '-' || token[0] == '+'))
+		{
+			negative = token[0] == '-';
+			i++;
+		}
+
+		if (i == tokenLength)
+			throw invalidToken();
+
+		long value = 0;
+
+		for (; i < tokenLength; i++)
+		{
+			int digit = token[i] - '0';
+
+			if (digit < 0 || digit > 9)
+				throw invalidToken();
+
+			value = value * 10 + digit;
+
+			if (value > 1L + Integer.MAX_VALUE)
+				throw invalidToken();
+		}
+
+		value = negative ? -value : value;
+
+		if (value > Integer.MAX_VALUE)
+			throw invalidToken();
+
+		return (int) value;
+	}
+
+	private double parseDouble() throws IOException
+	{
+		int i = 0;
+		boolean negative = false;
+
+		if (tokenLength > 0 && (token[0] == '-' || token[0] == '+'))
+		{
+			negative = token[0] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean dot = false;
+		boolean any = false;
+
+		for (; i < tokenLength; i++)
+		{
+			int c = token[i];
+
+			if (c >= '0' && c <= '9')
+			{
+				any = true;
+
+				if (mantissa == 0 && c == '0')
+				{
+					// leading zeros are not significant
+				}
+				else if (digits < 18)
+				{
+					mantissa = mantissa * 10 + (c - '0');
+					digits++;
+				}
+				else
+					return parseSlowly();
+
+				if (dot)
+					exponent--;
+			}
+			else if (c == '.' && !dot)
+				dot = true;
+			else
+				break;
+		}
+
+		if (!any)
+			return parseSlowly();
+
+		if (i < tokenLength)
+		{
+			if (token[i] != 'e' && token[i] != 'E')
+				return parseSlowly();
+
+			int e = 0;
+			boolean negativeExponent = false;
+			i++;
+
+			if (i < tokenLength && (token[i] == '-' || token[i] == '+'))
+			{
+				negativeExponent = token[i] == '-';
+				i++;
+			}
+
+			if (i == tokenLength)
+				throw invalidToken();
+
+			for (; i < tokenLength; i++)
+			{
+				int digit = token[i] - '0';
+
+				if (digit < 0 || digit > 9)
+					throw invalidToken();
+
+				if (e > 1000)
+					return parseSlowly();
+
+				e = e * 10 + digit;
+			}
+
+			exponent += negativeExponent ? -e : e;
+		}
+
+		double value;
+
+		if (mantissa == 0)
+			value = 0.0;
+		else if (mantissa >= MAX_EXACT || exponent < -22 || exponent > 22)
+			return parseSlowly();
+		else if (exponent < 0)
+			// both exact: the division is correctly rounded
+			value = mantissa / POWERS_OF_TEN[-exponent];
+		else
+			value = mantissa * POWERS_OF_TEN[exponent];
+
+		return negative ? -value : value;
+	}
+
+	private double parseSlowly() throws IOException
+	{
+		try
+		{
+			return Double.parseDouble(new String(token, 0, tokenLength, "US-ASCII"));
+		}
+		catch (NumberFormatException e)
+		{
+			throw invalidToken();
+		}
+	}
+}
@@ -22,10 +22,12 @@ public interface OmegaConstants {
 	public String ORIGINALINIFILE = "/ch/supsi/omega/common/resources/default.ini";
 
 	public String SPT_INFORMATION_FILE = "SPT_info.txt";
+	public String SPT_SWEEP_FILE = "SPT_sweep.txt";
 	public String SPT_INFORMATION_SEPARATOR = "=";
 
 	public String TRACKS_FILES_EXTENSION = "out";
 	public String TRACKS_FILES_LINE_SEPARATOR = " ";
+	public String TRAJECTORIES_STORE_FILE = "trajectories.bin";
 
 	public String PATTERNS_FILES_EXTENSION = "dat";
 
@@ -84,6 +86,41 @@ public interface OmegaConstants {
 
 	public int TS_MINIMUN_NUMBER_OF_POINTS = 100;
 
+	public int SPT_FETCH_WORKERS = 4;
+	public int SPT_FETCH_BUFFER_DEPTH = 16;
+
+	public int TRAJECTORIES_LOADER_THREADS = Math.min(8, Runtime.getRuntime().availableProcessors());
+
+	/** size of the local plane cache, in MB (0: no cache) */
+	public int PLANE_CACHE_SIZE = 2048;
+
+	/** size of the trajectory cache of the exploration, in MB (0: no cache) */
+	public int TRAJECTORY_CACHE_SIZE = 256;
+
+	/** above this number of points Stats does not cache the displacements */
+	public int STATS_MAX_CACHED_POINTS = 4000;
+
+	/** from this number of points Stats computes the MSD fit by FFT */
+	public int STATS_FFT_MIN_POINTS = 1024;
+
+	/** size of the moments index of a trajectory, in MB */
+	public int MOMENTS_INDEX_SIZE = 64;
+
+	/** size of the moments index of each trajectory of the segmentation, in MB */
+	public int SEGMENT_STATS_INDEX_SIZE = 8;
+
+	/** number of moments indexes kept by the segmentation */
+	public int SEGMENT_STATS_INDEXES = 4;
+
+	/** number of bootstrap replicates of the intervals of D and S_MSS */
+	public int BOOTSTRAP_REPLICATES = 1000;
+
+	/** smallest batch of interpolations worth a thread */
+	public int INTERPOLATION_BATCH_CHUNK = 4096;
+
+	/** number of threads of the StatsEngine, the bootstrap and the batches */
+	public int STATS_ENGINE_THREADS = Runtime.getRuntime().availableProcessors();
+
 	/**
 	 * INFO
 	 */
@@ -92,6 +129,10 @@ public interface OmegaConstants {
 	public String INFO_SELECT_AT_LEAST_ONE_IMAGE = "Please select at least one image to be processed";
 	public String INFO_SELECT_IMAGE_DIRECTOTY = "Please select the directory where to save the image";
 	public String INFO_T_MUST_BE_GREATER_THAN_ONE = "Please select an image with a number of frames (T) > 1";
+	public String INFO_SELECT_LOCAL_STACKS = "Please select the TIFF stacks to track";
+	public String INFO_SELECT_TRAJECTORIES_DIRECTORY = "Please select the directory of the trajectories";
+	public String INFO_TRAJECTORIES_PACKED = "%d trajectories packed in %s";
+	public String INFO_TRAJECTORIES_UNPACKED = "%d trajectories written in %s";
 
 	public String INFO_OPENBIS_CONNECTION_OK = "Connection to openBIS succeeded.";
 	public String INFO_OPENBIS_UPLOAD_OK = "Data uploaded to openBIS.";
@@ -127,6 +168,7 @@ public interface OmegaConstants {
 	 */
 	public String WARNING_LABELS_NUMBER_NOT_CORRECT = "Current trajectories are %d, but %d trajectories labels where loaded";
 	public String WARNING_SNR_LESS_THAN_2 = "The average minimum SNR found in the selected images is %.4f. Do you want to continue?";
+	public String WARNING_TRAJECTORIES_NOT_PROCESSED = "%d trajectories could not be processed:\n%s";
 
 	/**
 	 * ERRORS
@@ -143,6 +185,8 @@ public interface OmegaConstants {
 	public String ERROR_INIT_SPT_RUN = "Error during the initialization of the SPT algorithm!";
 	public String ERROR_DURING_SPT_RUN = "Error during the run of the SPT algorithm!";
 	public String ERROR_SPT_SAVE_RESULTS = "Error saving the SPT results!";
+	public String ERROR_LOADING_LOCAL_STACK = "Unable to open the local stack: ";
+	public String ERROR_TRAJECTORIES_STORE = "Unable to pack or unpack the trajectories: ";
 
 	public String ERROR_NOTRAJECTORIES = "Unable to load any trajectory!";
 	public String ERROR_NO_SPT_INFORMATION = "Unable to load the image's information coming from the SPT module!";
@@ -5,6 +5,8 @@ import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.util.Scanner;
 
+import ch.supsi.omega.segmentation.trajectory.TrajectoryStore;
+
 public class TrajectoryVerifier
 {
 	/**
@@ -27,6 +29,7 @@ public class TrajectoryVerifier
 			};
 
 			String[] children = dir.list(filter);
+			TrajectoryStore store = TrajectoryStore.find(dir);
 
 			if (children == null)
 				return false;
@@ -34,7 +37,14 @@ public class TrajectoryVerifier
 			{
 				for (int i = 0; i < children.length; i++)
 				{
-					if (!verifyTrajectory(String.format("%s%s%s", trajectoriesDirectory, System.getProperty("file.separator"), children[i])))
+					int trajectory = store == null ? -1 : store.indexOf(children[i]);
+
+					if (trajectory >= 0)
+					{
+						if (store.getLength(trajectory) < OmegaConstants.TS_MINIMUN_NUMBER_OF_POINTS)
+							return false;
+					}
+					else if (!verifyTrajectory(String.format("%s%s%s", trajectoriesDirectory, System.getProperty("file.separator"), children[i])))
 						return false;
 				}
 			}
@@ -1,14 +1,41 @@
 package ch.supsi.omega.dll;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 
-import javax.swing.JOptionPane;
-
 import ch.supsi.omega.common.OmegaConstants;
 
 import com.galliva.gallibrary.GLogManager;
 
 public class SPTCaller {
+	/**
+	 * Handle of the single, global runner of the DLLs without the runner
+	 * handle API. The DLL never returns it from {@link #createRunner()}.
+	 */
+	public static final long GLOBAL_RUNNER = 0;
+
+	/**
+	 * False once the DLL turned out not to provide the direct buffer entry
+	 * point.
+	 */
+	private static volatile boolean directBufferSupported = true;
+
+	/**
+	 * False once the DLL turned out not to provide the runner handle API.
+	 */
+	private static volatile boolean runnerHandleSupported = true;
+
+	/**
+	 * False if the DLL could not be loaded (e.g. not on Windows).
+	 */
+	private static boolean libraryLoaded = false;
+
+	/**
+	 * Lets only one run at a time use the global runner.
+	 */
+	private static final Semaphore globalRunner = new Semaphore(1, true);
+
 	// native methods
 	private native void setOutputPath(String path);
 
@@ -22,10 +49,33 @@ public class SPTCaller {
 
 	private native void loadImage(int[] imageBytes);
 
+	private native void loadImageBuffer(ByteBuffer imageBytes, int byteWidth,
+			boolean bigEndian);
+
 	private native void writeResults();
 
 	private native void disposeRunner();
 
+	// native methods, runner handle API
+	private native long createRunner();
+
+	private native void setOutputPath(long runner, String path);
+
+	private native void setParameter(long runner, String pNum, String pValue);
+
+	private native void setMinPoints(long runner, int num);
+
+	private native void startRunner(long runner);
+
+	private native void loadImage(long runner, int[] imageBytes);
+
+	private native void loadImageBuffer(long runner, ByteBuffer imageBytes,
+			int byteWidth, boolean bigEndian);
+
+	private native void writeResults(long runner);
+
+	private native void disposeRunner(long runner);
+
 	public static void callSetOutputPath(String path) {
 		try {
 			new SPTCaller().setOutputPath(path);
@@ -80,6 +130,37 @@ public class SPTCaller {
 		}
 	}
 
+	/**
+	 * Loads a plane stored in a direct buffer: the DLL reads the pixels in
+	 * place, without copying them into a Java array.
+	 *
+	 * @param imageData
+	 *            the raw plane, from position 0 to the limit
+	 * @param byteWidth
+	 *            the number of bytes per pixel
+	 * @param bigEndian
+	 *            the byte order of the pixels
+	 * @return false if the DLL does not provide this entry point (the plane
+	 *         has not been loaded and {@link #callLoadImage(int[])} has to be
+	 *         used instead)
+	 */
+	public static boolean callLoadImage(ByteBuffer imageData, int byteWidth,
+			boolean bigEndian) {
+		if (!directBufferSupported)
+			return false;
+
+		try {
+			new SPTCaller().loadImageBuffer(imageData, byteWidth, bigEndian);
+			return true;
+		} catch (UnsatisfiedLinkError e) {
+			directBufferSupported = false;
+			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+					Level.WARNING);
+		}
+
+		return false;
+	}
+
 	public static void callWriteResults() {
 		try {
 			new SPTCaller().writeResults();
@@ -98,18 +179,189 @@ public class SPTCaller {
 		}
 	}
 
+	/**
+	 * Creates a new runner, independent of the other runners, and returns its
+	 * handle. With a DLL without the runner handle API the global runner is
+	 * initialized and {@link #GLOBAL_RUNNER} is returned; in that case the
+	 * call waits until the global runner has been disposed by the previous
+	 * run. Every runner must be released with
+	 * {@link #callDisposeRunner(long)}.
+	 *
+	 * @return the runner handle
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the global runner
+	 */
+	public static long callCreateRunner() throws InterruptedException {
+		if (runnerHandleSupported) {
+			try {
+				return new SPTCaller().createRunner();
+			} catch (UnsatisfiedLinkError e) {
+				runnerHandleSupported = false;
+				GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+						Level.WARNING);
+			}
+		}
+
+		globalRunner.acquire();
+		callInitRunner();
+		return GLOBAL_RUNNER;
+	}
+
+	/**
+	 * @return false if the SPT DLL is not available, the tracking has to use
+	 *         the Java engine
+	 */
+	public static boolean isLibraryLoaded() {
+		return libraryLoaded;
+	}
+
+	/**
+	 * @return false if the DLL turned out to have only the global runner, so
+	 *         that runs are processed one at a time
+	 */
+	public static boolean isRunnerHandleSupported() {
+		return runnerHandleSupported;
+	}
+
+	public static void callSetOutputPath(long runner, String path) {
+		if (runner == GLOBAL_RUNNER) {
+			callSetOutputPath(path);
+			return;
+		}
+
+		try {
+			new SPTCaller().setOutputPath(runner, path);
+		} catch (UnsatisfiedLinkError e) {
+			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+					Level.SEVERE);
+		}
+	}
+
+	public static void callSetParameter(long runner, String pNumber,
+			String pValue) {
+		if (runner == GLOBAL_RUNNER) {
+			callSetParameter(pNumber, pValue);
+			return;
+		}
+
+		try {
+			new SPTCaller().setParameter(runner, pNumber, pValue);
+		} catch (UnsatisfiedLinkError e) {
+			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+					Level.SEVERE);
+		}
+	}
+
+	public static void callSetMinPoints(long runner, int minPoints) {
+		if (runner == GLOBAL_RUNNER) {
+			callSetMinPoints(minPoints);
+			return;
+		}
+
+		try {
+			new SPTCaller().setMinPoints(runner, minPoints);
+		} catch (UnsatisfiedLinkError e) {
+			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+					Level.SEVERE);
+		}
+	}
+
+	public static void callStartRunner(long runner) {
+		if (runner == GLOBAL_RUNNER) {
+			callStartRunner();
+			return;
+		}
+
+		try {
+			new SPTCaller().startRunner(runner);
+		} catch (UnsatisfiedLinkError e) {
+			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+					Level.SEVERE);
+		}
+	}
+
+	public static void callLoadImage(long runner, int[] imageData) {
+		if (runner == GLOBAL_RUNNER) {
+			callLoadImage(imageData);
+			return;
+		}
+
+		try {
+			new SPTCaller().loadImage(runner, imageData);
+		} catch (UnsatisfiedLinkError e) {
+			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+					Level.SEVERE);
+		}
+	}
+
+	/**
+	 * Runner handle version of
+	 * {@link #callLoadImage(ByteBuffer, int, boolean)}.
+	 */
+	public static boolean callLoadImage(long runner, ByteBuffer imageData,
+			int byteWidth, boolean bigEndian) {
+		if (runner == GLOBAL_RUNNER)
+			return callLoadImage(imageData, byteWidth, bigEndian);
+
+		if (!directBufferSupported)
+			return false;
+
+		try {
+			new SPTCaller().loadImageBuffer(runner, imageData, byteWidth,
+					bigEndian);
+			return true;
+		} catch (UnsatisfiedLinkError e) {
+			directBufferSupported = false;
+			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+					Level.WARNING);
+		}
+
+		return false;
+	}
+
+	public static void callWriteResults(long runner) {
+		if (runner == GLOBAL_RUNNER) {
+			callWriteResults();
+			return;
+		}
+
+		try {
+			new SPTCaller().writeResults(runner);
+		} catch (UnsatisfiedLinkError e) {
+			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+					Level.SEVERE);
+		}
+	}
+
+	public static void callDisposeRunner(long runner) {
+		if (runner == GLOBAL_RUNNER) {
+			try {
+				callDisposeRunner();
+			} finally {
+				globalRunner.release();
+			}
+			return;
+		}
+
+		try {
+			new SPTCaller().disposeRunner(runner);
+		} catch (UnsatisfiedLinkError e) {
+			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
+					Level.SEVERE);
+		}
+	}
+
 	/**
 	 * Load the SPT DLL.
 	 */
 	static {
 		try {
 			System.loadLibrary(OmegaConstants.OMEGA_SPT_DLL);
+			libraryLoaded = true;
 		} catch (UnsatisfiedLinkError e) {
+			// the tracking falls back to the Java engine: no dialog
 			GLogManager.log(OmegaConstants.ERROR_NODLL + e.toString(),
-					Level.SEVERE);
-			JOptionPane.showMessageDialog(null,
-					OmegaConstants.ERROR_NODLL + e.toString(),
-					OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
+					Level.WARNING);
 		}
 	}
 
@@ -4,12 +4,10 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 
-import ch.supsi.omega.common.OmegaConstants;
 import ch.supsi.omega.exploration.charts.VelocitiesChart;
 import ch.supsi.omega.exploration.charts.velocities.JFrameVelocitiesStats;
-import ch.supsi.omega.segmentation.TPoint;
-import ch.supsi.omega.segmentation.trajectory.TrajectoriesLoader;
-import ch.supsi.omega.segmentation.trajectory.Trajectory;
+import ch.supsi.omega.exploration.processing.TrajectoryCache;
+import ch.supsi.omega.segmentation.trajectory.TrajectorySet;
 
 public class JFrameIntensities extends JFrameVelocities
 {
@@ -45,30 +43,21 @@ public class JFrameIntensities extends JFrameVelocities
 
 		// ====
 		// read the trajectories and process them
-		TrajectoriesLoader trajectoriesLoader = new TrajectoriesLoader(folder + System.getProperty("file.separator"), OmegaConstants.TRACKS_FILES_EXTENSION);
-
-		List<Trajectory> trajectories = trajectoriesLoader.loadTrajectories();
+		TrajectorySet trajectories = TrajectoryCache.loadTrajectorySet(folder);
 
 		for (int i = 0; i < trajectories.size(); i++)
 		{
-			ArrayList<Double>  valuesTotal = new ArrayList<Double>();
-			ArrayList<Double>  valuesMean  = new ArrayList<Double>();
-			ArrayList<Integer> nrOfPixels  = new ArrayList<Integer>();
-
-			for (TPoint point : trajectories.get(i).getPoints())
-			{
-					valuesTotal.add(point.getTotalSignal());
-					valuesMean.add(point.getTotalSignal() / point.getCntSignal());
-					nrOfPixels.add(point.getCntSignal());
-			}
+			int length = trajectories.getLength(i);
 
-			double[] vTotal = new double[valuesTotal.size()];
-			double[] vMean  = new double[valuesTotal.size()];
+			double[] vTotal = new double[length];
+			double[] vMean  = new double[length];
+			int[] nrOfPixels = new int[length];
 
-			for (int j = 0; j < valuesTotal.size(); j++)
+			for (int j = 0; j < length; j++)
 			{
-				vTotal[j] = valuesTotal.get(j);
-				vMean[j]  = valuesMean.get(j);
+				vTotal[j] = trajectories.getTotalSignal(i, j);
+				vMean[j]  = vTotal[j] / trajectories.getCntSignal(i, j);
+				nrOfPixels[j] = trajectories.getCntSignal(i, j);
 			}
 
 			if(total)
@@ -89,7 +78,7 @@ public class JFrameIntensities extends JFrameVelocities
 				
 				for (int j = 0; j < vTotal.length; j++)
 				{	
-					String currentData[] = { String.valueOf(++currentDataIndex), String.format("%s.%d.%d", imageName, i + 1, j), String.valueOf((int)vTotal[j]), String.valueOf(new DecimalFormat("#.###").format(vMean[j])), String.valueOf(nrOfPixels.get(j)) };
+					String currentData[] = { String.valueOf(++currentDataIndex), String.format("%s.%d.%d", imageName, i + 1, j), String.valueOf((int)vTotal[j]), String.valueOf(new DecimalFormat("#.###").format(vMean[j])), String.valueOf(nrOfPixels[j]) };
 					currentChartData.add(currentData);
 				}
 			}
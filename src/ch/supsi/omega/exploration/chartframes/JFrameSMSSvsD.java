@@ -6,6 +6,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -16,18 +18,26 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
 import javax.swing.DefaultComboBoxModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JOptionPane;
+import javax.swing.JProgressBar;
+import javax.swing.SwingWorker;
 
 import ch.supsi.omega.common.OmegaConstants;
 import ch.supsi.omega.common.science.Greeks;
 import ch.supsi.omega.exploration.charts.SMSSvsDChart;
 import ch.supsi.omega.exploration.common.JFrameStatsMSD;
 import ch.supsi.omega.exploration.common.imagedata.OmeroDataHelper;
-import ch.supsi.omega.exploration.processing.FileIn;
+import ch.supsi.omega.exploration.processing.Bootstrap;
 import ch.supsi.omega.exploration.processing.Stats;
+import ch.supsi.omega.exploration.processing.StatsEngine;
+import ch.supsi.omega.exploration.processing.StatsResults;
+import ch.supsi.omega.exploration.processing.TrajectoryCache;
 import ch.supsi.omega.gui.OMEGA;
 import ch.supsi.omega.math.SplineInterpolation;
 import ch.supsi.omega.math.SplineInterpolation.Size;
@@ -59,12 +69,7 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 	 * Arraylist containing the data information to be visualized / exported in
 	 * CSV
 	 */
-	private List<String[]> currentChartData = null;
-
-	/**
-	 * Index used when creating the currentChartData List.
-	 */
-	private int currentDataIndex = 0;
+	private List<String[]> currentChartData = new ArrayList<String[]>();
 
 	/**
 	 * The JFrameStats object for the D value.
@@ -82,6 +87,32 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 	 */
 	private final OmeroDataHelper omeroDataHelper = new OmeroDataHelper(this);
 
+	/**
+	 * Computes the bootstrap intervals of D and SMSS when selected.
+	 */
+	private final JCheckBox jCheckBoxIntervals = new JCheckBox(
+	        "Bootstrap intervals");
+
+	/**
+	 * The bootstrap of the intervals.
+	 */
+	private final Bootstrap bootstrap = new Bootstrap();
+
+	/**
+	 * The progress of the processing of the dataset.
+	 */
+	private final JProgressBar jProgressBar = new JProgressBar(0, 100);
+
+	/**
+	 * Cancels the processing of the dataset.
+	 */
+	private final JButton jButtonCancel = new JButton("Cancel");
+
+	/**
+	 * The processing of the dataset in progress, null if none.
+	 */
+	private ProcessingWorker worker = null;
+
 	public JFrameSMSSvsD(final HashMap<String, List<String>> map) {
 		super();
 		this.map = map;
@@ -105,6 +136,10 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 		this.addWindowListener(new WindowAdapter() {
 			@Override
 			public void windowClosing(final WindowEvent e) {
+				if (JFrameSMSSvsD.this.worker != null) {
+					JFrameSMSSvsD.this.worker.stop();
+				}
+
 				try {
 					JFrameSMSSvsD.this.jFrameStatsD.dispose();
 					JFrameSMSSvsD.this.jFrameStatsSMSS.dispose();
@@ -129,6 +164,30 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 				JFrameSMSSvsD.this.processDataAndDisplayChart();
 			}
 		});
+
+		this.jPanelTop.add(this.jCheckBoxIntervals);
+
+		this.jCheckBoxIntervals.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				JFrameSMSSvsD.this.processDataAndDisplayChart();
+			}
+		});
+
+		this.jPanelTop.add(this.jProgressBar);
+		this.jPanelTop.add(this.jButtonCancel);
+		this.jProgressBar.setStringPainted(true);
+		this.jProgressBar.setVisible(false);
+		this.jButtonCancel.setVisible(false);
+
+		this.jButtonCancel.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				if (JFrameSMSSvsD.this.worker != null) {
+					JFrameSMSSvsD.this.worker.stop();
+				}
+			}
+		});
 	}
 
 	/**
@@ -154,12 +213,10 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 
 	@Override
 	public void processDataAndDisplayChart() {
-		// reset the D_SMSS field
-		this.D_SMSS.clear();
-
-		// reset the current chart data
-		this.currentChartData = new ArrayList<String[]>();
-		this.currentDataIndex = 0;
+		// a new selection replaces the processing in progress
+		if (this.worker != null) {
+			this.worker.stop();
+		}
 
 		// get the current dataset
 		final String currentDataset = this.jComboBoxDataset.getSelectedItem()
@@ -168,31 +225,142 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 		// get the list of the folders to be processed
 		final List<String> datasetFolders = this.map.get(currentDataset);
 
+		// the sizes may be asked to the user: before the processing, on the
+		// EDT
+		final List<double[]> sizes = new ArrayList<double[]>(
+		        datasetFolders.size());
+
+		for (final String folder : datasetFolders) {
+			this.checkLabelsFiles(folder);
+			sizes.add(this.omeroDataHelper.getOriginalSizes(folder));
+		}
+
+		this.worker = new ProcessingWorker(currentDataset, datasetFolders,
+		        sizes, this.jCheckBoxIntervals.isSelected());
+
+		this.worker.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(final PropertyChangeEvent evt) {
+				if ("progress".equals(evt.getPropertyName())) {
+					JFrameSMSSvsD.this.jProgressBar.setValue((Integer) evt
+					        .getNewValue());
+				}
+			}
+		});
+
+		this.setProcessing(true);
+		this.worker.execute();
+	}
+
+	private void setProcessing(final boolean processing) {
+		this.jProgressBar.setValue(0);
+		this.jProgressBar.setVisible(processing);
+		this.jButtonCancel.setVisible(processing);
+		this.jPanelTop.revalidate();
+	}
+
+	/**
+	 * Displays the chart of a processing, on the EDT once it is over.
+	 */
+	private void processingDone(final ProcessingWorker processing) {
+		// replaced by a newer one
+		if (processing != this.worker)
+			return;
+
+		this.worker = null;
+		this.setProcessing(false);
+
+		if (processing.isCancelled())
+			return;
+
+		final StatsResults results;
+
+		try {
+			results = processing.get();
+		} catch (final InterruptedException e) {
+			// the processing is over, get does not wait
+			Thread.currentThread().interrupt();
+			return;
+		} catch (final ExecutionException e) {
+			GLogManager.log(e.getCause().toString(), Level.SEVERE);
+			JOptionPane.showMessageDialog(this,
+			        OmegaConstants.ERROR_STATISTICAL_CALCULATION,
+			        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		if (results == null)
+			return;
+
 		// create the SMSS vs D chart
 		this.smsSvsDChart = new SMSSvsDChart();
+		this.D_SMSS.clear();
+
+		for (int k = 0; k < processing.D.length; k++) {
+			this.smsSvsDChart.addDataToChart(processing.D[k],
+			        processing.S_MSS[k], processing.motionTypes[k],
+			        processing.uncertD[k], processing.uncertSMSS[k]);
 
-		// process each folder in the dataset, add data to the chart
-		for (final String folder : datasetFolders)
-			if (!this.processFolder(folder))
-				return;
+			// add the values also to the field
+			final double[] D_SMSS_temp = { processing.D[k],
+			        processing.S_MSS[k] };
+			this.D_SMSS.add(D_SMSS_temp);
+		}
+
+		this.currentChartData = processing.chartData;
 
 		// get the chart panel
 		this.chartPanel = this.smsSvsDChart.returnChart();
 
-		this.drawMinimumDetectableDLine(currentDataset, datasetFolders);
+		if (!Double.isNaN(processing.minD)) {
+			this.smsSvsDChart.drawMinimumDetectableDLine(processing.minD);
+		}
 
 		this.displayChart();
 
-		this.displayStatsFrames();
+		this.displayStatsFrames(processing.meanIntervalD,
+		        processing.meanIntervalSMSS);
+
+		if (results.getFailedNumber() > 0) {
+			this.reportFailures(results);
+		}
 	}
 
 	/**
-	 * Calcluates the minimum detectable D and display it on the chart.
+	 * Tells the user which trajectories could not be processed, the reason of
+	 * each failure is in the log.
+	 */
+	private void reportFailures(final StatsResults results) {
+		final int failed = results.getFailedNumber();
+		final StringBuilder names = new StringBuilder();
+
+		for (int i = 0; i < Math.min(failed, 10); i++) {
+			final int folder = results.getFailedFolder(i);
+			names.append(
+			        new File(results.getFolderName(folder), results
+			                .getFileName(folder,
+			                        results.getFailedTrajectory(i))))
+			        .append('\n');
+		}
+
+		if (failed > 10) {
+			names.append("...");
+		}
+
+		JOptionPane.showMessageDialog(this, String.format(
+		        OmegaConstants.WARNING_TRAJECTORIES_NOT_PROCESSED, failed,
+		        names), OmegaConstants.OMEGA_TITLE,
+		        JOptionPane.WARNING_MESSAGE);
+	}
+
+	/**
+	 * Calcluates the minimum detectable D of a dataset.
 	 * 
 	 * @param currentDataset
 	 * @param datasetFolders
+	 * @return the minimum detectable D, NaN if it cannot be extrapolated
 	 */
-	private void drawMinimumDetectableDLine(final String currentDataset,
+	private static double getMinimumDetectableD(final String currentDataset,
 	        final List<String> datasetFolders) {
 		// find the minimum SNR for the current dataset
 		final HashMap<String, List<String>> currentDirectories = new HashMap<String, List<String>>();
@@ -212,16 +380,23 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 
 			GLogManager.log("min detectable D is: " + minD);
 
-			this.smsSvsDChart.drawMinimumDetectableDLine(minD);
+			return minD;
 		} catch (final IllegalArgumentException e) {
 			GLogManager.log(e.toString(), Level.WARNING);
+			return Double.NaN;
 		}
 	}
 
 	/**
 	 * Displays the stats JFrames.
+	 * 
+	 * @param intervalD
+	 *            the bootstrap interval of the mean of D, or null
+	 * @param intervalSMSS
+	 *            the bootstrap interval of the mean of SMSS, or null
 	 */
-	private void displayStatsFrames() {
+	private void displayStatsFrames(final double[] intervalD,
+	        final double[] intervalSMSS) {
 		if (this.jFrameStatsD == null) {
 			this.jFrameStatsD = new JFrameStatsMSD(this.getX() + 4, this.getY()
 			        + this.getHeight(), "D [" + Greeks.MU + "m\u00B2/s]");
@@ -249,8 +424,15 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 			final double medianSMSS = Stats.median(SMSS);
 			final double devSMSS = Stats.standardDeviationN(SMSS);
 
-			this.jFrameStatsD.setModel(meanD, medianD, devD);
-			this.jFrameStatsSMSS.setModel(meanSMSS, medianSMSS, devSMSS);
+			if ((intervalD != null) && (intervalSMSS != null)) {
+				this.jFrameStatsD.setModel(meanD, medianD, devD, intervalD,
+				        this.bootstrap.getConfidence());
+				this.jFrameStatsSMSS.setModel(meanSMSS, medianSMSS, devSMSS,
+				        intervalSMSS, this.bootstrap.getConfidence());
+			} else {
+				this.jFrameStatsD.setModel(meanD, medianD, devD);
+				this.jFrameStatsSMSS.setModel(meanSMSS, medianSMSS, devSMSS);
+			}
 		} catch (final Exception e) {
 			this.jFrameStatsD.setVisible(false);
 			this.jFrameStatsSMSS.setVisible(false);
@@ -260,203 +442,332 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 		}
 	}
 
-	public boolean processFolder(final String folder) {
-		final File dir = new File(folder);
-
-		// ====
-		// find the labels file(s)
-		FilenameFilter filter = new FilenameFilter() {
-			@Override
-			public boolean accept(final File dir, final String name) {
-				return name.endsWith(OmegaConstants.LABELS_FILES_EXTENSION);
-			}
-		};
-
-		String[] children = dir.list(filter);
+	/**
+	 * Processes the trajectories of the folders of a dataset with the
+	 * StatsEngine, off the EDT, and collects the segments of the chart.
+	 */
+	private class ProcessingWorker extends SwingWorker<StatsResults, Void> {
+		private final String dataset;
+		private final List<String> folders;
+		private final List<double[]> sizes;
+		private final boolean intervals;
+		private final StatsEngine engine = new StatsEngine();
+
+		// the segments of the chart
+		private int[] motionTypes;
+		private double[] D;
+		private double[] S_MSS;
+		private double[] uncertD;
+		private double[] uncertSMSS;
+
+		// the rows of the chart data
+		private final List<String[]> chartData = new ArrayList<String[]>();
+
+		// the bootstrap intervals of the means, null without intervals
+		private double[] meanIntervalD = null;
+		private double[] meanIntervalSMSS = null;
+
+		private double minD = Double.NaN;
+
+		ProcessingWorker(final String dataset, final List<String> folders,
+		        final List<double[]> sizes, final boolean intervals) {
+			this.dataset = dataset;
+			this.folders = folders;
+			this.sizes = sizes;
+			this.intervals = intervals;
+		}
 
-		// check if we have more than 1 labels file
-		if (children.length > 1) {
-			JOptionPane.showMessageDialog(this, String.format(
-			        "%d labels files found.\nUsing %s.", children.length,
-			        children[0]), OmegaConstants.OMEGA_TITLE,
-			        JOptionPane.INFORMATION_MESSAGE);
+		/**
+		 * Cancels the processing, the chart is not displayed.
+		 */
+		void stop() {
+			this.engine.cancel();
+			this.cancel(true);
 		}
 
-		// set the labels file, if we have one
-		String labels = null;
-		if (children.length > 0) {
-			labels = children[0];
+		/**
+		 * The StatsEngine fills the progress bar, or its first half with the
+		 * intervals.
+		 */
+		private int statsShare() {
+			return this.intervals ? 50 : 100;
 		}
 
-		// ====
-		// find the trajectories files
-		filter = new FilenameFilter() {
-			@Override
-			public boolean accept(final File dir, final String name) {
-				return name.endsWith(OmegaConstants.TRACKS_FILES_EXTENSION);
-			}
-		};
+		@Override
+		protected StatsResults doInBackground() {
+			this.engine.setUseLabels(true);
+			this.engine.setProgressListener(new StatsEngine.ProgressListener() {
+				@Override
+				public void progress(final int done, final int total) {
+					ProcessingWorker.this.setProgress((ProcessingWorker.this
+					        .statsShare() * done) / Math.max(1, total));
+				}
+			});
 
-		children = dir.list(filter);
+			final StatsResults results = this.engine.process(this.folders,
+			        this.sizes);
 
-		// ====
-		// read the segmentation (if we have the labels file) or set it to 0
-		int[][] segmentation = null;
+			if ((results == null) || this.isCancelled())
+				return null;
 
-		if (labels == null) {
-			segmentation = new int[children.length][];
+			if (!this.processResults(results))
+				return null;
 
-			for (int i = 0; i < children.length; i++) {
-				try {
-					double[][] trajectories = null;
+			if (this.intervals && (this.D.length > 0)) {
+				this.meanIntervalD = JFrameSMSSvsD.this.bootstrap.mean(this.D);
+				this.meanIntervalSMSS = JFrameSMSSvsD.this.bootstrap
+				        .mean(this.S_MSS);
+			}
 
-					trajectories = FileIn.readTrajectory(folder
-					        + System.getProperty("file.separator")
-					        + children[i]);
+			this.minD = JFrameSMSSvsD.getMinimumDetectableD(this.dataset,
+			        this.folders);
 
-					final int[] zeros = new int[trajectories[0].length - 1];
-					Arrays.fill(zeros, 0);
+			return results;
+		}
 
-					segmentation[i] = zeros;
-				} catch (final IOException e) {
-				}
-			}
-		} else {
-			try {
-				segmentation = FileIn.readSegmentation(folder
-				        + System.getProperty("file.separator") + labels);
-			} catch (final IOException e) {
-				GLogManager.log(e.toString(), Level.SEVERE);
-			}
+		@Override
+		protected void done() {
+			JFrameSMSSvsD.this.processingDone(this);
 		}
 
-		// get the "image name"
-		final String[] temp = folder.split("\\\\");
-		final String imageName = temp[temp.length - 1];
+		/**
+		 * Collects the segments of the chart.
+		 * 
+		 * @return false if the processing was cancelled
+		 */
+		private boolean processResults(final StatsResults results) {
+			// the segments of the chart and their points of the interpolations
+			final int[] rows = new int[results.size()];
+			double[] minMeanSNR = new double[results.size()];
+			int[] l = new int[results.size()];
+			// stats.txt is read once per folder
+			final Map<String, SPTStatsFileReader> readers = new HashMap<String, SPTStatsFileReader>();
+			this.motionTypes = new int[results.size()];
+			this.S_MSS = new double[results.size()];
+			this.D = new double[results.size()];
+			int n = 0;
+
+			for (int row = 0; row < results.size(); row++) {
+				if (results.getSegment(row) == StatsResults.WHOLE_TRAJECTORY) {
+					continue;
+				}
+
+				if (Double.isNaN(results.getD(row))
+				        || Double.isNaN(results.getS_MSS(row))) {
+					continue;
+				}
 
-		final double[] originalSizes = this.omeroDataHelper
-		        .getOriginalSizes(folder);
+				final int motionType = results.getLabel(row);
 
-		// ====
-		// read the trajectories and process them
-		for (int i = 0; i < children.length; i++) {
-			double[][] trajectories = null;
-			try {
-				trajectories = FileIn.readTrajectory(folder
-				        + System.getProperty("file.separator") + children[i]);
-			} catch (final IOException e) {
-				GLogManager.log(e.toString(), Level.SEVERE);
-			}
+				if ((motionType > -1) && (motionType < 5)) {
+					final String folder = results.getFolderName(results
+					        .getFolder(row));
 
-			// use micron values to display the chart
-			final double x[] = trajectories[0];
-			final double xMicron[] = new double[x.length];
-			final double y[] = trajectories[1];
-			final double yMicron[] = new double[y.length];
+					// get the min frame mean SNR within the time window of the
+					// of the segment
+					SPTStatsFileReader reader = readers.get(folder);
 
-			for (int iX = 0; iX < x.length; iX++) {
-				xMicron[iX] = x[iX] * originalSizes[0];
-			}
+					if (reader == null) {
+						reader = new SPTStatsFileReader(folder);
+						readers.put(folder, reader);
+					}
 
-			for (int iY = 0; iY < x.length; iY++) {
-				yMicron[iY] = y[iY] * originalSizes[1];
+					minMeanSNR[n] = reader.getMinimunFrameMeanSNR(results
+					        .getFileName(results.getFolder(row),
+					                results.getTrajectory(row)), results
+					        .getFrom(row), results.getTo(row) + 1);
+
+					l[n] = results.getTo(row) - results.getFrom(row);
+					this.motionTypes[n] = motionType;
+					this.S_MSS[n] = results.getS_MSS(row);
+					this.D[n] = results.getD(row);
+					rows[n++] = row;
+				}
+
+				if (this.isCancelled())
+					return false;
 			}
 
-			Stats stats;
+			minMeanSNR = Arrays.copyOf(minMeanSNR, n);
+			l = Arrays.copyOf(l, n);
+			this.motionTypes = Arrays.copyOf(this.motionTypes, n);
+			this.S_MSS = Arrays.copyOf(this.S_MSS, n);
+			this.D = Arrays.copyOf(this.D, n);
+
+			// the uncertainties of all the segments, in one batch for each
+			// grid
+			this.uncertD = new double[n];
+			this.uncertSMSS = new double[n];
+
 			try {
-				stats = new Stats(xMicron, yMicron, originalSizes[2],
-				        segmentation[i]);
+				JFrameSMSSvsD.this.interpolate(InterpolationType.D, minMeanSNR,
+				        l, this.S_MSS, this.D, this.uncertD);
+				JFrameSMSSvsD.this.interpolate(InterpolationType.SMSS,
+				        minMeanSNR, l, this.S_MSS, this.D, this.uncertSMSS);
 			} catch (final Exception e) {
-				return false;
+				GLogManager.log(e.toString(), Level.WARNING);
 			}
 
+			// the trajectory of the intervals, read once for all its segments
+			double[][] trajectoryMicron = null;
+			int trajectoryRow = -1;
+			int dataIndex = 0;
+
 			// for each segment
-			for (int segment = 0; segment < stats.labelsLength(); ++segment) {
-				final double[][] log_delta_t__log_mu__gamma__D = stats
-				        .log_delta_t__log_mu__gamma__D(2, segment);
-				final double[][] nu__gamma__S_MSS = stats
-				        .nu__gamma__S_MSS(segment);
+			for (int k = 0; k < n; k++) {
+				if (this.isCancelled())
+					return false;
+
+				final int row = rows[k];
+				final int segment = results.getSegment(row);
+				final int motionType = this.motionTypes[k];
+				final String folder = results.getFolderName(results
+				        .getFolder(row));
+				final int trajectory = results.getTrajectory(row);
+
+				// get the "image name"
+				final String[] temp = folder.split("\\\\");
+				final String imageName = temp[temp.length - 1];
+
+				// fix motions types
+				int motionIndex = motionType;
+
+				if (motionIndex == 0) {
+					motionIndex = 4;
+				} else {
+					motionIndex--;
+				}
 
-				final double D = log_delta_t__log_mu__gamma__D[2][3];
-				final double S_MSS = nu__gamma__S_MSS[2][0];
+				final String motionName = OMEGA.MOTIONTYPES[motionIndex];
 
-				final int motionType = stats.labels(segment);
+				// add data to the ArrayList
+				final String currentData[] = {
+				        String.valueOf(++dataIndex),
+				        String.format("%s.%d.%d", imageName, trajectory + 1,
+				                segment + 1), String.valueOf(this.D[k]),
+				        String.valueOf(this.S_MSS[k]), motionName };
 
-				if (Double.isNaN(D) || Double.isNaN(S_MSS)) {
+				if (!this.intervals) {
+					this.chartData.add(currentData);
 					continue;
 				}
 
-				if ((motionType > -1) && (motionType < 5)) {
-					// get segment's bounds and length
-					final int minBound = stats.from(segment) + 1;
-					final int maxBound = stats.to(segment) + 1;
-
-					// System.out.println(minBound);
-					// System.out.println(maxBound);
-
-					// get the length of the segment
-					final int l = stats.to(segment) - stats.from(segment);
+				final int trajectoryFirstRow = row - segment - 1;
 
-					// get the min frame mean SNR within the time window of the
-					// of the segment
-					final SPTStatsFileReader reader = new SPTStatsFileReader(
-					        folder);
-					final double minMeanSNR = reader.getMinimunFrameMeanSNR(
-					        children[i], minBound - 1, maxBound);
+				if (trajectoryRow != trajectoryFirstRow) {
+					trajectoryMicron = JFrameSMSSvsD.this.readTrajectory(
+					        folder, results.getFileName(results.getFolder(row),
+					                trajectory), this.sizes.get(results
+					                .getFolder(row)));
+					trajectoryRow = trajectoryFirstRow;
+				}
 
-					// System.out.println(minMeanSNR);
+				String[] intervalsData = { "", "", "", "" };
 
-					double uncertD = 0.0;
-					double uncertSMSS = 0.0;
+				if (trajectoryMicron != null) {
+					final double[][] intervals;
 
 					try {
-						final Interpolator4d dInterpolator = new Interpolator4d(
-						        InterpolationType.D);
-						uncertD = dInterpolator.interpolate(minMeanSNR, l,
-						        S_MSS, D);
-					} catch (final Exception e) {
-						GLogManager.log(e.toString(), Level.WARNING);
+						intervals = JFrameSMSSvsD.this.bootstrap
+						        .gamma__D__S_MSS(trajectoryMicron[0],
+						                trajectoryMicron[1], this.sizes
+						                        .get(results.getFolder(row))[2],
+						                results.getFrom(row), results.getTo(row));
+					} catch (final IllegalStateException e) {
+						// interrupted by stop
+						if (this.isCancelled())
+							return false;
+						throw e;
 					}
 
-					try {
-						final Interpolator4d sInterpolator = new Interpolator4d(
-						        InterpolationType.SMSS);
-						uncertSMSS = sInterpolator.interpolate(minMeanSNR, l,
-						        S_MSS, D);
-					} catch (final Exception e) {
-						GLogManager.log(e.toString(), Level.WARNING);
-					}
+					intervalsData = new String[] {
+					        String.valueOf(intervals[1][0]),
+					        String.valueOf(intervals[1][1]),
+					        String.valueOf(intervals[2][0]),
+					        String.valueOf(intervals[2][1]) };
+				}
 
-					this.smsSvsDChart.addDataToChart(D, S_MSS, motionType,
-					        uncertD, uncertSMSS);
+				final String dataWithIntervals[] = Arrays.copyOf(currentData,
+				        currentData.length + intervalsData.length);
+				System.arraycopy(intervalsData, 0, dataWithIntervals,
+				        currentData.length, intervalsData.length);
+				this.chartData.add(dataWithIntervals);
 
-					// add the values also to the field
-					final double[] D_SMSS_temp = { D, S_MSS };
-					this.D_SMSS.add(D_SMSS_temp);
+				this.setProgress(this.statsShare()
+				        + (((100 - this.statsShare()) * (k + 1)) / n));
+			}
 
-					// fix motions types
-					int motionIndex = motionType;
+			return true;
+		}
+	}
 
-					if (motionIndex == 0) {
-						motionIndex = 4;
-					} else {
-						motionIndex--;
-					}
+	/**
+	 * Interpolates the uncertainties of the segments on the grid of the type;
+	 * the segments out of the grid keep no uncertainty.
+	 */
+	private void interpolate(final InterpolationType interpolationType,
+	        final double[] minMeanSNR, final int[] l, final double[] S_MSS,
+	        final double[] D, final double[] uncertainties) {
+		final boolean[] outOfRange = new boolean[uncertainties.length];
+		final int outs = new Interpolator4d(interpolationType).interpolate(
+		        minMeanSNR, l, S_MSS, D, uncertainties, outOfRange);
+
+		for (int i = 0; i < uncertainties.length; i++) {
+			if (outOfRange[i]) {
+				uncertainties[i] = 0.0;
+			}
+		}
 
-					final String motionName = OMEGA.MOTIONTYPES[motionIndex];
+		if (outs > 0) {
+			GLogManager.log(String.format("%d of %d segments out of the %s grid",
+			        outs, uncertainties.length, interpolationType), Level.WARNING);
+		}
+	}
 
-					// add data to the ArrayList
-					final String currentData[] = {
-					        String.valueOf(++this.currentDataIndex),
-					        String.format("%s.%d.%d", imageName, i + 1,
-					                segment + 1), String.valueOf(D),
-					        String.valueOf(S_MSS), motionName };
-					this.currentChartData.add(currentData);
-				}
+	/**
+	 * Reads a trajectory and converts it in microns.
+	 * 
+	 * @return x and y, null if the trajectory cannot be read
+	 */
+	private double[][] readTrajectory(final String folder, final String file,
+	        final double[] sizes) {
+		try {
+			final double[][] trajectory = TrajectoryCache.readTrajectory(folder
+			        + System.getProperty("file.separator") + file);
+			final double[][] micron = new double[2][trajectory[0].length];
+
+			for (int i = 0; i < micron[0].length; i++) {
+				micron[0][i] = trajectory[0][i] * sizes[0];
+				micron[1][i] = trajectory[1][i] * sizes[1];
 			}
+
+			return micron;
+		} catch (final IOException e) {
+			GLogManager.log(e.toString(), Level.SEVERE);
+			return null;
 		}
+	}
 
-		return true;
+	/**
+	 * Tells the user when a folder has more than 1 labels file, the
+	 * StatsEngine uses the first one.
+	 */
+	private void checkLabelsFiles(final String folder) {
+		final String[] children = new File(folder)
+		        .list(new FilenameFilter() {
+			        @Override
+			        public boolean accept(final File dir, final String name) {
+				        return name
+				                .endsWith(OmegaConstants.LABELS_FILES_EXTENSION);
+			        }
+		        });
+
+		if ((children != null) && (children.length > 1)) {
+			JOptionPane.showMessageDialog(this, String.format(
+			        "%d labels files found.\nUsing %s.", children.length,
+			        children[0]), OmegaConstants.OMEGA_TITLE,
+			        JOptionPane.INFORMATION_MESSAGE);
+		}
 	}
 
 	@Override
@@ -466,7 +777,14 @@ public class JFrameSMSSvsD extends AbstractJFrameForChart {
 
 		final String[] row0 = { "index", "image.trajectory.segment",
 		        "D [microm^2/s]", "SMSS [-]", "motion type" };
-		data.add(row0);
+
+		if (!this.currentChartData.isEmpty()
+		        && (this.currentChartData.get(0).length > row0.length)) {
+			data.add(new String[] { row0[0], row0[1], row0[2], row0[3],
+			        row0[4], "D lower", "D upper", "SMSS lower", "SMSS upper" });
+		} else {
+			data.add(row0);
+		}
 
 		for (final String[] dataElement : this.currentChartData) {
 			data.add(dataElement);
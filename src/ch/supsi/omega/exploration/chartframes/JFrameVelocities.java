@@ -16,8 +16,8 @@ import ch.supsi.omega.exploration.charts.VelocitiesChart;
 import ch.supsi.omega.exploration.charts.velocities.JFrameVelocitiesStats;
 import ch.supsi.omega.exploration.common.JFrameTrajectoriesChooser;
 import ch.supsi.omega.exploration.common.imagedata.OmeroDataHelper;
-import ch.supsi.omega.exploration.processing.FileIn;
 import ch.supsi.omega.exploration.processing.Stats;
+import ch.supsi.omega.exploration.processing.TrajectoryCache;
 
 import com.galliva.gallibrary.GLogManager;
 
@@ -212,7 +212,7 @@ public class JFrameVelocities extends AbstractJFrameForChart {
 		for (int i = 0; i < children.length; i++) {
 			double[][] trajectories = null;
 			try {
-				trajectories = FileIn.readTrajectory(folder
+				trajectories = TrajectoryCache.readTrajectory(folder
 				        + System.getProperty("file.separator") + children[i]);
 			} catch (IOException e) {
 				GLogManager.log(e.toString(), Level.SEVERE);
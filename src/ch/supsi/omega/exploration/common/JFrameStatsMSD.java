@@ -74,6 +74,23 @@ public class JFrameStatsMSD extends JFrame
 		jTableStats.getColumnModel().getColumn(1).setCellRenderer(renderer);
 	}
 	
+	/**
+	 * Shows also the interval of the mean, at the given confidence level.
+	 */
+	public void setModel(double mean, double median, double deviation, double[] interval, double confidence)
+	{
+		setModel(new DefaultTableModel(new Object[][]{
+				{ "Mean", mean }, 
+				{ "Median", median }, 
+				{ "Standard deviation", deviation },
+				{ String.format("%.0f%% interval", confidence * 100.0), String.format("[%.4g, %.4g]", interval[0], interval[1]) }
+				}, new String[] { "Measure", "Value" }));
+
+		setPreferredSize(new Dimension(270, 125));
+		setMinimumSize(new Dimension(270, 125));
+		pack();
+	}
+	
 	public void setModel(DefaultTableModel model)
 	{
 	   DefaultTableCellRenderer renderer = new DefaultTableCellRenderer();
@@ -0,0 +1,217 @@
+package ch.supsi.omega.exploration.processing;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.math.ParallelFor;
+
+/**
+ * Percentile bootstrap intervals of gamma, D and S_MSS of a segment: the
+ * displacements of the segment are resampled by moving blocks, the positions
+ * rebuilt and the fits done again on each replicate. The replicates are split
+ * among the shared threads of ParallelFor; replicate r draws from its own
+ * Random, seeded from the seed and r, so the intervals do not depend on the
+ * number of threads. Interrupting the calling thread stops the replicates.
+ */
+public class Bootstrap {
+	// spreads the seeds of the replicates
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private int replicates = OmegaConstants.BOOTSTRAP_REPLICATES;
+	private int blockLength = 0;
+	private double confidence = 0.95;
+	private int threads = OmegaConstants.STATS_ENGINE_THREADS;
+	private long seed = 0L;
+
+	public int getReplicates() {
+		return this.replicates;
+	}
+
+	public void setReplicates(final int replicates) {
+		this.replicates = Math.max(1, replicates);
+	}
+
+	public int getBlockLength() {
+		return this.blockLength;
+	}
+
+	/**
+	 * @param blockLength
+	 *            the number of consecutive displacements of a block, 0 for
+	 *            the cube root of the number of displacements
+	 */
+	public void setBlockLength(final int blockLength) {
+		this.blockLength = Math.max(0, blockLength);
+	}
+
+	public double getConfidence() {
+		return this.confidence;
+	}
+
+	/**
+	 * @param confidence
+	 *            the confidence level of the intervals, 0.95 by default
+	 */
+	public void setConfidence(final double confidence) {
+		if (!((confidence > 0.0) && (confidence < 1.0)))
+			throw new IllegalArgumentException();
+		this.confidence = confidence;
+	}
+
+	public int getThreads() {
+		return this.threads;
+	}
+
+	public void setThreads(final int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public void setSeed(final long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Computes the intervals of the points from..to of a trajectory.
+	 *
+	 * @return 3 arrays, the lower and upper bounds of gamma, D and S_MSS
+	 *         (NaN if no replicate could be fitted)
+	 * @throws IllegalStateException
+	 *             if the calling thread is interrupted
+	 */
+	public double[][] gamma__D__S_MSS(final double[] x, final double[] y,
+	        final double Delta_t, final int from, final int to) {
+		final int n = to - from;
+		final double[] dx = new double[n];
+		final double[] dy = new double[n];
+
+		for (int i = 0; i < n; ++i) {
+			dx[i] = x[from + i + 1] - x[from + i];
+			dy[i] = y[from + i + 1] - y[from + i];
+		}
+
+		final int block = StrictMath.min(n,
+		        this.blockLength > 0 ? this.blockLength : (int) StrictMath.max(
+		                1, StrictMath.round(StrictMath.cbrt(n))));
+
+		final double[][] values = new double[3][this.replicates];
+
+		ParallelFor.run(this.replicates, 1, this.threads,
+		        new ParallelFor.Body() {
+			        @Override
+			        public void run(final int first, final int last) {
+				        Bootstrap.this.replicates(dx, dy, Delta_t, block,
+				                first, last, values);
+			        }
+		        });
+
+		if (Thread.currentThread().isInterrupted())
+			throw new IllegalStateException(new InterruptedException());
+
+		final double[][] intervals = new double[3][];
+
+		for (int i = 0; i < 3; ++i) {
+			intervals[i] = this.interval(values[i]);
+		}
+
+		return intervals;
+	}
+
+	/**
+	 * Computes the interval of the mean of the values, resampled one by one.
+	 *
+	 * @return the lower and upper bounds
+	 */
+	public double[] mean(final double[] values) {
+		final double[] means = new double[this.replicates];
+
+		for (int r = 0; r < this.replicates; ++r) {
+			final Random random = new Random(this.seed + (r * GOLDEN_GAMMA));
+			double sum = 0.0;
+
+			for (int i = 0; i < values.length; ++i) {
+				sum += values[random.nextInt(values.length)];
+			}
+
+			means[r] = sum / values.length;
+		}
+
+		return this.interval(means);
+	}
+
+	/**
+	 * Fits the replicates first..last - 1 and writes gamma, D and S_MSS in
+	 * values.
+	 */
+	private void replicates(final double[] dx, final double[] dy,
+	        final double Delta_t, final int block, final int first,
+	        final int last, final double[][] values) {
+		final int n = dx.length;
+		final double[] x = new double[n + 1];
+		final double[] y = new double[n + 1];
+		final double[] gamma = new double[Stats.MAX_NU + 1];
+		final double[] D = new double[Stats.MAX_NU + 1];
+		final double[] fit = new double[3];
+
+		for (int r = first; r < last; ++r) {
+			// cancelled
+			if (Thread.currentThread().isInterrupted())
+				return;
+
+			final Random random = new Random(this.seed + (r * GOLDEN_GAMMA));
+
+			// the blocks, one after the other, rebuild the positions
+			int i = 0;
+			while (i < n) {
+				final int start = random.nextInt((n - block) + 1);
+				for (int k = 0; (k < block) && (i < n); ++k, ++i) {
+					x[i + 1] = x[i] + dx[start + k];
+					y[i + 1] = y[i] + dy[start + k];
+				}
+			}
+
+			// no index: each moment is summed once
+			new MomentsIndex(x, y, Delta_t, 0).gamma__D__S_MSS(0, n, gamma, D,
+			        fit);
+
+			values[0][r] = gamma[2];
+			values[1][r] = D[2];
+			values[2][r] = fit[0];
+		}
+	}
+
+	/**
+	 * Returns the percentiles (1 - confidence) / 2 and (1 + confidence) / 2 of
+	 * the values that are not NaN, linearly interpolated.
+	 */
+	private double[] interval(final double[] values) {
+		final double[] sorted = new double[values.length];
+		int n = 0;
+
+		for (final double value : values) {
+			if (!Double.isNaN(value)) {
+				sorted[n++] = value;
+			}
+		}
+
+		if (n == 0)
+			return new double[] { Double.NaN, Double.NaN };
+
+		Arrays.sort(sorted, 0, n);
+
+		return new double[] {
+		        Bootstrap.percentile(sorted, n, (1.0 - this.confidence) / 2.0),
+		        Bootstrap.percentile(sorted, n, (1.0 + this.confidence) / 2.0) };
+	}
+
+	private static double percentile(final double[] sorted, final int n,
+	        final double p) {
+		final double h = (n - 1) * p;
+		final int i = (int) StrictMath.floor(h);
+
+		if (i >= (n - 1))
+			return sorted[n - 1];
+
+		return sorted[i] + ((h - i) * (sorted[i + 1] - sorted[i]));
+	}
+}
@@ -1,45 +1,59 @@
 package ch.supsi.omega.exploration.processing;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.util.ArrayList;
 
+import ch.supsi.omega.common.GrowableDoubleArray;
+import ch.supsi.omega.common.GrowableIntArray;
+import ch.supsi.omega.common.NumberTokenizer;
+import ch.supsi.omega.segmentation.trajectory.TrajectoryStore;
+
 public class FileIn
 {
 	/**
 	 * Returns 2 arrays. The first contains the values of the x coordinates. The second contains the values of the y coordinates.
+	 * The trajectory is read from the TrajectoryStore of its directory, if there is one.
 	 * @param trajectoryPath
 	 * @return
 	 * @throws IOException
 	 */
 	public static double[][] readTrajectory(String trajectoryPath) throws IOException
 	{
-		LineNumberReader reader = new LineNumberReader(new InputStreamReader(new FileInputStream(trajectoryPath), "ASCII"));
-		String line;
-		ArrayList<Double> xl = new ArrayList<Double>();
-		ArrayList<Double> yl = new ArrayList<Double>();
-		while ((line = reader.readLine()) != null)
+		File file = new File(trajectoryPath);
+		TrajectoryStore store = TrajectoryStore.find(file.getAbsoluteFile().getParentFile(), file.getName());
+
+		if (store != null)
+		{
+			int trajectory = store.indexOf(file.getName());
+
+			if (trajectory >= 0)
+				return store.getCoordinates(trajectory);
+		}
+
+		NumberTokenizer tokenizer = new NumberTokenizer(file);
+		GrowableDoubleArray line = new GrowableDoubleArray(12);
+		GrowableDoubleArray xl = new GrowableDoubleArray(256);
+		GrowableDoubleArray yl = new GrowableDoubleArray(256);
+
+		try
 		{
-			String[] strings = line.split(" ");
-			if (!strings[0].isEmpty())
+			while (tokenizer.readLine(line) >= 0)
 			{
-				xl.add(Double.parseDouble(strings[1]));
-				yl.add(Double.parseDouble(strings[2]));
+				// frame x y ...
+				if (line.size() >= 3)
+				{
+					xl.add(line.get(1));
+					yl.add(line.get(2));
+				}
 			}
 		}
-		double[] x = new double[xl.size()];
-		double[] y = new double[yl.size()];
-		for (int i = 0; i < x.length; ++i)
+		finally
 		{
-			x[i] = xl.get(i);
-			y[i] = yl.get(i);
+			tokenizer.close();
 		}
 		
-		reader.close();
-		
-		return new double[][] { x, y };
+		return new double[][] { xl.toArray(), yl.toArray() };
 	}
 
 	/**
@@ -50,21 +64,23 @@ public class FileIn
 	 */
 	public static int[][] readSegmentation(String segmentationPath) throws IOException
 	{
-		LineNumberReader reader = new LineNumberReader(new InputStreamReader(new FileInputStream(segmentationPath), "ASCII"));
-		reader.readLine(); // skip line containing the length
+		NumberTokenizer tokenizer = new NumberTokenizer(new File(segmentationPath));
+		GrowableIntArray line = new GrowableIntArray(1024);
 		ArrayList<int[]> labels = new ArrayList<int[]>();
-		String line;
-		while ((line = reader.readLine()) != null)
+
+		try
+		{
+			tokenizer.skipLine(); // skip line containing the length
+
+			// the first column is the trajectory
+			while (tokenizer.readLine(line) >= 0)
+				labels.add(line.toArray(1));
+		}
+		finally
 		{
-			String[] strings = line.split(" ");
-			int[] labels_l = new int[strings.length - 1];
-			for (int i = 0; i < labels_l.length; ++i)
-				labels_l[i] = Integer.parseInt(strings[i + 1]);
-			labels.add(labels_l);
+			tokenizer.close();
 		}
 		
-		reader.close();
-		
 		return labels.toArray(new int[labels.size()][]);
 	}
 
@@ -0,0 +1,229 @@
+package ch.supsi.omega.exploration.processing;
+
+import ch.supsi.omega.common.OmegaConstants;
+
+/**
+ * Prefix sums of the powers 1 to MAX_NU of the Euclidean norms of a
+ * trajectory, for each lag: mu(nu, Delta_n) of any range of points is a
+ * difference of two sums, O(1) instead of O(to - from). Built once per
+ * trajectory, it gives D and S_MSS of any segment at once, whatever the
+ * labels.
+ * <p>
+ * The prefix sums are accumulated with Kahan summation, so each one is exact
+ * to half an ulp. A difference much smaller than the sums, as the moments of
+ * a confined segment after a fast one, would still lose its digits: the
+ * moments of that range are then summed as Stats does.
+ * <p>
+ * The sums of all the orders take 6 * 8 * M bytes per lag, so only the lags
+ * that fit in OmegaConstants.MOMENTS_INDEX_SIZE are indexed; the moments of
+ * the larger lags are summed as Stats does.
+ */
+public final class MomentsIndex {
+	/**
+	 * The smallest difference of two prefix sums, relative to the larger one,
+	 * that keeps 32 bits of precision.
+	 */
+	private static final double MIN_RELATIVE_DIFFERENCE = 0x1.0p-20;
+
+	private final double[] x;
+	private final double[] y;
+	private final double Delta_t;
+
+	// sums[Delta_n][nu - 1][i]: the sum of the first i norms of lag Delta_n
+	// to the power nu (sums[0] == null)
+	private final double[][][] sums;
+
+	// work arrays of the fits
+	private double[] log_delta_t_work = null;
+	private double[][] log_mu_work = null;
+	private final double[] mu_work = new double[Stats.MAX_NU + 1];
+	private final double[] fit_work = new double[3];
+
+	public MomentsIndex(final double[] x, final double[] y,
+	        final double Delta_t) {
+		this(x, y, Delta_t, OmegaConstants.MOMENTS_INDEX_SIZE);
+	}
+
+	/**
+	 * @param maxSize
+	 *            the size of the sums, in MB
+	 */
+	public MomentsIndex(final double[] x, final double[] y,
+	        final double Delta_t, final int maxSize) {
+		if (!(x.length == y.length))
+			throw new IllegalArgumentException();
+
+		this.x = x.clone();
+		this.y = y.clone();
+		this.Delta_t = Delta_t;
+
+		final int M = this.M();
+		final long lagSize = (long) Stats.MAX_NU * 8 * StrictMath.max(M, 1);
+		final long lags = StrictMath.min(
+		        StrictMath.min(StrictMath.max(M / 3, 2), M - 1),
+		        ((long) maxSize << 20) / lagSize);
+
+		this.sums = new double[(int) StrictMath.max(lags, 0) + 1][][];
+
+		for (int Delta_n = 1; Delta_n < this.sums.length; ++Delta_n) {
+			final double[][] sums_Delta_n = new double[Stats.MAX_NU][(M - Delta_n) + 1];
+			// the running sums and their compensations
+			final double[] s = new double[Stats.MAX_NU];
+			final double[] c = new double[Stats.MAX_NU];
+			final double[] d = new double[Stats.MAX_NU];
+			for (int i = 0; i < (M - Delta_n); ++i) {
+				// the same products as Stats
+				final double d1 = this.norm(Delta_n, i);
+				final double d2 = d1 * d1;
+				final double d3 = d2 * d1;
+				final double d4 = d2 * d2;
+				d[0] = d1;
+				d[1] = d2;
+				d[2] = d3;
+				d[3] = d4;
+				d[4] = d4 * d1;
+				d[5] = d3 * d3;
+				for (int ny = 0; ny < Stats.MAX_NU; ++ny) {
+					final double term = d[ny] - c[ny];
+					final double sum = s[ny] + term;
+					c[ny] = (sum - s[ny]) - term;
+					s[ny] = sum;
+					sums_Delta_n[ny][i + 1] = sum;
+				}
+			}
+			this.sums[Delta_n] = sums_Delta_n;
+		}
+	}
+
+	public double Delta_t() {
+		return this.Delta_t;
+	}
+
+	public int M() {
+		return this.x.length;
+	}
+
+	/**
+	 * Returns the number of lags whose moments are O(1), from 1.
+	 */
+	public int indexedLags() {
+		return this.sums.length - 1;
+	}
+
+	private double norm(final int Delta_n, final int i) {
+		return StrictMath.hypot(this.x[i + Delta_n] - this.x[i],
+		        this.y[i + Delta_n] - this.y[i]);
+	}
+
+	/**
+	 * Returns mu(nu, Delta_n) of the points from..to, as
+	 * {@link Stats#mu(int, int, int)} of a segment from..to.
+	 */
+	public double mu(final int nu, final int Delta_n, final int from,
+	        final int to) {
+		this.mu(Delta_n, from, to, this.mu_work);
+		return this.mu_work[nu];
+	}
+
+	/**
+	 * Computes mu of all the moment orders 0 to MAX_NU of a lag for the points
+	 * from..to.
+	 *
+	 * @param mu
+	 *            receives mu(nu) at index nu
+	 */
+	public void mu(final int Delta_n, final int from, final int to,
+	        final double[] mu) {
+		final int n = (to + 1) - from - Delta_n;
+		mu[0] = 1.0;
+
+		if (Delta_n < this.sums.length) {
+			final double[][] sums_Delta_n = this.sums[Delta_n];
+			final int end = (to - Delta_n) + 1;
+			boolean precise = true;
+			for (int ny = 1; ny <= Stats.MAX_NU; ++ny) {
+				final double sum = sums_Delta_n[ny - 1][end];
+				final double difference = sum - sums_Delta_n[ny - 1][from];
+				if (difference <= (sum * MomentsIndex.MIN_RELATIVE_DIFFERENCE)) {
+					precise = false;
+				}
+				mu[ny] = difference / n;
+			}
+			if (precise)
+				return;
+		}
+
+		double mu1 = 0.0;
+		double mu2 = 0.0;
+		double mu3 = 0.0;
+		double mu4 = 0.0;
+		double mu5 = 0.0;
+		double mu6 = 0.0;
+		for (int i = from; i <= (to - Delta_n); ++i) {
+			final double d1 = this.norm(Delta_n, i);
+			final double d2 = d1 * d1;
+			final double d3 = d2 * d1;
+			final double d4 = d2 * d2;
+			mu1 += d1;
+			mu2 += d2;
+			mu3 += d3;
+			mu4 += d4;
+			mu5 += d4 * d1;
+			mu6 += d3 * d3;
+		}
+		mu[1] = mu1 / n;
+		mu[2] = mu2 / n;
+		mu[3] = mu3 / n;
+		mu[4] = mu4 / n;
+		mu[5] = mu5 / n;
+		mu[6] = mu6 / n;
+	}
+
+	/**
+	 * Computes gamma and D of the moment orders 0 to MAX_NU and the MSS fit of
+	 * the points from..to, as
+	 * {@link Stats#gamma__D__S_MSS(int, double[], double[], double[])} of a
+	 * segment from..to.
+	 *
+	 * @param gamma
+	 *            receives gamma of each order, MAX_NU + 1 values
+	 * @param D
+	 *            receives D of each order, MAX_NU + 1 values, or null
+	 * @param fit
+	 *            receives S_MSS, the intercept and the correlation of the fit
+	 */
+	public void gamma__D__S_MSS(final int from, final int to,
+	        final double[] gamma, final double[] D, final double[] fit) {
+		final double log_Delta_t = StrictMath.log(this.Delta_t);
+		final int M = (to + 1) - from;
+		final int max_Delta_n = StrictMath.max(M / 3, 2);
+
+		if ((this.log_delta_t_work == null)
+		        || (this.log_delta_t_work.length <= max_Delta_n)) {
+			this.log_delta_t_work = new double[max_Delta_n + 1];
+			this.log_mu_work = new double[Stats.MAX_NU + 1][max_Delta_n + 1];
+		}
+		final double[] log_delta_t = this.log_delta_t_work;
+		final double[][] log_mu = this.log_mu_work;
+
+		for (int Delta_n = 1; Delta_n <= max_Delta_n; ++Delta_n) {
+			log_delta_t[Delta_n] = log_Delta_t + StrictMath.log(Delta_n);
+			this.mu(Delta_n, from, to, this.mu_work);
+			for (int ny = 0; ny <= Stats.MAX_NU; ++ny) {
+				log_mu[ny][Delta_n] = StrictMath.log(this.mu_work[ny]);
+			}
+		}
+
+		for (int ny = 0; ny <= Stats.MAX_NU; ++ny) {
+			Stats.linear_fit(log_delta_t, log_mu[ny], 1, max_Delta_n,
+			        this.fit_work);
+			gamma[ny] = this.fit_work[0];
+			if (D != null) {
+				D[ny] = StrictMath.exp(this.fit_work[1]) / (2.0 * ny);
+			}
+		}
+
+		// the fit of gamma against the moment order
+		Stats.linear_fit(Stats.NU, gamma, 0, Stats.MAX_NU, fit);
+	}
+}
@@ -3,18 +3,56 @@ package ch.supsi.omega.exploration.processing;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+
+import ch.supsi.omega.common.OmegaConstants;
+
 public class Stats {
 	public static final int MAX_NU = 6;
 
+	// the moment orders, as the first array of nu__gamma__S_MSS
+	static final double[] NU = { 0.0, 1.0, 2.0, 3.0, 4.0, 5.0, 6.0 };
+
 	private final double[] x;
 	private final double[] y;
 	private final double Delta_t;
 	private final double[][] d; // cache of Euclidean norms (d[0] == null)
+	private final int lagsNumber; // 0: all the lags
 	private int[] bounds = null;
 	private int[] labels = null;
 
+	// the lags of the last range, see lags()
+	private int[] lags_work = null;
+
+	// work arrays of the MSS kernel, reused from one call to the next
+	private double[] log_delta_t_work = null;
+	private double[][] log_mu_work = null;
+	private final double[] mu_work = new double[Stats.MAX_NU + 1];
+	private final double[] fit_work = new double[3];
+
+	/**
+	 * Fits all the lags up to M / 3. The Euclidean norms are cached when the
+	 * trajectory has at most OmegaConstants.STATS_MAX_CACHED_POINTS points,
+	 * computed when needed otherwise (same results, O(M) memory).
+	 */
 	public Stats(final double[] x, final double[] y, final double Delta_t,
 	        final int[] segmentationOrNull) {
+		this(x, y, Delta_t, segmentationOrNull, 0);
+	}
+
+	/**
+	 * The bounded-memory mode: the Euclidean norms are never cached and the
+	 * fits use lagsNumber lags, log-spaced from 1 to M / 3 (all of them if
+	 * there are fewer). The time goes from O(M^2) to O(M * lagsNumber).
+	 * 
+	 * @param lagsNumber
+	 *            the number of lags of the fits, 0 for all the lags as
+	 *            {@link #Stats(double[], double[], double, int[])}
+	 */
+	public Stats(final double[] x, final double[] y, final double Delta_t,
+	        final int[] segmentationOrNull, final int lagsNumber) {
 		Stats.checkLengths_x_y(x, y);
 		Stats.checkLength_segmentation(x, segmentationOrNull);
 
@@ -46,9 +84,16 @@ public class Stats {
 			System.out.println(bound);
 		}
 
+		this.lagsNumber = StrictMath.max(lagsNumber, 0);
+
 		// calculate d (cache)
-		this.d = new double[1 + ((this.M()) / 3)][];
-		this.norms();
+		if ((this.lagsNumber == 0)
+		        && (this.M() <= OmegaConstants.STATS_MAX_CACHED_POINTS)) {
+			this.d = new double[1 + ((this.M()) / 3)][];
+			this.norms();
+		} else {
+			this.d = null;
+		}
 	}
 
 	private static void checkLength_segmentation(final double[] x,
@@ -142,6 +187,54 @@ public class Stats {
 		}
 	}
 
+	/**
+	 * Returns the Euclidean norm d[Delta_n][i], from the cache if there is one.
+	 */
+	private double norm(final int Delta_n, final int i) {
+		if (this.d != null) {
+			return this.d[Delta_n][i];
+		}
+		return StrictMath.hypot(this.x[i + Delta_n] - this.x[i],
+		        this.y[i + Delta_n] - this.y[i]);
+	}
+
+	/**
+	 * Returns the lags fitted for a range whose max lag is max_Delta_n: all of
+	 * them, or lagsNumber log-spaced ones (1 and max_Delta_n included). The
+	 * array is reused until the max lag changes.
+	 */
+	private int[] lags(final int max_Delta_n) {
+		if ((this.lags_work != null)
+		        && (this.lags_work[this.lags_work.length - 1] == max_Delta_n)) {
+			return this.lags_work;
+		}
+
+		int[] lags;
+		if ((this.lagsNumber == 0) || (this.lagsNumber >= max_Delta_n)) {
+			lags = new int[max_Delta_n];
+			for (int i = 0; i < lags.length; ++i) {
+				lags[i] = i + 1;
+			}
+		} else {
+			lags = new int[StrictMath.max(this.lagsNumber, 2)];
+			final double log_max = StrictMath.log(max_Delta_n);
+			int n = 0;
+			for (int i = 0; i < lags.length; ++i) {
+				final int lag = (int) StrictMath.round(StrictMath
+				        .exp((log_max * i) / (lags.length - 1)));
+				// the small lags are rounded to the same value
+				if ((n == 0) || (lag > lags[n - 1])) {
+					lags[n++] = lag;
+				}
+			}
+			lags[n - 1] = max_Delta_n;
+			lags = Arrays.copyOf(lags, n);
+		}
+
+		this.lags_work = lags;
+		return lags;
+	}
+
 	private static double pow(final double x, final int n) {
 		switch (n) {
 		case 0:
@@ -257,6 +350,17 @@ public class Stats {
 	// Sbalzarini
 	public static double[] linear_fit(final double[] u, final double[] v,
 	        final int from, final int to) {
+		final double[] fit = new double[3];
+		Stats.linear_fit(u, v, from, to, fit);
+		return fit;
+	}
+
+	/**
+	 * Does the same as {@link #linear_fit(double[], double[], int, int)} but
+	 * writes m, q and r in the fit array.
+	 */
+	static void linear_fit(final double[] u, final double[] v,
+	        final int from, final int to, final double[] fit) {
 		final double u_bar = Stats.mean(u, from, to);
 		final double v_bar = Stats.mean(v, from, to);
 		double SigmaUV = 0.0;
@@ -270,7 +374,9 @@ public class Stats {
 		final double m = SigmaUV / SigmaU2;
 		final double q = v_bar - (m * u_bar);
 		final double r = SigmaUV / StrictMath.sqrt(SigmaU2 * SigmaV2);
-		return new double[] { m, q, r };
+		fit[0] = m;
+		fit[1] = q;
+		fit[2] = r;
 	}
 
 	public static double[] linear_fit(final double[] u, final double[] v) {
@@ -281,7 +387,7 @@ public class Stats {
 	        final int to) {
 		double tot = 0.0;
 		for (int i = from; i <= (to - Delta_n); ++i) {
-			tot += Stats.pow(this.d[Delta_n][i], nu);
+			tot += Stats.pow(this.norm(Delta_n, i), nu);
 		}
 		return tot / ((to + 1) - from - Delta_n);
 	}
@@ -294,6 +400,108 @@ public class Stats {
 		return this.mu(nu, Delta_n, this.from(segment), this.to(segment));
 	}
 
+	/**
+	 * Computes mu of all the moment orders 0 to MAX_NU for a lag in a single
+	 * pass over the displacements, as {@link #mu(int, int, int, int)} would.
+	 * 
+	 * @param mu
+	 *            receives mu(nu) at index nu
+	 */
+	private void mu(final int Delta_n, final int from, final int to,
+	        final double[] mu) {
+		final double[] d_Delta_n = this.d != null ? this.d[Delta_n] : null;
+		double mu1 = 0.0;
+		double mu2 = 0.0;
+		double mu3 = 0.0;
+		double mu4 = 0.0;
+		double mu5 = 0.0;
+		double mu6 = 0.0;
+		for (int i = from; i <= (to - Delta_n); ++i) {
+			// the same products as pow()
+			final double d1 = d_Delta_n != null ? d_Delta_n[i] : this.norm(
+			        Delta_n, i);
+			final double d2 = d1 * d1;
+			final double d3 = d2 * d1;
+			final double d4 = d2 * d2;
+			mu1 += d1;
+			mu2 += d2;
+			mu3 += d3;
+			mu4 += d4;
+			mu5 += d4 * d1;
+			mu6 += d3 * d3;
+		}
+		final int n = (to + 1) - from - Delta_n;
+		mu[0] = 1.0;
+		mu[1] = mu1 / n;
+		mu[2] = mu2 / n;
+		mu[3] = mu3 / n;
+		mu[4] = mu4 / n;
+		mu[5] = mu5 / n;
+		mu[6] = mu6 / n;
+	}
+
+	/**
+	 * Computes mu(2, Delta_n) of all the lags up to max_Delta_n in O(M log M)
+	 * instead of O(M) per lag: MSD(n) = S1(n) - 2 S2(n) / (M - n), where S2 is
+	 * the autocorrelation of the positions, computed by FFT, and S1 the mean
+	 * of the squared positions of the pairs. The positions are centered first,
+	 * so that the difference does not lose the precision of small MSDs.
+	 * 
+	 * @return the MSD at index Delta_n
+	 */
+	private double[] msd(final int from, final int to, final int max_Delta_n) {
+		final int M = (to + 1) - from;
+
+		double x_bar = 0.0;
+		double y_bar = 0.0;
+		for (int i = from; i <= to; ++i) {
+			x_bar += this.x[i];
+			y_bar += this.y[i];
+		}
+		x_bar /= M;
+		y_bar /= M;
+
+		// x + iy, zero padded to avoid the circular correlation
+		int size = 1;
+		while (size < (2 * M)) {
+			size <<= 1;
+		}
+		final double[][] z = new double[2][size];
+		final double[] squares = new double[M];
+		for (int i = 0; i < M; ++i) {
+			z[0][i] = this.x[from + i] - x_bar;
+			z[1][i] = this.y[from + i] - y_bar;
+			squares[i] = Stats.pow_2(z[0][i]) + Stats.pow_2(z[1][i]);
+		}
+
+		// the autocorrelation: the inverse transform of the power spectrum
+		FastFourierTransformer.transformInPlace(z, DftNormalization.STANDARD,
+		        TransformType.FORWARD);
+		for (int i = 0; i < size; ++i) {
+			z[0][i] = Stats.pow_2(z[0][i]) + Stats.pow_2(z[1][i]);
+			z[1][i] = 0.0;
+		}
+		FastFourierTransformer.transformInPlace(z, DftNormalization.STANDARD,
+		        TransformType.INVERSE);
+
+		final double[] msd = new double[max_Delta_n + 1];
+		double Q = 0.0;
+		for (int i = 0; i < M; ++i) {
+			Q += squares[i];
+		}
+		Q *= 2.0;
+		for (int Delta_n = 0; Delta_n <= max_Delta_n; ++Delta_n) {
+			if (Delta_n > 0) {
+				Q -= squares[Delta_n - 1] + squares[M - Delta_n];
+			}
+			final int pairs = M - Delta_n;
+			// cannot be negative, but for rounding errors
+			msd[Delta_n] = StrictMath.max(0.0, (Q - (2.0 * z[0][Delta_n]))
+			        / pairs);
+		}
+		return msd;
+	}
+
 	// VEDI PAPER MOMENTS AND DISPLACEMENTS AND THEIR SPECTRUM IVO SBALZARINI
 	private double[][] log_delta_t__log_mu__gamma__D(final int nu,
 	        final int from, final int to) {
@@ -301,15 +509,25 @@ public class Stats {
 		final double log_Delta_t = StrictMath.log(this.Delta_t);
 		final int M = (to + 1) - from;
 		final int max_Delta_n = StrictMath.max(M / 3, 2);
-		final double[] log_delta_t = new double[max_Delta_n + 1];
+		final int[] lags = this.lags(max_Delta_n);
+
+		// the MSD of all the lags at once, if it is cheaper
+		final double[] msd = (nu == 2)
+		        && (M >= OmegaConstants.STATS_FFT_MIN_POINTS)
+		        && (lags.length == max_Delta_n) ? this.msd(from, to,
+		        max_Delta_n) : null;
+
+		final double[] log_delta_t = new double[lags.length + 1];
 		final double[] log_mu = new double[log_delta_t.length];
-		for (int Delta_n = 1; Delta_n <= max_Delta_n; ++Delta_n) {
-			log_delta_t[Delta_n] = log_Delta_t + StrictMath.log(Delta_n);
-			log_mu[Delta_n] = StrictMath.log(this.mu(nu, Delta_n, from, to));
+		for (int k = 1; k <= lags.length; ++k) {
+			final int Delta_n = lags[k - 1];
+			log_delta_t[k] = log_Delta_t + StrictMath.log(Delta_n);
+			log_mu[k] = StrictMath.log(msd != null ? msd[Delta_n] : this.mu(
+			        nu, Delta_n, from, to));
 		}
 
 		final double[] fit = Stats.linear_fit(log_delta_t, log_mu, 1,
-		        max_Delta_n);
+		        lags.length);
 		final double D = StrictMath.exp(fit[1]) / (2.0 * nu);
 
 		return new double[][] { log_delta_t, log_mu,
@@ -350,11 +568,80 @@ public class Stats {
 	private double[][] nu__gamma__S_MSS(final int from, final int to) {
 		final double[] nu = new double[Stats.MAX_NU + 1];
 		final double[] gamma = new double[Stats.MAX_NU + 1];
+		final double[] fit = new double[3];
+		this.gamma__D__S_MSS(from, to, gamma, null, fit);
+		System.arraycopy(Stats.NU, 0, nu, 0, nu.length);
+		return new double[][] { nu, gamma, fit };
+	}
+
+	/**
+	 * The MSS kernel: the moments of all the orders are accumulated in a
+	 * single pass per lag, then each order is fitted as in
+	 * {@link #log_delta_t__log_mu__gamma__D(int, int, int)}.
+	 */
+	private void gamma__D__S_MSS(final int from, final int to,
+	        final double[] gamma, final double[] D, final double[] fit) {
+		final double log_Delta_t = StrictMath.log(this.Delta_t);
+		final int M = (to + 1) - from;
+		final int[] lags = this.lags(StrictMath.max(M / 3, 2));
+
+		if ((this.log_delta_t_work == null)
+		        || (this.log_delta_t_work.length <= lags.length)) {
+			this.log_delta_t_work = new double[lags.length + 1];
+			this.log_mu_work = new double[Stats.MAX_NU + 1][lags.length + 1];
+		}
+		final double[] log_delta_t = this.log_delta_t_work;
+		final double[][] log_mu = this.log_mu_work;
+
+		for (int k = 1; k <= lags.length; ++k) {
+			final int Delta_n = lags[k - 1];
+			log_delta_t[k] = log_Delta_t + StrictMath.log(Delta_n);
+			this.mu(Delta_n, from, to, this.mu_work);
+			for (int ny = 0; ny <= Stats.MAX_NU; ++ny) {
+				log_mu[ny][k] = StrictMath.log(this.mu_work[ny]);
+			}
+		}
+
 		for (int ny = 0; ny <= Stats.MAX_NU; ++ny) {
-			nu[ny] = ny;
-			gamma[ny] = this.log_delta_t__log_mu__gamma__D(ny, from, to)[2][0];
+			Stats.linear_fit(log_delta_t, log_mu[ny], 1, lags.length,
+			        this.fit_work);
+			gamma[ny] = this.fit_work[0];
+			if (D != null) {
+				D[ny] = StrictMath.exp(this.fit_work[1]) / (2.0 * ny);
+			}
 		}
-		return new double[][] { nu, gamma, Stats.linear_fit(nu, gamma) };
+
+		// the fit of gamma against the moment order
+		Stats.linear_fit(Stats.NU, gamma, 0, Stats.MAX_NU, fit);
+	}
+
+	/**
+	 * Computes gamma and D of the moment orders 0 to MAX_NU and the MSS fit in
+	 * a single pass per lag, without allocating: the results are written in
+	 * the given arrays. gamma and fit hold the same values as the second and
+	 * the third arrays of {@link #nu__gamma__S_MSS()}, D[nu] the same value as
+	 * the D of {@link #log_delta_t__log_mu__gamma__D(int)}.
+	 * 
+	 * @param gamma
+	 *            receives gamma of each order, MAX_NU + 1 values
+	 * @param D
+	 *            receives D of each order, MAX_NU + 1 values, or null
+	 * @param fit
+	 *            receives S_MSS, the intercept and the correlation of the fit
+	 */
+	public void gamma__D__S_MSS(final double[] gamma, final double[] D,
+	        final double[] fit) {
+		this.gamma__D__S_MSS(0, this.intervals(), gamma, D, fit);
+	}
+
+	/**
+	 * Does the same as {@link #gamma__D__S_MSS(double[], double[], double[])}
+	 * but limits the computation to a single segment.
+	 */
+	public void gamma__D__S_MSS(final int segment, final double[] gamma,
+	        final double[] D, final double[] fit) {
+		this.gamma__D__S_MSS(this.from(segment), this.to(segment), gamma, D,
+		        fit);
 	}
 
 	/**
@@ -384,11 +671,12 @@ public class Stats {
 	public double[] instantVelocities() {
 		final double[] v = new double[this.x.length];
 
-		v[0] = this.d[1][0] / this.Delta_t;
-		v[v.length - 1] = this.d[1][v.length - 2] / this.Delta_t;
+		v[0] = this.norm(1, 0) / this.Delta_t;
+		v[v.length - 1] = this.norm(1, v.length - 2) / this.Delta_t;
 
 		for (int i = 1; i < (v.length - 1); i++) {
-			v[i] = (this.d[1][i] + this.d[1][i - 1]) / (2.0 * this.Delta_t);
+			v[i] = (this.norm(1, i) + this.norm(1, i - 1))
+			        / (2.0 * this.Delta_t);
 		}
 
 		return v;
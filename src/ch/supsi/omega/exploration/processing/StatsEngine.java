@@ -0,0 +1,300 @@
+package ch.supsi.omega.exploration.processing;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import ch.supsi.omega.common.OmegaConstants;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * Computes the Stats of all the trajectories of a set of folders in parallel
+ * and collects D, gamma, S_MSS, the correlation of the MSS fit, the duration
+ * and the label of each trajectory and of each of its segments in a
+ * StatsResults table.
+ * <p>
+ * The trajectories are read through the TrajectoryCache. The segments are the
+ * ones of the labels file of the folder when there is one (the first one) and
+ * labels are asked for, the whole trajectory (label 0) otherwise.
+ */
+public class StatsEngine {
+	/**
+	 * Receives the progress of a run, from the threads of the engine.
+	 */
+	public interface ProgressListener {
+		void progress(int done, int total);
+	}
+
+	private int threads = OmegaConstants.STATS_ENGINE_THREADS;
+	private boolean useLabels = false;
+	private ProgressListener progressListener = null;
+
+	private volatile boolean cancelled = false;
+
+	public int getThreads() {
+		return this.threads;
+	}
+
+	public void setThreads(final int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * @param useLabels
+	 *            true to segment the trajectories with the labels file of
+	 *            their folder
+	 */
+	public void setUseLabels(final boolean useLabels) {
+		this.useLabels = useLabels;
+	}
+
+	public void setProgressListener(final ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Stops the current run, process returns null.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * Processes the trajectories of the folders.
+	 *
+	 * @param folders
+	 *            the folders of the trajectories
+	 * @param sizes
+	 *            for each folder, the pixel size in x and y and Delta_t; null
+	 *            (or a null element) for pixels and Delta_t = 0.02
+	 * @return the results, null if the run was cancelled
+	 */
+	public StatsResults process(final List<String> folders,
+	        final List<double[]> sizes) {
+		this.cancelled = false;
+
+		final String[][] files = new String[folders.size()][];
+		final int[][][] segmentations = new int[folders.size()][][];
+		int total = 0;
+
+		for (int f = 0; f < folders.size(); f++) {
+			files[f] = StatsEngine.list(folders.get(f),
+			        OmegaConstants.TRACKS_FILES_EXTENSION);
+			total += files[f].length;
+
+			if (this.useLabels) {
+				final String[] labels = StatsEngine.list(folders.get(f),
+				        OmegaConstants.LABELS_FILES_EXTENSION);
+
+				if (labels.length > 0) {
+					try {
+						segmentations[f] = FileIn.readSegmentation(folders
+						        .get(f)
+						        + System.getProperty("file.separator")
+						        + labels[0]);
+					} catch (final IOException e) {
+						GLogManager.log(e.toString(), Level.SEVERE);
+					}
+				}
+			}
+		}
+
+		final StatsResults results = new StatsResults(
+		        folders.toArray(new String[folders.size()]), files);
+
+		// one task per trajectory, in the order of the results
+		final List<Callable<double[][]>> tasks = new ArrayList<Callable<double[][]>>(
+		        total);
+		final AtomicInteger done = new AtomicInteger();
+		final int tasksNumber = total;
+
+		for (int f = 0; f < folders.size(); f++) {
+			final String path = folders.get(f)
+			        + System.getProperty("file.separator");
+			final double[] folderSizes = (sizes == null)
+			        || (sizes.get(f) == null) ? new double[] { 1.0, 1.0, 0.02 }
+			        : sizes.get(f);
+
+			for (int t = 0; t < files[f].length; t++) {
+				final String file = path + files[f][t];
+				final int[] segmentation = (segmentations[f] != null)
+				        && (t < segmentations[f].length) ? segmentations[f][t]
+				        : null;
+
+				tasks.add(new Callable<double[][]>() {
+					@Override
+					public double[][] call() throws Exception {
+						if (StatsEngine.this.cancelled)
+							return null;
+
+						try {
+							return StatsEngine.processTrajectory(file,
+							        folderSizes, segmentation);
+						} finally {
+							StatsEngine.this.progress(done.incrementAndGet(),
+							        tasksNumber);
+						}
+					}
+				});
+			}
+		}
+
+		final List<double[][]> rows = this.run(tasks);
+
+		if (rows == null)
+			return null;
+
+		int task = 0;
+
+		for (int f = 0; f < folders.size(); f++) {
+			for (int t = 0; t < files[f].length; t++) {
+				final double[][] trajectoryRows = rows.get(task++);
+
+				if (trajectoryRows == null) {
+					results.addFailed(f, t);
+					continue;
+				}
+
+				for (int s = 0; s < trajectoryRows.length; s++) {
+					final double[] row = trajectoryRows[s];
+					results.add(f, t, s - 1, (int) row[0], (int) row[1],
+					        (int) row[2], row[3], row[4], row[5], row[6],
+					        row[7], row[8]);
+				}
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Runs the tasks on a pool of threads.
+	 *
+	 * @return the result of each task, null for the failed ones; null if the
+	 *         run was cancelled
+	 */
+	private List<double[][]> run(final List<Callable<double[][]>> tasks) {
+		final ExecutorService executor = Executors.newFixedThreadPool(Math
+		        .max(1, Math.min(this.threads, tasks.size())));
+		final List<Future<double[][]>> futures = new ArrayList<Future<double[][]>>(
+		        tasks.size());
+
+		for (final Callable<double[][]> task : tasks) {
+			futures.add(executor.submit(task));
+		}
+
+		executor.shutdown();
+
+		final List<double[][]> rows = new ArrayList<double[][]>(tasks.size());
+
+		try {
+			for (final Future<double[][]> future : futures) {
+				try {
+					rows.add(future.get());
+				} catch (final ExecutionException e) {
+					GLogManager.log(
+					        String.format("%s: %s",
+					                "cannot process the trajectory",
+					                e.getCause()), Level.WARNING);
+					rows.add(null);
+				}
+
+				if (this.cancelled) {
+					executor.shutdownNow();
+					return null;
+				}
+			}
+		} catch (final InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			return null;
+		}
+
+		return rows;
+	}
+
+	private void progress(final int done, final int total) {
+		if (this.progressListener != null) {
+			this.progressListener.progress(done, total);
+		}
+	}
+
+	/**
+	 * Computes the rows of a trajectory: the whole trajectory, then each
+	 * segment. A row holds label, from, to, D, gamma, S_MSS, correlation,
+	 * duration and the mean log MSD.
+	 */
+	private static double[][] processTrajectory(final String file,
+	        final double[] sizes, final int[] segmentationOrNull)
+	        throws IOException {
+		final double[][] trajectory = TrajectoryCache.readTrajectory(file);
+
+		final double[] x = new double[trajectory[0].length];
+		final double[] y = new double[trajectory[1].length];
+
+		for (int i = 0; i < x.length; i++) {
+			x[i] = trajectory[0][i] * sizes[0];
+			y[i] = trajectory[1][i] * sizes[1];
+		}
+
+		int[] segmentation = segmentationOrNull;
+
+		if (segmentation == null) {
+			segmentation = new int[x.length - 1];
+			Arrays.fill(segmentation, 0);
+		}
+
+		final Stats stats = new Stats(x, y, sizes[2], segmentation);
+
+		final double[][] rows = new double[1 + stats.labelsLength()][];
+		final double[] gamma = new double[Stats.MAX_NU + 1];
+		final double[] D = new double[Stats.MAX_NU + 1];
+		final double[] fit = new double[3];
+
+		// D and gamma of the MSD (nu = 2) come from the MSS kernel, the MSD
+		// fit is needed only for the mean of log(mu)
+		stats.gamma__D__S_MSS(gamma, D, fit);
+		final double[][] msd = stats.log_delta_t__log_mu__gamma__D(2);
+		rows[0] = new double[] { 0, 0, stats.intervals(), D[2], gamma[2],
+		        fit[0], fit[2], stats.duration(), Stats.mean(msd[1]) };
+
+		for (int segment = 0; segment < stats.labelsLength(); ++segment) {
+			stats.gamma__D__S_MSS(segment, gamma, D, fit);
+			final double[][] segmentMSD = stats.log_delta_t__log_mu__gamma__D(
+			        2, segment);
+			rows[segment + 1] = new double[] { stats.labels(segment),
+			        stats.from(segment), stats.to(segment), D[2], gamma[2],
+			        fit[0], fit[2], stats.duration(segment),
+			        Stats.mean(segmentMSD[1]) };
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Lists the files of a folder with the given extension, in the order of
+	 * File.list.
+	 */
+	private static String[] list(final String folder, final String extension) {
+		final String[] children = new File(folder)
+		        .list(new FilenameFilter() {
+			        @Override
+			        public boolean accept(final File dir, final String name) {
+				        return name.endsWith(extension);
+			        }
+		        });
+
+		return children != null ? children : new String[0];
+	}
+}
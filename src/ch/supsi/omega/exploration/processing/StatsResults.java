@@ -0,0 +1,171 @@
+package ch.supsi.omega.exploration.processing;
+
+import ch.supsi.omega.common.GrowableDoubleArray;
+import ch.supsi.omega.common.GrowableIntArray;
+
+/**
+ * The results of a StatsEngine run, one row per trajectory and per segment,
+ * kept in primitive columns. The rows are ordered by folder, trajectory and
+ * segment; the row of a whole trajectory comes first, with segment -1.
+ */
+public final class StatsResults {
+	/** The segment of the rows of whole trajectories. */
+	public static final int WHOLE_TRAJECTORY = -1;
+
+	private final String[] folders;
+	private final String[][] files;
+
+	private final GrowableIntArray folder = new GrowableIntArray(256);
+	private final GrowableIntArray trajectory = new GrowableIntArray(256);
+	private final GrowableIntArray segment = new GrowableIntArray(256);
+	private final GrowableIntArray label = new GrowableIntArray(256);
+	private final GrowableIntArray from = new GrowableIntArray(256);
+	private final GrowableIntArray to = new GrowableIntArray(256);
+	private final GrowableDoubleArray D = new GrowableDoubleArray(256);
+	private final GrowableDoubleArray gamma = new GrowableDoubleArray(256);
+	private final GrowableDoubleArray S_MSS = new GrowableDoubleArray(256);
+	private final GrowableDoubleArray correlation = new GrowableDoubleArray(
+	        256);
+	private final GrowableDoubleArray duration = new GrowableDoubleArray(256);
+	private final GrowableDoubleArray meanLogMSD = new GrowableDoubleArray(
+	        256);
+
+	private final GrowableIntArray failedFolder = new GrowableIntArray(16);
+	private final GrowableIntArray failedTrajectory = new GrowableIntArray(16);
+
+	StatsResults(final String[] folders, final String[][] files) {
+		this.folders = folders;
+		this.files = files;
+	}
+
+	void add(final int folder, final int trajectory, final int segment,
+	        final int label, final int from, final int to, final double D,
+	        final double gamma, final double S_MSS, final double correlation,
+	        final double duration, final double meanLogMSD) {
+		this.folder.add(folder);
+		this.trajectory.add(trajectory);
+		this.segment.add(segment);
+		this.label.add(label);
+		this.from.add(from);
+		this.to.add(to);
+		this.D.add(D);
+		this.gamma.add(gamma);
+		this.S_MSS.add(S_MSS);
+		this.correlation.add(correlation);
+		this.duration.add(duration);
+		this.meanLogMSD.add(meanLogMSD);
+	}
+
+	void addFailed(final int folder, final int trajectory) {
+		this.failedFolder.add(folder);
+		this.failedTrajectory.add(trajectory);
+	}
+
+	public int size() {
+		return this.folder.size();
+	}
+
+	/**
+	 * Returns the number of trajectories that could not be processed, they
+	 * have no rows.
+	 */
+	public int getFailedNumber() {
+		return this.failedFolder.size();
+	}
+
+	/**
+	 * Returns the folder of the i-th trajectory that could not be processed.
+	 */
+	public int getFailedFolder(final int i) {
+		return this.failedFolder.get(i);
+	}
+
+	/**
+	 * Returns the i-th trajectory that could not be processed, in its folder.
+	 */
+	public int getFailedTrajectory(final int i) {
+		return this.failedTrajectory.get(i);
+	}
+
+	public String getFolderName(final int folder) {
+		return this.folders[folder];
+	}
+
+	/**
+	 * Returns the name of a trajectory file, the trajectories of a folder are
+	 * numbered in the order of File.list.
+	 */
+	public String getFileName(final int folder, final int trajectory) {
+		return this.files[folder][trajectory];
+	}
+
+	public int getFolder(final int row) {
+		return this.folder.get(row);
+	}
+
+	public int getTrajectory(final int row) {
+		return this.trajectory.get(row);
+	}
+
+	/**
+	 * Returns the segment of the row, WHOLE_TRAJECTORY for the whole
+	 * trajectory.
+	 */
+	public int getSegment(final int row) {
+		return this.segment.get(row);
+	}
+
+	public int getLabel(final int row) {
+		return this.label.get(row);
+	}
+
+	/**
+	 * Returns the index of the first point of the segment.
+	 */
+	public int getFrom(final int row) {
+		return this.from.get(row);
+	}
+
+	/**
+	 * Returns the index of the last point of the segment.
+	 */
+	public int getTo(final int row) {
+		return this.to.get(row);
+	}
+
+	/**
+	 * Returns D of the MSD fit.
+	 */
+	public double getD(final int row) {
+		return this.D.get(row);
+	}
+
+	/**
+	 * Returns gamma (slope) of the MSD fit.
+	 */
+	public double getGamma(final int row) {
+		return this.gamma.get(row);
+	}
+
+	public double getS_MSS(final int row) {
+		return this.S_MSS.get(row);
+	}
+
+	/**
+	 * Returns the correlation of the MSS fit.
+	 */
+	public double getCorrelation(final int row) {
+		return this.correlation.get(row);
+	}
+
+	public double getDuration(final int row) {
+		return this.duration.get(row);
+	}
+
+	/**
+	 * Returns the mean of the log(mu) array of the MSD fit, index 0 included.
+	 */
+	public double getMeanLogMSD(final int row) {
+		return this.meanLogMSD.get(row);
+	}
+}
@@ -1,19 +1,12 @@
 package ch.supsi.omega.exploration.processing;
 
-import java.io.File;
-import java.io.FilenameFilter;
-import java.io.IOException;
 import java.util.Arrays;
-import java.util.logging.Level;
 
 import javax.swing.table.DefaultTableModel;
 
-import ch.supsi.omega.common.OmegaConstants;
 import ch.supsi.omega.exploration.common.JFrameStatsMSD;
 import ch.supsi.omega.gui.MainFrame;
 
-import com.galliva.gallibrary.GLogManager;
-
 public class StudentTTest extends Thread {
 	private MainFrame mainFrame = null;
 	private String datasetOnePath = null;
@@ -43,74 +36,45 @@ public class StudentTTest extends Thread {
 	}
 
 	private void processDatasetsFolders() {
-		this.processDatasetFolder(this.datasetOnePath, 0);
-		this.processDatasetFolder(this.datasetTwoPath, 1);
+		final StatsEngine engine = new StatsEngine();
+		final StatsResults results = engine.process(
+		        Arrays.asList(this.datasetOnePath, this.datasetTwoPath), null);
+
+		for (int datasetIndex = 0; datasetIndex < 2; datasetIndex++) {
+			this.processDatasetFolder(results, datasetIndex);
+		}
 	}
 
-	private void processDatasetFolder(final String datasetFolder,
+	private void processDatasetFolder(final StatsResults results,
 	        final int datasetIndex) {
-		final File dir = new File(datasetFolder);
-
-		// find the trajectories files
-		final FilenameFilter filter = new FilenameFilter() {
-			@Override
-			public boolean accept(final File dir, final String name) {
-				return name.endsWith(OmegaConstants.TRACKS_FILES_EXTENSION);
-			}
-		};
-
-		final String[] children = dir.list(filter);
-
-		// don't consider any segmentation
-		final int[][] segmentation = new int[children.length][];
-
-		for (int i = 0; i < children.length; i++) {
-			try {
-				double[][] trajectories = null;
-
-				trajectories = FileIn.readTrajectory(datasetFolder
-				        + System.getProperty("file.separator") + children[i]);
-
-				final int[] zeros = new int[trajectories[0].length - 1];
-				Arrays.fill(zeros, 0);
+		int trajectories = 0;
 
-				segmentation[i] = zeros;
-			} catch (final IOException e) {
+		for (int row = 0; row < results.size(); row++) {
+			if ((results.getFolder(row) == datasetIndex)
+			        && (results.getSegment(row) == StatsResults.WHOLE_TRAJECTORY)) {
+				trajectories++;
 			}
 		}
 
-		this.DS_MSD[datasetIndex] = new double[children.length];
-		this.DS_D[datasetIndex] = new double[children.length];
-		this.DS_SMSS[datasetIndex] = new double[children.length];
+		this.DS_MSD[datasetIndex] = new double[trajectories];
+		this.DS_D[datasetIndex] = new double[trajectories];
+		this.DS_SMSS[datasetIndex] = new double[trajectories];
 
-		// read the trajectories and process them
-		for (int i = 0; i < children.length; i++) {
-			double[][] trajectories = null;
+		// the segmentation is not considered: one row per trajectory
+		int i = 0;
 
-			try {
-				trajectories = FileIn.readTrajectory(datasetFolder
-				        + System.getProperty("file.separator") + children[i]);
-			} catch (final IOException e) {
-				GLogManager.log(e.toString(), Level.SEVERE);
+		for (int row = 0; row < results.size(); row++) {
+			if ((results.getFolder(row) != datasetIndex)
+			        || (results.getSegment(row) != StatsResults.WHOLE_TRAJECTORY)) {
+				continue;
 			}
 
-			// call the Stats library
-			final Stats stats = new Stats(trajectories[0], trajectories[1],
-			        0.02, segmentation[i]);
-			final double[][] log_delta_t__log_mu__gamma__D = stats
-			        .log_delta_t__log_mu__gamma__D(2);
-			final double[][] nu__gamma__S_MSS = stats.nu__gamma__S_MSS(0);
-
-			// for each trajectory, we have an array of MSD values from where we
-			// calculate the mean
-			final double MSD = Stats.mean(log_delta_t__log_mu__gamma__D[1]);
-			// D and S_MSS are already single values
-			final double D = log_delta_t__log_mu__gamma__D[2][3];
-			final double S_MSS = nu__gamma__S_MSS[2][0];
-
-			this.DS_MSD[datasetIndex][i] = MSD;
-			this.DS_D[datasetIndex][i] = Math.exp(D);
-			this.DS_SMSS[datasetIndex][i] = S_MSS;
+			// for each trajectory, the mean of the MSD values; D and S_MSS
+			// are already single values
+			this.DS_MSD[datasetIndex][i] = results.getMeanLogMSD(row);
+			this.DS_D[datasetIndex][i] = Math.exp(results.getD(row));
+			this.DS_SMSS[datasetIndex][i] = results.getS_MSS(row);
+			i++;
 		}
 	}
 
@@ -0,0 +1,169 @@
+package ch.supsi.omega.exploration.processing;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.segmentation.trajectory.TrajectoriesLoader;
+import ch.supsi.omega.segmentation.trajectory.TrajectorySet;
+
+/**
+ * Keeps the trajectories read by the exploration frames, so that the charts of
+ * the same datasets don't parse the files again. The coordinates are cached
+ * by file and the TrajectorySets by folder; an entry is read again when its
+ * file (or one of the trajectory files of its folder) has been modified.
+ * <p>
+ * The cache holds at most OmegaConstants.TRAJECTORY_CACHE_SIZE MB, the least
+ * recently used entries are dropped first. The cached arrays are shared: they
+ * must not be modified.
+ * @author galliva
+ */
+public final class TrajectoryCache
+{
+	private static final Map<String, Entry>	entries	= new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private static long								maxSize	= OmegaConstants.TRAJECTORY_CACHE_SIZE * 1024L * 1024L;
+	private static long								size		= 0;
+
+	private static final class Entry
+	{
+		private final long	stamp;
+		private final long	size;
+		private final Object	value;
+
+		private Entry(long stamp, long size, Object value)
+		{
+			this.stamp = stamp;
+			this.size = size;
+			this.value = value;
+		}
+	}
+
+	private TrajectoryCache()
+	{
+	}
+
+	/**
+	 * Same as FileIn.readTrajectory, through the cache.
+	 * @return the x and the y coordinates, not to be modified
+	 */
+	public static double[][] readTrajectory(String trajectoryPath) throws IOException
+	{
+		File file = new File(trajectoryPath).getAbsoluteFile();
+		String key = file.getPath();
+		long stamp = stamp(file);
+
+		synchronized (TrajectoryCache.class)
+		{
+			Entry entry = entries.get(key);
+
+			if (entry != null && entry.stamp == stamp)
+				return (double[][]) entry.value;
+		}
+
+		double[][] coordinates = FileIn.readTrajectory(trajectoryPath);
+		put(key, stamp, 16L * coordinates[0].length, coordinates);
+
+		return coordinates;
+	}
+
+	/**
+	 * Same as TrajectoriesLoader.loadTrajectorySet for the trajectory files of
+	 * the folder, through the cache.
+	 */
+	public static TrajectorySet loadTrajectorySet(String folder)
+	{
+		File directory = new File(folder).getAbsoluteFile();
+		String key = directory.getPath() + File.separator;
+		long stamp = stampDirectory(directory);
+
+		synchronized (TrajectoryCache.class)
+		{
+			Entry entry = entries.get(key);
+
+			if (entry != null && entry.stamp == stamp)
+				return (TrajectorySet) entry.value;
+		}
+
+		TrajectoriesLoader trajectoriesLoader = new TrajectoriesLoader(folder + System.getProperty("file.separator"), OmegaConstants.TRACKS_FILES_EXTENSION);
+		TrajectorySet trajectories = trajectoriesLoader.loadTrajectorySet();
+		put(key, stamp, 40L * trajectories.getPointsNumber() + 8L * trajectories.size(), trajectories);
+
+		return trajectories;
+	}
+
+	/**
+	 * @param maxSize the maximum size of the cache, in MB (0: no cache)
+	 */
+	public static synchronized void setMaxSize(int maxSize)
+	{
+		TrajectoryCache.maxSize = maxSize * 1024L * 1024L;
+		evict();
+	}
+
+	public static synchronized void clear()
+	{
+		entries.clear();
+		size = 0;
+	}
+
+	private static synchronized void put(String key, long stamp, long entrySize, Object value)
+	{
+		Entry old = entries.remove(key);
+
+		if (old != null)
+			size -= old.size;
+
+		if (entrySize > maxSize)
+			return;
+
+		entries.put(key, new Entry(stamp, entrySize, value));
+		size += entrySize;
+		evict();
+	}
+
+	private static void evict()
+	{
+		Iterator<Entry> iterator = entries.values().iterator();
+
+		while (size > maxSize && iterator.hasNext())
+		{
+			size -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+	private static long stamp(File file)
+	{
+		return file.lastModified() * 31 + file.length();
+	}
+
+	/**
+	 * Combines the names, the modification times and the lengths of the
+	 * trajectory files and of the TrajectoryStore of the directory.
+	 */
+	private static long stampDirectory(File directory)
+	{
+		File[] files = directory.listFiles(new FilenameFilter()
+		{
+			public boolean accept(File dir, String name)
+			{
+				return name.endsWith(OmegaConstants.TRACKS_FILES_EXTENSION) || name.equals(OmegaConstants.TRAJECTORIES_STORE_FILE);
+			}
+		});
+
+		if (files == null)
+			return 0;
+
+		long stamp = files.length;
+
+		// the order of the files does not matter
+		for (File file : files)
+			stamp += file.getName().hashCode() * 1000003L ^ stamp(file);
+
+		return stamp;
+	}
+}
@@ -1,12 +1,9 @@
 package ch.supsi.omega.exploration.processing;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
-import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -14,6 +11,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Level;
 
+import ch.supsi.omega.common.GrowableIntArray;
+import ch.supsi.omega.common.NumberTokenizer;
 import ch.supsi.omega.common.OmegaConstants;
 import ch.supsi.omega.exploration.charts.DSFrequenciesChart;
 
@@ -136,39 +135,41 @@ public class Type2Processor
 	 */
 	private void readLabelsFile(FileInputStream fstream)
 	{
+		NumberTokenizer tokenizer = new NumberTokenizer(fstream);
+		GrowableIntArray labels = new GrowableIntArray(1024);
+
 		try
 		{
-			DataInputStream in = new DataInputStream(fstream);
-			BufferedReader br = new BufferedReader(new InputStreamReader(in));
-
 			// skip first line
-			String strLine = br.readLine();
+			int count = tokenizer.readLine(labels);
 
-			GLogManager.log(String.format("processing %s lines...", strLine), Level.INFO);
+			GLogManager.log(String.format("processing %s lines...", count > 0 ? labels.get(0) : null), Level.INFO);
 
 			// read all the lines of the file
-			while ((strLine = br.readLine()) != null)
+			while (true)
 			{
-				String line[] = strLine.split(" ");
+				try
+				{
+					if (tokenizer.readLine(labels) < 0)
+						break;
+				}
+				catch (NumberFormatException e)
+				{
+					continue;
+				}
 
 				// skip first column
-				for (int i = 1; i < line.length; i++)
+				for (int i = 1; i < labels.size(); i++)
 				{
 					// calculate motions frequency
-					if (line[i].equals("0"))
-						MotionsCounter[0]++;
-					if (line[i].equals("1"))
-						MotionsCounter[1]++;
-					else if (line[i].equals("2"))
-						MotionsCounter[2]++;
-					else if (line[i].equals("3"))
-						MotionsCounter[3]++;
-					else if (line[i].equals("4"))
-						MotionsCounter[4]++;
+					int label = labels.get(i);
+
+					if (label >= 0 && label < MotionsCounter.length)
+						MotionsCounter[label]++;
 				}
 			}
 
-			in.close();
+			tokenizer.close();
 		}
 		catch (Exception e)
 		{
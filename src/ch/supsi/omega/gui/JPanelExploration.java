@@ -25,8 +25,8 @@ import ch.supsi.omega.exploration.chartframes.JFrameVelocities;
 import ch.supsi.omega.exploration.common.JDialogResultsSelector;
 import ch.supsi.omega.exploration.common.JPanelSeparator;
 import ch.supsi.omega.exploration.common.imagedata.OmeroDataHelper;
-import ch.supsi.omega.exploration.processing.FileIn;
 import ch.supsi.omega.exploration.processing.Stats;
+import ch.supsi.omega.exploration.processing.TrajectoryCache;
 import ch.supsi.omega.gui.common.InfoLabel;
 import ch.supsi.omega.tracking.stats.SPTStatsFileReader;
 
@@ -471,7 +471,7 @@ public class JPanelExploration extends JPanel {
 		        .getOriginalSizes(trajectoriesDir);
 
 		for (int trajIx = 0; trajIx < tracksNumber; ++trajIx) {
-			final double[][] trajectory = FileIn.readTrajectory(String.format(
+			final double[][] trajectory = TrajectoryCache.readTrajectory(String.format(
 			        "%s\\%s", trajectoriesDir, children[trajIx]));
 
 			this.stats[trajIx] = new Stats(trajectory[0], trajectory[1],
@@ -2,6 +2,7 @@ package ch.supsi.omega.gui;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
 import java.util.logging.Level;
 
 import javax.swing.JLabel;
@@ -10,6 +11,7 @@ import javax.swing.JOptionPane;
 import ch.supsi.omega.common.OmegaConstants;
 import ch.supsi.omega.omero.Gateway;
 import ch.supsi.omega.omero.LoginCredentials;
+import ch.supsi.omega.omero.PlaneCache;
 import ch.supsi.omega.review.ReviewFrame;
 
 import com.galliva.gallibrary.GConfigurationManager;
@@ -251,6 +253,7 @@ public class JPanelReview extends javax.swing.JPanel {
 		lc.setPort(port);
 
 		Gateway gateway = new Gateway();
+		gateway.setPlaneCache(createPlaneCache());
 
 		boolean connected = false;
 
@@ -277,4 +280,28 @@ public class JPanelReview extends javax.swing.JPanel {
 			        + mainFrame.getWidth(), mainFrame.getLocation().y);
 		}
 	}
+
+	/**
+	 * Creates the local plane cache as set in the INI file (planeCacheDir,
+	 * planeCacheSize in MB), <code>null</code> if disabled.
+	 */
+	private static PlaneCache createPlaneCache() {
+		int cacheSize = OmegaConstants.PLANE_CACHE_SIZE;
+		try {
+			cacheSize = Integer.parseInt(configurationManager.readConfig(
+			        "planeCacheSize").trim());
+		} catch (Exception e) {
+			// keep the default size
+		}
+
+		if (cacheSize <= 0)
+			return null;
+
+		String cacheDir = configurationManager.readConfig("planeCacheDir");
+		File directory = PlaneCache.getDefaultDirectory();
+		if (cacheDir != null && cacheDir.trim().length() > 0)
+			directory = new File(cacheDir.trim());
+
+		return new PlaneCache(directory, cacheSize * 1024L * 1024L);
+	}
 }
@@ -2,8 +2,6 @@ package ch.supsi.omega.gui;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 
@@ -20,22 +18,22 @@ import ch.supsi.omega.common.FileHelper;
 import ch.supsi.omega.common.OmegaConstants;
 import ch.supsi.omega.common.StringHelper;
 import ch.supsi.omega.common.science.Greeks;
-import ch.supsi.omega.dll.SPTCaller;
 import ch.supsi.omega.exploration.common.JPanelSeparator;
 import ch.supsi.omega.gui.common.InfoLabel;
 import ch.supsi.omega.gui.common.SPTParameterPanels;
-import ch.supsi.omega.omero.Gateway;
 import ch.supsi.omega.segmentation.SegmentationFrame;
 import ch.supsi.omega.segmentation.trajectory.Trajectory;
+import ch.supsi.omega.tracking.SPTImageTracker;
+import ch.supsi.omega.tracking.SPTParameterSweep;
+import ch.supsi.omega.tracking.SPTRunListener;
+import ch.supsi.omega.tracking.SPTScheduler;
 import ch.supsi.omega.tracking.parameters.ImageDataHandler;
 import ch.supsi.omega.tracking.parameters.OmeroParametersHandler;
 import ch.supsi.omega.tracking.parameters.SPTExecutionInfoHandler;
 import ch.supsi.omega.tracking.parameters.SPTInformationFileLoader;
-import ch.supsi.omega.tracking.parameters.SPTInformationFileWriter;
 import ch.supsi.omega.tracking.parameters.SPTInformationLoader;
-import ch.supsi.omega.tracking.parameters.SPTInformationWriter;
+import ch.supsi.omega.tracking.parameters.SPTRunParameters;
 import ch.supsi.omega.tracking.stats.JFrameStats;
-import ch.supsi.omega.tracking.stats.SPTStatsFileWriter;
 
 import com.galliva.gallibrary.GConfigurationManager;
 import com.galliva.gallibrary.GLogManager;
@@ -319,7 +317,9 @@ public class JPanelSPT extends JPanel {
 		spt1.add(spt2);
 		spt1.add(new InfoLabel(
 		        this,
-		        "For a full ParticleTracker tutorial, please refer to:\nhttp://courses.washington.edu/me333afe/ImageJ_tutorial.html"));
+		        "For a full ParticleTracker tutorial, please refer to:\nhttp://courses.washington.edu/me333afe/ImageJ_tutorial.html\n\n"
+		                + "Several values separated by commas (e.g. 2,3,4) in the detection and linking\n"
+		                + "parameters track each image once for every combination (parameter sweep)."));
 		this.add(spt1);
 
 		// radius
@@ -755,199 +755,81 @@ public class JPanelSPT extends JPanel {
 			JPanelSPT.this.switchControlsStatus();
 			JPanelSPT.this.jButtonDisplayTracks.setEnabled(false);
 
+			String mv = "65535";
+
+			if (JPanelSPT.this.jTextFieldMaxValue.getText().length() > 0) {
+				mv = JPanelSPT.this.jTextFieldMaxValue.getText();
+			}
+
+			final List<SPTRunParameters> parameterSets;
+
+			try {
+				// several values in a field: parameter sweep
+				parameterSets = SPTRunParameters.grid(
+				        String.valueOf(JPanelSPT.this.jComboBoxRadius.getText()),
+				        String.valueOf(JPanelSPT.this.jComboBoxCutOff.getText()),
+				        String.valueOf(JPanelSPT.this.jComboBoxPercentile
+				                .getText()),
+				        String.valueOf(JPanelSPT.this.jComboBoxDisplacement
+				                .getText()),
+				        String.valueOf(JPanelSPT.this.jComboBoxLinkRange
+				                .getText()), mv,
+				        Integer.parseInt(JPanelSPT.this.jComboBoxPointNumber
+				                .getText().toString()));
+			} catch (final Exception e) {
+				JOptionPane.showMessageDialog(null,
+				        OmegaConstants.ERROR_INIT_SPT_RUN,
+				        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
+				GLogManager.log(String.format("%s: %s",
+				        OmegaConstants.ERROR_INIT_SPT_RUN, e.toString()),
+				        Level.SEVERE);
+				JPanelSPT.this.switchControlsStatus();
+				return;
+			}
+
 			// ==============================
 			// for each image to be processed
 			// ==============================
-			final ArrayList<ImageDataHandler> images = JPanelSPT.this.sptParametersHandler
-			        .getImages();
-			final Iterator<ImageDataHandler> it = images.iterator();
-
-			while (it.hasNext()) {
-				final ImageDataHandler imageDataHandler = it.next();
-
-				JPanelSPT.this.width.getF1().setText(
-				        String.valueOf(imageDataHandler.getX()));
-				JPanelSPT.this.height.getF1().setText(
-				        String.valueOf(imageDataHandler.getY()));
-				JPanelSPT.this.time.getF1().setText(
-				        String.valueOf(imageDataHandler.getT()));
-
-				// check and add the pixels sizes
-				final double widthSize = imageDataHandler.getSizeX();
-				final double heightSize = imageDataHandler.getSizeY();
-				final double totalTime = imageDataHandler.getSizeT();
-
-				final double totalWidth = imageDataHandler.getX() * widthSize;
-				final double totalHeight = imageDataHandler.getY() * heightSize;
-				final double avgFrameSize = totalTime / imageDataHandler.getT();
-
-				JPanelSPT.this.width.getF2().setText(
-				        totalWidth == 0.0 ? "-" : StringHelper.DoubleToString(
-				                totalWidth, 3));
-				JPanelSPT.this.height.getF2().setText(
-				        totalHeight == 0.0 ? "-" : StringHelper.DoubleToString(
-				                totalHeight, 3));
-				JPanelSPT.this.time.getF2().setText(
-				        totalTime == 0.0 ? "-" : StringHelper.DoubleToString(
-				                totalTime, 3));
-
-				JPanelSPT.this.width.getF3().setText(
-				        widthSize == 0.0 ? "-" : StringHelper.DoubleToString(
-				                widthSize, 3));
-				JPanelSPT.this.height.getF3().setText(
-				        heightSize == 0.0 ? "-" : StringHelper.DoubleToString(
-				                heightSize, 3));
-				JPanelSPT.this.time.getF3().setText(
-				        avgFrameSize == 0.0 ? "-" : StringHelper
-				                .DoubleToString(avgFrameSize, 3));
+			final SPTScheduler scheduler = new SPTScheduler();
+			final SPTRunListener listener = new PanelRunListener();
 
+			for (final ImageDataHandler imageDataHandler : JPanelSPT.this.sptParametersHandler
+			        .getImages()) {
 				final String outputDir = this.trajectoriesOut
 				        + System.getProperty("file.separator")
 				        + StringHelper.removeFileExtension(imageDataHandler
 				                .getImageName());
 
-				// empty the output directory if requested
-				if (JPanelSPT.this.jCheckBoxEmpty.isSelected()) {
-					FileHelper.emptyDirectory(outputDir);
-				}
-
-				// create the output dir for each image (if not exists)
-				FileHelper.createDirectory(outputDir);
-
-				try {
-					// init the Runner
-					SPTCaller.callInitRunner();
-					// set the output directory
-					SPTCaller.callSetOutputPath(outputDir);
-					// set the Parameters
-					// SPTCaller.callSetParameter("p0",
-					// String.valueOf(jComboBoxRadius.getSelectedItem()));
-					// SPTCaller.callSetParameter("p1",
-					// String.valueOf(jComboBoxCutOff.getSelectedItem()));
-					// SPTCaller.callSetParameter("p2",
-					// String.valueOf(jComboBoxPercentile.getSelectedItem()));
-					// SPTCaller.callSetParameter("p3",
-					// String.valueOf(jComboBoxDisplacement.getSelectedItem()));
-					// SPTCaller.callSetParameter("p4",
-					// String.valueOf(jComboBoxLinkRange.getSelectedItem()));
-					SPTCaller.callSetParameter("p0", String
-					        .valueOf(JPanelSPT.this.jComboBoxRadius.getText()));
-					SPTCaller.callSetParameter("p1", String
-					        .valueOf(JPanelSPT.this.jComboBoxCutOff.getText()));
-					SPTCaller.callSetParameter("p2", String
-					        .valueOf(JPanelSPT.this.jComboBoxPercentile
-					                .getText()));
-					SPTCaller.callSetParameter("p3", String
-					        .valueOf(JPanelSPT.this.jComboBoxDisplacement
-					                .getText()));
-					SPTCaller.callSetParameter("p4", String
-					        .valueOf(JPanelSPT.this.jComboBoxLinkRange
-					                .getText()));
-
-					SPTCaller.callSetParameter("p5",
-					        String.valueOf(imageDataHandler.getT()));
-					SPTCaller.callSetParameter("p6",
-					        String.valueOf(imageDataHandler.getX()));
-					SPTCaller.callSetParameter("p7",
-					        String.valueOf(imageDataHandler.getY()));
-					SPTCaller.callSetParameter("p8", "0.");
-
-					String mv = "65535";
-
-					if (JPanelSPT.this.jTextFieldMaxValue.getText().length() > 0) {
-						mv = JPanelSPT.this.jTextFieldMaxValue.getText();
-					}
-
-					SPTCaller.callSetParameter("p9", String.format("%s.", mv)); // 65535
-					// SPTCaller.callSetParameter("p9", "255.");
-
-					// set the minimun number of points
-					SPTCaller.callSetMinPoints(Integer
-					        .parseInt(JPanelSPT.this.jComboBoxPointNumber
-					                .getText().toString()));
-
-					// start the Runner
-					SPTCaller.callStartRunner();
-				} catch (final Exception e) {
-					JOptionPane.showMessageDialog(null,
-					        OmegaConstants.ERROR_INIT_SPT_RUN,
-					        OmegaConstants.OMEGA_TITLE,
-					        JOptionPane.ERROR_MESSAGE);
-					GLogManager.log(String.format("%s: %s",
-					        OmegaConstants.ERROR_INIT_SPT_RUN, e.toString()),
-					        Level.SEVERE);
-					return;
-				}
-
-				JPanelSPT.this.jLabelStatus.setText(String.format(
-				        OmegaConstants.INFO_SPT_RUNNING,
-				        imageDataHandler.getImageName()));
-
-				final ArrayList<Thread> threads = new ArrayList<Thread>();
-
-				// load the images into the SPT DLL
-				final LoaderThread loaderThread = new LoaderThread(
-				        imageDataHandler);
-				loaderThread.start();
-				threads.add(loaderThread);
-
-				// write the results to file
-				final WriterThread writerThread = new WriterThread();
-				writerThread.start();
-				threads.add(writerThread);
-
-				// wait until the two threads are finished before process the
-				// next
-				// image
-				for (final Thread t : threads) {
-					try {
-						t.join();
-					} catch (final InterruptedException e) {
-					}
+				final int fetchWorkers = JPanelSPT.readIntConfig(
+				        "sptFetchWorkers", OmegaConstants.SPT_FETCH_WORKERS);
+				final int fetchBufferDepth = JPanelSPT.readIntConfig(
+				        "sptFetchBufferDepth",
+				        OmegaConstants.SPT_FETCH_BUFFER_DEPTH);
+
+				if (parameterSets.size() > 1) {
+					final SPTParameterSweep sweep = new SPTParameterSweep(
+					        JPanelSPT.this.sptParametersHandler,
+					        imageDataHandler, parameterSets, outputDir,
+					        JPanelSPT.this.jCheckBoxEmpty.isSelected(), listener);
+					sweep.setFetchWorkers(fetchWorkers);
+					sweep.setFetchBufferDepth(fetchBufferDepth);
+					scheduler.addImage(sweep);
+				} else {
+					final SPTImageTracker tracker = new SPTImageTracker(
+					        JPanelSPT.this.sptParametersHandler,
+					        imageDataHandler, parameterSets.get(0), outputDir,
+					        JPanelSPT.this.jCheckBoxEmpty.isSelected(), listener);
+					tracker.setFetchWorkers(fetchWorkers);
+					tracker.setFetchBufferDepth(fetchBufferDepth);
+					scheduler.addImage(tracker);
 				}
+			}
 
-				// when done, write SPT information on file (for each image)
-				final SPTExecutionInfoHandler executionInfo = new SPTExecutionInfoHandler(
-				        JPanelSPT.this.sptParametersHandler,
-				        imageDataHandler,
-				        String.valueOf(JPanelSPT.this.jComboBoxRadius.getText()),
-				        String.valueOf(JPanelSPT.this.jComboBoxCutOff.getText()),
-				        String.valueOf(JPanelSPT.this.jComboBoxPercentile
-				                .getText()), String
-				                .valueOf(JPanelSPT.this.jComboBoxDisplacement
-				                        .getText()), String
-				                .valueOf(JPanelSPT.this.jComboBoxLinkRange
-				                        .getText()));
-
-				final String infoFile = outputDir
-				        + System.getProperty("file.separator")
-				        + OmegaConstants.SPT_INFORMATION_FILE;
-				final SPTInformationWriter trackingInfoWriter = new SPTInformationFileWriter(
-				        infoFile);
-				trackingInfoWriter.initWriter();
-				final String temp1 = trackingInfoWriter
-				        .writeInformation(executionInfo);
-				trackingInfoWriter.closeWriter();
-
-				// write stats
-				final SPTStatsFileWriter sptStatsFileWriter = new SPTStatsFileWriter(
-				        JPanelSPT.this.mainFrame, outputDir,
-				        imageDataHandler.getT());
-				sptStatsFileWriter.initWriter();
-				final String temp2 = sptStatsFileWriter
-				        .calculateAndWriteStats();
-				sptStatsFileWriter.closeWriter();
-
-				// display the stats JFrame
-				final String statsString = temp1 + "\n" + temp2;
-
-				final JFrameStats jfs = new JFrameStats();
-				jfs.getjTextArea1().setText(statsString);
-				jfs.setLocation(
-				        JPanelSPT.this.mainFrame.getX() + 300,
-				        (JPanelSPT.this.mainFrame.getY() + (JPanelSPT.this.mainFrame
-				                .getHeight() / 2)) - 150);
-				jfs.setVisible(true);
+			// the images run concurrently, each one on its own runner
+			try {
+				scheduler.runAll();
+			} catch (final InterruptedException e) {
+				GLogManager.log("SPT run interrupted", Level.WARNING);
 			}
 
 			JPanelSPT.this.jLabelStatus.setText("done");
@@ -957,134 +839,95 @@ public class JPanelSPT extends JPanel {
 	}
 
 	/**
-	 * Internal class, it creates a thread used to load the images in the SPT
-	 * DLL.
+	 * Internal class, it reports the progress of the images being tracked.
 	 * 
 	 * @author galliva
 	 */
-	class LoaderThread extends Thread {
-		private ImageDataHandler sptImageHandler = null;
-
-		public LoaderThread(final ImageDataHandler sptImageHandler) {
-			this.sptImageHandler = sptImageHandler;
+	class PanelRunListener implements SPTRunListener {
+		@Override
+		public void imageStarted(final ImageDataHandler imageData) {
+			JPanelSPT.this.showImageSizes(imageData);
+			JPanelSPT.this.jLabelStatus.setText(String.format(
+			        OmegaConstants.INFO_SPT_RUNNING, imageData.getImageName()));
 		}
 
 		@Override
-		public void run() {
-			// same for all the images
-			final Gateway gateway = JPanelSPT.this.sptParametersHandler
-			        .getGateway();
-			// ID of the pixels
-			final long pixelsID = this.sptImageHandler.getPixelsID();
-			// number of frames for this image
-			final int framesNumber = this.sptImageHandler.getT();
-			// number of bytes of this image
-			final int byteWidth = gateway.getByteWidht(pixelsID);
-
-			boolean error = false;
-
-			GLogManager.log(
-			        String.format("processing %d byte per pixel", byteWidth),
-			        Level.INFO);
-
-			for (int i = 0; i < framesNumber; i++) {
-				JPanelSPT.this.jLabelStatusDetails.setText(String.format(
-				        "loading frame %d / %d", i + 1, framesNumber));
+		public void frameLoaded(final ImageDataHandler imageData,
+		        final int frame, final int framesNumber) {
+			JPanelSPT.this.jLabelStatusDetails.setText(String.format(
+			        "%s: loading frame %d / %d", imageData.getImageName(),
+			        frame + 1, framesNumber));
+		}
 
-				try {
-					final byte[] pixels = gateway.getPlane(pixelsID,
-					        JPanelSPT.this.sptParametersHandler.getZ(), i,
-					        JPanelSPT.this.sptParametersHandler.getC());
-
-					int[] data = null;
-
-					System.out.println("Byte width: " + byteWidth);
-					// Manage the right amount of byte per pixels
-					switch (byteWidth) {
-					case 1:
-						// 8 bit image
-						data = new int[pixels.length];
-						for (int j = 0; j < data.length; j++) {
-							final int b0 = pixels[j] & 0xff;
-							data[j] = b0 << 0;
-						}
-						break;
-					case 2:
-						// 16 bit image
-						data = new int[pixels.length / 2];
-						for (int j = 0; j < data.length; j++) {
-							final int b0 = pixels[2 * j] & 0xff;
-							final int b1 = pixels[(2 * j) + 1] & 0xff;
-							data[j] = (b0 << 8) | (b1 << 0);
-						}
-						break;
-					case 3:
-						// 24 bit image
-						data = new int[pixels.length / 3];
-						for (int j = 0; j < data.length; j++) {
-							final int b0 = pixels[3 * j] & 0xff;
-							final int b1 = pixels[(3 * j) + 1] & 0xff;
-							final int b2 = pixels[(3 * j) + 2] & 0xff;
-							data[j] = (b0 << 16) | (b1 << 8) | (b2 << 0);
-						}
-						break;
-					case 4:
-						// 32 bit image
-						data = new int[pixels.length / 4];
-						for (int j = 0; j < data.length; j++) {
-							final int b0 = pixels[4 * j] & 0xff;
-							final int b1 = pixels[(4 * j) + 1] & 0xff;
-							final int b2 = pixels[(4 * j) + 2] & 0xff;
-							final int b3 = pixels[(4 * j) + 3] & 0xff;
-							data[j] = (b0 << 24) | (b1 << 16) | (b2 << 8)
-							        | (b3 << 0);
-						}
-						break;
-					}
-					SPTCaller.callLoadImage(data);
-				} catch (final Exception e) {
-					error = true;
-					GLogManager.log(String.format("%s: %s",
-					        OmegaConstants.ERROR_DURING_SPT_RUN, e.toString()),
-					        Level.SEVERE);
-				}
-			}
+		@Override
+		public void imageError(final ImageDataHandler imageData,
+		        final String message) {
+			JOptionPane.showMessageDialog(null, message,
+			        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
+		}
 
-			if (error) {
-				JOptionPane.showMessageDialog(null,
-				        OmegaConstants.ERROR_DURING_SPT_RUN,
-				        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
-			}
+		@Override
+		public void imageDone(final ImageDataHandler imageData,
+		        final String summary) {
+			// display the stats JFrame
+			final JFrameStats jfs = new JFrameStats();
+			jfs.getjTextArea1().setText(summary);
+			jfs.setLocation(
+			        JPanelSPT.this.mainFrame.getX() + 300,
+			        (JPanelSPT.this.mainFrame.getY() + (JPanelSPT.this.mainFrame
+			                .getHeight() / 2)) - 150);
+			jfs.setVisible(true);
 		}
 	}
 
 	/**
-	 * Internal class, it creates a thread used to check the results of the SPT
-	 * DLL.
-	 * 
-	 * @author galliva
+	 * Shows the size of the image, in pixels and in physical units.
 	 */
-	class WriterThread extends Thread {
-		@Override
-		public void run() {
-			try {
-				SPTCaller.callWriteResults();
-			} catch (final Exception e) {
-				JOptionPane.showMessageDialog(null,
-				        OmegaConstants.ERROR_SPT_SAVE_RESULTS,
-				        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
-				GLogManager.log(
-				        String.format("%s: %s", "Error writing the results",
-				                e.toString()), Level.SEVERE);
-			}
+	private void showImageSizes(final ImageDataHandler imageDataHandler) {
+		this.width.getF1().setText(String.valueOf(imageDataHandler.getX()));
+		this.height.getF1().setText(String.valueOf(imageDataHandler.getY()));
+		this.time.getF1().setText(String.valueOf(imageDataHandler.getT()));
+
+		// check and add the pixels sizes
+		final double widthSize = imageDataHandler.getSizeX();
+		final double heightSize = imageDataHandler.getSizeY();
+		final double totalTime = imageDataHandler.getSizeT();
+
+		final double totalWidth = imageDataHandler.getX() * widthSize;
+		final double totalHeight = imageDataHandler.getY() * heightSize;
+		final double avgFrameSize = totalTime / imageDataHandler.getT();
+
+		this.width.getF2().setText(
+		        totalWidth == 0.0 ? "-" : StringHelper.DoubleToString(
+		                totalWidth, 3));
+		this.height.getF2().setText(
+		        totalHeight == 0.0 ? "-" : StringHelper.DoubleToString(
+		                totalHeight, 3));
+		this.time.getF2().setText(
+		        totalTime == 0.0 ? "-" : StringHelper.DoubleToString(totalTime,
+		                3));
+
+		this.width.getF3().setText(
+		        widthSize == 0.0 ? "-" : StringHelper.DoubleToString(widthSize,
+		                3));
+		this.height.getF3().setText(
+		        heightSize == 0.0 ? "-" : StringHelper.DoubleToString(
+		                heightSize, 3));
+		this.time.getF3().setText(
+		        avgFrameSize == 0.0 ? "-" : StringHelper.DoubleToString(
+		                avgFrameSize, 3));
+	}
 
-			try {
-				SPTCaller.callDisposeRunner();
-			} catch (final Exception e) {
-				GLogManager.log(
-				        String.format("%s: %s", "Error disposing the runner",
-				                e.toString()), Level.SEVERE);
-			}
+	/**
+	 * Reads an integer setting from the INI file, falling back to the given
+	 * default when it is missing or not a number.
+	 */
+	private static int readIntConfig(final String key, final int defaultValue) {
+		try {
+			return Integer.parseInt(JPanelSPT.configurationManager.readConfig(
+			        key).trim());
+		} catch (final Exception e) {
+			return defaultValue;
 		}
 	}
 }
@@ -5,7 +5,6 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.List;
 import java.util.logging.Level;
 
 import javax.swing.JButton;
@@ -21,7 +20,7 @@ import ch.supsi.omega.exploration.chartframes.JFrameIntensities;
 import ch.supsi.omega.exploration.common.JFrameColorChooser;
 import ch.supsi.omega.exploration.common.JPanelSeparator;
 import ch.supsi.omega.review.ImageCanvas;
-import ch.supsi.omega.segmentation.trajectory.Trajectory;
+import ch.supsi.omega.segmentation.trajectory.TrajectorySet;
 import ch.supsi.omega.tracking.parameters.SPTExecutionInfoHandler;
 import ch.supsi.omega.tracking.parameters.SPTInformationFileLoader;
 
@@ -237,8 +236,8 @@ public class JPanelTV extends javax.swing.JPanel {
 		if (imageCanvas != null) {
 			FileHelper fileChooserHelper = new FileHelper();
 
-			List<Trajectory> trajectories = fileChooserHelper
-			        .loadTracks("trajectoriesOutDir");
+			TrajectorySet trajectories = fileChooserHelper
+			        .loadTrackSet("trajectoriesOutDir");
 
 			// get the used radius and set it into the drawing canvas
 			try {
@@ -266,7 +265,6 @@ public class JPanelTV extends javax.swing.JPanel {
 				else
 					imageCanvas.setTrajectoryColor(trajectoryColor);
 
-				imageCanvas.scaleTrajectories();
 				imageCanvas.repaint();
 
 				jButtonTracks.setEnabled(false);
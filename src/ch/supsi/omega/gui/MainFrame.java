@@ -4,22 +4,29 @@ import java.awt.BorderLayout;
 import java.awt.CardLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Level;
 
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import ch.supsi.omega.common.JFrameEditMotions;
 import ch.supsi.omega.common.OmegaConstants;
 import ch.supsi.omega.openbis.JDialogOpenBisPassword;
 import ch.supsi.omega.openbis.JDialogOpenBisSettings;
 import ch.supsi.omega.openbis.OpenBisHelper;
+import ch.supsi.omega.pixels.LocalPixelSource;
 import ch.supsi.omega.review.ImageCanvas;
+import ch.supsi.omega.segmentation.trajectory.TrajectoryStore;
 import ch.supsi.omega.tracking.parameters.OmeroParametersHandler;
 
 import com.galliva.gallibrary.GConfigurationManager;
@@ -92,6 +99,9 @@ public class MainFrame extends JFrame {
 		jMenuSettings = new javax.swing.JMenu();
 		jMenuHelp = new javax.swing.JMenu();
 		jMenuItemExit = new javax.swing.JMenuItem();
+		jMenuItemOpenLocal = new javax.swing.JMenuItem();
+		jMenuItemPackTrajectories = new javax.swing.JMenuItem();
+		jMenuItemUnpackTrajectories = new javax.swing.JMenuItem();
 		jMenuItemOpenBis = new javax.swing.JMenuItem();
 		jMenuItemOpenBisPassword = new javax.swing.JMenuItem();
 		jMenuItemOpenBisTest = new javax.swing.JMenuItem();
@@ -324,6 +334,35 @@ public class MainFrame extends JFrame {
 
 		// menu
 		jMenuFile.setText("File");
+		jMenuItemOpenLocal.setText("Open local stacks...");
+		jMenuItemOpenLocal.setAccelerator(javax.swing.KeyStroke.getKeyStroke(
+		        java.awt.event.KeyEvent.VK_O,
+		        java.awt.event.InputEvent.CTRL_MASK));
+		jMenuItemOpenLocal
+		        .addActionListener(new java.awt.event.ActionListener() {
+			        public void actionPerformed(java.awt.event.ActionEvent evt) {
+				        jMenuItemOpenLocalActionPerformed(evt);
+			        }
+		        });
+		jMenuFile.add(jMenuItemOpenLocal);
+		jMenuFile.addSeparator();
+		jMenuItemPackTrajectories.setText("Pack trajectories...");
+		jMenuItemPackTrajectories
+		        .addActionListener(new java.awt.event.ActionListener() {
+			        public void actionPerformed(java.awt.event.ActionEvent evt) {
+				        jMenuItemPackTrajectoriesActionPerformed(evt);
+			        }
+		        });
+		jMenuFile.add(jMenuItemPackTrajectories);
+		jMenuItemUnpackTrajectories.setText("Unpack trajectories...");
+		jMenuItemUnpackTrajectories
+		        .addActionListener(new java.awt.event.ActionListener() {
+			        public void actionPerformed(java.awt.event.ActionEvent evt) {
+				        jMenuItemUnpackTrajectoriesActionPerformed(evt);
+			        }
+		        });
+		jMenuFile.add(jMenuItemUnpackTrajectories);
+		jMenuFile.addSeparator();
 		jMenuItemExit.setText("Exit");
 		jMenuItemExit.setAccelerator(javax.swing.KeyStroke.getKeyStroke(
 		        java.awt.event.KeyEvent.VK_F4,
@@ -473,6 +512,116 @@ public class MainFrame extends JFrame {
 		cl.show(jPanelRight, "B");
 	}
 
+	/**
+	 * Opens multi-page TIFF files from the disk (one z-section and one channel
+	 * per frame) and sends them to the SPT panel, without OMERO.
+	 */
+	private void jMenuItemOpenLocalActionPerformed(
+	        java.awt.event.ActionEvent evt) {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setDialogTitle(OmegaConstants.INFO_SELECT_LOCAL_STACKS);
+		chooser.setMultiSelectionEnabled(true);
+		chooser.setFileFilter(new FileNameExtensionFilter("TIFF stacks",
+		        "tif", "tiff"));
+
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+			return;
+
+		LocalPixelSource localSource = new LocalPixelSource();
+		OmeroParametersHandler sptParametersHandler = new OmeroParametersHandler(
+		        localSource, 0, 0);
+
+		for (File file : chooser.getSelectedFiles()) {
+			try {
+				sptParametersHandler.addImage(localSource.openTiff(file, 1, 1));
+			} catch (IOException e) {
+				GLogManager.log(String.format("%s: %s",
+				        OmegaConstants.ERROR_LOADING_LOCAL_STACK, e.toString()),
+				        Level.WARNING);
+				JOptionPane.showMessageDialog(this,
+				        OmegaConstants.ERROR_LOADING_LOCAL_STACK
+				                + e.getMessage(), OmegaConstants.OMEGA_TITLE,
+				        JOptionPane.ERROR_MESSAGE);
+			}
+		}
+
+		if (sptParametersHandler.getImages().size() > 0)
+			displaySPTPanel(sptParametersHandler);
+	}
+
+	/**
+	 * Packs the trajectory files of a directory into its trajectory store.
+	 */
+	private void jMenuItemPackTrajectoriesActionPerformed(
+	        java.awt.event.ActionEvent evt) {
+		File directory = selectTrajectoriesDirectory();
+
+		if (directory == null)
+			return;
+
+		try {
+			int trajectories = TrajectoryStore.importDirectory(directory);
+			JOptionPane.showMessageDialog(this, String.format(
+			        OmegaConstants.INFO_TRAJECTORIES_PACKED, trajectories,
+			        OmegaConstants.TRAJECTORIES_STORE_FILE),
+			        OmegaConstants.OMEGA_TITLE,
+			        JOptionPane.INFORMATION_MESSAGE);
+		} catch (IOException e) {
+			showTrajectoriesStoreError(e);
+		}
+	}
+
+	/**
+	 * Writes the trajectory files of a directory back from its trajectory
+	 * store.
+	 */
+	private void jMenuItemUnpackTrajectoriesActionPerformed(
+	        java.awt.event.ActionEvent evt) {
+		File directory = selectTrajectoriesDirectory();
+
+		if (directory == null)
+			return;
+
+		TrajectoryStore store = TrajectoryStore.find(directory);
+
+		if (store == null) {
+			showTrajectoriesStoreError(new IOException(
+			        OmegaConstants.TRAJECTORIES_STORE_FILE + " not found"));
+			return;
+		}
+
+		try {
+			store.exportDirectory(directory);
+			JOptionPane.showMessageDialog(this, String.format(
+			        OmegaConstants.INFO_TRAJECTORIES_UNPACKED,
+			        store.getTrajectoriesNumber(), directory),
+			        OmegaConstants.OMEGA_TITLE,
+			        JOptionPane.INFORMATION_MESSAGE);
+		} catch (IOException e) {
+			showTrajectoriesStoreError(e);
+		}
+	}
+
+	private File selectTrajectoriesDirectory() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setDialogTitle(OmegaConstants.INFO_SELECT_TRAJECTORIES_DIRECTORY);
+		chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+			return null;
+
+		return chooser.getSelectedFile();
+	}
+
+	private void showTrajectoriesStoreError(IOException e) {
+		GLogManager.log(String.format("%s: %s",
+		        OmegaConstants.ERROR_TRAJECTORIES_STORE, e.toString()),
+		        Level.WARNING);
+		JOptionPane.showMessageDialog(this,
+		        OmegaConstants.ERROR_TRAJECTORIES_STORE + e.getMessage(),
+		        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
+	}
+
 	private void jMenuItemAboutActionPerformed(java.awt.event.ActionEvent evt) {
 		if (aboutbox == null) {
 			aboutbox = new AboutBox(this);
@@ -516,6 +665,9 @@ public class MainFrame extends JFrame {
 	private JMenu jMenuSettings;
 	private JMenu jMenuHelp;
 	private JMenuItem jMenuItemExit;
+	private JMenuItem jMenuItemOpenLocal;
+	private JMenuItem jMenuItemPackTrajectories;
+	private JMenuItem jMenuItemUnpackTrajectories;
 	private JMenuItem jMenuItemOpenBis;
 	private JMenuItem jMenuItemOpenBisPassword;
 	private JMenuItem jMenuItemOpenBisTest;
@@ -0,0 +1,231 @@
+package ch.supsi.omega.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.supsi.omega.common.OmegaConstants;
+
+/**
+ * The known points of a bilinear interpolation surface, indexed once. When
+ * they are a full grid of SNR and L values, the corners of a point are found
+ * by binary search on each axis; otherwise they are searched among all the
+ * points, as getClosest4Points does. The interpolant is immutable and can be
+ * shared by any number of threads.
+ */
+public final class BilinearInterpolant {
+	private final double[] SNRs;
+	private final int[] Ls;
+	private final double[] values;
+
+	// the known points, when they are not a full grid
+	private final ArrayList<SurfacePoint> points;
+
+	public BilinearInterpolant(final List<SurfacePoint> knownPoints) {
+		final int n = knownPoints.size();
+		final double[] SNR = new double[n];
+		final int[] L = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			SNR[i] = knownPoints.get(i).SNR;
+			L[i] = knownPoints.get(i).L;
+		}
+
+		final double[] SNRAxis = BilinearInterpolant.axis(SNR);
+		final int[] LAxis = BilinearInterpolant.axis(L);
+		double[] grid = null;
+
+		if ((SNRAxis.length > 1) && (LAxis.length > 1)
+		        && (n == (SNRAxis.length * LAxis.length))) {
+			grid = new double[n];
+			final boolean[] set = new boolean[n];
+
+			for (final SurfacePoint point : knownPoints) {
+				final int index = (Arrays.binarySearch(SNRAxis, point.SNR) * LAxis.length)
+				        + Arrays.binarySearch(LAxis, point.L);
+
+				if (set[index]) {
+					grid = null;
+					break;
+				}
+
+				set[index] = true;
+				grid[index] = point.value;
+			}
+		}
+
+		if (grid != null) {
+			this.SNRs = SNRAxis;
+			this.Ls = LAxis;
+			this.values = grid;
+			this.points = null;
+		} else {
+			this.SNRs = null;
+			this.Ls = null;
+			this.values = null;
+			this.points = new ArrayList<SurfacePoint>(knownPoints);
+		}
+	}
+
+	private static double[] axis(final double[] values) {
+		final double[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if ((n == 0) || (sorted[i] != sorted[n - 1])) {
+				sorted[n++] = sorted[i];
+			}
+		}
+
+		return Arrays.copyOf(sorted, n);
+	}
+
+	private static int[] axis(final int[] values) {
+		final int[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if ((n == 0) || (sorted[i] != sorted[n - 1])) {
+				sorted[n++] = sorted[i];
+			}
+		}
+
+		return Arrays.copyOf(sorted, n);
+	}
+
+	/**
+	 * Tells whether the known points are a full grid, indexed by axis.
+	 */
+	public boolean isGrid() {
+		return this.values != null;
+	}
+
+	/**
+	 * Returns the index of the last value of the axis below the value, -1 if
+	 * the value is not above the first one or above the last one.
+	 */
+	private static int lower(final double[] axis, final double value) {
+		if (!((value > axis[0]) && (value <= axis[axis.length - 1])))
+			return -1;
+
+		final int i = Arrays.binarySearch(axis, value);
+
+		return i >= 0 ? i - 1 : -i - 2;
+	}
+
+	private static int lower(final int[] axis, final int value) {
+		if (!((value > axis[0]) && (value <= axis[axis.length - 1])))
+			return -1;
+
+		final int i = Arrays.binarySearch(axis, value);
+
+		return i >= 0 ? i - 1 : -i - 2;
+	}
+
+	/**
+	 * Tells whether the point has a known point in each of its 4 quadrants,
+	 * so that it can be interpolated.
+	 */
+	public boolean contains(final double SNR, final int L) {
+		if (this.isGrid())
+			return (BilinearInterpolant.lower(this.SNRs, SNR) >= 0)
+			        && (BilinearInterpolant.lower(this.Ls, L) >= 0);
+
+		return !BilinearInterpolation.getClosest4Points(this.points, SNR, L)
+		        .contains(null);
+	}
+
+	/**
+	 * Interpolates the value of a point between its 4 closest known points.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the point has no known point in one of its quadrants
+	 */
+	public double interpolate(final double SNR, final int L) {
+		if (this.isGrid()) {
+			final int iSNR = BilinearInterpolant.lower(this.SNRs, SNR);
+			final int iL = BilinearInterpolant.lower(this.Ls, L);
+
+			if ((iSNR < 0) || (iL < 0))
+				throw new IllegalArgumentException(
+				        OmegaConstants.ERROR_INTERPOLATION_CALCULATION);
+
+			final int q11 = (iSNR * this.Ls.length) + iL;
+			final int q21 = q11 + this.Ls.length;
+
+			return BilinearInterpolant.interpolate(SNR, L, this.SNRs[iSNR],
+			        this.SNRs[iSNR + 1], this.Ls[iL], this.Ls[iL + 1],
+			        this.values[q11], this.values[q11 + 1], this.values[q21],
+			        this.values[q21 + 1]);
+		}
+
+		final ArrayList<SurfacePoint> closest4Points = BilinearInterpolation
+		        .getClosest4Points(this.points, SNR, L);
+
+		if (closest4Points.contains(null))
+			throw new IllegalArgumentException(
+			        OmegaConstants.ERROR_INTERPOLATION_CALCULATION);
+
+		return BilinearInterpolation.doInterpolation(SNR, L, closest4Points);
+	}
+
+	/**
+	 * Interpolates a batch of points, split among the threads of ParallelFor
+	 * when it is large. The points that cannot be interpolated do not stop the
+	 * batch.
+	 *
+	 * @param result
+	 *            receives the value of each point, NaN if it cannot be
+	 *            interpolated
+	 * @param outOfRange
+	 *            receives true for the points that cannot be interpolated
+	 * @return the number of points that cannot be interpolated
+	 */
+	public int interpolate(final double[] SNR, final int[] L,
+	        final double[] result, final boolean[] outOfRange) {
+		final int n = SNR.length;
+
+		if ((L.length != n) || (result.length < n) || (outOfRange.length < n))
+			throw new IllegalArgumentException();
+
+		ParallelFor.run(n, OmegaConstants.INTERPOLATION_BATCH_CHUNK,
+		        new ParallelFor.Body() {
+			        @Override
+			        public void run(final int from, final int to) {
+				        for (int i = from; i < to; i++) {
+					        outOfRange[i] = !BilinearInterpolant.this.contains(
+					                SNR[i], L[i]);
+					        result[i] = outOfRange[i] ? Double.NaN
+					                : BilinearInterpolant.this.interpolate(
+					                        SNR[i], L[i]);
+				        }
+			        }
+		        });
+
+		int outs = 0;
+		for (int i = 0; i < n; i++) {
+			if (outOfRange[i]) {
+				outs++;
+			}
+		}
+
+		return outs;
+	}
+
+	/**
+	 * The bilinear formula between the corners (SNR1, L1), (SNR1, L2), (SNR2,
+	 * L1) and (SNR2, L2).
+	 */
+	static double interpolate(final double SNR, final int L,
+	        final double SNR1, final double SNR2, final int L1, final int L2,
+	        final double v11, final double v12, final double v21,
+	        final double v22) {
+		return (1 / ((SNR2 - SNR1) * (L2 - L1)))
+		        * ((v11 * (SNR2 - SNR) * (L2 - L))
+		                + (v21 * (SNR - SNR1) * (L2 - L))
+		                + (v12 * (SNR2 - SNR) * (L - L1)) + (v22
+		                * (SNR - SNR1) * (L - L1)));
+	}
+}
@@ -15,23 +15,62 @@ public class BilinearInterpolation
 	{
 		SMSS, D
 	};
+	
+	private static final BilinearInterpolant[] INTERPOLANTS = new BilinearInterpolant[SurfaceType.values().length];
+	
+	/**
+	 * Returns the interpolant of the surface, built from its known points the
+	 * first time.
+	 * @throws Exception if the known points cannot be read
+	 */
+	public static BilinearInterpolant getInterpolant(SurfaceType sizeToInterpolate) throws Exception
+	{
+		synchronized (INTERPOLANTS)
+		{
+			BilinearInterpolant interpolant = INTERPOLANTS[sizeToInterpolate.ordinal()];
+			
+			if(interpolant == null)
+			{
+				ArrayList<SurfacePoint> knownPoints = getKnownPoints(sizeToInterpolate);
+				
+				if(knownPoints.isEmpty())
+					throw new Exception(OmegaConstants.ERROR_INTERPOLATION_CALCULATION);
+				
+				interpolant = new BilinearInterpolant(knownPoints);
+				INTERPOLANTS[sizeToInterpolate.ordinal()] = interpolant;
+			}
+			
+			return interpolant;
+		}
+	}
 		
 	public static double interpolate(double SNR, int L, SurfaceType sizeToInterpolate) throws Exception
 	{
 		if(SNR < 1.291059 || SNR > 31.306549)
 			throw new IllegalArgumentException(OmegaConstants.ERROR_INTERPOLATION_CALCULATION_SNR);
 		
-		ArrayList<SurfacePoint> knownPoints    = getKnownPoints(sizeToInterpolate);
-		
-		if(knownPoints == null)
-			throw new Exception(OmegaConstants.ERROR_INTERPOLATION_CALCULATION);
-		
-		ArrayList<SurfacePoint> closest4Points = getClosest4Points(knownPoints, SNR, L);
+		BilinearInterpolant interpolant = getInterpolant(sizeToInterpolate);
 		
-		if(closest4Points == null || closest4Points.size() != 4)
+		if(!interpolant.contains(SNR, L))
 			throw new Exception(OmegaConstants.ERROR_INTERPOLATION_CALCULATION);
 		
-		return doInterpolation(SNR, L, closest4Points);
+		return interpolant.interpolate(SNR, L);
+	}
+	
+	/**
+	 * Interpolates a batch of points with the interpolant of the surface. The
+	 * points that cannot be interpolated (no known point around) do not stop
+	 * the batch.
+	 * @param result receives the value of each point, NaN if it cannot be
+	 *        interpolated
+	 * @param outOfRange receives true for the points that cannot be
+	 *        interpolated
+	 * @return the number of points that cannot be interpolated
+	 * @throws Exception if the known points cannot be read
+	 */
+	public static int interpolate(double[] SNR, int[] L, SurfaceType sizeToInterpolate, double[] result, boolean[] outOfRange) throws Exception
+	{
+		return getInterpolant(sizeToInterpolate).interpolate(SNR, L, result, outOfRange);
 	}
 	
 	public static ArrayList<SurfacePoint> getKnownPoints(SurfaceType sizeToInterpolate)
@@ -162,16 +201,6 @@ public class BilinearInterpolation
 		SurfacePoint q21 = closest4Points.get(2);
 		SurfacePoint q22 = closest4Points.get(3);
 		
-		double result =
-				(1/((q21.SNR-q11.SNR)*(q12.L-q11.L))) * 
-				(
-						q11.value * (q21.SNR-SNR) * (q12.L-L) + 
-						q21.value * (SNR-q11.SNR) * (q12.L-L) +
-						q12.value * (q21.SNR-SNR) * (L-q11.L) +
-						q22.value * (SNR-q11.SNR) * (L-q11.L)
-				)
-		;
-		
-		return result;
+		return BilinearInterpolant.interpolate(SNR, L, q11.SNR, q21.SNR, q11.L, q12.L, q11.value, q12.value, q21.value, q22.value);
 	}
 }
@@ -0,0 +1,110 @@
+package ch.supsi.omega.math;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ch.supsi.omega.common.OmegaConstants;
+
+/**
+ * Runs the iterations 0..size - 1 of a loop in chunks, on a shared pool of
+ * daemon threads when there are enough of them. The chunks must write
+ * disjoint parts of their outputs.
+ */
+public final class ParallelFor {
+	/**
+	 * The body of the loop, for the iterations from..to - 1.
+	 */
+	public interface Body {
+		void run(int from, int to);
+	}
+
+	private static ExecutorService executor = null;
+
+	private ParallelFor() {
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (ParallelFor.executor == null) {
+			ParallelFor.executor = Executors.newFixedThreadPool(
+			        OmegaConstants.STATS_ENGINE_THREADS, new ThreadFactory() {
+				        @Override
+				        public Thread newThread(final Runnable runnable) {
+					        final Thread thread = new Thread(runnable,
+					                "ParallelFor");
+					        thread.setDaemon(true);
+					        return thread;
+				        }
+			        });
+		}
+
+		return ParallelFor.executor;
+	}
+
+	/**
+	 * Runs the loop, in the calling thread if size is at most minChunk.
+	 *
+	 * @param minChunk
+	 *            the smallest number of iterations worth a task
+	 */
+	public static void run(final int size, final int minChunk, final Body body) {
+		ParallelFor.run(size, minChunk, OmegaConstants.STATS_ENGINE_THREADS,
+		        body);
+	}
+
+	/**
+	 * Runs the loop in at most maxChunks tasks, in the calling thread if size
+	 * is at most minChunk or maxChunks is 1. If the calling thread is
+	 * interrupted the tasks are interrupted too, and an IllegalStateException
+	 * is thrown.
+	 *
+	 * @param minChunk
+	 *            the smallest number of iterations worth a task
+	 */
+	public static void run(final int size, final int minChunk,
+	        final int maxChunks, final Body body) {
+		final int chunks = Math.min(
+		        Math.min(maxChunks, OmegaConstants.STATS_ENGINE_THREADS), size
+		                / Math.max(1, minChunk));
+
+		if (chunks <= 1) {
+			body.run(0, size);
+			return;
+		}
+
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(
+		        chunks);
+
+		for (int c = 0; c < chunks; c++) {
+			final int from = (int) (((long) size * c) / chunks);
+			final int to = (int) (((long) size * (c + 1)) / chunks);
+
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					body.run(from, to);
+					return null;
+				}
+			});
+		}
+
+		try {
+			for (final Future<Void> future : ParallelFor.getExecutor()
+			        .invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package ch.supsi.omega.math;
+
+import java.util.Arrays;
+
+/**
+ * A natural cubic spline through a table of points. The second derivatives at
+ * the points are computed once by the constructor, so an interpolation costs
+ * a binary search and a cubic polynomial. The interpolant is immutable and
+ * can be shared by any number of threads.
+ */
+public final class SplineInterpolant {
+	private final double[] x;
+	private final double[] y;
+	private final double[] y2;
+
+	/**
+	 * @param x
+	 *            the abscissas, strictly increasing
+	 * @param y
+	 *            the values at the abscissas
+	 */
+	public SplineInterpolant(final double[] x, final double[] y) {
+		final int n = x.length;
+
+		if ((n < 3) || (y.length != n))
+			throw new IllegalArgumentException();
+
+		for (int i = 1; i < n; i++) {
+			if (!(x[i] > x[i - 1]))
+				throw new IllegalArgumentException(
+				        "the abscissas are not strictly increasing");
+		}
+
+		this.x = x.clone();
+		this.y = y.clone();
+		this.y2 = new double[n];
+
+		// the tridiagonal system of the second derivatives, 0 at the ends
+		final double[] u = new double[n];
+
+		for (int i = 1; i < (n - 1); i++) {
+			final double sig = (x[i] - x[i - 1]) / (x[i + 1] - x[i - 1]);
+			final double p = (sig * this.y2[i - 1]) + 2.0;
+
+			this.y2[i] = (sig - 1.0) / p;
+			u[i] = ((y[i + 1] - y[i]) / (x[i + 1] - x[i]))
+			        - ((y[i] - y[i - 1]) / (x[i] - x[i - 1]));
+			u[i] = (((6.0 * u[i]) / (x[i + 1] - x[i - 1])) - (sig * u[i - 1]))
+			        / p;
+		}
+
+		for (int k = n - 2; k >= 0; k--) {
+			this.y2[k] = (this.y2[k] * this.y2[k + 1]) + u[k];
+		}
+	}
+
+	/**
+	 * Interpolates the value at an abscissa.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the abscissa is out of the table
+	 */
+	public double interpolate(final double xx) {
+		final int n = this.x.length;
+
+		if (!((xx >= this.x[0]) && (xx <= this.x[n - 1])))
+			throw new IllegalArgumentException("x out of range!");
+
+		int lo = Arrays.binarySearch(this.x, xx);
+
+		if (lo < 0) {
+			lo = -lo - 2;
+		}
+
+		lo = Math.min(lo, n - 2);
+		final int hi = lo + 1;
+
+		final double h = this.x[hi] - this.x[lo];
+		final double a = (this.x[hi] - xx) / h;
+		final double b = (xx - this.x[lo]) / h;
+
+		return (a * this.y[lo])
+		        + (b * this.y[hi])
+		        + (((((a * a * a) - a) * this.y2[lo]) + (((b * b * b) - b) * this.y2[hi]))
+		                * (h * h) / 6.0);
+	}
+}
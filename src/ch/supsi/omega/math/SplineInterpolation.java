@@ -1,7 +1,5 @@
 package ch.supsi.omega.math;
 
-import flanagan.interpolation.CubicSpline;
-
 /**
  * @author galliva
  * @version 1.0
@@ -21,6 +19,26 @@ public class SplineInterpolation {
 		BIAS, SIGMA
 	};
 	
+	// the splines of BIAS and SIGMA, built once
+	private static final SplineInterpolant BIAS_SPLINE = new SplineInterpolant(
+			SplineInterpolation.SNR, SplineInterpolation.Bias);
+	private static final SplineInterpolant SIGMA_SPLINE = new SplineInterpolant(
+			SplineInterpolation.SNR, SplineInterpolation.Sigma);
+	
+	/**
+	 * Returns the shared spline of the {@link Size}.
+	 */
+	public static SplineInterpolant getInterpolant(final Size size) {
+		switch (size) {
+			case BIAS:
+				return SplineInterpolation.BIAS_SPLINE;
+			case SIGMA:
+				return SplineInterpolation.SIGMA_SPLINE;
+		}
+		
+		throw new IllegalArgumentException();
+	}
+	
 	/**
 	 * Using a cubic spline, extrapolates the value of BIAS or SIGMA at the
 	 * specified SNR.
@@ -38,21 +56,7 @@ public class SplineInterpolation {
 			throw new IllegalArgumentException(
 					"Cannot execute SplineInterpolation because SNR is out of range");
 		
-		CubicSpline cs = null;
-		
-		switch (sizeToInterpolate) {
-			case BIAS:
-				cs = new CubicSpline(SplineInterpolation.SNR,
-						SplineInterpolation.Bias);
-				break;
-			case SIGMA:
-				cs = new CubicSpline(SplineInterpolation.SNR,
-						SplineInterpolation.Sigma);
-				break;
-		}
-		
-		final double result = cs.interpolate(SNRValue);
-		
-		return result;
+		return SplineInterpolation.getInterpolant(sizeToInterpolate).interpolate(
+				SNRValue);
 	}
 }
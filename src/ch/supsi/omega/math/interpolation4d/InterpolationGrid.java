@@ -0,0 +1,275 @@
+package ch.supsi.omega.math.interpolation4d;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.math.ParallelFor;
+
+/**
+ * The hyper-points of an interpolation file as a dense grid: the sorted
+ * values of each axis (SNR, L, SMSS, D) and the values in a flat array, D
+ * varying fastest. The cell of a point is found by binary search on each
+ * axis, so an interpolation costs a few comparisons and 16 array reads.
+ * <p>
+ * The grids are immutable and loaded once per InterpolationType, the first
+ * time they are needed; they can be shared by any number of threads.
+ */
+public final class InterpolationGrid {
+	private static final InterpolationGrid[] GRIDS = new InterpolationGrid[InterpolationType
+	        .values().length];
+
+	private final double[] SNRs;
+	private final double[] Ls;
+	private final double[] SMSSs;
+	private final double[] Ds;
+	private final double[] values;
+
+	/**
+	 * Returns the grid of the interpolation file of the type, loaded the first
+	 * time.
+	 *
+	 * @throws IllegalStateException
+	 *             if the hyper-points of the file are not a full grid
+	 */
+	public static InterpolationGrid getInstance(
+	        final InterpolationType interpolationType) {
+		synchronized (InterpolationGrid.GRIDS) {
+			InterpolationGrid grid = InterpolationGrid.GRIDS[interpolationType
+			        .ordinal()];
+
+			if (grid == null) {
+				grid = new InterpolationGrid(
+				        new FileLoader().loadHyperPoints(interpolationType));
+				InterpolationGrid.GRIDS[interpolationType.ordinal()] = grid;
+			}
+
+			return grid;
+		}
+	}
+
+	InterpolationGrid(final List<HyperPoint> hyperPoints) {
+		final int n = hyperPoints.size();
+		final double[] SNR = new double[n];
+		final double[] L = new double[n];
+		final double[] SMSS = new double[n];
+		final double[] D = new double[n];
+
+		for (int i = 0; i < n; i++) {
+			final HyperPoint h = hyperPoints.get(i);
+			SNR[i] = h.SNR;
+			L[i] = h.L;
+			SMSS[i] = h.SMSS;
+			D[i] = h.D;
+		}
+
+		this.SNRs = InterpolationGrid.axis(SNR);
+		this.Ls = InterpolationGrid.axis(L);
+		this.SMSSs = InterpolationGrid.axis(SMSS);
+		this.Ds = InterpolationGrid.axis(D);
+
+		if ((this.SNRs.length < 2) || (this.Ls.length < 2)
+		        || (this.SMSSs.length < 2) || (this.Ds.length < 2)
+		        || (n != (this.SNRs.length * this.Ls.length
+		                * this.SMSSs.length * this.Ds.length)))
+			throw new IllegalStateException(
+			        "the hyper-points are not a full grid");
+
+		this.values = new double[n];
+		final boolean[] set = new boolean[n];
+
+		for (final HyperPoint h : hyperPoints) {
+			final int index = this.index(
+			        Arrays.binarySearch(this.SNRs, h.SNR),
+			        Arrays.binarySearch(this.Ls, h.L),
+			        Arrays.binarySearch(this.SMSSs, h.SMSS),
+			        Arrays.binarySearch(this.Ds, h.D));
+
+			if (set[index])
+				throw new IllegalStateException(
+				        "the hyper-points are not a full grid");
+
+			set[index] = true;
+			this.values[index] = h.value;
+		}
+	}
+
+	/**
+	 * Returns the distinct values, sorted.
+	 */
+	private static double[] axis(final double[] values) {
+		final double[] sorted = values.clone();
+		Arrays.sort(sorted);
+
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if ((n == 0) || (sorted[i] != sorted[n - 1])) {
+				sorted[n++] = sorted[i];
+			}
+		}
+
+		return Arrays.copyOf(sorted, n);
+	}
+
+	private int index(final int iSNR, final int iL, final int iSMSS,
+	        final int iD) {
+		return (((((iSNR * this.Ls.length) + iL) * this.SMSSs.length) + iSMSS) * this.Ds.length)
+		        + iD;
+	}
+
+	public double[] getSNRValues() {
+		return this.SNRs.clone();
+	}
+
+	public double[] getLValues() {
+		return this.Ls.clone();
+	}
+
+	public double[] getSMSSValues() {
+		return this.SMSSs.clone();
+	}
+
+	public double[] getDValues() {
+		return this.Ds.clone();
+	}
+
+	/**
+	 * Tells whether the point is inside the grid, where it can be
+	 * interpolated.
+	 */
+	public boolean contains(final double sNR, final double l,
+	        final double sMSS, final double d) {
+		return InterpolationGrid.inside(this.SNRs, sNR)
+		        && InterpolationGrid.inside(this.Ls, l)
+		        && InterpolationGrid.inside(this.SMSSs, sMSS)
+		        && InterpolationGrid.inside(this.Ds, d);
+	}
+
+	private static boolean inside(final double[] axis, final double value) {
+		return (value >= axis[0]) && (value <= axis[axis.length - 1]);
+	}
+
+	/**
+	 * Returns the index of the cell of the value: axis[i] <= value <
+	 * axis[i + 1], the last cell for the largest value.
+	 */
+	private static int cell(final double[] axis, final double value) {
+		int i = Arrays.binarySearch(axis, value);
+
+		if (i < 0) {
+			i = -i - 2;
+		}
+
+		return Math.min(i, axis.length - 2);
+	}
+
+	/**
+	 * Interpolates the value of a point, quadrilinearly between the 16
+	 * corners of its cell.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the point is out of the grid
+	 */
+	public double interpolate(final double sNR, final double l,
+	        final double sMSS, final double d) {
+		if (!InterpolationGrid.inside(this.SNRs, sNR))
+			throw new IllegalArgumentException("SNR out of range!");
+		if (!InterpolationGrid.inside(this.Ls, l))
+			throw new IllegalArgumentException("L out of range!");
+		if (!InterpolationGrid.inside(this.SMSSs, sMSS))
+			throw new IllegalArgumentException("SMSS out of range!");
+		if (!InterpolationGrid.inside(this.Ds, d))
+			throw new IllegalArgumentException("D out of range!");
+
+		return this.interpolateInside(sNR, l, sMSS, d);
+	}
+
+	/**
+	 * Interpolates a batch of points, split among the threads of ParallelFor
+	 * when it is large. The points out of the grid do not stop the batch.
+	 *
+	 * @param result
+	 *            receives the value of each point, NaN if it is out of the
+	 *            grid
+	 * @param outOfRange
+	 *            receives true for the points out of the grid
+	 * @return the number of points out of the grid
+	 */
+	public int interpolate(final double[] sNR, final int[] l,
+	        final double[] sMSS, final double[] d, final double[] result,
+	        final boolean[] outOfRange) {
+		final int n = sNR.length;
+
+		if ((l.length != n) || (sMSS.length != n) || (d.length != n)
+		        || (result.length < n) || (outOfRange.length < n))
+			throw new IllegalArgumentException();
+
+		ParallelFor.run(n, OmegaConstants.INTERPOLATION_BATCH_CHUNK,
+		        new ParallelFor.Body() {
+			        @Override
+			        public void run(final int from, final int to) {
+				        for (int i = from; i < to; i++) {
+					        outOfRange[i] = !InterpolationGrid.this.contains(
+					                sNR[i], l[i], sMSS[i], d[i]);
+					        result[i] = outOfRange[i] ? Double.NaN
+					                : InterpolationGrid.this.interpolateInside(
+					                        sNR[i], l[i], sMSS[i], d[i]);
+				        }
+			        }
+		        });
+
+		int outs = 0;
+		for (int i = 0; i < n; i++) {
+			if (outOfRange[i]) {
+				outs++;
+			}
+		}
+
+		return outs;
+	}
+
+	/**
+	 * Interpolates a point known to be inside the grid.
+	 */
+	double interpolateInside(final double sNR, final double l,
+	        final double sMSS, final double d) {
+		final int iX = InterpolationGrid.cell(this.SNRs, sNR);
+		final int iY = InterpolationGrid.cell(this.Ls, l);
+		final int iZ = InterpolationGrid.cell(this.SMSSs, sMSS);
+		final int iW = InterpolationGrid.cell(this.Ds, d);
+
+		final double X = (sNR - this.SNRs[iX])
+		        / (this.SNRs[iX + 1] - this.SNRs[iX]);
+		final double Y = (l - this.Ls[iY]) / (this.Ls[iY + 1] - this.Ls[iY]);
+		final double Z = (sMSS - this.SMSSs[iZ])
+		        / (this.SMSSs[iZ + 1] - this.SMSSs[iZ]);
+		final double W = (d - this.Ds[iW]) / (this.Ds[iW + 1] - this.Ds[iW]);
+
+		final int strideW = 1;
+		final int strideZ = this.Ds.length;
+		final int strideY = strideZ * this.SMSSs.length;
+		final int strideX = strideY * this.Ls.length;
+		final int corner = this.index(iX, iY, iZ, iW);
+
+		double result = 0.0;
+
+		// the 16 corners, D varying fastest
+		for (int x = 0; x < 2; x++)
+			for (int y = 0; y < 2; y++)
+				for (int z = 0; z < 2; z++)
+					for (int w = 0; w < 2; w++) {
+						final double XM = (x == 0) ? (1 - X) : X;
+						final double YM = (y == 0) ? (1 - Y) : Y;
+						final double ZM = (z == 0) ? (1 - Z) : Z;
+						final double WM = (w == 0) ? (1 - W) : W;
+
+						result = result
+						        + (this.values[corner + (x * strideX)
+						                + (y * strideY) + (z * strideZ)
+						                + (w * strideW)]
+						                * XM * YM * ZM * WM);
+					}
+
+		return result;
+	}
+}
@@ -3,63 +3,35 @@ package ch.supsi.omega.math.interpolation4d;
 import java.util.ArrayList;
 
 /**
- * 4-dimension interpolation class. Formulas are referring
- * http://paulbourke.net/miscellaneous/interpolation/
+ * 4-dimension interpolation class, on the InterpolationGrid of the type.
+ * Formulas are referring http://paulbourke.net/miscellaneous/interpolation/
  * 
  * @author galliva
  */
 public class Interpolator4d {
-	private FileLoader fileLoader = null;
+	private InterpolationGrid grid = null;
 
+	/**
+	 * The hyper-points of the type are loaded once, the first time, and shared
+	 * by all the Interpolator4d.
+	 */
 	public Interpolator4d(InterpolationType interpolationType) {
-		fileLoader = new FileLoader();
-		fileLoader.loadHyperPoints(interpolationType);
+		grid = InterpolationGrid.getInstance(interpolationType);
 	}
 
 	public Double interpolate(double sNR, int l, double sMSS, double d) {
-		ArrayList<Double> SNRValues = fileLoader.getSNRValues();
-		ArrayList<Double> LValues = fileLoader.getLValues();
-		ArrayList<Double> SMSSValues = fileLoader.getSMSSValues();
-		ArrayList<Double> DValues = fileLoader.getDValues();
-
-		if (sNR < SNRValues.get(0) || sNR > SNRValues.get(SNRValues.size() - 1))
-			throw new IllegalArgumentException("SNR out of range!");
-		if (l < LValues.get(0) || l > LValues.get(LValues.size() - 1))
-			throw new IllegalArgumentException("L out of range!");
-		if (sMSS < SMSSValues.get(0)
-		        || sMSS > SMSSValues.get(SMSSValues.size() - 1))
-			throw new IllegalArgumentException("SMSS out of range!");
-		if (d < DValues.get(0) || d > DValues.get(DValues.size() - 1))
-			throw new IllegalArgumentException("D out of range!");
-
-		Double[] SNRs = getClosestPoint(SNRValues, sNR);
-		Double[] Ls = getClosestPoint(LValues, l);
-		Double[] SMSSs = getClosestPoint(SMSSValues, sMSS);
-		Double[] Ds = getClosestPoint(DValues, d);
-
-		Double X_SNR = normalizeValue(sNR, SNRs);
-		Double Y_L = normalizeValue(l, Ls);
-		Double Z_SMSS = normalizeValue(sMSS, SMSSs);
-		Double W_D = normalizeValue(d, Ds);
-
-		Double result = 0.0;
-
-		for (int iX = 0; iX < 2; iX++)
-			for (int iY = 0; iY < 2; iY++)
-				for (int iZ = 0; iZ < 2; iZ++)
-					for (int iW = 0; iW < 2; iW++) {
-						double XM = (iX == 0) ? (1 - X_SNR) : X_SNR;
-						double YM = (iY == 0) ? (1 - Y_L) : Y_L;
-						double ZM = (iZ == 0) ? (1 - Z_SMSS) : Z_SMSS;
-						double WM = (iW == 0) ? (1 - W_D) : W_D;
-
-						result = result
-						        + fileLoader.getHyperPoint(SNRs[iX], Ls[iY],
-						                SMSSs[iZ], Ds[iW]).value * XM * YM * ZM
-						        * WM;
-					}
+		return grid.interpolate(sNR, l, sMSS, d);
+	}
 
-		return result;
+	/**
+	 * Interpolates a batch of points, see
+	 * {@link InterpolationGrid#interpolate(double[], int[], double[], double[], double[], boolean[])}.
+	 * 
+	 * @return the number of points out of range, their result is NaN
+	 */
+	public int interpolate(double[] sNR, int[] l, double[] sMSS, double[] d,
+	        double[] result, boolean[] outOfRange) {
+		return grid.interpolate(sNR, l, sMSS, d, result, outOfRange);
 	}
 
 	public Double[] getClosestPoint(ArrayList<Double> array, double value) {
@@ -14,7 +14,6 @@ import java.util.logging.Level;
 
 import javax.imageio.ImageIO;
 
-import omero.ServerError;
 import omero.client;
 import omero.api.IAdminPrx;
 import omero.api.IContainerPrx;
@@ -31,6 +30,7 @@ import omero.model.Image;
 import omero.sys.ParametersI;
 import pojos.DatasetData;
 import pojos.ImageData;
+import ch.supsi.omega.pixels.PixelSource;
 
 import com.galliva.gallibrary.GLogManager;
 
@@ -38,13 +38,19 @@ import com.galliva.gallibrary.GLogManager;
  * Entry point to access the services. Code should be provided to keep those
  * services alive.
  */
-public class Gateway {
+public class Gateway implements PixelSource {
 	/**
 	 * The maximum number of thumbnails retrieved before restarting the
 	 * thumbnails service.
 	 */
 	private static final int MAX_RETRIEVAL = 100;
 
+	/**
+	 * The maximum number of pixels store sessions kept open for the same
+	 * pixels set.
+	 */
+	private static final int MAX_PIXELS_STORES = 4;
+
 	/** Keeps the client's session alive. */
 	private ScheduledThreadPoolExecutor executor;
 
@@ -69,6 +75,12 @@ public class Gateway {
 	/** Collection of services to keep alive. */
 	private Map<Long, StatefulServiceInterfacePrx> reServices;
 
+	/** The pooled pixels store sessions, created at login. */
+	private PixelsStorePool pixelsStores;
+
+	/** The local cache of the planes, <code>null</code> if not used. */
+	private PlaneCache planeCache;
+
 	/** The container service. */
 	private IContainerPrx containerService;
 
@@ -219,6 +231,17 @@ public class Gateway {
 			entries[index] = reServices.get(j.next());
 			index++;
 		}
+		if (pixelsStores != null) {
+			List<RawPixelsStorePrx> stores = pixelsStores.getStores();
+			ServiceInterfacePrx[] all = new ServiceInterfacePrx[n
+			        + stores.size()];
+			System.arraycopy(entries, 0, all, 0, n);
+			for (RawPixelsStorePrx store : stores) {
+				all[index] = store;
+				index++;
+			}
+			entries = all;
+		}
 		try {
 			entryEncrypted.keepAllAlive(entries);
 		} catch (Exception e) {
@@ -242,6 +265,8 @@ public class Gateway {
 			entryEncrypted = secureClient.createSession(
 			        credentials.getUserName(), credentials.getPassword());
 			connected = true;
+			pixelsStores = new PixelsStorePool(entryEncrypted,
+			        MAX_PIXELS_STORES);
 			KeepClientAlive kca = new KeepClientAlive(this);
 			executor = new ScheduledThreadPoolExecutor(1);
 			executor.scheduleWithFixedDelay(kca, 60, 60, TimeUnit.SECONDS);
@@ -260,6 +285,9 @@ public class Gateway {
 		connected = false;
 		thumbnailService = null;
 		adminService = null;
+		if (pixelsStores != null)
+			pixelsStores.closeAll();
+		pixelsStores = null;
 		services.clear();
 		reServices.clear();
 		try {
@@ -418,21 +446,46 @@ public class Gateway {
 		return images;
 	}
 
-	public synchronized byte[] getPlane(long pixelsID, int z, int t, int c)
+	/**
+	 * Retrieves a plane, from the plane cache if set, otherwise using a pooled
+	 * pixels store session. Several planes (of the same or of different pixels
+	 * sets) can be retrieved in parallel.
+	 * 
+	 * @param pixelsID
+	 *            The identifier of the pixels set.
+	 * @param z
+	 *            The selected z-section.
+	 * @param t
+	 *            The selected timepoint.
+	 * @param c
+	 *            The selected channel.
+	 * @return The plane, or <code>null</code> if it cannot be retrieved.
+	 * @throws Exception
+	 *             If no pixels store session can be opened.
+	 */
+	public byte[] getPlane(long pixelsID, int z, int t, int c)
 	        throws Exception {
-		RawPixelsStorePrx service = entryEncrypted.createRawPixelsStore();
-		try {
-			service.setPixelsId(pixelsID, false);
+		if (planeCache != null) {
+			byte[] plane = planeCache.get(pixelsID, z, c, t);
+			if (plane != null)
+				return plane;
+		}
 
-			return service.getPlane(z, c, t);
+		RawPixelsStorePrx service = pixelsStores.lease(pixelsID);
+		try {
+			byte[] plane = service.getPlane(z, c, t);
+			pixelsStores.release(pixelsID, service);
+			if (planeCache != null && plane != null)
+				planeCache.put(pixelsID, z, c, t, plane);
+			return plane;
 		} catch (Throwable e) {
+			// the session may be broken: don't give it back
+			pixelsStores.discard(pixelsID, service);
 			GLogManager.log(
 			        String.format("%s: %s", "cannot retrieve the plane",
 			                e.toString()), Level.SEVERE);
 			new Exception("cannot retrieve the plane " + "(z=" + z + ", t=" + t
 			        + ", c=" + c + ") for pixelsID:  " + pixelsID, e);
-		} finally {
-			service.close();
 		}
 
 		return null;
@@ -441,21 +494,48 @@ public class Gateway {
 	public int getByteWidht(long pixelsID) {
 		RawPixelsStorePrx service = null;
 		try {
-			service = entryEncrypted.createRawPixelsStore();
-			service.setPixelsId(pixelsID, false);
-			return service.getByteWidth();
-		} catch (ServerError e) {
+			service = pixelsStores.lease(pixelsID);
+			int byteWidth = service.getByteWidth();
+			pixelsStores.release(pixelsID, service);
+			return byteWidth;
+		} catch (Exception e) {
+			if (service != null)
+				pixelsStores.discard(pixelsID, service);
 			// nothing we can do: return the "default"
 			return 2;
-		} finally {
-			try {
-				service.close();
-			} catch (ServerError e) {
-				// nothing we can do
-			}
 		}
 	}
 
+	/**
+	 * OMERO always returns the planes in network (big endian) byte order.
+	 */
+	public boolean isBigEndian(long pixelsID) {
+		return true;
+	}
+
+	/**
+	 * Sets the local cache consulted before retrieving a plane from the
+	 * server.
+	 * 
+	 * @param planeCache
+	 *            The cache, <code>null</code> to always use the server.
+	 */
+	public void setPlaneCache(PlaneCache planeCache) {
+		this.planeCache = planeCache;
+	}
+
+	/**
+	 * Closes the idle pixels store sessions of the specified pixels set, to be
+	 * called when the planes of an image are no longer needed.
+	 * 
+	 * @param pixelsID
+	 *            The identifier of the pixels set.
+	 */
+	public void closePixelsStores(long pixelsID) {
+		if (pixelsStores != null)
+			pixelsStores.close(pixelsID);
+	}
+
 	public List<IObject> loadPlaneInfo(long pixelsID, int z, int t, int channel)
 	        throws Exception {
 		// isSessionAlive();
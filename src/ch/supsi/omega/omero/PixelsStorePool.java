@@ -0,0 +1,208 @@
+package ch.supsi.omega.omero;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import omero.ServerError;
+import omero.api.RawPixelsStorePrx;
+import omero.api.ServiceFactoryPrx;
+
+/**
+ * Pool of stateful {@link RawPixelsStorePrx} sessions, keyed by pixels set.
+ * Sessions are created on demand (at most <code>maxPerPixels</code> for each
+ * pixels set), leased to one caller at a time and given back for reuse, so
+ * the <code>setPixelsId</code> round trips are paid once per session instead
+ * of once per plane.
+ */
+class PixelsStorePool {
+
+	/** The entry point used to create the sessions. */
+	private final ServiceFactoryPrx entry;
+
+	/** The maximum number of sessions opened for the same pixels set. */
+	private final int maxPerPixels;
+
+	/** The sessions ready to be leased, by pixels set. */
+	private final Map<Long, List<RawPixelsStorePrx>> idle;
+
+	/** The number of sessions (idle or leased) opened, by pixels set. */
+	private final Map<Long, Integer> opened;
+
+	/** All the open sessions, so they can be kept alive. */
+	private final List<RawPixelsStorePrx> stores;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param entry
+	 *            The entry point used to create the sessions.
+	 * @param maxPerPixels
+	 *            The maximum number of sessions for the same pixels set.
+	 */
+	PixelsStorePool(ServiceFactoryPrx entry, int maxPerPixels) {
+		this.entry = entry;
+		this.maxPerPixels = Math.max(1, maxPerPixels);
+		idle = new HashMap<Long, List<RawPixelsStorePrx>>();
+		opened = new HashMap<Long, Integer>();
+		stores = new ArrayList<RawPixelsStorePrx>();
+	}
+
+	/**
+	 * Leases a session already set on the given pixels set. Waits if all the
+	 * sessions for that pixels set are in use.
+	 *
+	 * @param pixelsID
+	 *            The identifier of the pixels set.
+	 * @return See above.
+	 * @throws ServerError
+	 *             If a new session cannot be created.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for a session.
+	 */
+	RawPixelsStorePrx lease(long pixelsID) throws ServerError,
+	        InterruptedException {
+		synchronized (this) {
+			while (true) {
+				List<RawPixelsStorePrx> available = idle.get(pixelsID);
+				if (available != null && !available.isEmpty())
+					return available.remove(available.size() - 1);
+
+				int count = countOpened(pixelsID);
+				if (count < maxPerPixels) {
+					opened.put(pixelsID, count + 1);
+					break;
+				}
+				wait();
+			}
+		}
+
+		// opening the session is a round trip: do it outside the lock
+		RawPixelsStorePrx store = null;
+		boolean ready = false;
+		try {
+			store = entry.createRawPixelsStore();
+			store.setPixelsId(pixelsID, false);
+			ready = true;
+		} finally {
+			// whatever failed (ServerError, Ice.LocalException...), give the
+			// slot back and close the half-built session
+			if (!ready) {
+				forget(pixelsID, null);
+				close(store);
+			}
+		}
+
+		synchronized (this) {
+			stores.add(store);
+		}
+		return store;
+	}
+
+	/**
+	 * Gives a leased session back to the pool.
+	 *
+	 * @param pixelsID
+	 *            The identifier of the pixels set.
+	 * @param store
+	 *            The session.
+	 */
+	synchronized void release(long pixelsID, RawPixelsStorePrx store) {
+		List<RawPixelsStorePrx> available = idle.get(pixelsID);
+		if (available == null) {
+			available = new ArrayList<RawPixelsStorePrx>();
+			idle.put(pixelsID, available);
+		}
+		available.add(store);
+		notifyAll();
+	}
+
+	/**
+	 * Closes a leased session that should not be reused (e.g. after an
+	 * error).
+	 *
+	 * @param pixelsID
+	 *            The identifier of the pixels set.
+	 * @param store
+	 *            The session.
+	 */
+	void discard(long pixelsID, RawPixelsStorePrx store) {
+		forget(pixelsID, store);
+		close(store);
+	}
+
+	/**
+	 * Closes the idle sessions of the given pixels set.
+	 *
+	 * @param pixelsID
+	 *            The identifier of the pixels set.
+	 */
+	void close(long pixelsID) {
+		List<RawPixelsStorePrx> available;
+		synchronized (this) {
+			available = idle.remove(pixelsID);
+			if (available == null)
+				return;
+			for (RawPixelsStorePrx store : available)
+				stores.remove(store);
+			int count = countOpened(pixelsID) - available.size();
+			if (count > 0)
+				opened.put(pixelsID, count);
+			else
+				opened.remove(pixelsID);
+			notifyAll();
+		}
+		for (RawPixelsStorePrx store : available)
+			close(store);
+	}
+
+	/** Closes all the sessions. */
+	void closeAll() {
+		List<RawPixelsStorePrx> all;
+		synchronized (this) {
+			all = new ArrayList<RawPixelsStorePrx>(stores);
+			stores.clear();
+			idle.clear();
+			opened.clear();
+			notifyAll();
+		}
+		for (RawPixelsStorePrx store : all)
+			close(store);
+	}
+
+	/**
+	 * Returns all the open sessions, to be kept alive.
+	 *
+	 * @return See above.
+	 */
+	synchronized List<RawPixelsStorePrx> getStores() {
+		return new ArrayList<RawPixelsStorePrx>(stores);
+	}
+
+	private int countOpened(long pixelsID) {
+		Integer count = opened.get(pixelsID);
+		return count == null ? 0 : count.intValue();
+	}
+
+	private synchronized void forget(long pixelsID, RawPixelsStorePrx store) {
+		if (store != null)
+			stores.remove(store);
+		int count = countOpened(pixelsID) - 1;
+		if (count > 0)
+			opened.put(pixelsID, count);
+		else
+			opened.remove(pixelsID);
+		notifyAll();
+	}
+
+	private void close(RawPixelsStorePrx store) {
+		if (store == null)
+			return;
+		try {
+			store.close();
+		} catch (Exception e) {
+			// nothing we can do
+		}
+	}
+}
@@ -0,0 +1,446 @@
+package ch.supsi.omega.omero;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * Local cache of the raw planes, kept on disk between runs. The planes of a
+ * pixels set at a given z-section and channel are stored in one data file,
+ * plane <code>t</code> at offset <code>t * planeSize</code>. A small index
+ * file next to it holds the plane size and, for each timepoint, whether the
+ * plane has been stored.
+ * <p>
+ * The indexes are kept in memory. The lock of the cache only guards them and
+ * the sizes; the planes are read and written outside of it, so that parallel
+ * fetchers do not wait for each other's disk accesses. A data file evicted
+ * while planes are read from it or written to it is deleted by the last of
+ * them.
+ * <p>
+ * When the cache grows over its maximum size the least recently used data
+ * files are deleted; the last use of each file survives restarts through its
+ * modification time.
+ */
+public class PlaneCache {
+
+	/** The extension of the data files. */
+	private static final String DATA_EXTENSION = ".planes";
+
+	/** The extension of the index files. */
+	private static final String INDEX_EXTENSION = ".index";
+
+	/** The index header: the plane size. */
+	private static final int HEADER_SIZE = 4;
+
+	/** The mark of a stored plane in the index. */
+	private static final byte STORED = 1;
+
+	/** The index of a data file, guarded by the lock of the cache. */
+	private static class Segment {
+		/** The name of the data file. */
+		final String name;
+
+		/** The size of the planes. */
+		final int planeSize;
+
+		/** The stored planes. */
+		final BitSet stored = new BitSet();
+
+		/** The planes being written. */
+		final BitSet pending = new BitSet();
+
+		/** The size of the data file, planes being written included. */
+		long length;
+
+		/** The number of reads and writes in progress. */
+		int users;
+
+		/** Whether the segment has been evicted. */
+		boolean evicted;
+
+		Segment(String name, int planeSize, long length) {
+			this.name = name;
+			this.planeSize = planeSize;
+			this.length = length;
+		}
+	}
+
+	/** The directory of the cache. */
+	private final File directory;
+
+	/** The maximum size of the data files, in bytes. */
+	private final long maxSize;
+
+	/** The indexes of the data files, least recently used first. */
+	private final LinkedHashMap<String, Segment> segments;
+
+	/** The evicted data files still in use, not yet deleted. */
+	private final Set<String> deleting;
+
+	/** The size of all the data files, in bytes. */
+	private long size;
+
+	/**
+	 * Creates a new instance, the files already in the directory are reused.
+	 *
+	 * @param directory
+	 *            The directory of the cache, created if needed.
+	 * @param maxSize
+	 *            The maximum size of the cache, in bytes.
+	 */
+	public PlaneCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		segments = new LinkedHashMap<String, Segment>(16, 0.75f, true);
+		deleting = new HashSet<String>();
+		size = 0;
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+			GLogManager.log(
+			        String.format("%s: %s", "cannot create the plane cache",
+			                directory), Level.WARNING);
+
+		File[] dataFiles = directory.listFiles();
+		if (dataFiles == null)
+			return;
+
+		// oldest first, so that the access order is the one of the last run
+		Arrays.sort(dataFiles, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				long m1 = f1.lastModified();
+				long m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+
+		for (File file : dataFiles) {
+			String name = file.getName();
+			if (!name.endsWith(DATA_EXTENSION))
+				continue;
+
+			Segment segment = readIndex(name, file.length());
+			if (segment == null) {
+				// no usable index: the planes cannot be trusted
+				delete(name);
+				continue;
+			}
+
+			segments.put(name, segment);
+			size += segment.length;
+		}
+
+		delete(evict(0, null));
+	}
+
+	/**
+	 * Returns the default directory of the cache, in the home of the user.
+	 *
+	 * @return See above.
+	 */
+	public static File getDefaultDirectory() {
+		return new File(System.getProperty("user.home") + File.separator
+		        + ".omega" + File.separator + "planes");
+	}
+
+	/**
+	 * Returns a cached plane.
+	 *
+	 * @param pixelsID
+	 *            The identifier of the pixels set.
+	 * @param z
+	 *            The selected z-section.
+	 * @param c
+	 *            The selected channel.
+	 * @param t
+	 *            The selected timepoint.
+	 * @return The plane, or <code>null</code> if it is not in the cache.
+	 */
+	public byte[] get(long pixelsID, int z, int c, int t) {
+		String name = getName(pixelsID, z, c);
+		Segment segment;
+
+		synchronized (this) {
+			// get, not containsKey: it marks the file as the most recently
+			// used
+			segment = segments.get(name);
+			if (segment == null || !segment.stored.get(t))
+				return null;
+			segment.users++;
+		}
+
+		try {
+			File dataFile = new File(directory, name);
+			byte[] plane = new byte[segment.planeSize];
+			RandomAccessFile data = new RandomAccessFile(dataFile, "r");
+			try {
+				// a plain read, not a mapping: the file can be deleted as
+				// soon as it is closed
+				read(data.getChannel(), ByteBuffer.wrap(plane), (long) t
+				        * segment.planeSize);
+			} finally {
+				data.close();
+			}
+			dataFile.setLastModified(System.currentTimeMillis());
+			return plane;
+		} catch (IOException e) {
+			GLogManager.log(String.format("%s: %s",
+			        "cannot read the cached plane", e.toString()),
+			        Level.WARNING);
+		} finally {
+			release(segment);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stores a plane, evicting the least recently used planes if needed.
+	 *
+	 * @param pixelsID
+	 *            The identifier of the pixels set.
+	 * @param z
+	 *            The selected z-section.
+	 * @param c
+	 *            The selected channel.
+	 * @param t
+	 *            The selected timepoint.
+	 * @param plane
+	 *            The plane.
+	 */
+	public void put(long pixelsID, int z, int c, int t, byte[] plane) {
+		if (plane.length == 0 || plane.length > maxSize)
+			return;
+
+		String name = getName(pixelsID, z, c);
+		Segment segment;
+		List<String> evicted;
+
+		synchronized (this) {
+			// the files of an evicted segment are still there
+			if (deleting.contains(name))
+				return;
+
+			segment = segments.get(name);
+			if (segment == null) {
+				segment = new Segment(name, plane.length, 0);
+				segments.put(name, segment);
+			} else if (segment.planeSize != plane.length) {
+				// not the planes we have stored: don't mix them
+				return;
+			}
+
+			if (segment.stored.get(t) || segment.pending.get(t))
+				return;
+
+			long end = ((long) t + 1) * plane.length;
+			long growth = Math.max(0, end - segment.length);
+			evicted = evict(growth, name);
+
+			if (size + growth > maxSize) {
+				if (segment.length == 0 && segment.users == 0)
+					segments.remove(name);
+				segment = null;
+			} else {
+				segment.length += growth;
+				size += growth;
+				segment.pending.set(t);
+				segment.users++;
+			}
+		}
+
+		delete(evicted);
+
+		if (segment == null)
+			return;
+
+		boolean written = false;
+		try {
+			RandomAccessFile data = new RandomAccessFile(new File(directory,
+			        name), "rw");
+			try {
+				write(data.getChannel(), ByteBuffer.wrap(plane), (long) t
+				        * plane.length);
+			} finally {
+				data.close();
+			}
+
+			// mark the plane once it has been written
+			RandomAccessFile index = new RandomAccessFile(getIndexFile(name),
+			        "rw");
+			try {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(0, plane.length);
+				write(index.getChannel(), header, 0);
+				write(index.getChannel(), ByteBuffer.wrap(new byte[] { STORED }),
+				        HEADER_SIZE + t);
+			} finally {
+				index.close();
+			}
+
+			written = true;
+		} catch (IOException e) {
+			GLogManager.log(String.format("%s: %s",
+			        "cannot store the plane in the cache", e.toString()),
+			        Level.WARNING);
+		} finally {
+			synchronized (this) {
+				segment.pending.clear(t);
+				if (written)
+					segment.stored.set(t);
+			}
+			release(segment);
+		}
+	}
+
+	/**
+	 * Ends a read or a write, deletes the files of the segment if it has been
+	 * evicted meanwhile and this was the last use.
+	 */
+	private void release(Segment segment) {
+		synchronized (this) {
+			segment.users--;
+			if (!segment.evicted || segment.users > 0)
+				return;
+		}
+
+		delete(segment.name);
+
+		synchronized (this) {
+			deleting.remove(segment.name);
+		}
+	}
+
+	/**
+	 * Evicts the least recently used segments (but the given one) until
+	 * <code>growth</code> more bytes fit in the cache. Must be called with
+	 * the lock held.
+	 *
+	 * @return the names of the data files to delete, once the lock is
+	 *         released
+	 */
+	private List<String> evict(long growth, String keep) {
+		List<String> evicted = new ArrayList<String>();
+		Iterator<Map.Entry<String, Segment>> i = segments.entrySet()
+		        .iterator();
+
+		while (size + growth > maxSize && i.hasNext()) {
+			Segment segment = i.next().getValue();
+			if (segment.name.equals(keep))
+				continue;
+
+			i.remove();
+			size -= segment.length;
+			segment.evicted = true;
+			deleting.add(segment.name);
+
+			// otherwise deleted by the last reader or writer
+			if (segment.users == 0)
+				evicted.add(segment.name);
+		}
+
+		return evicted;
+	}
+
+	private void delete(List<String> names) {
+		for (String name : names) {
+			delete(name);
+			synchronized (this) {
+				deleting.remove(name);
+			}
+		}
+	}
+
+	private void delete(String name) {
+		File dataFile = new File(directory, name);
+		File indexFile = getIndexFile(name);
+		if (!indexFile.delete() && indexFile.exists())
+			indexFile.deleteOnExit();
+		if (!dataFile.delete() && dataFile.exists())
+			dataFile.deleteOnExit();
+	}
+
+	/**
+	 * Reads the index of a data file.
+	 *
+	 * @return the index, <code>null</code> if it is missing or corrupted
+	 */
+	private Segment readIndex(String name, long length) {
+		File indexFile = getIndexFile(name);
+		if (!indexFile.isFile())
+			return null;
+
+		try {
+			RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+			try {
+				if (index.length() < HEADER_SIZE
+				        || index.length() > Integer.MAX_VALUE)
+					return null;
+
+				byte[] content = new byte[(int) index.length()];
+				index.readFully(content);
+				int planeSize = ByteBuffer.wrap(content).getInt(0);
+				if (planeSize <= 0)
+					return null;
+
+				Segment segment = new Segment(name, planeSize, length);
+				for (int t = 0; t < content.length - HEADER_SIZE; t++) {
+					// a plane marked but not entirely in the data file is
+					// ignored
+					if (content[HEADER_SIZE + t] == STORED
+					        && ((long) t + 1) * planeSize <= length)
+						segment.stored.set(t);
+				}
+				return segment;
+			} finally {
+				index.close();
+			}
+		} catch (IOException e) {
+			GLogManager.log(String.format("%s: %s",
+			        "cannot read the plane cache index", e.toString()),
+			        Level.WARNING);
+		}
+
+		return null;
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buffer,
+	        long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0)
+				throw new IOException("unexpected end of the cached planes");
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer,
+	        long position) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position());
+	}
+
+	private File getIndexFile(String name) {
+		return new File(directory, name.substring(0, name.length()
+		        - DATA_EXTENSION.length())
+		        + INDEX_EXTENSION);
+	}
+
+	private static String getName(long pixelsID, int z, int c) {
+		return pixelsID + "_" + z + "_" + c + DATA_EXTENSION;
+	}
+}
@@ -0,0 +1,126 @@
+package ch.supsi.omega.pixels;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+
+import ch.supsi.omega.tracking.parameters.ImageDataHandler;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * Reads the planes of local multi-page TIFF files and raw binary stacks,
+ * through memory mappings, without going through an OMERO server. Every opened
+ * file gets a pixels ID, valid only for this source.
+ *
+ * @author galliva
+ */
+public class LocalPixelSource implements PixelSource {
+	private final Map<Long, LocalStack> stacks = new HashMap<Long, LocalStack>();
+	private long nextID = 1;
+
+	/**
+	 * Opens a multi-page TIFF file (uncompressed, grey, 8, 16 or 32 bits),
+	 * its pages ordered as z-sections, then channels, then frames.
+	 *
+	 * @return the image, with the pixels ID to be used with this source
+	 * @throws IOException
+	 *             if the file cannot be read or is not supported
+	 */
+	public ImageDataHandler openTiff(final File file, final int sizeZ,
+	        final int sizeC) throws IOException {
+		return this.add(TiffParser.parse(file, sizeZ, sizeC));
+	}
+
+	/**
+	 * Opens a raw binary stack: a header of <code>headerSize</code> bytes
+	 * followed by the planes (z-sections, then channels, then frames); the
+	 * number of frames is given by the size of the file.
+	 *
+	 * @return the image, with the pixels ID to be used with this source
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public ImageDataHandler openRaw(final File file, final int sizeX,
+	        final int sizeY, final int sizeZ, final int sizeC,
+	        final int byteWidth, final boolean bigEndian, final long headerSize)
+	        throws IOException {
+		if (!file.isFile())
+			throw new IOException(String.format("%s: no such file", file));
+
+		return this.add(LocalStack.raw(file, sizeX, sizeY, sizeZ, sizeC,
+		        byteWidth, bigEndian, headerSize));
+	}
+
+	private synchronized ImageDataHandler add(final LocalStack stack) {
+		final long pixelsID = this.nextID++;
+		this.stacks.put(pixelsID, stack);
+
+		final File file = stack.getFile();
+		final String dataset = file.getAbsoluteFile().getParentFile() == null ? ""
+		        : file.getAbsoluteFile().getParentFile().getName();
+
+		// the physical sizes are not known
+		return new ImageDataHandler(file.getName(), dataset, pixelsID, stack.getSizeT(), stack.getSizeX(),
+		        stack.getSizeY(), 0.0, 0.0, 0.0);
+	}
+
+	private synchronized LocalStack getStack(final long pixelsID)
+	        throws IOException {
+		final LocalStack stack = this.stacks.get(pixelsID);
+
+		if (stack == null)
+			throw new IOException(String.format("unknown local pixels ID %d",
+			        pixelsID));
+
+		return stack;
+	}
+
+	@Override
+	public byte[] getPlane(final long pixelsID, final int z, final int t,
+	        final int c) throws Exception {
+		try {
+			return this.getStack(pixelsID).readPlane(z, t, c);
+		} catch (final IOException e) {
+			GLogManager.log(
+			        String.format("%s: %s", "cannot retrieve the plane",
+			                e.toString()), Level.SEVERE);
+		}
+
+		return null;
+	}
+
+	@Override
+	public int getByteWidht(final long pixelsID) {
+		try {
+			return this.getStack(pixelsID).getByteWidth();
+		} catch (final IOException e) {
+			// same default as the gateway
+			return 2;
+		}
+	}
+
+	@Override
+	public boolean isBigEndian(final long pixelsID) {
+		try {
+			return this.getStack(pixelsID).isBigEndian();
+		} catch (final IOException e) {
+			return true;
+		}
+	}
+
+	@Override
+	public void closePixelsStores(final long pixelsID) {
+		final LocalStack stack;
+
+		synchronized (this) {
+			stack = this.stacks.get(pixelsID);
+		}
+
+		if (stack != null) {
+			stack.close();
+		}
+	}
+}
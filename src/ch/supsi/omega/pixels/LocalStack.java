@@ -0,0 +1,173 @@
+package ch.supsi.omega.pixels;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A stack of uncompressed planes in a local file. Every plane is made of one
+ * or more segments (the strips of a TIFF page, a single segment in a raw
+ * file), read with positional reads of the file channel: no mapping, which
+ * would keep the file locked on Windows until it is collected. The planes are ordered as in OMERO
+ * (XYZCT): plane <code>(z, c, t)</code> is number
+ * <code>(t * sizeC + c) * sizeZ + z</code>.
+ *
+ * @author galliva
+ */
+class LocalStack {
+	private final File file;
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+	private final int sizeC;
+	private final int sizeT;
+	private final int byteWidth;
+	private final boolean bigEndian;
+
+	/** For each plane, the file offsets of its segments. */
+	private final long[][] offsets;
+
+	/** For each plane, the lengths of its segments. */
+	private final long[][] lengths;
+
+	private RandomAccessFile input = null;
+
+	LocalStack(final File file, final int sizeX, final int sizeY,
+	        final int sizeZ, final int sizeC, final int byteWidth,
+	        final boolean bigEndian, final long[][] offsets,
+	        final long[][] lengths) throws IOException {
+		if ((sizeZ < 1) || (sizeC < 1)
+		        || ((offsets.length % (sizeZ * sizeC)) != 0))
+			throw new IOException(String.format(
+			        "%s: %d planes do not make %d z-sections x %d channels",
+			        file, offsets.length, sizeZ, sizeC));
+
+		this.file = file;
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.sizeC = sizeC;
+		this.sizeT = offsets.length / (sizeZ * sizeC);
+		this.byteWidth = byteWidth;
+		this.bigEndian = bigEndian;
+		this.offsets = offsets;
+		this.lengths = lengths;
+	}
+
+	/**
+	 * A raw file: an optional header followed by the planes, one after the
+	 * other.
+	 */
+	static LocalStack raw(final File file, final int sizeX, final int sizeY,
+	        final int sizeZ, final int sizeC, final int byteWidth,
+	        final boolean bigEndian, final long headerSize) throws IOException {
+		final long planeSize = (long) sizeX * sizeY * byteWidth;
+
+		if (planeSize <= 0)
+			throw new IOException(String.format("%s: empty planes", file));
+
+		if ((headerSize < 0) || (headerSize > file.length()))
+			throw new IOException(String.format(
+			        "%s: header of %d bytes in a file of %d bytes", file,
+			        headerSize, file.length()));
+
+		final long planesNumber = (file.length() - headerSize) / planeSize;
+
+		if (planesNumber > Integer.MAX_VALUE)
+			throw new IOException(String.format("%s: %d planes", file,
+			        planesNumber));
+
+		final int planes = (int) planesNumber;
+		final long[][] offsets = new long[planes][];
+		final long[][] lengths = new long[planes][];
+
+		for (int i = 0; i < planes; i++) {
+			offsets[i] = new long[] { headerSize + (i * planeSize) };
+			lengths[i] = new long[] { planeSize };
+		}
+
+		return new LocalStack(file, sizeX, sizeY, sizeZ, sizeC, byteWidth,
+		        bigEndian, offsets, lengths);
+	}
+
+	File getFile() {
+		return this.file;
+	}
+
+	int getSizeX() {
+		return this.sizeX;
+	}
+
+	int getSizeY() {
+		return this.sizeY;
+	}
+
+	int getSizeT() {
+		return this.sizeT;
+	}
+
+	int getByteWidth() {
+		return this.byteWidth;
+	}
+
+	boolean isBigEndian() {
+		return this.bigEndian;
+	}
+
+	byte[] readPlane(final int z, final int t, final int c) throws IOException {
+		if ((z < 0) || (z >= this.sizeZ) || (c < 0) || (c >= this.sizeC)
+		        || (t < 0) || (t >= this.sizeT))
+			throw new IOException(String.format(
+			        "%s: no plane z=%d, t=%d, c=%d", this.file, z, t, c));
+
+		final int index = (((t * this.sizeC) + c) * this.sizeZ) + z;
+		final byte[] plane = new byte[this.sizeX * this.sizeY * this.byteWidth];
+		final FileChannel channel = this.getChannel();
+
+		int position = 0;
+
+		for (int i = 0; i < this.offsets[index].length; i++) {
+			final int length = (int) Math.min(this.lengths[index][i],
+			        plane.length - position);
+			final ByteBuffer segment = ByteBuffer.wrap(plane, position, length);
+			final long offset = this.offsets[index][i] - position;
+
+			while (segment.hasRemaining()) {
+				if (channel.read(segment, offset + segment.position()) < 0)
+					throw new IOException(String.format(
+					        "%s: truncated plane %d", this.file, index));
+			}
+
+			position += length;
+		}
+
+		if (position < plane.length)
+			throw new IOException(String.format("%s: truncated plane %d",
+			        this.file, index));
+
+		return plane;
+	}
+
+	private synchronized FileChannel getChannel() throws IOException {
+		if (this.input == null) {
+			this.input = new RandomAccessFile(this.file, "r");
+		}
+
+		return this.input.getChannel();
+	}
+
+	synchronized void close() {
+		if (this.input == null)
+			return;
+
+		try {
+			this.input.close();
+		} catch (final IOException e) {
+			// nothing to do, the file was only read
+		}
+
+		this.input = null;
+	}
+}
@@ -0,0 +1,34 @@
+package ch.supsi.omega.pixels;
+
+/**
+ * Where the raw planes of the images come from: the OMERO server
+ * (<code>Gateway</code>) or local files ({@link LocalPixelSource}). A pixels
+ * set is identified by its ID, as in the <code>ImageDataHandler</code>.
+ *
+ * @author galliva
+ */
+public interface PixelSource {
+	/**
+	 * Retrieves a plane. Several planes can be retrieved in parallel.
+	 *
+	 * @return the raw plane, <code>null</code> if it cannot be retrieved
+	 */
+	public byte[] getPlane(long pixelsID, int z, int t, int c)
+	        throws Exception;
+
+	/**
+	 * @return the number of bytes per pixel
+	 */
+	public int getByteWidht(long pixelsID);
+
+	/**
+	 * @return the byte order of the pixels in the planes
+	 */
+	public boolean isBigEndian(long pixelsID);
+
+	/**
+	 * Releases what is held to read the planes of the pixels set; it is
+	 * acquired again if more planes are retrieved.
+	 */
+	public void closePixelsStores(long pixelsID);
+}
@@ -0,0 +1,272 @@
+package ch.supsi.omega.pixels;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the structure of an uncompressed, single sample, strip organized
+ * (multi-page) TIFF file: every page is a plane, read later through a memory
+ * mapping of its strips. Compressed, tiled, RGB, signed or floating point
+ * and BigTIFF files are not supported.
+ *
+ * @author galliva
+ */
+class TiffParser {
+	private static final int IMAGE_WIDTH = 256;
+	private static final int IMAGE_LENGTH = 257;
+	private static final int BITS_PER_SAMPLE = 258;
+	private static final int COMPRESSION = 259;
+	private static final int STRIP_OFFSETS = 273;
+	private static final int SAMPLES_PER_PIXEL = 277;
+	private static final int STRIP_BYTE_COUNTS = 279;
+	private static final int TILE_WIDTH = 322;
+	private static final int SAMPLE_FORMAT = 339;
+
+	/** The sample format of unsigned integers, the only one supported. */
+	private static final int UNSIGNED = 1;
+
+	/** More pages than this are taken for a malformed file. */
+	private static final int MAX_PAGES = 1 << 20;
+
+	private static final int SHORT = 3;
+	private static final int LONG = 4;
+
+	private final File file;
+	private final FileChannel channel;
+	private ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+	private TiffParser(final File file, final FileChannel channel) {
+		this.file = file;
+		this.channel = channel;
+	}
+
+	static LocalStack parse(final File file, final int sizeZ, final int sizeC)
+	        throws IOException {
+		final RandomAccessFile input = new RandomAccessFile(file, "r");
+
+		try {
+			return new TiffParser(file, input.getChannel()).parse(sizeZ, sizeC);
+		} finally {
+			input.close();
+		}
+	}
+
+	private LocalStack parse(final int sizeZ, final int sizeC)
+	        throws IOException {
+		final ByteBuffer header = this.read(0, 8);
+		final int byteOrder = header.getShort(0);
+
+		if (byteOrder == 0x4949) {
+			this.order = ByteOrder.LITTLE_ENDIAN;
+		} else if (byteOrder != 0x4d4d)
+			throw this.error("not a TIFF file");
+
+		header.order(this.order);
+
+		if (header.getShort(2) != 42)
+			throw this.error("not a TIFF file (or BigTIFF, not supported)");
+
+		final List<long[]> offsets = new ArrayList<long[]>();
+		final List<long[]> lengths = new ArrayList<long[]>();
+		int width = -1;
+		int height = -1;
+		int bits = -1;
+
+		// the offsets of the pages already read, a loop means a bad file
+		final Set<Long> pages = new HashSet<Long>();
+		long ifd = header.getInt(4) & 0xffffffffL;
+
+		while (ifd != 0) {
+			if (ifd >= this.channel.size())
+				throw this.error("bad page offset");
+			if (!pages.add(ifd))
+				throw this.error("the pages are linked in a loop");
+			if (pages.size() > MAX_PAGES)
+				throw this.error("too many pages");
+
+			final int entries = this.read(ifd, 2).getShort(0) & 0xffff;
+			final ByteBuffer directory = this.read(ifd + 2, (entries * 12) + 4);
+
+			int pageWidth = 0;
+			int pageHeight = 0;
+			int pageBits = 1;
+			int compression = 1;
+			int samples = 1;
+			int sampleFormat = UNSIGNED;
+			long[] stripOffsets = null;
+			long[] stripLengths = null;
+
+			for (int i = 0; i < entries; i++) {
+				final int entry = i * 12;
+				final int tag = directory.getShort(entry) & 0xffff;
+
+				switch (tag) {
+				case IMAGE_WIDTH:
+					pageWidth = (int) this.values(directory, entry)[0];
+					break;
+				case IMAGE_LENGTH:
+					pageHeight = (int) this.values(directory, entry)[0];
+					break;
+				case BITS_PER_SAMPLE:
+					pageBits = (int) this.values(directory, entry)[0];
+					break;
+				case COMPRESSION:
+					compression = (int) this.values(directory, entry)[0];
+					break;
+				case SAMPLES_PER_PIXEL:
+					samples = (int) this.values(directory, entry)[0];
+					break;
+				case SAMPLE_FORMAT:
+					sampleFormat = (int) this.values(directory, entry)[0];
+					break;
+				case STRIP_OFFSETS:
+					stripOffsets = this.values(directory, entry);
+					break;
+				case STRIP_BYTE_COUNTS:
+					stripLengths = this.values(directory, entry);
+					break;
+				case TILE_WIDTH:
+					throw this.error("tiled TIFF files are not supported");
+				default:
+					break;
+				}
+			}
+
+			if (compression != 1)
+				throw this.error("compressed TIFF files are not supported");
+			if (samples != 1)
+				throw this.error("only grey TIFF files are supported");
+			if (sampleFormat != UNSIGNED)
+				throw this.error(String.format(
+				        "sample format %d not supported, only unsigned integers",
+				        sampleFormat));
+			if ((pageBits != 8) && (pageBits != 16) && (pageBits != 32))
+				throw this.error(String.format(
+				        "%d bits per pixel not supported", pageBits));
+			if ((stripOffsets == null) || (stripLengths == null)
+			        || (stripOffsets.length != stripLengths.length))
+				throw this.error("bad strips");
+
+			if (offsets.isEmpty()) {
+				width = pageWidth;
+				height = pageHeight;
+				bits = pageBits;
+			} else if ((pageWidth != width) || (pageHeight != height)
+			        || (pageBits != bits))
+				throw this.error("the pages have different sizes");
+
+			this.addPage(stripOffsets, stripLengths, offsets, lengths);
+
+			ifd = directory.getInt(entries * 12) & 0xffffffffL;
+		}
+
+		if (offsets.isEmpty())
+			throw this.error("no pages");
+
+		return new LocalStack(this.file, width, height, sizeZ, sizeC,
+		        bits / 8, this.order == ByteOrder.BIG_ENDIAN,
+		        offsets.toArray(new long[offsets.size()][]),
+		        lengths.toArray(new long[lengths.size()][]));
+	}
+
+	/**
+	 * Adds the strips of a page, the strips following each other in the file
+	 * are merged into one segment, so that they are mapped at once.
+	 */
+	private void addPage(final long[] stripOffsets,
+	        final long[] stripLengths, final List<long[]> offsets,
+	        final List<long[]> lengths) {
+		final long[] pageOffsets = new long[stripOffsets.length];
+		final long[] pageLengths = new long[stripOffsets.length];
+		int segments = 0;
+
+		for (int i = 0; i < stripOffsets.length; i++) {
+			if ((segments > 0)
+			        && ((pageOffsets[segments - 1] + pageLengths[segments - 1]) == stripOffsets[i])) {
+				pageLengths[segments - 1] += stripLengths[i];
+			} else {
+				pageOffsets[segments] = stripOffsets[i];
+				pageLengths[segments] = stripLengths[i];
+				segments++;
+			}
+		}
+
+		final long[] segmentOffsets = new long[segments];
+		final long[] segmentLengths = new long[segments];
+		System.arraycopy(pageOffsets, 0, segmentOffsets, 0, segments);
+		System.arraycopy(pageLengths, 0, segmentLengths, 0, segments);
+
+		offsets.add(segmentOffsets);
+		lengths.add(segmentLengths);
+	}
+
+	/**
+	 * Returns the SHORT or LONG values of a directory entry.
+	 */
+	private long[] values(final ByteBuffer directory, final int entry)
+	        throws IOException {
+		final int type = directory.getShort(entry + 2) & 0xffff;
+		final int count = directory.getInt(entry + 4);
+		final int size;
+
+		if (type == SHORT) {
+			size = 2;
+		} else if (type == LONG) {
+			size = 4;
+		} else
+			throw this.error(String.format("unexpected type %d for tag %d",
+			        type, directory.getShort(entry) & 0xffff));
+
+		if (count < 1)
+			throw this.error("empty tag");
+		if (((long) count * size) > this.channel.size())
+			throw this.error("bad tag size");
+
+		// the values are in the entry if they fit, elsewhere otherwise
+		final ByteBuffer values;
+		final int start;
+
+		if ((count * size) <= 4) {
+			values = directory;
+			start = entry + 8;
+		} else {
+			values = this.read(directory.getInt(entry + 8) & 0xffffffffL, count
+			        * size);
+			start = 0;
+		}
+
+		final long[] result = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			result[i] = size == 2 ? values.getShort(start + (i * 2)) & 0xffff
+			        : values.getInt(start + (i * 4)) & 0xffffffffL;
+		}
+
+		return result;
+	}
+
+	private ByteBuffer read(final long position, final int length)
+	        throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		while (buffer.hasRemaining()) {
+			if (this.channel.read(buffer, position + buffer.position()) < 0)
+				throw this.error("unexpected end of file");
+		}
+
+		buffer.order(this.order);
+		return buffer;
+	}
+
+	private IOException error(final String message) {
+		return new IOException(String.format("%s: %s", this.file, message));
+	}
+}
@@ -25,8 +25,7 @@ import ch.supsi.omega.common.FileHelper;
 import ch.supsi.omega.common.OmegaConstants;
 import ch.supsi.omega.common.StringHelper;
 import ch.supsi.omega.common.science.Greeks;
-import ch.supsi.omega.segmentation.TPoint;
-import ch.supsi.omega.segmentation.trajectory.Trajectory;
+import ch.supsi.omega.segmentation.trajectory.TrajectorySet;
 
 /**
  * Paints the image.
@@ -61,14 +60,9 @@ public class ImageCanvas extends JPanel {
 	private double scale = 1.0;
 
 	/**
-	 * Trajectories to be drawed (data exploration).
+	 * Trajectories to be drawed (data exploration), scaled when painted.
 	 */
-	private List<Trajectory> trajectories = null;
-
-	/**
-	 * Trajectories to be drawed, scaled.
-	 */
-	private List<Trajectory> trajectoriesScaled = null;
+	private TrajectorySet trajectories = null;
 
 	/**
 	 * Color used to draw the trajectories.
@@ -128,15 +122,11 @@ public class ImageCanvas extends JPanel {
 		this.scale = scale;
 	}
 
-	public void setTrajectories(final List<Trajectory> trajectories) {
+	public void setTrajectories(final TrajectorySet trajectories) {
 		this.trajectories = trajectories;
 		this.randomColorsGenerated = false;
 	}
 
-	public void setTrajectoriesScaled(final List<Trajectory> trajectoriesScaled) {
-		this.trajectoriesScaled = trajectoriesScaled;
-	}
-
 	public Color getTrajectoryColor() {
 		return this.trajectoryColor;
 	}
@@ -267,7 +257,7 @@ public class ImageCanvas extends JPanel {
 
 		// start drawing trajectories...
 
-		if (this.trajectoriesScaled != null) {
+		if (this.trajectories != null) {
 			// set the point size
 			final int pointSize = (int) (this.radius * this.scale);
 
@@ -284,50 +274,47 @@ public class ImageCanvas extends JPanel {
 			}
 
 			// draw trajectories
-			int currentTrajectoryIndex = 0;
-
-			for (final Trajectory trajectory : this.trajectoriesScaled) {
-				if ((this.trajectoryToDraw > -1)
-				        && (this.trajectoryToDraw != currentTrajectoryIndex)) {
-					currentTrajectoryIndex++;
+			for (int t = 0; t < this.trajectories.size(); t++) {
+				if ((this.trajectoryToDraw > -1) && (this.trajectoryToDraw != t)) {
 					continue;
 				}
 
-				final List<TPoint> points = trajectory.getPoints();
-
-				for (int i = 0; i < (points.size() - 1); i++) {
-					final TPoint one = points.get(i);
-					final TPoint two = points.get(i + 1);
+				for (int i = 0; i < (this.trajectories.getLength(t) - 1); i++) {
+					final int oneFrame = this.trajectories.getFrame(t, i);
+					final double oneX = this.trajectories.getX(t, i)
+					        * this.scale;
+					final double oneY = this.trajectories.getY(t, i)
+					        * this.scale;
 
 					for (int frame = 1; frame <= this.currentT; frame++) {
 						// first point
-						if (one.getFrame() == 1) {
+						if (oneFrame == 1) {
 							g2D.setColor(Color.YELLOW);
 							// g2D.fill(new
 							// Ellipse2D.Double(one.getX()-pointSize/2,
 							// one.getY()-pointSize/2, pointSize, pointSize));
-							g2D.drawOval((int) one.getX() - (pointSize / 2),
-							        (int) one.getY() - (pointSize / 2),
-							        pointSize, pointSize);
+							g2D.drawOval((int) oneX - (pointSize / 2),
+							        (int) oneY - (pointSize / 2), pointSize,
+							        pointSize);
 						}
 
 						// lines
-						else if (one.getFrame() == frame) {
+						else if (oneFrame == frame) {
 							// set the correct color, the choosen or the random
 							// one
 							if (colorWasChoosen) {
 								g2D.setColor(this.trajectoryColor);
 							} else {
-								g2D.setColor(this.trajectoryRandomColors
-								        .get(currentTrajectoryIndex));
+								g2D.setColor(this.trajectoryRandomColors.get(t));
 							}
 
-							g2D.draw(new Line2D.Double(one.getX(), one.getY(),
-							        two.getX(), two.getY()));
+							g2D.draw(new Line2D.Double(oneX, oneY,
+							        this.trajectories.getX(t, i + 1)
+							                * this.scale, this.trajectories
+							                .getY(t, i + 1) * this.scale));
 						}
 					}
 				}
-				currentTrajectoryIndex++;
 			}
 		}
 	}
@@ -388,9 +375,9 @@ public class ImageCanvas extends JPanel {
 		final Random random = new Random();
 
 		this.trajectoryRandomColors = new ArrayList<Color>(
-		        this.trajectoriesScaled.size());
+		        this.trajectories.size());
 
-		for (int i = 0; i < this.trajectoriesScaled.size(); i++) {
+		for (int i = 0; i < this.trajectories.size(); i++) {
 			final float fr = (random.nextFloat() / 2.0f) + 0.5f;
 			final float fg = (random.nextFloat() / 2.0f) + 0.5f;
 			final float fb = (random.nextFloat() / 2.0f) + 0.5f;
@@ -446,28 +433,4 @@ public class ImageCanvas extends JPanel {
 			        OmegaConstants.OMEGA_TITLE, JOptionPane.ERROR_MESSAGE);
 		}
 	}
-
-	public void scaleTrajectories() {
-		if (this.trajectories != null) {
-			this.trajectoriesScaled = new ArrayList<Trajectory>();
-
-			for (final Trajectory trajectory : this.trajectories) {
-				try {
-					this.trajectoriesScaled
-					        .add((Trajectory) trajectory.clone());
-				} catch (final CloneNotSupportedException e) {
-					// nothing we can do...
-				}
-			}
-
-			for (final Trajectory trajectory : this.trajectoriesScaled) {
-				final List<TPoint> points = trajectory.getPoints();
-
-				for (final TPoint point : points) {
-					point.setX(point.getX() * this.scale);
-					point.setY(point.getY() * this.scale);
-				}
-			}
-		}
-	}
 }
@@ -29,7 +29,6 @@ public class ImageCanvasListener extends MouseAdapter
 				
 				imageCanvas.callRevalidate();
 				
-				imageCanvas.scaleTrajectories();
 				imageCanvas.repaint();
 			}
 		});
@@ -44,7 +43,6 @@ public class ImageCanvasListener extends MouseAdapter
 				
 				imageCanvas.callRevalidate();
 				
-				imageCanvas.scaleTrajectories();
 				imageCanvas.repaint();
 			}
 		});
@@ -81,7 +79,6 @@ public class ImageCanvasListener extends MouseAdapter
 		{
 			imageCanvas.getjPanelViewer().getReviewFrame().displayBrowser();
 			imageCanvas.setTrajectories(null);
-			imageCanvas.setTrajectoriesScaled(null);
 			imageCanvas.setScale(1.0);
 		}
 	}
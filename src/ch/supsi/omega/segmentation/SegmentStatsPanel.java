@@ -0,0 +1,198 @@
+package ch.supsi.omega.segmentation;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.common.science.Greeks;
+import ch.supsi.omega.exploration.processing.MomentsIndex;
+import ch.supsi.omega.exploration.processing.Stats;
+import ch.supsi.omega.segmentation.trajectory.Trajectory;
+
+/**
+ * Shows D and S_MSS of each segment of the current trajectory, and of the
+ * points being selected. The moments of the trajectory are indexed once, so
+ * the values follow the labels and the selection as they change; the indexes
+ * of the last trajectories shown are kept.
+ */
+public class SegmentStatsPanel extends JPanel {
+	private static final long serialVersionUID = 4613025729371186405L;
+
+	private static final String[] COLUMNS = { "segment", "label", "points",
+	        "D", "SMSS" };
+
+	private DefaultTableModel model = new DefaultTableModel(COLUMNS, 0) {
+		private static final long serialVersionUID = -5826937311472906534L;
+
+		@Override
+		public boolean isCellEditable(int row, int column) {
+			return false;
+		}
+	};
+
+	private JLabel selectionLabel = new JLabel(" ");
+
+	private JLabel unitsLabel = new JLabel(" ");
+
+	/**
+	 * The moments of the current trajectory.
+	 */
+	private MomentsIndex momentsIndex = null;
+
+	/**
+	 * The indexes of the last trajectories, the most recent first.
+	 */
+	private final LinkedList<IndexedTrajectory> indexes = new LinkedList<IndexedTrajectory>();
+
+	private double[] gamma = new double[Stats.MAX_NU + 1];
+	private double[] D = new double[Stats.MAX_NU + 1];
+	private double[] fit = new double[3];
+
+	public SegmentStatsPanel() {
+		super(new BorderLayout());
+
+		JTable table = new JTable(model);
+		JScrollPane scrollPane = new JScrollPane(table);
+		scrollPane.setPreferredSize(new Dimension(280, 200));
+
+		add(unitsLabel, BorderLayout.NORTH);
+		add(scrollPane, BorderLayout.CENTER);
+		add(selectionLabel, BorderLayout.SOUTH);
+	}
+
+	/**
+	 * Indexes the moments of a trajectory.
+	 *
+	 * @param trajectory
+	 *            the trajectory, not normalized
+	 * @param sizes
+	 *            the pixel size in x and y and Delta_t, or null for pixels
+	 *            and frames
+	 */
+	public void setTrajectory(Trajectory trajectory, double[] sizes) {
+		if (trajectory == null || trajectory.getPoints().size() < 2) {
+			momentsIndex = null;
+			setLabels(null);
+			return;
+		}
+
+		momentsIndex = getIndex(trajectory, sizes);
+
+		unitsLabel.setText(sizes != null ? "D [" + Greeks.MU + "m\u00B2/s]"
+		        : "D [pixel\u00B2/frame]");
+
+		setLabels(trajectory.getLabels());
+	}
+
+	private MomentsIndex getIndex(Trajectory trajectory, double[] sizes) {
+		for (IndexedTrajectory indexed : indexes) {
+			if (indexed.trajectory == trajectory
+			        && indexed.points == trajectory.getPoints().size()
+			        && Arrays.equals(indexed.sizes, sizes)) {
+				indexes.remove(indexed);
+				indexes.addFirst(indexed);
+				return indexed.index;
+			}
+		}
+
+		List<TPoint> points = trajectory.getPoints();
+		double[] x = new double[points.size()];
+		double[] y = new double[points.size()];
+		double sizeX = sizes != null ? sizes[0] : 1.0;
+		double sizeY = sizes != null ? sizes[1] : 1.0;
+
+		for (int i = 0; i < x.length; i++) {
+			x[i] = points.get(i).getX() * sizeX;
+			y[i] = points.get(i).getY() * sizeY;
+		}
+
+		MomentsIndex index = new MomentsIndex(x, y, sizes != null ? sizes[2]
+		        : 1.0, OmegaConstants.SEGMENT_STATS_INDEX_SIZE);
+
+		indexes.addFirst(new IndexedTrajectory(trajectory, sizes, index));
+
+		if (indexes.size() > OmegaConstants.SEGMENT_STATS_INDEXES)
+			indexes.removeLast();
+
+		return index;
+	}
+
+	/**
+	 * Recomputes D and S_MSS of the segments of the labels.
+	 */
+	public void setLabels(int[] labels) {
+		model.setRowCount(0);
+
+		if (momentsIndex == null || labels == null)
+			return;
+
+		int segment = 0;
+
+		for (int from = 0; from < labels.length;) {
+			int to = from;
+			while (to < labels.length && labels[to] == labels[from])
+				to++;
+
+			momentsIndex.gamma__D__S_MSS(from, to, gamma, D, fit);
+
+			model.addRow(new Object[] { ++segment, labels[from],
+			        String.format("%d - %d", from + 1, to + 1), format(D[2]),
+			        format(fit[0]) });
+
+			from = to;
+		}
+	}
+
+	/**
+	 * Shows D and S_MSS of the points from..to, in any order.
+	 */
+	public void setSelection(int from, int to) {
+		if (momentsIndex == null || from < 0 || to < 0 || from == to) {
+			clearSelection();
+			return;
+		}
+
+		momentsIndex.gamma__D__S_MSS(Math.min(from, to), Math.max(from, to),
+		        gamma, D, fit);
+
+		selectionLabel.setText(String.format(
+		        "selection %d - %d: D = %s, SMSS = %s", Math.min(from, to) + 1,
+		        Math.max(from, to) + 1, format(D[2]), format(fit[0])));
+	}
+
+	public void clearSelection() {
+		selectionLabel.setText(" ");
+	}
+
+	private static String format(double value) {
+		return Double.isNaN(value) || Double.isInfinite(value) ? "-" : String
+		        .format("%.4g", value);
+	}
+
+	/**
+	 * The moments index of a trajectory, with the sizes of its points.
+	 */
+	private static final class IndexedTrajectory {
+		private final Trajectory trajectory;
+		private final int points;
+		private final double[] sizes;
+		private final MomentsIndex index;
+
+		private IndexedTrajectory(Trajectory trajectory, double[] sizes,
+		        MomentsIndex index) {
+			this.trajectory = trajectory;
+			this.points = trajectory.getPoints().size();
+			this.sizes = sizes != null ? sizes.clone() : null;
+			this.index = index;
+		}
+	}
+}
@@ -50,6 +50,11 @@ public class SegmentationFrame extends JFrame implements ChangeListener {
 	 */
 	private JSlider trajectorySlider = new JSlider();
 
+	/**
+	 * JPanel who shows D and SMSS of the segments of the current trajectory.
+	 */
+	private SegmentStatsPanel segmentStatsPanel = new SegmentStatsPanel();
+
 	/**
 	 * JFrame who shows an overview of the current trajectory in the original
 	 * image.
@@ -145,6 +150,7 @@ public class SegmentationFrame extends JFrame implements ChangeListener {
 			}
 			segmentationPanel.calculateDrawedTrajectory();
 			segmentationPanel.repaint();
+			updateSelectionStats(-1);
 		}
 
 		@Override
@@ -319,6 +325,7 @@ public class SegmentationFrame extends JFrame implements ChangeListener {
 		// getContentPane().add(segmentationPanel, BorderLayout.CENTER);
 		getContentPane().add(jScrollPaneSegmentation, BorderLayout.CENTER);
 		getContentPane().add(trajectorySlider, BorderLayout.SOUTH);
+		getContentPane().add(segmentStatsPanel, BorderLayout.EAST);
 
 		pack();
 		setVisible(true);
@@ -357,6 +364,7 @@ public class SegmentationFrame extends JFrame implements ChangeListener {
 						labels[i] = pattern.getId();
 
 					currentTrajectory.setLabels(labels);
+					updateSegmentStats();
 
 					// undo manager
 					currentUndoManager.addToStack(labels.clone());
@@ -374,6 +382,51 @@ public class SegmentationFrame extends JFrame implements ChangeListener {
 		}
 	}
 
+	/**
+	 * Updates D and SMSS of the segments, after the labels of the current
+	 * trajectory have changed.
+	 */
+	public void updateSegmentStats() {
+		if (currentTrajectory != null)
+			segmentStatsPanel.setLabels(currentTrajectory.getLabels());
+	}
+
+	/**
+	 * Updates D and SMSS of the selected points: the two clicked points, or
+	 * the first one and the point under the mouse.
+	 * 
+	 * @param pointedIndex
+	 *            the index of the point under the mouse, -1 if none
+	 */
+	public void updateSelectionStats(int pointedIndex) {
+		if (segmentationPanel.getClickNumber() == 2)
+			segmentStatsPanel.setSelection(segmentationPanel.getIndexOne(),
+			        segmentationPanel.getIndexTwo());
+		else if (segmentationPanel.getClickNumber() == 1)
+			segmentStatsPanel.setSelection(segmentationPanel.getIndexOne(),
+			        pointedIndex);
+		else
+			segmentStatsPanel.clearSelection();
+	}
+
+	/**
+	 * Returns the pixel sizes and Delta_t of the image, null if they are not
+	 * known.
+	 */
+	private double[] getImageSizes() {
+		if (sptExecutionInfo == null || sptExecutionInfo.getImageData() == null)
+			return null;
+
+		double[] sizes = { sptExecutionInfo.getImageData().getSizeX(),
+		        sptExecutionInfo.getImageData().getSizeY(),
+		        sptExecutionInfo.getImageData().getSizeT() };
+
+		if (sizes[0] <= 0.0 || sizes[1] <= 0.0 || sizes[2] <= 0.0)
+			return null;
+
+		return sizes;
+	}
+
 	public void stateChanged(ChangeEvent e) {
 		setCurrentTrajectory();
 		currentUndoManager = undoManagers.get(trajectorySlider.getValue() - 1);
@@ -429,6 +482,12 @@ public class SegmentationFrame extends JFrame implements ChangeListener {
 		}
 
 		if (currentTrajectory != null) {
+			// the moments of the original points, the labels are shared
+			segmentStatsPanel.setTrajectory(
+			        trajectories.get(trajectorySlider.getValue() - 1),
+			        getImageSizes());
+			segmentStatsPanel.clearSelection();
+
 			segmentationPanel.setCurrentTrajectory(currentTrajectory);
 
 			segmentationPanel.resetView();
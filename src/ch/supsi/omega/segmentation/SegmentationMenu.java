@@ -221,6 +221,7 @@ public class SegmentationMenu
 				int[] labels = segmentationFrame.getCurrentTrajectory().getLabels();
 				for (int i = 0; i < labels.length; i++)
 					labels[i] = 0;
+				segmentationFrame.updateSegmentStats();
 				segmentationFrame.repaint();
 
 				// undo manager
@@ -252,6 +253,7 @@ public class SegmentationMenu
 					currentUndoManager.addToStack(labels.clone());
 					trajectoryIndex++;
 				}
+				segmentationFrame.updateSegmentStats();
 				segmentationFrame.setUndoRedoMenuItemsStatus();
 			}
 		});
@@ -383,6 +385,7 @@ public class SegmentationMenu
 			redoAction.setEnabled(currentUndoManager.isCanRedo());
 		}
 
+		segmentationFrame.updateSegmentStats();
 		segmentationFrame.repaint();
 	}
 
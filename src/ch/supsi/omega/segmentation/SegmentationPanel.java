@@ -214,7 +214,9 @@ class SegmentationPanel extends JPanel implements ComponentListener
 		setPreferredSize(preferred);
 		
 		addComponentListener(this);
-		addMouseListener(new SegmentationPanelListener(this));
+		SegmentationPanelListener listener = new SegmentationPanelListener(this);
+		addMouseListener(listener);
+		addMouseMotionListener(listener);
 	}
 
 	public void setClickedPoint(int index)
@@ -83,12 +83,28 @@ public class SegmentationPanelListener extends MouseAdapter
 			int temp = PointFinder.findPoint(segmentationPanel.getDrawingTrajectory().getPoints(), p.x, p.y);
 
 			segmentationPanel.setClickedPoint(temp);
+			segmentationPanel.getSegmentationFrame().updateSelectionStats(temp);
 		}
 		// right click
 		if (ev.isPopupTrigger())
 			menu.show(ev.getComponent(), ev.getX(), ev.getY());
 	}
 
+	/**
+	 * Shows the stats of the points being selected, after the first click.
+	 */
+	public void mouseMoved(MouseEvent ev)
+	{
+		if (!segmentationPanel.getSegmentationFrame().isCanSegment() || segmentationPanel.getClickNumber() != 1)
+			return;
+
+		Point p = ev.getPoint();
+
+		int temp = PointFinder.findPoint(segmentationPanel.getDrawingTrajectory().getPoints(), p.x, p.y);
+
+		segmentationPanel.getSegmentationFrame().updateSelectionStats(temp);
+	}
+
 	public void mouseReleased(MouseEvent e)
 	{
 		// right click
@@ -1,22 +1,26 @@
 package ch.supsi.omega.segmentation.trajectory;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import ch.supsi.omega.common.OmegaConstants;
-import ch.supsi.omega.segmentation.TPoint;
 
 import com.galliva.gallibrary.GLogManager;
 
 /**
- * Loads the trajectories from file.
+ * Loads the trajectories from file. The files are parsed by several threads
+ * (OmegaConstants.TRAJECTORIES_LOADER_THREADS by default), the IDs of the
+ * trajectories still follow the order of the files. The columns of each file
+ * are copied once, into their slot of the columns of the set.
  * @author galliva
  */
 public final class TrajectoriesLoader
@@ -26,6 +30,8 @@ public final class TrajectoriesLoader
 
 	private List<String>	files					= new ArrayList<String>();
 
+	private int				parallelism			= OmegaConstants.TRAJECTORIES_LOADER_THREADS;
+
 	public String getWorkingDirectory()
 	{
 		return workingDirectory;
@@ -46,6 +52,20 @@ public final class TrajectoriesLoader
 		this.filesExtension = filesExtension;
 	}
 
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism the number of threads parsing the files, 1 to parse
+	 *           them in the calling thread
+	 */
+	public void setParallelism(int parallelism)
+	{
+		this.parallelism = Math.max(1, parallelism);
+	}
+
 	public TrajectoriesLoader()
 	{
 	}
@@ -57,41 +77,180 @@ public final class TrajectoriesLoader
 	}
 
 	/**
-	 * Loads all the trajectories in the workingDirectory directory.
+	 * Loads all the trajectories in the workingDirectory directory, from its
+	 * TrajectoryStore if it has one.
 	 * @return a List<Trajectory> of trajectories
 	 */
 	public List<Trajectory> loadTrajectories()
 	{
-		List<Trajectory> trajectories = new ArrayList<Trajectory>();
+		return loadTrajectorySet().toTrajectories();
+	}
+
+	/**
+	 * Loads all the trajectories in the workingDirectory directory as
+	 * loadTrajectories does, without creating a TPoint per point.
+	 */
+	public TrajectorySet loadTrajectorySet()
+	{
+		if (OmegaConstants.TRACKS_FILES_EXTENSION.equals(filesExtension))
+		{
+			TrajectoryStore store = TrajectoryStore.find(new File(workingDirectory));
+
+			if (store != null)
+				return store.loadTrajectorySet();
+		}
 
 		getFiles();
 
-		int id = 0;
-		for (String file : files)
+		Columns[] loaded = new Columns[files.size()];
+
+		if (parallelism <= 1 || files.size() < 2)
+		{
+			TrajectoryFileParser parser = new TrajectoryFileParser();
+
+			for (int i = 0; i < loaded.length; i++)
+				loaded[i] = loadTrajectory(parser, i);
+		}
+		else
+			loadInParallel(loaded);
+
+		int trajectories = 0;
+		int points = 0;
+
+		for (Columns trajectory : loaded)
+		{
+			if (trajectory != null)
+			{
+				trajectories++;
+				points += trajectory.frames.length;
+			}
+		}
+
+		int[] ids = new int[trajectories];
+		int[] offsets = new int[trajectories + 1];
+		int[] frames = new int[points];
+		double[] x = new double[points];
+		double[] y = new double[points];
+		double[] SNR = new double[points];
+		double[] totalSignal = new double[points];
+		int[] cntSignal = new int[points];
+		int t = 0;
+
+		for (int i = 0; i < loaded.length; i++)
 		{
-			id++;
+			Columns trajectory = loaded[i];
+
+			if (trajectory == null)
+				continue;
+
+			int offset = offsets[t];
+			int length = trajectory.frames.length;
+
+			System.arraycopy(trajectory.frames, 0, frames, offset, length);
+			System.arraycopy(trajectory.x, 0, x, offset, length);
+			System.arraycopy(trajectory.y, 0, y, offset, length);
+			System.arraycopy(trajectory.SNR, 0, SNR, offset, length);
+			System.arraycopy(trajectory.totalSignal, 0, totalSignal, offset, length);
+			System.arraycopy(trajectory.cntSignal, 0, cntSignal, offset, length);
+
+			ids[t] = i + 1;
+			offsets[++t] = offset + length;
+			// the columns of the file are no longer needed
+			loaded[i] = null;
+		}
+
+		return new TrajectorySet(ids, offsets, frames, x, y, SNR, totalSignal, cntSignal);
+	}
+
+	/**
+	 * Parses the files with a pool of threads, each one taking the next file
+	 * not yet parsed.
+	 * @param loaded receives the trajectory of each file
+	 */
+	private void loadInParallel(final Columns[] loaded)
+	{
+		final AtomicInteger nextFile = new AtomicInteger();
+		final int threads = Math.min(parallelism, loaded.length);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
 
-			List<TPoint> points = processFile(workingDirectory + file);
-			if (points != null && points.size() > 0)
+		for (int t = 0; t < threads; t++)
+		{
+			results.add(executor.submit(new Callable<Void>()
 			{
-				Trajectory trajectory = new Trajectory();
-				trajectory.setTrajectoryId(id);
-				trajectory.setPoints(points);
-				trajectory.sizeLabelsAccordinglyToPoints();
-				trajectory.getTrajectoryInformation().setNormalized(false);
+				public Void call()
+				{
+					TrajectoryFileParser parser = new TrajectoryFileParser();
+					int i;
+
+					while ((i = nextFile.getAndIncrement()) < loaded.length && !Thread.currentThread().isInterrupted())
+						loaded[i] = loadTrajectory(parser, i);
+
+					return null;
+				}
+			}));
+		}
+
+		executor.shutdown();
 
-				trajectories.add(trajectory);
+		for (Future<Void> result : results)
+		{
+			try
+			{
+				result.get();
+			}
+			catch (InterruptedException e)
+			{
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (ExecutionException e)
+			{
+				GLogManager.log("error loading trajectories: " + e.getCause(), Level.SEVERE);
 			}
 		}
-				
+	}
+
+	/**
+	 * @param index the position of the file, the ID is the next one
+	 * @return the columns of the trajectory of the file, null if the file has
+	 *         no valid points
+	 */
+	private Columns loadTrajectory(TrajectoryFileParser parser, int index)
+	{
+		try
+		{
+			if (!parser.parse(new File(workingDirectory + files.get(index))))
+				return null;
+		}
+		catch (Exception e)
+		{
+			// nothing we can do...
+			return null;
+		}
+
+		if (parser.size() == 0)
+			return null;
+
+		Columns trajectory = new Columns(parser.size());
+
 		// if we need to invert X and Y (SPT DLL "bug"!)
-		if(OmegaConstants.INVERT_TRAJECTORY_POINTS)
+		int xColumn = OmegaConstants.INVERT_TRAJECTORY_POINTS ? TrajectoryStore.Y : TrajectoryStore.X;
+		int yColumn = OmegaConstants.INVERT_TRAJECTORY_POINTS ? TrajectoryStore.X : TrajectoryStore.Y;
+
+		// the new DLL has also stats included (0 otherwise)
+		for (int i = 0; i < parser.size(); i++)
 		{
-			for(Trajectory trajectory : trajectories)
-				CoordsInverter.InvertCoordinates(trajectory);
+			trajectory.frames[i] = (int) parser.get(i, TrajectoryStore.FRAME);
+			trajectory.x[i] = parser.get(i, xColumn);
+			trajectory.y[i] = parser.get(i, yColumn);
+			trajectory.SNR[i] = parser.get(i, TrajectoryStore.SNR);
+			trajectory.totalSignal[i] = parser.get(i, TrajectoryStore.TOTAL_SIGNAL);
+			trajectory.cntSignal[i] = (int) parser.get(i, TrajectoryStore.CNT_SIGNAL);
 		}
 
-		return trajectories;
+		return trajectory;
 	}
 
 	/**
@@ -134,94 +293,26 @@ public final class TrajectoriesLoader
 	}
 
 	/**
-	 * Process a trajectory file.
-	 * @param file the file to be processed
-	 * @return a List<Point> of Points
+	 * The columns of the points of a trajectory file that the TrajectorySet
+	 * keeps.
 	 */
-	private List<TPoint> processFile(String file)
+	private static final class Columns
 	{
-		List<TPoint> points = new ArrayList<TPoint>();
-
-		try
+		private final int[]		frames;
+		private final double[]	x;
+		private final double[]	y;
+		private final double[]	SNR;
+		private final double[]	totalSignal;
+		private final int[]		cntSignal;
+
+		private Columns(int points)
 		{
-			FileInputStream fstream = new FileInputStream(file);
-			DataInputStream in = new DataInputStream(fstream);
-			BufferedReader br = new BufferedReader(new InputStreamReader(in));
-
-			String strLine;
-			int pointID = 1;
-			while ((strLine = br.readLine()) != null)
-			{
-				String[] splitted = splitString(strLine);
-
-				if (splitted != null)
-				{
-					try
-					{
-						int frame = Integer.valueOf(splitted[0].trim());
-						double x   = Double.valueOf(splitted[1].trim());
-						double y   = Double.valueOf(splitted[2].trim());
-						
-						// the new DLL has also stats included
-						double SNR = 0.0;
-						double totalSig = 0.0;
-						int cntSig = 0;
-						
-						if(splitted.length > 3)
-						{
-							SNR 		= Double.valueOf(splitted[7].trim());
-							totalSig = Double.valueOf(splitted[10].trim());
-							cntSig 	= Integer.valueOf(splitted[11].trim());
-						}
-
-						TPoint p = new TPoint(pointID, frame, x, y, SNR, totalSig, cntSig);
-						points.add(p);
-						pointID++;
-					}
-					catch (NumberFormatException ee)
-					{
-						GLogManager.log("point skipped: " + ee.toString(), Level.WARNING);
-						continue;
-					}
-				}
-			}
-
-			in.close();
-
-			return points;
-		}
-		catch (Exception e)
-		{
-			// nothing we can do...
-			return null;
-		}
-	}
-
-	private String[] splitString(String strLine)
-	{
-		String[] splitted = new String[20];
-
-		try
-		{
-			strLine = strLine.trim();
-			
-			if(strLine.length() < 5)
-				return null;
-			
-			splitted = strLine.split(OmegaConstants.TRACKS_FILES_LINE_SEPARATOR);
-
-			if (splitted.length < 3)
-			{
-				GLogManager.log("point skipped: not enough information", Level.WARNING);
-				return null;
-			}
-
-			return splitted;
-		}
-		catch (Exception e)
-		{
-			GLogManager.log("point skipped: " + e.toString(), Level.WARNING);
-			return null;
+			frames = new int[points];
+			x = new double[points];
+			y = new double[points];
+			SNR = new double[points];
+			totalSignal = new double[points];
+			cntSignal = new int[points];
 		}
 	}
 }
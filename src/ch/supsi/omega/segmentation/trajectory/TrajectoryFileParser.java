@@ -0,0 +1,121 @@
+package ch.supsi.omega.segmentation.trajectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+
+import ch.supsi.omega.common.GrowableDoubleArray;
+import ch.supsi.omega.common.NumberTokenizer;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * Parses a trajectory file (frame x y, or the 12 columns of the SPT DLL) into
+ * primitive columns, reused from one file to the next. The lines with less
+ * than 3 values are skipped, and so are the points with a value that is not a
+ * number; a line with more than 3 but less than 12 values makes the whole file
+ * invalid, as the old DLL files have 3 columns and the new ones 12.
+ * @author galliva
+ */
+final class TrajectoryFileParser
+{
+	static final int							COLUMNS	= 12;
+
+	private final GrowableDoubleArray		line		= new GrowableDoubleArray(COLUMNS);
+	private final GrowableDoubleArray[]	columns	= new GrowableDoubleArray[COLUMNS];
+	private int									columnsNumber;
+
+	TrajectoryFileParser()
+	{
+		for (int c = 0; c < COLUMNS; c++)
+			columns[c] = new GrowableDoubleArray(256);
+	}
+
+	/**
+	 * @return false if the file is not a valid trajectory file, no points are
+	 *         kept then
+	 */
+	boolean parse(File file) throws IOException
+	{
+		for (GrowableDoubleArray column : columns)
+			column.clear();
+
+		columnsNumber = 3;
+
+		NumberTokenizer tokenizer = new NumberTokenizer(file);
+
+		try
+		{
+			while (true)
+			{
+				int count;
+
+				try
+				{
+					count = tokenizer.readLine(line);
+				}
+				catch (NumberFormatException e)
+				{
+					GLogManager.log("point skipped: " + e.toString(), Level.WARNING);
+					continue;
+				}
+
+				if (count < 0)
+					break;
+
+				if (count == 0)
+					continue;
+
+				if (count < 3)
+				{
+					GLogManager.log("point skipped: not enough information", Level.WARNING);
+					continue;
+				}
+
+				if (count > 3 && count < COLUMNS)
+				{
+					for (GrowableDoubleArray column : columns)
+						column.clear();
+
+					return false;
+				}
+
+				if (count >= COLUMNS)
+					columnsNumber = COLUMNS;
+
+				for (int c = 0; c < COLUMNS; c++)
+					columns[c].add(c < count ? line.get(c) : 0.0);
+			}
+		}
+		finally
+		{
+			tokenizer.close();
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the number of points of the last file parsed
+	 */
+	int size()
+	{
+		return columns[0].size();
+	}
+
+	/**
+	 * @return 12 if a point of the last file had all the columns, 3 otherwise
+	 */
+	int getColumns()
+	{
+		return columnsNumber;
+	}
+
+	/**
+	 * @param column one of the TrajectoryStore columns, the missing ones are 0
+	 */
+	double get(int point, int column)
+	{
+		return columns[column].get(point);
+	}
+}
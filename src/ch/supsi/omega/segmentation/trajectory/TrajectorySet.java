@@ -0,0 +1,259 @@
+package ch.supsi.omega.segmentation.trajectory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.supsi.omega.common.GrowableDoubleArray;
+import ch.supsi.omega.common.GrowableIntArray;
+import ch.supsi.omega.segmentation.TPoint;
+
+/**
+ * The points of a set of trajectories, kept in primitive columns (frame, x, y,
+ * SNR, total signal, signal count) one trajectory after the other: a point
+ * costs 40 bytes instead of a TPoint object and its reference. The points of
+ * trajectory t go from getOffset(t) to getOffset(t + 1).
+ * <p>
+ * The set is immutable; TPoints and Trajectories are created only when asked
+ * for, as the segmentation needs them.
+ * @author galliva
+ */
+public final class TrajectorySet
+{
+	private final int[]		ids;
+	private final int[]		offsets;
+
+	private final int[]		frames;
+	private final double[]	x;
+	private final double[]	y;
+	private final double[]	SNR;
+	private final double[]	totalSignal;
+	private final int[]		cntSignal;
+
+	private TrajectorySet(Builder builder)
+	{
+		this(builder.ids.toArray(), builder.offsets.toArray(), builder.frames.toArray(), builder.x.toArray(), builder.y.toArray(), builder.SNR.toArray(), builder.totalSignal.toArray(), builder.cntSignal.toArray());
+	}
+
+	/**
+	 * Wraps the columns, without copying them.
+	 * @param offsets the first point of each trajectory, then the number of
+	 *           points
+	 */
+	TrajectorySet(int[] ids, int[] offsets, int[] frames, double[] x, double[] y, double[] SNR, double[] totalSignal, int[] cntSignal)
+	{
+		this.ids = ids;
+		this.offsets = offsets;
+		this.frames = frames;
+		this.x = x;
+		this.y = y;
+		this.SNR = SNR;
+		this.totalSignal = totalSignal;
+		this.cntSignal = cntSignal;
+	}
+
+	/**
+	 * Copies the points of the trajectories, the empty ones are skipped.
+	 */
+	public static TrajectorySet fromTrajectories(List<Trajectory> trajectories)
+	{
+		Builder builder = new Builder();
+
+		for (Trajectory trajectory : trajectories)
+		{
+			for (TPoint p : trajectory.getPoints())
+				builder.addPoint(p.getFrame(), p.getX(), p.getY(), p.getSNR(), p.getTotalSignal(), p.getCntSignal());
+
+			builder.endTrajectory(trajectory.getTrajectoryId());
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * @return the number of trajectories
+	 */
+	public int size()
+	{
+		return ids.length;
+	}
+
+	/**
+	 * @return the number of points of all the trajectories
+	 */
+	public int getPointsNumber()
+	{
+		return frames.length;
+	}
+
+	public int getTrajectoryId(int trajectory)
+	{
+		return ids[trajectory];
+	}
+
+	/**
+	 * @return the index of the first point of the trajectory, getOffset(size())
+	 *         is the number of points
+	 */
+	public int getOffset(int trajectory)
+	{
+		return offsets[trajectory];
+	}
+
+	public int getLength(int trajectory)
+	{
+		return offsets[trajectory + 1] - offsets[trajectory];
+	}
+
+	public int getFrame(int trajectory, int point)
+	{
+		return frames[offsets[trajectory] + point];
+	}
+
+	public double getX(int trajectory, int point)
+	{
+		return x[offsets[trajectory] + point];
+	}
+
+	public double getY(int trajectory, int point)
+	{
+		return y[offsets[trajectory] + point];
+	}
+
+	public double getSNR(int trajectory, int point)
+	{
+		return SNR[offsets[trajectory] + point];
+	}
+
+	public double getTotalSignal(int trajectory, int point)
+	{
+		return totalSignal[offsets[trajectory] + point];
+	}
+
+	public int getCntSignal(int trajectory, int point)
+	{
+		return cntSignal[offsets[trajectory] + point];
+	}
+
+	/**
+	 * @return a new TPoint, its ID is the position in the trajectory (from 1)
+	 */
+	public TPoint getPoint(int trajectory, int point)
+	{
+		int i = offsets[trajectory] + point;
+
+		return new TPoint(point + 1, frames[i], x[i], y[i], SNR[i], totalSignal[i], cntSignal[i]);
+	}
+
+	/**
+	 * @return a new Trajectory with its TPoints, not normalized and with all
+	 *         the labels set to 0
+	 */
+	public Trajectory getTrajectory(int trajectory)
+	{
+		int length = getLength(trajectory);
+		List<TPoint> points = new ArrayList<TPoint>(length);
+
+		for (int i = 0; i < length; i++)
+			points.add(getPoint(trajectory, i));
+
+		Trajectory t = new Trajectory();
+		t.setTrajectoryId(ids[trajectory]);
+		t.setPoints(points);
+		t.sizeLabelsAccordinglyToPoints();
+		t.getTrajectoryInformation().setNormalized(false);
+
+		return t;
+	}
+
+	/**
+	 * @return a new Trajectory for each trajectory of the set
+	 */
+	public List<Trajectory> toTrajectories()
+	{
+		List<Trajectory> trajectories = new ArrayList<Trajectory>(ids.length);
+
+		for (int t = 0; t < ids.length; t++)
+			trajectories.add(getTrajectory(t));
+
+		return trajectories;
+	}
+
+	/**
+	 * Collects the points of the trajectories one after the other.
+	 */
+	public static final class Builder
+	{
+		private final GrowableIntArray		ids;
+		private final GrowableIntArray		offsets;
+
+		private final GrowableIntArray		frames;
+		private final GrowableDoubleArray	x;
+		private final GrowableDoubleArray	y;
+		private final GrowableDoubleArray	SNR;
+		private final GrowableDoubleArray	totalSignal;
+		private final GrowableIntArray		cntSignal;
+
+		public Builder()
+		{
+			this(16, 1024);
+		}
+
+		/**
+		 * @param trajectories the expected number of trajectories
+		 * @param points the expected number of points of all the trajectories
+		 */
+		public Builder(int trajectories, int points)
+		{
+			ids = new GrowableIntArray(trajectories);
+			offsets = new GrowableIntArray(trajectories + 1);
+			frames = new GrowableIntArray(points);
+			x = new GrowableDoubleArray(points);
+			y = new GrowableDoubleArray(points);
+			SNR = new GrowableDoubleArray(points);
+			totalSignal = new GrowableDoubleArray(points);
+			cntSignal = new GrowableIntArray(points);
+
+			offsets.add(0);
+		}
+
+		/**
+		 * Adds a point to the current trajectory.
+		 */
+		public void addPoint(int frame, double x, double y, double SNR, double totalSignal, int cntSignal)
+		{
+			frames.add(frame);
+			this.x.add(x);
+			this.y.add(y);
+			this.SNR.add(SNR);
+			this.totalSignal.add(totalSignal);
+			this.cntSignal.add(cntSignal);
+		}
+
+		/**
+		 * Ends the current trajectory, nothing is added if it has no points.
+		 * @return false if the trajectory was empty
+		 */
+		public boolean endTrajectory(int id)
+		{
+			if (frames.size() == offsets.get(offsets.size() - 1))
+				return false;
+
+			ids.add(id);
+			offsets.add(frames.size());
+
+			return true;
+		}
+
+		/**
+		 * @return the set of the trajectories added
+		 * @throws IllegalStateException if the last trajectory was not ended
+		 */
+		public TrajectorySet build()
+		{
+			if (frames.size() != offsets.get(offsets.size() - 1))
+				throw new IllegalStateException("the last trajectory was not ended");
+
+			return new TrajectorySet(this);
+		}
+	}
+}
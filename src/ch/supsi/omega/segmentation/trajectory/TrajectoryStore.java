@@ -0,0 +1,582 @@
+package ch.supsi.omega.segmentation.trajectory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+
+import ch.supsi.omega.common.OmegaConstants;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * All the trajectories of an image packed in a single file, stored next to the
+ * trajectory files (OmegaConstants.TRAJECTORIES_STORE_FILE). The file starts
+ * with an index (name, first point and number of points of each trajectory),
+ * followed by the values of all the points column by column, so that a column
+ * of a trajectory is read from the memory mapped file without any parsing.
+ *
+ * Layout, big endian:
+ *
+ * <pre>
+ * int magic, int version, int columns (3 or 12), int trajectories, int points
+ * for each trajectory: UTF name, int first point, int points
+ * int    frame[points]
+ * double x[points] ... total_signal[points] (10 columns)
+ * int    signal_count[points]
+ * </pre>
+ *
+ * The values are the ones of the trajectory files (x and y not inverted), the
+ * columns missing in the files are stored as 0. A store older than one of the
+ * trajectory files of its directory is not used: the files are read instead.
+ * @author galliva
+ */
+public final class TrajectoryStore
+{
+	public static final int		FRAME				= 0;
+	public static final int		X					= 1;
+	public static final int		Y					= 2;
+	public static final int		PEAK_SIGNAL		= 3;
+	public static final int		MEAN_SIGNAL		= 4;
+	public static final int		MEAN_BACKGROUND	= 5;
+	public static final int		MEAN_NOISE		= 6;
+	public static final int		SNR				= 7;
+	public static final int		M0					= 8;
+	public static final int		M2					= 9;
+	public static final int		TOTAL_SIGNAL		= 10;
+	public static final int		CNT_SIGNAL		= 11;
+
+	private static final int	MAGIC				= 0x4F4D5452;
+	private static final int	VERSION			= 1;
+	private static final int	COLUMNS			= 12;
+
+	/**
+	 * The number of stores kept open.
+	 */
+	private static final int	OPEN_STORES		= 8;
+
+	/**
+	 * The stores opened, by directory, the least recently used first. A store
+	 * is opened again only if its file changed.
+	 */
+	private static final Map<File, TrajectoryStore>	openStores	= new LinkedHashMap<File, TrajectoryStore>(16, 0.75f, true)
+	{
+		private static final long	serialVersionUID	= 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<File, TrajectoryStore> eldest)
+		{
+			return size() > OPEN_STORES;
+		}
+	};
+
+	private final File						file;
+	private final long						lastModified;
+	private final MappedByteBuffer		buffer;
+
+	private final int							columns;
+	private final String[]					names;
+	private final int[]						firstPoints;
+	private final int[]						lengths;
+	private final Map<String, Integer>	indexes			= new HashMap<String, Integer>();
+
+	private final int							framesStart;
+	private final int							valuesStart;
+	private final int							countsStart;
+	private final int							pointsNumber;
+
+	private TrajectoryStore(File file) throws IOException
+	{
+		this.file = file;
+		lastModified = file.lastModified();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try
+		{
+			if (raf.length() > Integer.MAX_VALUE)
+				throw new IOException("trajectory store too large: " + file);
+
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}
+		finally
+		{
+			// the mapping stays valid
+			raf.close();
+		}
+
+		try
+		{
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException("not a trajectory store: " + file);
+
+			columns = buffer.getInt();
+			int trajectoriesNumber = buffer.getInt();
+			pointsNumber = buffer.getInt();
+
+			// each trajectory takes at least 10 bytes of the index
+			if (trajectoriesNumber < 0 || pointsNumber < 0 || trajectoriesNumber > buffer.remaining() / 10)
+				throw new IOException("corrupted trajectory store: " + file);
+
+			names = new String[trajectoriesNumber];
+			firstPoints = new int[trajectoriesNumber];
+			lengths = new int[trajectoriesNumber];
+
+			for (int t = 0; t < trajectoriesNumber; t++)
+			{
+				names[t] = readUTF(buffer);
+				firstPoints[t] = buffer.getInt();
+				lengths[t] = buffer.getInt();
+
+				if (firstPoints[t] < 0 || lengths[t] < 0 || (long) firstPoints[t] + lengths[t] > pointsNumber)
+					throw new IOException("corrupted trajectory store: " + file);
+
+				indexes.put(names[t], t);
+			}
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException("truncated trajectory store: " + file);
+		}
+
+		framesStart = buffer.position();
+
+		long values = framesStart + 4L * pointsNumber;
+		long counts = values + 8L * (COLUMNS - 2) * pointsNumber;
+
+		// the offsets of the points then fit in an int
+		if (counts + 4L * pointsNumber > buffer.capacity())
+			throw new IOException("truncated trajectory store: " + file);
+
+		valuesStart = (int) values;
+		countsStart = (int) counts;
+	}
+
+	private static String readUTF(MappedByteBuffer buffer) throws IOException
+	{
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+
+		return new String(bytes, "UTF-8");
+	}
+
+	/**
+	 * Opens the store of a directory.
+	 * @param directory the directory of the trajectory files
+	 * @return the store, null if the directory has none, it cannot be read or
+	 *         a trajectory file is newer than it
+	 */
+	public static TrajectoryStore find(File directory)
+	{
+		TrajectoryStore store = open(directory);
+
+		if (store == null)
+			return null;
+
+		File[] files = directory.listFiles(new FilenameFilter()
+		{
+			public boolean accept(File dir, String name)
+			{
+				return name.endsWith(OmegaConstants.TRACKS_FILES_EXTENSION);
+			}
+		});
+
+		if (files == null)
+			return null;
+
+		for (File file : files)
+		{
+			if (!store.isCurrent(file))
+				return null;
+		}
+
+		return store;
+	}
+
+	/**
+	 * Opens the store of the directory of a trajectory file, to read that
+	 * trajectory only: the other trajectory files are not checked.
+	 * @return the store, null if the directory has none, it cannot be read or
+	 *         the trajectory file is newer than it
+	 */
+	public static TrajectoryStore find(File directory, String name)
+	{
+		TrajectoryStore store = open(directory);
+
+		if (store == null || !store.isCurrent(new File(directory, name)))
+			return null;
+
+		return store;
+	}
+
+	/**
+	 * Tells whether a trajectory file, if it exists, is in the store and not
+	 * newer than it.
+	 */
+	private boolean isCurrent(File trajectoryFile)
+	{
+		long modified = trajectoryFile.lastModified();
+
+		// 0 if the file does not exist
+		return modified == 0 || (modified <= lastModified && indexes.containsKey(trajectoryFile.getName()));
+	}
+
+	private static TrajectoryStore open(File directory)
+	{
+		File key = directory.getAbsoluteFile();
+		File file = new File(key, OmegaConstants.TRAJECTORIES_STORE_FILE);
+		long modified = file.lastModified();
+
+		synchronized (openStores)
+		{
+			TrajectoryStore store = openStores.get(key);
+
+			if (store != null && store.lastModified == modified && store.buffer.capacity() == file.length())
+				return store;
+
+			openStores.remove(key);
+		}
+
+		if (!file.isFile())
+			return null;
+
+		// the file is mapped without holding the lock: at worst two threads
+		// open the same store
+		TrajectoryStore store;
+
+		try
+		{
+			store = new TrajectoryStore(file);
+		}
+		catch (IOException e)
+		{
+			GLogManager.log(String.format("%s: %s", "error opening the trajectory store", e.toString()), Level.WARNING);
+			return null;
+		}
+
+		synchronized (openStores)
+		{
+			openStores.put(key, store);
+		}
+
+		return store;
+	}
+
+	/**
+	 * Deletes the store of a directory, if any.
+	 * @return false if the store exists and cannot be deleted (on Windows, while
+	 *         it is still mapped); since it is older than the trajectory files
+	 *         written afterwards, it is no longer used anyway
+	 */
+	public static boolean delete(File directory)
+	{
+		File key = directory.getAbsoluteFile();
+		File file = new File(key, OmegaConstants.TRAJECTORIES_STORE_FILE);
+
+		synchronized (openStores)
+		{
+			openStores.remove(key);
+		}
+
+		return !file.exists() || file.delete();
+	}
+
+	/**
+	 * @return 12 if the trajectory files had all the columns of the SPT DLL, 3
+	 *         if they had only frame, x and y
+	 */
+	public int getColumns()
+	{
+		return columns;
+	}
+
+	public int getTrajectoriesNumber()
+	{
+		return names.length;
+	}
+
+	/**
+	 * @return the name of the trajectory file
+	 */
+	public String getName(int trajectory)
+	{
+		return names[trajectory];
+	}
+
+	/**
+	 * @return the index of the trajectory of the given file, -1 if not stored
+	 */
+	public int indexOf(String name)
+	{
+		Integer index = indexes.get(name);
+
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * @return the number of points of the trajectory
+	 */
+	public int getLength(int trajectory)
+	{
+		return lengths[trajectory];
+	}
+
+	public int getFrame(int trajectory, int point)
+	{
+		return buffer.getInt(framesStart + 4 * (firstPoints[trajectory] + point));
+	}
+
+	public int getCntSignal(int trajectory, int point)
+	{
+		return buffer.getInt(countsStart + 4 * (firstPoints[trajectory] + point));
+	}
+
+	/**
+	 * @param column one of X to TOTAL_SIGNAL
+	 */
+	public double getValue(int trajectory, int point, int column)
+	{
+		if (column < X || column > TOTAL_SIGNAL)
+			throw new IllegalArgumentException("not a double column: " + column);
+
+		return buffer.getDouble(valuesStart + 8 * ((column - X) * pointsNumber + firstPoints[trajectory] + point));
+	}
+
+	/**
+	 * Reads a column of a trajectory.
+	 * @param column one of X to TOTAL_SIGNAL
+	 */
+	public double[] getColumn(int trajectory, int column)
+	{
+		double[] values = new double[lengths[trajectory]];
+
+		for (int i = 0; i < values.length; i++)
+			values[i] = getValue(trajectory, i, column);
+
+		return values;
+	}
+
+	/**
+	 * Returns 2 arrays, as FileIn.readTrajectory: the x and the y coordinates.
+	 */
+	public double[][] getCoordinates(int trajectory)
+	{
+		return new double[][] { getColumn(trajectory, X), getColumn(trajectory, Y) };
+	}
+
+	/**
+	 * Loads the trajectories as TrajectoriesLoader does from the trajectory
+	 * files: the IDs follow the order of the files, the trajectories without
+	 * points are skipped.
+	 * @return a List<Trajectory> of trajectories
+	 */
+	public List<Trajectory> loadTrajectories()
+	{
+		return loadTrajectorySet().toTrajectories();
+	}
+
+	/**
+	 * Loads the trajectories without creating a TPoint per point, the empty
+	 * ones are skipped.
+	 */
+	public TrajectorySet loadTrajectorySet()
+	{
+		TrajectorySet.Builder builder = new TrajectorySet.Builder(names.length, pointsNumber);
+
+		// if we need to invert X and Y (SPT DLL "bug"!)
+		int xColumn = OmegaConstants.INVERT_TRAJECTORY_POINTS ? Y : X;
+		int yColumn = OmegaConstants.INVERT_TRAJECTORY_POINTS ? X : Y;
+
+		for (int t = 0; t < names.length; t++)
+		{
+			for (int i = 0; i < lengths[t]; i++)
+				builder.addPoint(getFrame(t, i), getValue(t, i, xColumn), getValue(t, i, yColumn), getValue(t, i, SNR), getValue(t, i, TOTAL_SIGNAL), getCntSignal(t, i));
+
+			builder.endTrajectory(t + 1);
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Packs the trajectory files of a directory into its store, replacing the
+	 * existing one. The trajectory files are left in place.
+	 * @return the number of trajectories stored
+	 */
+	public static int importDirectory(File directory) throws IOException
+	{
+		String[] children = directory.list(new FilenameFilter()
+		{
+			public boolean accept(File dir, String name)
+			{
+				return name.endsWith(OmegaConstants.TRACKS_FILES_EXTENSION);
+			}
+		});
+
+		if (children == null)
+			throw new IOException("cannot list the directory " + directory);
+
+		TrajectoryFileParser parser = new TrajectoryFileParser();
+		Columns values = new Columns();
+		int[] firstPoints = new int[children.length];
+		int[] lengths = new int[children.length];
+
+		for (int t = 0; t < children.length; t++)
+		{
+			firstPoints[t] = values.size;
+			lengths[t] = values.readFile(parser, new File(directory, children[t]));
+		}
+
+		File temp = new File(directory, OmegaConstants.TRAJECTORIES_STORE_FILE + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(values.columns);
+			out.writeInt(children.length);
+			out.writeInt(values.size);
+
+			for (int t = 0; t < children.length; t++)
+			{
+				out.writeUTF(children[t]);
+				out.writeInt(firstPoints[t]);
+				out.writeInt(lengths[t]);
+			}
+
+			for (int i = 0; i < values.size; i++)
+				out.writeInt(values.frames[i]);
+
+			for (int c = 0; c < COLUMNS - 2; c++)
+			{
+				for (int i = 0; i < values.size; i++)
+					out.writeDouble(values.values[c][i]);
+			}
+
+			for (int i = 0; i < values.size; i++)
+				out.writeInt(values.counts[i]);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		if (!delete(directory) || !temp.renameTo(new File(directory, OmegaConstants.TRAJECTORIES_STORE_FILE)))
+		{
+			temp.delete();
+			throw new IOException("cannot replace the trajectory store of " + directory);
+		}
+
+		return children.length;
+	}
+
+	/**
+	 * Writes the stored trajectories back to trajectory files in the given
+	 * directory, with 6 decimals.
+	 */
+	public void exportDirectory(File directory) throws IOException
+	{
+		int last = columns == COLUMNS ? TOTAL_SIGNAL : Y;
+
+		for (int t = 0; t < names.length; t++)
+		{
+			BufferedWriter out = new BufferedWriter(new FileWriter(new File(directory, names[t])));
+
+			try
+			{
+				for (int i = 0; i < lengths[t]; i++)
+				{
+					StringBuilder line = new StringBuilder();
+					line.append(getFrame(t, i));
+
+					for (int c = X; c <= last; c++)
+						line.append(OmegaConstants.TRACKS_FILES_LINE_SEPARATOR).append(String.format(Locale.US, "%f", getValue(t, i, c)));
+
+					if (columns == COLUMNS)
+						line.append(OmegaConstants.TRACKS_FILES_LINE_SEPARATOR).append(getCntSignal(t, i));
+
+					out.write(line.toString());
+					out.newLine();
+				}
+
+				out.newLine();
+			}
+			finally
+			{
+				out.close();
+			}
+
+			// the same trajectories: the store stays in use
+			new File(directory, names[t]).setLastModified(lastModified);
+		}
+	}
+
+	/**
+	 * The points of all the trajectories, column by column, while importing.
+	 */
+	private static final class Columns
+	{
+		private int			size		= 0;
+		private int			columns	= 3;
+		private int[]		frames	= new int[1024];
+		private double[][]	values	= new double[COLUMNS - 2][1024];
+		private int[]		counts	= new int[1024];
+
+		/**
+		 * Reads the points of a trajectory file with the rules of
+		 * TrajectoriesLoader: a malformed file makes the trajectory empty.
+		 * @return the number of points read
+		 */
+		private int readFile(TrajectoryFileParser parser, File file) throws IOException
+		{
+			if (!parser.parse(file))
+				return 0;
+
+			if (parser.getColumns() == COLUMNS)
+				columns = COLUMNS;
+
+			for (int i = 0; i < parser.size(); i++)
+			{
+				if (size == frames.length)
+					grow();
+
+				frames[size] = (int) parser.get(i, FRAME);
+
+				for (int c = 0; c < COLUMNS - 2; c++)
+					values[c][size] = parser.get(i, c + X);
+
+				counts[size] = (int) parser.get(i, CNT_SIGNAL);
+				size++;
+			}
+
+			return parser.size();
+		}
+
+		private void grow()
+		{
+			int length = frames.length * 2;
+
+			frames = Arrays.copyOf(frames, length);
+			counts = Arrays.copyOf(counts, length);
+
+			for (int c = 0; c < values.length; c++)
+				values[c] = Arrays.copyOf(values[c], length);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package ch.supsi.omega.tracking;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Keeps the buffers used to hand the planes to the SPT DLL, so that they are
+ * allocated once per run instead of once per frame.
+ *
+ * @author galliva
+ */
+public class PlaneBufferPool {
+	private final int maxBuffers;
+
+	private final LinkedList<ByteBuffer> directBuffers = new LinkedList<ByteBuffer>();
+	private final LinkedList<int[]> intBuffers = new LinkedList<int[]>();
+
+	/**
+	 * @param maxBuffers
+	 *            the maximum number of idle buffers (of each kind) kept
+	 */
+	public PlaneBufferPool(final int maxBuffers) {
+		this.maxBuffers = Math.max(1, maxBuffers);
+	}
+
+	/**
+	 * Returns a cleared direct buffer with at least the given capacity, its
+	 * limit set to <code>size</code>.
+	 */
+	public synchronized ByteBuffer takeDirect(final int size) {
+		final Iterator<ByteBuffer> it = this.directBuffers.iterator();
+
+		while (it.hasNext()) {
+			final ByteBuffer buffer = it.next();
+
+			if (buffer.capacity() >= size) {
+				it.remove();
+				buffer.clear();
+				buffer.limit(size);
+				return buffer;
+			}
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+		buffer.limit(size);
+		return buffer;
+	}
+
+	public synchronized void give(final ByteBuffer buffer) {
+		if ((buffer == null) || !buffer.isDirect())
+			return;
+
+		if (this.directBuffers.size() >= this.maxBuffers) {
+			this.directBuffers.removeFirst();
+		}
+		this.directBuffers.addLast(buffer);
+	}
+
+	/**
+	 * Returns an array with exactly the given length (its content is not
+	 * cleared).
+	 */
+	public synchronized int[] takeInts(final int length) {
+		final Iterator<int[]> it = this.intBuffers.iterator();
+
+		while (it.hasNext()) {
+			final int[] buffer = it.next();
+
+			if (buffer.length == length) {
+				it.remove();
+				return buffer;
+			}
+		}
+
+		return new int[length];
+	}
+
+	public synchronized void give(final int[] buffer) {
+		if (buffer == null)
+			return;
+
+		if (this.intBuffers.size() >= this.maxBuffers) {
+			this.intBuffers.removeFirst();
+		}
+		this.intBuffers.addLast(buffer);
+	}
+
+	/**
+	 * Drops all the idle buffers.
+	 */
+	public synchronized void clear() {
+		this.directBuffers.clear();
+		this.intBuffers.clear();
+	}
+}
@@ -0,0 +1,104 @@
+package ch.supsi.omega.tracking;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The planes of an image written to a temporary file, plane <code>t</code> at
+ * offset <code>t * planeSize</code>, so that they can be loaded again without
+ * fetching them and without keeping the movie in memory. The file is deleted
+ * by {@link #close()}.
+ *
+ * @author galliva
+ */
+class PlaneSpool {
+	private final File file;
+	private final RandomAccessFile data;
+	private final FileChannel channel;
+
+	private int planeSize = 0;
+	private int framesNumber = 0;
+
+	/**
+	 * @param directory
+	 *            the directory of the temporary file
+	 */
+	PlaneSpool(final File directory) throws IOException {
+		this.file = File.createTempFile("planes", ".spool", directory);
+		this.data = new RandomAccessFile(this.file, "rw");
+		this.channel = this.data.getChannel();
+	}
+
+	/**
+	 * Writes the plane of a frame. All the planes have the size of the first
+	 * one.
+	 */
+	synchronized void write(final int frame, final byte[] pixels)
+	        throws IOException {
+		if (this.planeSize == 0) {
+			this.planeSize = pixels.length;
+		} else if (pixels.length != this.planeSize)
+			throw new IOException(String.format(
+			        "plane %d has %d bytes instead of %d", frame,
+			        pixels.length, this.planeSize));
+
+		final ByteBuffer buffer = ByteBuffer.wrap(pixels);
+		final long position = (long) frame * this.planeSize;
+
+		while (buffer.hasRemaining()) {
+			this.channel.write(buffer, position + buffer.position());
+		}
+
+		this.framesNumber = Math.max(this.framesNumber, frame + 1);
+	}
+
+	/**
+	 * @return the number of frames, up to the last one written
+	 */
+	synchronized int getFramesNumber() {
+		return this.framesNumber;
+	}
+
+	/**
+	 * Reads the plane of a frame into the given array, which must have the
+	 * size of the planes.
+	 */
+	synchronized void read(final int frame, final byte[] pixels)
+	        throws IOException {
+		if ((frame >= this.framesNumber) || (pixels.length != this.planeSize))
+			throw new IllegalArgumentException();
+
+		final ByteBuffer buffer = ByteBuffer.wrap(pixels);
+		final long position = (long) frame * this.planeSize;
+
+		while (buffer.hasRemaining()) {
+			if (this.channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("unexpected end of the spooled planes");
+		}
+	}
+
+	/**
+	 * @return the size of the planes, 0 if none has been written
+	 */
+	synchronized int getPlaneSize() {
+		return this.planeSize;
+	}
+
+	/**
+	 * Closes and deletes the file.
+	 */
+	synchronized void close() {
+		try {
+			this.data.close();
+		} catch (final IOException e) {
+			// nothing we can do
+		}
+
+		if (!this.file.delete() && this.file.exists()) {
+			this.file.deleteOnExit();
+		}
+	}
+}
@@ -0,0 +1,330 @@
+package ch.supsi.omega.tracking;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.omero.LoginCredentials;
+import ch.supsi.omega.tracking.parameters.SPTRunParameters;
+
+/**
+ * Description of a headless SPT batch, read from a properties file:
+ *
+ * <pre>
+ * host=omero.example.org
+ * port=4064
+ * user=...
+ * password=...
+ * z=0
+ * c=0
+ * images=101,102,103
+ * outputDir=/data/tracks
+ * p0=3
+ * p1=3.0
+ * p2=0.1
+ * p3=10
+ * p4=2
+ * p9=65535
+ * minPoints=10
+ * </pre>
+ *
+ * <code>images</code> are OMERO image IDs. p5 - p8 are not read, they come
+ * from each image (T, X, Y, 0). Several values separated by commas in p0 -
+ * p4 run a parameter sweep on every image. <code>port</code>, p0 - p4, p9,
+ * <code>minPoints</code>, <code>dataset</code> (label written in the SPT
+ * information file), <code>clearOutputDir</code>, <code>fetchWorkers</code>,
+ * <code>fetchBufferDepth</code>, <code>planeCacheDir</code> and
+ * <code>planeCacheSize</code> (in MB, 0 to disable the local plane cache) are
+ * optional. When <code>password</code> is missing the
+ * <code>OMEGA_PASSWORD</code> environment variable is used.
+ * <p>
+ * Instead of <code>images</code>, <code>files</code> lists local stacks
+ * (comma separated paths) and no login is needed: <code>.tif</code> and
+ * <code>.tiff</code> files are read as multi-page TIFF files, the others as
+ * raw stacks described by <code>rawWidth</code>, <code>rawHeight</code>,
+ * <code>rawByteWidth</code> (2 by default), <code>rawBigEndian</code> (false)
+ * and <code>rawHeader</code> (bytes to skip, 0). <code>sizeZ</code> and
+ * <code>sizeC</code> (1 by default) give the number of z-sections and
+ * channels interleaved in the local stacks.
+ * <p>
+ * <code>engine</code> chooses what tracks the images: <code>dll</code>,
+ * <code>java</code> or <code>auto</code> (the default: the SPT DLL when it
+ * can be loaded, the Java engine otherwise).
+ *
+ * @author galliva
+ */
+public class SPTBatchJob {
+	public static final String ENGINE_AUTO = "auto";
+	public static final String ENGINE_DLL = "dll";
+	public static final String ENGINE_JAVA = "java";
+
+	private final LoginCredentials credentials;
+	private final int z;
+	private final int c;
+	private final List<Long> imageIDs;
+	private final List<File> files;
+	private final int sizeZ;
+	private final int sizeC;
+	private final int rawWidth;
+	private final int rawHeight;
+	private final int rawByteWidth;
+	private final boolean rawBigEndian;
+	private final int rawHeader;
+	private final String outputDir;
+	private final String datasetName;
+	private final boolean clearOutputDir;
+	private final List<SPTRunParameters> parameterSets;
+	private final int fetchWorkers;
+	private final int fetchBufferDepth;
+	private final String planeCacheDir;
+	private final int planeCacheSize;
+	private final String engine;
+
+	private SPTBatchJob(final Properties job) {
+		String password = job.getProperty("password");
+
+		if (password == null) {
+			password = System.getenv("OMEGA_PASSWORD");
+		}
+
+		this.files = new ArrayList<File>();
+
+		if (job.getProperty("files") != null) {
+			for (final String file : job.getProperty("files").split(",")) {
+				if (file.trim().length() > 0) {
+					this.files.add(new File(file.trim()));
+				}
+			}
+		}
+
+		this.sizeZ = SPTBatchJob.readInt(job, "sizeZ", 1);
+		this.sizeC = SPTBatchJob.readInt(job, "sizeC", 1);
+		this.rawWidth = SPTBatchJob.readInt(job, "rawWidth", 0);
+		this.rawHeight = SPTBatchJob.readInt(job, "rawHeight", 0);
+		this.rawByteWidth = SPTBatchJob.readInt(job, "rawByteWidth", 2);
+		this.rawBigEndian = Boolean.parseBoolean(job.getProperty(
+		        "rawBigEndian", "false").trim());
+		this.rawHeader = SPTBatchJob.readInt(job, "rawHeader", 0);
+
+		if (!this.files.isEmpty()) {
+			this.credentials = null;
+		} else if (job.getProperty("port") == null) {
+			this.credentials = new LoginCredentials(
+			        SPTBatchJob.required(job, "user"), password,
+			        SPTBatchJob.required(job, "host"));
+		} else {
+			this.credentials = new LoginCredentials(
+			        SPTBatchJob.required(job, "user"), password,
+			        SPTBatchJob.required(job, "host"), SPTBatchJob.readInt(job,
+			                "port", 0));
+		}
+
+		this.z = SPTBatchJob.readInt(job, "z", 0);
+		this.c = SPTBatchJob.readInt(job, "c", 0);
+
+		this.imageIDs = new ArrayList<Long>();
+
+		if (this.files.isEmpty()) {
+			for (final String id : SPTBatchJob.required(job, "images").split(
+			        ",")) {
+				if (id.trim().length() > 0) {
+					this.imageIDs.add(Long.valueOf(id.trim()));
+				}
+			}
+
+			if (this.imageIDs.isEmpty())
+				throw new IllegalArgumentException("no images in the job");
+		}
+
+		this.outputDir = SPTBatchJob.required(job, "outputDir");
+		this.datasetName = job.getProperty("dataset", "");
+		this.clearOutputDir = Boolean.parseBoolean(job.getProperty(
+		        "clearOutputDir", "false").trim());
+
+		final SPTRunParameters defaults = new SPTRunParameters();
+		this.parameterSets = SPTRunParameters.grid(job.getProperty("p0",
+		        defaults.getRadius()).trim(), job.getProperty("p1",
+		        defaults.getCutOff()).trim(), job.getProperty("p2",
+		        defaults.getPercentile()).trim(), job.getProperty("p3",
+		        defaults.getDisplacement()).trim(), job.getProperty("p4",
+		        defaults.getLinkRange()).trim(), job.getProperty("p9",
+		        defaults.getMaxValue()).trim(), SPTBatchJob.readInt(job,
+		        "minPoints", defaults.getMinPoints()));
+
+		this.fetchWorkers = SPTBatchJob.readInt(job, "fetchWorkers",
+		        OmegaConstants.SPT_FETCH_WORKERS);
+		this.fetchBufferDepth = SPTBatchJob.readInt(job, "fetchBufferDepth",
+		        OmegaConstants.SPT_FETCH_BUFFER_DEPTH);
+		this.planeCacheDir = job.getProperty("planeCacheDir");
+		this.planeCacheSize = SPTBatchJob.readInt(job, "planeCacheSize",
+		        OmegaConstants.PLANE_CACHE_SIZE);
+
+		this.engine = job.getProperty("engine", SPTBatchJob.ENGINE_AUTO)
+		        .trim().toLowerCase();
+
+		if (!this.engine.equals(SPTBatchJob.ENGINE_AUTO)
+		        && !this.engine.equals(SPTBatchJob.ENGINE_DLL)
+		        && !this.engine.equals(SPTBatchJob.ENGINE_JAVA))
+			throw new IllegalArgumentException(String.format(
+			        "job key engine must be auto, dll or java: %s",
+			        this.engine));
+	}
+
+	/**
+	 * Reads a job file.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a required key is missing or a value is not valid
+	 */
+	public static SPTBatchJob load(final String fileName) throws IOException {
+		final Properties job = new Properties();
+		final InputStream in = new FileInputStream(fileName);
+
+		try {
+			job.load(in);
+		} finally {
+			in.close();
+		}
+
+		return new SPTBatchJob(job);
+	}
+
+	private static String required(final Properties job, final String key) {
+		final String value = job.getProperty(key);
+
+		if ((value == null) || (value.trim().length() == 0))
+			throw new IllegalArgumentException(String.format(
+			        "missing job key: %s", key));
+
+		return value.trim();
+	}
+
+	private static int readInt(final Properties job, final String key,
+	        final int defaultValue) {
+		final String value = job.getProperty(key);
+
+		if (value == null)
+			return defaultValue;
+
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException(String.format(
+			        "job key %s must be a number: %s", key, value));
+		}
+	}
+
+	/**
+	 * @return the login credentials, <code>null</code> for a job on local
+	 *         files
+	 */
+	public LoginCredentials getCredentials() {
+		return this.credentials;
+	}
+
+	public int getZ() {
+		return this.z;
+	}
+
+	public int getC() {
+		return this.c;
+	}
+
+	public List<Long> getImageIDs() {
+		return this.imageIDs;
+	}
+
+	/**
+	 * @return the local stacks to track, empty for a job on OMERO images
+	 */
+	public List<File> getFiles() {
+		return this.files;
+	}
+
+	public boolean isLocal() {
+		return !this.files.isEmpty();
+	}
+
+	public int getSizeZ() {
+		return this.sizeZ;
+	}
+
+	public int getSizeC() {
+		return this.sizeC;
+	}
+
+	public int getRawWidth() {
+		return this.rawWidth;
+	}
+
+	public int getRawHeight() {
+		return this.rawHeight;
+	}
+
+	public int getRawByteWidth() {
+		return this.rawByteWidth;
+	}
+
+	public boolean isRawBigEndian() {
+		return this.rawBigEndian;
+	}
+
+	public int getRawHeader() {
+		return this.rawHeader;
+	}
+
+	public String getOutputDir() {
+		return this.outputDir;
+	}
+
+	public String getDatasetName() {
+		return this.datasetName;
+	}
+
+	public boolean isClearOutputDir() {
+		return this.clearOutputDir;
+	}
+
+	/**
+	 * @return the parameter sets, more than one for a parameter sweep
+	 */
+	public List<SPTRunParameters> getParameterSets() {
+		return this.parameterSets;
+	}
+
+	public int getFetchWorkers() {
+		return this.fetchWorkers;
+	}
+
+	public int getFetchBufferDepth() {
+		return this.fetchBufferDepth;
+	}
+
+	/**
+	 * @return the directory of the plane cache, <code>null</code> for the
+	 *         default one
+	 */
+	public String getPlaneCacheDir() {
+		return this.planeCacheDir;
+	}
+
+	/**
+	 * @return the size of the plane cache in MB, 0 if not used
+	 */
+	public int getPlaneCacheSize() {
+		return this.planeCacheSize;
+	}
+
+	/**
+	 * @return {@link #ENGINE_AUTO}, {@link #ENGINE_DLL} or
+	 *         {@link #ENGINE_JAVA}
+	 */
+	public String getEngine() {
+		return this.engine;
+	}
+}
@@ -0,0 +1,302 @@
+package ch.supsi.omega.tracking;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import omero.RDouble;
+import omero.model.IObject;
+import omero.model.PlaneInfoI;
+import pojos.ImageData;
+import pojos.PixelsData;
+import ch.supsi.omega.common.StringHelper;
+import ch.supsi.omega.omero.Gateway;
+import ch.supsi.omega.omero.PlaneCache;
+import ch.supsi.omega.pixels.LocalPixelSource;
+import ch.supsi.omega.tracking.parameters.ImageDataHandler;
+import ch.supsi.omega.tracking.parameters.OmeroParametersHandler;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * Runs an SPT batch without any user interface, e.g. on a compute node:
+ *
+ * <pre>
+ * java ch.supsi.omega.tracking.SPTBatchRunner job.properties
+ * </pre>
+ *
+ * The job is described in {@link SPTBatchJob}, the progress is written on
+ * the standard output as described in {@link SPTProgressLog}. Every image is
+ * tracked in its own directory of the output directory, exactly as from the
+ * SPT panel. The exit code is 0 when all the images have been tracked, 1 when
+ * at least one image failed and 2 when the job could not be started. A job on
+ * local files does not connect to OMERO at all.
+ *
+ * @author galliva
+ */
+public class SPTBatchRunner {
+	public static final int EXIT_OK = 0;
+	public static final int EXIT_IMAGES_FAILED = 1;
+	public static final int EXIT_JOB_FAILED = 2;
+
+	public static void main(final String[] args) {
+		// never open a window, not even an error dialog
+		System.setProperty("java.awt.headless", "true");
+
+		if (args.length != 1) {
+			System.err.println("usage: SPTBatchRunner <job file>");
+			System.exit(SPTBatchRunner.EXIT_JOB_FAILED);
+		}
+
+		SPTBatchJob job = null;
+
+		try {
+			job = SPTBatchJob.load(args[0]);
+		} catch (final Exception e) {
+			System.err.println(String.format("%s: %s", "Cannot read the job",
+			        e.getMessage()));
+			System.exit(SPTBatchRunner.EXIT_JOB_FAILED);
+		}
+
+		System.exit(SPTBatchRunner.run(job, new SPTProgressLog(System.out)));
+	}
+
+	/**
+	 * Runs the job and returns the exit code.
+	 */
+	public static int run(final SPTBatchJob job, final SPTProgressLog progress) {
+		if (job.isLocal())
+			return SPTBatchRunner.runLocal(job, progress);
+
+		final Gateway gateway = new Gateway();
+
+		if (job.getPlaneCacheSize() > 0) {
+			gateway.setPlaneCache(new PlaneCache(
+			        job.getPlaneCacheDir() == null ? PlaneCache
+			                .getDefaultDirectory() : new File(job
+			                .getPlaneCacheDir().trim()),
+			        job.getPlaneCacheSize() * 1024L * 1024L));
+		}
+
+		try {
+			if (!gateway.login(job.getCredentials())) {
+				System.err.println("Cannot log in");
+				return SPTBatchRunner.EXIT_JOB_FAILED;
+			}
+		} catch (final Exception e) {
+			System.err.println(String.format("%s: %s", "Cannot log in",
+			        e.toString()));
+			return SPTBatchRunner.EXIT_JOB_FAILED;
+		}
+
+		try {
+			if (!SPTBatchRunner.createOutputRoot(job))
+				return SPTBatchRunner.EXIT_JOB_FAILED;
+
+			final Map<Long, ImageData> images = new HashMap<Long, ImageData>();
+
+			try {
+				for (final ImageData image : gateway.getImages()) {
+					images.put(image.getId(), image);
+				}
+			} catch (final Exception e) {
+				System.err.println(String.format("%s: %s",
+				        "Cannot retrieve the images", e.toString()));
+				return SPTBatchRunner.EXIT_JOB_FAILED;
+			}
+
+			progress.jobStarted(job.getImageIDs().size());
+
+			final OmeroParametersHandler omeroParameters = new OmeroParametersHandler(
+			        gateway, job.getZ(), job.getC());
+			final SPTScheduler scheduler = new SPTScheduler();
+
+			for (final Long imageID : job.getImageIDs()) {
+				final ImageData image = images.get(imageID);
+
+				if (image == null) {
+					progress.imageFailed(-1, String.valueOf(imageID),
+					        "image not found");
+					continue;
+				}
+
+				SPTBatchRunner.schedule(job, progress, omeroParameters,
+				        scheduler, SPTBatchRunner.toImageDataHandler(gateway,
+				                job, image));
+			}
+
+			return SPTBatchRunner.runAll(scheduler, progress, job
+			        .getImageIDs().size());
+		} finally {
+			gateway.shutdDown();
+		}
+	}
+
+	/**
+	 * Runs a job on local stacks, read through memory mappings.
+	 */
+	private static int runLocal(final SPTBatchJob job,
+	        final SPTProgressLog progress) {
+		if (!SPTBatchRunner.createOutputRoot(job))
+			return SPTBatchRunner.EXIT_JOB_FAILED;
+
+		progress.jobStarted(job.getFiles().size());
+
+		final LocalPixelSource pixelSource = new LocalPixelSource();
+		final OmeroParametersHandler omeroParameters = new OmeroParametersHandler(
+		        pixelSource, job.getZ(), job.getC());
+		final SPTScheduler scheduler = new SPTScheduler();
+
+		for (final File file : job.getFiles()) {
+			final ImageDataHandler imageData;
+
+			try {
+				imageData = SPTBatchRunner.openLocal(pixelSource, job, file);
+			} catch (final IOException e) {
+				progress.imageFailed(-1, file.getName(), e.getMessage());
+				continue;
+			}
+
+			SPTBatchRunner.schedule(job, progress, omeroParameters, scheduler,
+			        imageData);
+		}
+
+		return SPTBatchRunner.runAll(scheduler, progress, job.getFiles()
+		        .size());
+	}
+
+	private static ImageDataHandler openLocal(
+	        final LocalPixelSource pixelSource, final SPTBatchJob job,
+	        final File file) throws IOException {
+		final String name = file.getName().toLowerCase();
+
+		if (name.endsWith(".tif") || name.endsWith(".tiff"))
+			return pixelSource.openTiff(file, job.getSizeZ(), job.getSizeC());
+
+		if ((job.getRawWidth() <= 0) || (job.getRawHeight() <= 0))
+			throw new IOException(String.format("%s: %s", file,
+			        "rawWidth and rawHeight are needed for raw files"));
+
+		return pixelSource.openRaw(file, job.getRawWidth(),
+		        job.getRawHeight(), job.getSizeZ(), job.getSizeC(),
+		        job.getRawByteWidth(), job.isRawBigEndian(),
+		        job.getRawHeader());
+	}
+
+	private static boolean createOutputRoot(final SPTBatchJob job) {
+		final File outputRoot = new File(job.getOutputDir());
+
+		if (!outputRoot.isDirectory() && !outputRoot.mkdirs()) {
+			System.err.println(String.format("%s: %s",
+			        "Cannot create the output directory", job.getOutputDir()));
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the tracking of an image (or its parameter sweep) to the scheduler.
+	 */
+	private static void schedule(final SPTBatchJob job,
+	        final SPTProgressLog progress,
+	        final OmeroParametersHandler omeroParameters,
+	        final SPTScheduler scheduler, final ImageDataHandler imageData) {
+		if (imageData.getT() < 2) {
+			progress.imageFailed(imageData.getPixelsID(),
+			        imageData.getImageName(), "T must be greater than one");
+			return;
+		}
+
+		omeroParameters.addImage(imageData);
+
+		final String outputDir = job.getOutputDir()
+		        + System.getProperty("file.separator")
+		        + StringHelper.removeFileExtension(imageData.getImageName());
+
+		if (job.getParameterSets().size() > 1) {
+			final SPTParameterSweep sweep = new SPTParameterSweep(
+			        omeroParameters, imageData, job.getParameterSets(),
+			        outputDir, job.isClearOutputDir(), progress);
+			sweep.setFetchWorkers(job.getFetchWorkers());
+			sweep.setFetchBufferDepth(job.getFetchBufferDepth());
+			if (!job.getEngine().equals(SPTBatchJob.ENGINE_AUTO)) {
+				sweep.setJavaEngine(job.getEngine().equals(
+				        SPTBatchJob.ENGINE_JAVA));
+			}
+			scheduler.addImage(sweep);
+		} else {
+			final SPTImageTracker tracker = new SPTImageTracker(
+			        omeroParameters, imageData,
+			        job.getParameterSets().get(0), outputDir,
+			        job.isClearOutputDir(), progress);
+			tracker.setFetchWorkers(job.getFetchWorkers());
+			tracker.setFetchBufferDepth(job.getFetchBufferDepth());
+			if (!job.getEngine().equals(SPTBatchJob.ENGINE_AUTO)) {
+				tracker.setJavaEngine(job.getEngine().equals(
+				        SPTBatchJob.ENGINE_JAVA));
+			}
+			scheduler.addImage(tracker);
+		}
+	}
+
+	private static int runAll(final SPTScheduler scheduler,
+	        final SPTProgressLog progress, final int imagesNumber) {
+		try {
+			scheduler.runAll();
+		} catch (final InterruptedException e) {
+			GLogManager.log("SPT batch interrupted", Level.WARNING);
+		}
+
+		progress.jobDone();
+
+		if ((progress.getFailedNumber() > 0)
+		        || (progress.getDoneNumber() < imagesNumber))
+			return SPTBatchRunner.EXIT_IMAGES_FAILED;
+
+		return SPTBatchRunner.EXIT_OK;
+	}
+
+	private static ImageDataHandler toImageDataHandler(final Gateway gateway,
+	        final SPTBatchJob job, final ImageData image) {
+		final PixelsData pixels = image.getDefaultPixels();
+		final long pixelsID = pixels.getId();
+		final int T = pixels.getSizeT();
+
+		return new ImageDataHandler(StringHelper.getImageName(image.getName()),
+		        job.getDatasetName(), pixelsID, T, pixels.getSizeX(),
+		        pixels.getSizeY(), pixels.getPixelSizeX(),
+		        pixels.getPixelSizeY(), SPTBatchRunner.getTotalT(gateway,
+		                pixelsID, job.getC(), job.getZ(), T));
+	}
+
+	/**
+	 * Reads the total duration of an image, as the review does.
+	 */
+	private static double getTotalT(final Gateway gateway,
+	        final long pixelsID, final int C, final int Z, final int maxT) {
+		if (maxT < 1)
+			return 0.0;
+
+		try {
+			final List<IObject> planeInfoObjects = gateway.loadPlaneInfo(
+			        pixelsID, Z, maxT - 1, C);
+
+			if (planeInfoObjects.size() > 0) {
+				final RDouble tTemp = ((PlaneInfoI) planeInfoObjects.get(0))
+				        .getDeltaT();
+
+				if (tTemp != null)
+					return tTemp.getValue();
+			}
+		} catch (final Exception e) {
+			GLogManager.log(String.format("%s: %s", "no sizeT found",
+			        e.toString()), Level.INFO);
+		}
+
+		return 0.0;
+	}
+}
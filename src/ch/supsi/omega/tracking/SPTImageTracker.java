@@ -0,0 +1,98 @@
+package ch.supsi.omega.tracking;
+
+import java.util.Collections;
+
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.dll.SPTCaller;
+import ch.supsi.omega.tracking.metrics.SPTMetrics;
+import ch.supsi.omega.tracking.parameters.ImageDataHandler;
+import ch.supsi.omega.tracking.parameters.OmeroParametersHandler;
+import ch.supsi.omega.tracking.parameters.SPTRunParameters;
+
+/**
+ * Tracks one image on its own SPT runner: loads the planes into the runner,
+ * writes the results, the SPT information file and the stats file in the
+ * output directory of the image. Without the SPT DLL the Java engine is used.
+ * The metrics of the image are published while it is tracked.
+ *
+ * @author galliva
+ */
+public class SPTImageTracker implements Runnable {
+	private final OmeroParametersHandler omeroParameters;
+	private final ImageDataHandler imageData;
+	private final SPTRunParameters parameters;
+	private final String outputDir;
+	private final boolean clearOutputDir;
+	private final SPTRunListener listener;
+
+	private int fetchWorkers = OmegaConstants.SPT_FETCH_WORKERS;
+	private int fetchBufferDepth = OmegaConstants.SPT_FETCH_BUFFER_DEPTH;
+	private boolean javaEngine = !SPTCaller.isLibraryLoaded();
+
+	public SPTImageTracker(final OmeroParametersHandler omeroParameters,
+	        final ImageDataHandler imageData,
+	        final SPTRunParameters parameters, final String outputDir,
+	        final boolean clearOutputDir, final SPTRunListener listener) {
+		this.omeroParameters = omeroParameters;
+		this.imageData = imageData;
+		this.parameters = parameters;
+		this.outputDir = outputDir;
+		this.clearOutputDir = clearOutputDir;
+		this.listener = listener;
+	}
+
+	public void setFetchWorkers(final int fetchWorkers) {
+		this.fetchWorkers = fetchWorkers;
+	}
+
+	public void setFetchBufferDepth(final int fetchBufferDepth) {
+		this.fetchBufferDepth = fetchBufferDepth;
+	}
+
+	/**
+	 * @param javaEngine
+	 *            true to detect and link the particles in Java instead of the
+	 *            SPT DLL
+	 */
+	public void setJavaEngine(final boolean javaEngine) {
+		this.javaEngine = javaEngine;
+	}
+
+	public ImageDataHandler getImageData() {
+		return this.imageData;
+	}
+
+	@Override
+	public void run() {
+		this.listener.imageStarted(this.imageData);
+
+		final SPTMetrics metrics = SPTMetrics.register(this.imageData
+		        .getImageName());
+		final SPTRun run = new SPTRun(this.omeroParameters, this.imageData,
+		        this.parameters, this.outputDir, this.listener,
+		        this.javaEngine, metrics);
+		final String summary;
+
+		try {
+			if (!run.start(this.clearOutputDir))
+				return;
+
+			if (!SPTRun.loadPlanes(this.omeroParameters, this.imageData,
+			        Collections.singletonList(run), this.fetchWorkers,
+			        this.fetchBufferDepth, this.listener, metrics, null)) {
+				this.listener.imageError(this.imageData,
+				        OmegaConstants.ERROR_DURING_SPT_RUN);
+			}
+
+			summary = run.finish();
+		} finally {
+			metrics.unregister();
+		}
+
+		// the planes of this image are no longer needed
+		this.omeroParameters.getPixelSource().closePixelsStores(
+		        this.imageData.getPixelsID());
+
+		this.listener.imageDone(this.imageData, summary);
+	}
+}
@@ -0,0 +1,292 @@
+package ch.supsi.omega.tracking;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+import ch.supsi.omega.common.FileHelper;
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.dll.SPTCaller;
+import ch.supsi.omega.pixels.PixelSource;
+import ch.supsi.omega.tracking.metrics.SPTMetrics;
+import ch.supsi.omega.tracking.parameters.ImageDataHandler;
+import ch.supsi.omega.tracking.parameters.OmeroParametersHandler;
+import ch.supsi.omega.tracking.parameters.SPTRunParameters;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * Tracks one image with several parameter sets, fetching its planes only once.
+ * Every parameter set has its own runner and its own directory (named after
+ * the parameters) in the output directory of the image, with the usual SPT
+ * information and stats files; the sweep ends writing a comparison table
+ * (trajectories found and minimum SNR for each set).
+ * <p>
+ * With the runner handle API all the runners receive each plane as soon as it
+ * is fetched. With a DLL providing only the global runner the sets are run one
+ * after the other: the planes fetched for the first set are written to a
+ * temporary file and loaded again from it into the following ones. Without the SPT DLL the Java
+ * engine is used, each set having its own detection engine.
+ *
+ * @author galliva
+ */
+public class SPTParameterSweep implements Runnable {
+	private final OmeroParametersHandler omeroParameters;
+	private final ImageDataHandler imageData;
+	private final List<SPTRunParameters> parameterSets;
+	private final String outputDir;
+	private final boolean clearOutputDir;
+	private final SPTRunListener listener;
+
+	private int fetchWorkers = OmegaConstants.SPT_FETCH_WORKERS;
+	private int fetchBufferDepth = OmegaConstants.SPT_FETCH_BUFFER_DEPTH;
+	private boolean javaEngine = !SPTCaller.isLibraryLoaded();
+
+	public SPTParameterSweep(final OmeroParametersHandler omeroParameters,
+	        final ImageDataHandler imageData,
+	        final List<SPTRunParameters> parameterSets,
+	        final String outputDir, final boolean clearOutputDir,
+	        final SPTRunListener listener) {
+		this.omeroParameters = omeroParameters;
+		this.imageData = imageData;
+		this.parameterSets = parameterSets;
+		this.outputDir = outputDir;
+		this.clearOutputDir = clearOutputDir;
+		this.listener = listener;
+	}
+
+	public void setFetchWorkers(final int fetchWorkers) {
+		this.fetchWorkers = fetchWorkers;
+	}
+
+	public void setFetchBufferDepth(final int fetchBufferDepth) {
+		this.fetchBufferDepth = fetchBufferDepth;
+	}
+
+	/**
+	 * @param javaEngine
+	 *            true to detect and link the particles in Java instead of the
+	 *            SPT DLL
+	 */
+	public void setJavaEngine(final boolean javaEngine) {
+		this.javaEngine = javaEngine;
+	}
+
+	@Override
+	public void run() {
+		this.listener.imageStarted(this.imageData);
+
+		final SPTMetrics metrics = SPTMetrics.register(this.imageData
+		        .getImageName());
+		final List<SPTRun> runs = new ArrayList<SPTRun>();
+
+		for (final SPTRunParameters parameters : this.parameterSets) {
+			runs.add(new SPTRun(this.omeroParameters, this.imageData,
+			        parameters, this.outputDir
+			                + System.getProperty("file.separator")
+			                + parameters.getName(), this.listener,
+			        this.javaEngine, metrics));
+		}
+
+		// the directory of the image, containing one directory per set
+		FileHelper.createDirectory(this.outputDir);
+
+		final List<SPTRun> done = new ArrayList<SPTRun>();
+		final SPTRun first = runs.get(0);
+
+		try {
+			if (first.start(this.clearOutputDir)) {
+				if (!first.isGlobalRunner()) {
+					this.runTogether(runs, done, metrics);
+				} else {
+					this.runOneByOne(runs, done, metrics);
+				}
+			}
+		} finally {
+			metrics.unregister();
+		}
+
+		// the planes of this image are no longer needed
+		this.omeroParameters.getPixelSource().closePixelsStores(
+		        this.imageData.getPixelsID());
+
+		this.listener.imageDone(this.imageData, this.writeComparison(done));
+	}
+
+	/**
+	 * Loads each plane into all the runners at once, the first one has already
+	 * been started.
+	 */
+	private void runTogether(final List<SPTRun> runs,
+	        final List<SPTRun> done, final SPTMetrics metrics) {
+		final List<SPTRun> started = new ArrayList<SPTRun>();
+		started.add(runs.get(0));
+
+		for (final SPTRun run : runs.subList(1, runs.size())) {
+			if (run.start(this.clearOutputDir)) {
+				started.add(run);
+			}
+		}
+
+		if (!SPTRun.loadPlanes(this.omeroParameters, this.imageData, started,
+		        this.fetchWorkers, this.fetchBufferDepth, this.listener,
+		        metrics, null)) {
+			this.listener.imageError(this.imageData,
+			        OmegaConstants.ERROR_DURING_SPT_RUN);
+		}
+
+		for (final SPTRun run : started) {
+			run.finish();
+			done.add(run);
+		}
+	}
+
+	/**
+	 * Runs the sets one at a time on the global runner, the first one has
+	 * already been started. The planes are spooled to a temporary file in the
+	 * output directory while the first set is tracked, then read back from it
+	 * for the following sets.
+	 */
+	private void runOneByOne(final List<SPTRun> runs,
+	        final List<SPTRun> done, final SPTMetrics metrics) {
+		final SPTRun first = runs.get(0);
+		PlaneSpool spool = null;
+
+		try {
+			spool = new PlaneSpool(new File(this.outputDir));
+		} catch (final IOException e) {
+			GLogManager.log(String.format("%s: %s",
+			        "Cannot create the file of the planes", e.toString()),
+			        Level.SEVERE);
+		}
+
+		try {
+			final boolean fetched = SPTRun.loadPlanes(this.omeroParameters,
+			        this.imageData, Collections.singletonList(first),
+			        this.fetchWorkers, this.fetchBufferDepth, this.listener,
+			        metrics, spool);
+
+			first.finish();
+			done.add(first);
+
+			if (!fetched || (spool == null)) {
+				this.listener.imageError(this.imageData,
+				        OmegaConstants.ERROR_DURING_SPT_RUN);
+				return;
+			}
+
+			this.replay(runs.subList(1, runs.size()), done, metrics, spool);
+		} finally {
+			if (spool != null) {
+				spool.close();
+			}
+		}
+	}
+
+	/**
+	 * Loads the spooled planes into each of the runs, one run after the
+	 * other.
+	 */
+	private void replay(final List<SPTRun> runs, final List<SPTRun> done,
+	        final SPTMetrics metrics, final PlaneSpool spool) {
+		final PixelSource pixelSource = this.omeroParameters.getPixelSource();
+		final int byteWidth = pixelSource.getByteWidht(this.imageData
+		        .getPixelsID());
+		final boolean bigEndian = pixelSource.isBigEndian(this.imageData
+		        .getPixelsID());
+		final PlaneBufferPool pool = new PlaneBufferPool(2);
+		final int framesNumber = spool.getFramesNumber();
+		final byte[] pixels = new byte[spool.getPlaneSize()];
+
+		for (final SPTRun run : runs) {
+			if (Thread.currentThread().isInterrupted()
+			        || !run.start(this.clearOutputDir)) {
+				continue;
+			}
+
+			final SPTPlaneLoader planeLoader = new SPTPlaneLoader(
+			        run.getRunner(), byteWidth, bigEndian, pool);
+			planeLoader.setMetrics(metrics);
+			boolean error = false;
+
+			for (int frame = 0; frame < framesNumber; frame++) {
+				this.listener.frameLoaded(this.imageData, frame, framesNumber);
+
+				try {
+					spool.read(frame, pixels);
+				} catch (final IOException e) {
+					// keep the frame in place, the run is reported as failed
+					Arrays.fill(pixels, (byte) 0);
+					GLogManager.log(String.format("%s: %s",
+					        OmegaConstants.ERROR_DURING_SPT_RUN, e.toString()),
+					        Level.SEVERE);
+					error = true;
+				}
+
+				try {
+					planeLoader.loadPlane(pixels);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					error = true;
+					break;
+				}
+			}
+
+			if (error) {
+				this.listener.imageError(this.imageData,
+				        OmegaConstants.ERROR_DURING_SPT_RUN);
+			}
+
+			run.finish();
+			done.add(run);
+		}
+	}
+
+	/**
+	 * Writes the comparison table of the parameter sets, returns it.
+	 */
+	private String writeComparison(final List<SPTRun> done) {
+		final StringBuilder table = new StringBuilder();
+		table.append(String.format("%-8s %-8s %-8s %-8s %-8s %12s %12s",
+		        "p0", "p1", "p2", "p3", "p4", "trajectories", "min_SNR"));
+
+		for (final SPTRun run : done) {
+			final SPTRunParameters parameters = run.getParameters();
+			table.append(String.format("\n%-8s %-8s %-8s %-8s %-8s %12d %12s",
+			        parameters.getRadius(), parameters.getCutOff(),
+			        parameters.getPercentile(), parameters.getDisplacement(),
+			        parameters.getLinkRange(), run.getTrajectoriesNumber(),
+			        run.getTrajectoriesNumber() == 0 ? "-" : String.format(
+			                "%f", run.getMinSNR())));
+		}
+
+		final String fileName = this.outputDir
+		        + System.getProperty("file.separator")
+		        + OmegaConstants.SPT_SWEEP_FILE;
+
+		try {
+			final BufferedWriter out = new BufferedWriter(new FileWriter(
+			        fileName));
+			try {
+				for (final String line : table.toString().split("\n")) {
+					out.write(line);
+					out.newLine();
+				}
+			} finally {
+				out.close();
+			}
+		} catch (final IOException e) {
+			GLogManager.log(String.format("%s: %s",
+			        "Error writing the sweep comparison", e.toString()),
+			        Level.SEVERE);
+		}
+
+		return table.toString();
+	}
+}
@@ -0,0 +1,177 @@
+package ch.supsi.omega.tracking;
+
+import java.nio.ByteBuffer;
+
+import ch.supsi.omega.dll.SPTCaller;
+import ch.supsi.omega.tracking.detection.SPTDetectionEngine;
+import ch.supsi.omega.tracking.metrics.SPTMetrics;
+
+/**
+ * Hands raw planes to the runners of the SPT DLL. The bytes are copied once
+ * into a pooled direct buffer and read in place by the DLL; if the DLL does
+ * not provide the direct buffer entry point the pixels are decoded into a
+ * pooled <code>int[]</code> instead. The planes can also be handed to the
+ * pure Java detection engine, which needs neither the DLL nor a copy.
+ *
+ * @author galliva
+ */
+public class SPTPlaneLoader {
+	private final long[] runners;
+	private final int byteWidth;
+	private final boolean bigEndian;
+	private final PlaneBufferPool pool;
+	private final SPTDetectionEngine[] engines;
+
+	private SPTMetrics metrics = new SPTMetrics(null);
+
+	/**
+	 * @param runner
+	 *            the runner handle
+	 * @param byteWidth
+	 *            number of bytes per pixel
+	 * @param bigEndian
+	 *            byte order of the planes (OMERO planes are big endian)
+	 * @param pool
+	 *            where the conversion buffers come from
+	 */
+	public SPTPlaneLoader(final long runner, final int byteWidth,
+	        final boolean bigEndian, final PlaneBufferPool pool) {
+		this(new long[] { runner }, byteWidth, bigEndian, pool);
+	}
+
+	/**
+	 * Loads every plane into several runners, copying (or decoding) it only
+	 * once.
+	 */
+	public SPTPlaneLoader(final long[] runners, final int byteWidth,
+	        final boolean bigEndian, final PlaneBufferPool pool) {
+		this(runners, new SPTDetectionEngine[0], byteWidth, bigEndian, pool);
+	}
+
+	/**
+	 * Loads every plane into the Java detection engine instead of the DLL.
+	 */
+	public SPTPlaneLoader(final SPTDetectionEngine engine,
+	        final int byteWidth, final boolean bigEndian) {
+		this(new long[0], new SPTDetectionEngine[] { engine }, byteWidth,
+		        bigEndian, null);
+	}
+
+	/**
+	 * Loads every plane into several runners and Java detection engines.
+	 */
+	public SPTPlaneLoader(final long[] runners,
+	        final SPTDetectionEngine[] engines, final int byteWidth,
+	        final boolean bigEndian, final PlaneBufferPool pool) {
+		this.runners = runners;
+		this.engines = engines;
+		this.byteWidth = byteWidth;
+		this.bigEndian = bigEndian;
+		this.pool = pool;
+	}
+
+	/**
+	 * @param metrics
+	 *            where the decoding and loading times are recorded
+	 */
+	public void setMetrics(final SPTMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a Java engine
+	 */
+	public void loadPlane(final byte[] pixels) throws InterruptedException {
+		long start = System.nanoTime();
+
+		// the plane is decoded by the engines, in their own threads
+		if (this.engines.length > 0) {
+			for (final SPTDetectionEngine engine : this.engines) {
+				engine.loadImage(pixels, this.byteWidth, this.bigEndian);
+			}
+
+			final long now = System.nanoTime();
+			this.metrics.add(SPTMetrics.Stage.ENGINE_LOAD, now - start);
+			start = now;
+		}
+
+		if (this.runners.length == 0)
+			return;
+
+		final ByteBuffer buffer = this.pool.takeDirect(pixels.length);
+		// the runners already loaded from the direct buffer
+		int loaded = 0;
+
+		try {
+			buffer.put(pixels, 0, pixels.length);
+			buffer.flip();
+
+			long now = System.nanoTime();
+			this.metrics.add(SPTMetrics.Stage.DECODE, now - start);
+			start = now;
+
+			while ((loaded < this.runners.length)
+			        && SPTCaller.callLoadImage(this.runners[loaded], buffer,
+			                this.byteWidth, this.bigEndian)) {
+				loaded++;
+			}
+
+			now = System.nanoTime();
+			this.metrics.add(SPTMetrics.Stage.NATIVE_LOAD, now - start);
+			start = now;
+		} finally {
+			this.pool.give(buffer);
+		}
+
+		if (loaded == this.runners.length)
+			return;
+
+		final int[] data = this.pool.takeInts(pixels.length / this.byteWidth);
+
+		try {
+			SPTPlaneLoader.decode(pixels, this.byteWidth, this.bigEndian, data);
+
+			final long now = System.nanoTime();
+			this.metrics.add(SPTMetrics.Stage.DECODE, now - start);
+			start = now;
+
+			for (int i = loaded; i < this.runners.length; i++) {
+				SPTCaller.callLoadImage(this.runners[i], data);
+			}
+
+			this.metrics.add(SPTMetrics.Stage.NATIVE_LOAD, System.nanoTime()
+			        - start);
+		} finally {
+			this.pool.give(data);
+		}
+	}
+
+	/**
+	 * Manages the right amount of byte per pixels: fills <code>data</code>
+	 * (one value per pixel) from the raw plane.
+	 */
+	public static void decode(final byte[] pixels, final int byteWidth,
+	        final boolean bigEndian, final int[] data) {
+		switch (byteWidth) {
+		case 1:
+			// 8 bit image
+			for (int j = 0; j < data.length; j++) {
+				data[j] = pixels[j] & 0xff;
+			}
+			break;
+		default:
+			// 16, 24 and 32 bit images
+			for (int j = 0, k = 0; j < data.length; j++, k += byteWidth) {
+				int value = 0;
+				for (int b = 0; b < byteWidth; b++) {
+					final int shift = bigEndian ? (byteWidth - 1 - b) * 8
+					        : b * 8;
+					value |= (pixels[k + b] & 0xff) << shift;
+				}
+				data[j] = value;
+			}
+			break;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package ch.supsi.omega.tracking;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.pixels.PixelSource;
+import ch.supsi.omega.tracking.metrics.SPTMetrics;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * Fetches the planes of an image with several worker threads and hands them,
+ * in frame order, to a single consumer. At most <code>bufferDepth</code> planes
+ * are fetched ahead of the consumer, so memory stays bounded while the network
+ * latency (or the disk one, for local files) overlaps with the tracking.
+ *
+ * @author galliva
+ */
+public class SPTPlanePrefetcher {
+	/**
+	 * Receives the planes, one at a time and in frame order.
+	 */
+	public interface PlaneHandler {
+		public void handlePlane(int frame, byte[] pixels) throws Exception;
+	}
+
+	private final PixelSource pixelSource;
+	private final long pixelsID;
+	private final int z;
+	private final int c;
+	private final int framesNumber;
+	private final int workersNumber;
+	private final int bufferDepth;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = this.lock.newCondition();
+	private final Condition ready = this.lock.newCondition();
+
+	/**
+	 * Fetched planes not yet consumed (a <code>null</code> value means the
+	 * fetch failed).
+	 */
+	private final Map<Integer, byte[]> buffer = new HashMap<Integer, byte[]>();
+
+	private int nextToFetch = 0;
+	private int nextToHandle = 0;
+	private boolean aborted = false;
+	private int placeholderSize = 0;
+
+	private SPTMetrics metrics = new SPTMetrics(null);
+
+	public SPTPlanePrefetcher(final PixelSource pixelSource,
+	        final long pixelsID, final int z, final int c,
+	        final int framesNumber, final int workersNumber,
+	        final int bufferDepth) {
+		this.pixelSource = pixelSource;
+		this.pixelsID = pixelsID;
+		this.z = z;
+		this.c = c;
+		this.framesNumber = framesNumber;
+		this.workersNumber = Math.max(1, workersNumber);
+		this.bufferDepth = Math.max(1, bufferDepth);
+	}
+
+	/**
+	 * @param metrics
+	 *            where the fetch latencies and the bytes fetched are recorded
+	 */
+	public void setMetrics(final SPTMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param placeholderSize
+	 *            the size of the empty plane handed in place of a plane that
+	 *            could not be fetched, so that the following frames keep
+	 *            their index; 0 (the default) to stop at the first plane that
+	 *            could not be fetched
+	 */
+	public void setPlaceholderSize(final int placeholderSize) {
+		this.placeholderSize = Math.max(0, placeholderSize);
+	}
+
+	/**
+	 * Fetches all the planes and passes them to the handler in frame order.
+	 * Returns when every frame has been handled, or at the first plane that
+	 * could not be fetched if there is no placeholder.
+	 *
+	 * @param handler
+	 * @return <code>true</code> if every plane was fetched and handled
+	 */
+	public boolean run(final PlaneHandler handler) {
+		final ExecutorService workers = Executors
+		        .newFixedThreadPool(this.workersNumber);
+
+		for (int i = 0; i < this.workersNumber; i++) {
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					SPTPlanePrefetcher.this.fetchPlanes();
+				}
+			});
+		}
+
+		boolean error = false;
+
+		try {
+			for (int frame = 0; frame < this.framesNumber; frame++) {
+				byte[] pixels = this.takePlane(frame);
+
+				if (pixels == null) {
+					error = true;
+
+					if (this.placeholderSize == 0) {
+						this.abort();
+						break;
+					}
+
+					// frame t has to stay frame t
+					pixels = new byte[this.placeholderSize];
+				}
+
+				try {
+					handler.handlePlane(frame, pixels);
+				} catch (final InterruptedException e) {
+					throw e;
+				} catch (final Exception e) {
+					error = true;
+					GLogManager.log(String.format("%s: %s",
+					        OmegaConstants.ERROR_DURING_SPT_RUN, e.toString()),
+					        Level.SEVERE);
+				}
+			}
+		} catch (final InterruptedException e) {
+			error = true;
+			this.abort();
+			Thread.currentThread().interrupt();
+		} finally {
+			workers.shutdown();
+		}
+
+		try {
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return !error;
+	}
+
+	/**
+	 * Stops the workers; planes already in flight are discarded.
+	 */
+	public void abort() {
+		this.lock.lock();
+		try {
+			this.aborted = true;
+			this.buffer.clear();
+			this.notFull.signalAll();
+			this.ready.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Worker loop: claims the next frame as long as it fits in the buffer
+	 * window, fetches it and stores it.
+	 */
+	private void fetchPlanes() {
+		while (true) {
+			int frame;
+
+			this.lock.lock();
+			try {
+				while (!this.aborted
+				        && (this.nextToFetch < this.framesNumber)
+				        && (this.nextToFetch >= (this.nextToHandle + this.bufferDepth))) {
+					this.notFull.await();
+				}
+
+				if (this.aborted || (this.nextToFetch >= this.framesNumber))
+					return;
+
+				frame = this.nextToFetch++;
+			} catch (final InterruptedException e) {
+				return;
+			} finally {
+				this.lock.unlock();
+			}
+
+			byte[] pixels = null;
+
+			try {
+				final long start = System.nanoTime();
+				pixels = this.pixelSource.getPlane(this.pixelsID, this.z, frame,
+				        this.c);
+				this.metrics.planeFetched(System.nanoTime() - start,
+				        pixels == null ? 0 : pixels.length);
+			} catch (final Exception e) {
+				this.metrics.fetchFailed();
+				GLogManager.log(
+				        String.format("cannot fetch frame %d: %s", frame,
+				                e.toString()), Level.SEVERE);
+			}
+
+			this.lock.lock();
+			try {
+				if (!this.aborted) {
+					this.buffer.put(frame, pixels);
+					this.ready.signalAll();
+				}
+			} finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the given frame, removes it from the buffer and lets the
+	 * workers move the fetch window forward.
+	 */
+	private byte[] takePlane(final int frame) throws InterruptedException {
+		this.lock.lock();
+		try {
+			while (!this.buffer.containsKey(frame)) {
+				if (this.aborted)
+					throw new InterruptedException("prefetch aborted");
+				this.ready.await();
+			}
+
+			final byte[] pixels = this.buffer.remove(frame);
+			this.nextToHandle = frame + 1;
+			this.notFull.signalAll();
+			return pixels;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package ch.supsi.omega.tracking;
+
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import ch.supsi.omega.tracking.parameters.ImageDataHandler;
+
+/**
+ * Machine readable progress of a headless SPT batch: one tab separated line
+ * per event,
+ *
+ * <pre>
+ * time(ms)  event  pixelsID  image  detail
+ * </pre>
+ *
+ * where event is one of JOB_START, IMAGE_START, FRAME, IMAGE_ERROR,
+ * IMAGE_DONE, JOB_END. The line is flushed as soon as it is written.
+ *
+ * @author galliva
+ */
+public class SPTProgressLog implements SPTRunListener {
+	private final PrintStream out;
+	private final Set<Long> failed = new HashSet<Long>();
+	private int done = 0;
+
+	public SPTProgressLog(final PrintStream out) {
+		this.out = out;
+	}
+
+	public synchronized void log(final String event, final long pixelsID,
+	        final String imageName, final String detail) {
+		this.out.println(String.format("%d\t%s\t%d\t%s\t%s",
+		        System.currentTimeMillis(), event, pixelsID,
+		        SPTProgressLog.clean(imageName), SPTProgressLog.clean(detail)));
+		this.out.flush();
+	}
+
+	public void jobStarted(final int imagesNumber) {
+		this.log("JOB_START", -1, "", String.valueOf(imagesNumber));
+	}
+
+	public void jobDone() {
+		this.log("JOB_END", -1, "", String.format("%d done, %d failed",
+		        this.getDoneNumber(), this.getFailedNumber()));
+	}
+
+	/**
+	 * Reports an image that could not be run at all.
+	 */
+	public synchronized void imageFailed(final long pixelsID,
+	        final String imageName, final String message) {
+		this.failed.add(pixelsID);
+		this.log("IMAGE_ERROR", pixelsID, imageName, message);
+	}
+
+	@Override
+	public void imageStarted(final ImageDataHandler imageData) {
+		this.log("IMAGE_START", imageData.getPixelsID(),
+		        imageData.getImageName(), "");
+	}
+
+	@Override
+	public void frameLoaded(final ImageDataHandler imageData, final int frame,
+	        final int framesNumber) {
+		this.log("FRAME", imageData.getPixelsID(), imageData.getImageName(),
+		        String.format("%d/%d", frame + 1, framesNumber));
+	}
+
+	@Override
+	public void imageError(final ImageDataHandler imageData,
+	        final String message) {
+		this.imageFailed(imageData.getPixelsID(), imageData.getImageName(),
+		        message);
+	}
+
+	@Override
+	public synchronized void imageDone(final ImageDataHandler imageData,
+	        final String summary) {
+		this.done++;
+		this.log("IMAGE_DONE", imageData.getPixelsID(),
+		        imageData.getImageName(), "");
+	}
+
+	public synchronized int getDoneNumber() {
+		return this.done;
+	}
+
+	/**
+	 * @return the number of images with at least one error
+	 */
+	public synchronized int getFailedNumber() {
+		return this.failed.size();
+	}
+
+	/**
+	 * Keeps one event per line.
+	 */
+	private static String clean(final String value) {
+		if (value == null)
+			return "";
+
+		return value.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+	}
+}
@@ -0,0 +1,448 @@
+package ch.supsi.omega.tracking;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import ch.supsi.omega.common.FileHelper;
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.dll.SPTCaller;
+import ch.supsi.omega.pixels.PixelSource;
+import ch.supsi.omega.segmentation.trajectory.TrajectoryStore;
+import ch.supsi.omega.tracking.detection.Particle;
+import ch.supsi.omega.tracking.detection.SPTDetectionEngine;
+import ch.supsi.omega.tracking.linking.ParticleLinker;
+import ch.supsi.omega.tracking.linking.SPTTrajectoriesWriter;
+import ch.supsi.omega.tracking.metrics.SPTMetrics;
+import ch.supsi.omega.tracking.parameters.ImageDataHandler;
+import ch.supsi.omega.tracking.parameters.OmeroParametersHandler;
+import ch.supsi.omega.tracking.parameters.SPTInformationFileWriter;
+import ch.supsi.omega.tracking.parameters.SPTInformationWriter;
+import ch.supsi.omega.tracking.parameters.SPTRunParameters;
+import ch.supsi.omega.tracking.stats.SPTStatsFileWriter;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * One run of the SPT DLL: a runner set with one parameter set, tracking one
+ * image into one output directory. The results are written by a thread
+ * started with the runner, while the planes are loaded.
+ * <p>
+ * A run can use the Java engine instead of the DLL: the particles are
+ * detected while the planes are loaded, then linked and written in the same
+ * trajectory files when the run finishes.
+ * <p>
+ * The time spent in each stage is recorded in the metrics of the image and
+ * appended to the SPT information file.
+ *
+ * @author galliva
+ */
+class SPTRun {
+	private final OmeroParametersHandler omeroParameters;
+	private final ImageDataHandler imageData;
+	private final SPTRunParameters parameters;
+	private final String outputDir;
+	private final SPTRunListener listener;
+	private final boolean javaEngine;
+	private final SPTMetrics metrics;
+
+	private long runner = SPTCaller.GLOBAL_RUNNER;
+	private WriterThread writerThread = null;
+	private SPTDetectionEngine engine = null;
+
+	private int trajectoriesNumber = 0;
+	private double minSNR = 0.0;
+
+	SPTRun(final OmeroParametersHandler omeroParameters,
+	        final ImageDataHandler imageData,
+	        final SPTRunParameters parameters, final String outputDir,
+	        final SPTRunListener listener, final boolean javaEngine,
+	        final SPTMetrics metrics) {
+		this.omeroParameters = omeroParameters;
+		this.imageData = imageData;
+		this.parameters = parameters;
+		this.outputDir = outputDir;
+		this.listener = listener;
+		this.javaEngine = javaEngine;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Prepares the output directory, creates and starts the runner.
+	 *
+	 * @return false if the runner could not be started (the error has been
+	 *         reported to the listener)
+	 */
+	boolean start(final boolean clearOutputDir) {
+		// empty the output directory if requested
+		if (clearOutputDir) {
+			FileHelper.emptyDirectory(this.outputDir);
+		}
+
+		// create the output dir for each image (if not exists)
+		FileHelper.createDirectory(this.outputDir);
+
+		// the trajectories of a previous run are no longer valid
+		if (!TrajectoryStore.delete(new File(this.outputDir))) {
+			GLogManager.log(String.format("%s: %s",
+			        "Unable to delete the trajectory store", this.outputDir),
+			        Level.WARNING);
+		}
+
+		if (this.javaEngine) {
+			try {
+				this.engine = new SPTDetectionEngine(this.parameters,
+				        this.imageData.getX(), this.imageData.getY(),
+				        this.imageData.getT());
+				this.engine.setMetrics(this.metrics);
+				return true;
+			} catch (final IllegalArgumentException e) {
+				this.listener.imageError(this.imageData,
+				        OmegaConstants.ERROR_INIT_SPT_RUN);
+				GLogManager.log(String.format("%s: %s",
+				        OmegaConstants.ERROR_INIT_SPT_RUN, e.toString()),
+				        Level.SEVERE);
+				return false;
+			}
+		}
+
+		try {
+			this.runner = SPTCaller.callCreateRunner();
+		} catch (final InterruptedException e) {
+			// cancelled while waiting for the global runner
+			Thread.currentThread().interrupt();
+			this.listener.imageError(this.imageData,
+			        OmegaConstants.ERROR_INIT_SPT_RUN);
+			GLogManager.log(String.format("%s: %s",
+			        OmegaConstants.ERROR_INIT_SPT_RUN, e.toString()),
+			        Level.INFO);
+			return false;
+		}
+
+		try {
+			this.initRunner();
+		} catch (final Exception e) {
+			SPTCaller.callDisposeRunner(this.runner);
+			this.listener.imageError(this.imageData,
+			        OmegaConstants.ERROR_INIT_SPT_RUN);
+			GLogManager.log(String.format("%s: %s",
+			        OmegaConstants.ERROR_INIT_SPT_RUN, e.toString()),
+			        Level.SEVERE);
+			return false;
+		}
+
+		// write the results while the planes are loaded
+		this.writerThread = new WriterThread();
+		this.writerThread.start();
+
+		return true;
+	}
+
+	/**
+	 * Sets the parameters of the runner and starts it.
+	 */
+	private void initRunner() {
+		// set the output directory
+		SPTCaller.callSetOutputPath(this.runner, this.outputDir);
+		// set the Parameters
+		SPTCaller.callSetParameter(this.runner, "p0",
+		        this.parameters.getRadius());
+		SPTCaller.callSetParameter(this.runner, "p1",
+		        this.parameters.getCutOff());
+		SPTCaller.callSetParameter(this.runner, "p2",
+		        this.parameters.getPercentile());
+		SPTCaller.callSetParameter(this.runner, "p3",
+		        this.parameters.getDisplacement());
+		SPTCaller.callSetParameter(this.runner, "p4",
+		        this.parameters.getLinkRange());
+
+		SPTCaller.callSetParameter(this.runner, "p5",
+		        String.valueOf(this.imageData.getT()));
+		SPTCaller.callSetParameter(this.runner, "p6",
+		        String.valueOf(this.imageData.getX()));
+		SPTCaller.callSetParameter(this.runner, "p7",
+		        String.valueOf(this.imageData.getY()));
+		SPTCaller.callSetParameter(this.runner, "p8", "0.");
+		SPTCaller.callSetParameter(this.runner, "p9",
+		        String.format("%s.", this.parameters.getMaxValue()));
+
+		// set the minimun number of points
+		SPTCaller.callSetMinPoints(this.runner,
+		        this.parameters.getMinPoints());
+
+		// start the Runner
+		SPTCaller.callStartRunner(this.runner);
+	}
+
+	long getRunner() {
+		return this.runner;
+	}
+
+	/**
+	 * @return true if this run uses the single global runner of the DLL, so
+	 *         that no other run can proceed at the same time
+	 */
+	boolean isGlobalRunner() {
+		return !this.javaEngine && (this.runner == SPTCaller.GLOBAL_RUNNER);
+	}
+
+	SPTRunParameters getParameters() {
+		return this.parameters;
+	}
+
+	String getOutputDir() {
+		return this.outputDir;
+	}
+
+	int getTrajectoriesNumber() {
+		return this.trajectoriesNumber;
+	}
+
+	double getMinSNR() {
+		return this.minSNR;
+	}
+
+	/**
+	 * Waits for the results, then writes the SPT information and the stats
+	 * files. In a parameter sweep the metrics written are the ones of the
+	 * image, the runs finished so far included.
+	 *
+	 * @return their summary
+	 */
+	String finish() {
+		if (this.javaEngine) {
+			this.writeJavaResults();
+		} else {
+			try {
+				this.writerThread.join();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		final String infoFile = this.outputDir
+		        + System.getProperty("file.separator")
+		        + OmegaConstants.SPT_INFORMATION_FILE;
+		final SPTInformationWriter trackingInfoWriter = new SPTInformationFileWriter(
+		        infoFile);
+		trackingInfoWriter.initWriter();
+		final String temp1 = trackingInfoWriter.writeInformation(this.parameters
+		        .toExecutionInfo(this.omeroParameters, this.imageData));
+		trackingInfoWriter.closeWriter();
+
+		// pack the trajectories, read by the stats and by the other modules
+		try {
+			TrajectoryStore.importDirectory(new File(this.outputDir));
+		} catch (final IOException e) {
+			GLogManager.log(String.format("%s: %s",
+			        "Unable to pack the trajectories", e.toString()),
+			        Level.WARNING);
+		}
+
+		// write stats
+		final long statsStart = System.nanoTime();
+		final SPTStatsFileWriter sptStatsFileWriter = new SPTStatsFileWriter(
+		        null, this.outputDir, this.imageData.getT());
+		sptStatsFileWriter.initWriter();
+		final String temp2 = sptStatsFileWriter.calculateAndWriteStats();
+		sptStatsFileWriter.closeWriter();
+		this.metrics.add(SPTMetrics.Stage.STATS, System.nanoTime()
+		        - statsStart);
+
+		this.writeMetrics(infoFile);
+
+		this.trajectoriesNumber = sptStatsFileWriter.getTrajectoriesNumber();
+		this.minSNR = sptStatsFileWriter.getMinSNR();
+
+		return temp1 + "\n" + temp2;
+	}
+
+	/**
+	 * Appends the metrics to the SPT information file and logs them.
+	 */
+	private void writeMetrics(final String infoFile) {
+		final List<String> summary = this.metrics.getSummary();
+
+		try {
+			final BufferedWriter out = new BufferedWriter(new FileWriter(
+			        infoFile, true));
+			try {
+				// the information file does not end with a new line
+				for (final String line : summary) {
+					out.newLine();
+					out.write(line);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (final IOException e) {
+			GLogManager.log(String.format("%s: %s",
+			        "Error writing the SPT metrics", e.toString()),
+			        Level.WARNING);
+		}
+
+		GLogManager.log(String.format("SPT metrics of %s in %s: %s",
+		        this.imageData.getImageName(), this.outputDir, summary),
+		        Level.INFO);
+	}
+
+	/**
+	 * Waits for the particles detected by the Java engine, links and writes
+	 * them.
+	 */
+	private void writeJavaResults() {
+		final List<List<Particle>> particles;
+
+		try {
+			particles = this.engine.awaitParticles();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+
+		final long start = System.nanoTime();
+		final List<List<Particle>> trajectories;
+
+		try {
+			trajectories = new ParticleLinker(Double.parseDouble(this.parameters
+			        .getDisplacement().trim()), Integer.parseInt(this.parameters
+			        .getLinkRange().trim())).link(particles);
+		} catch (final IllegalArgumentException e) {
+			this.listener.imageError(this.imageData,
+			        OmegaConstants.ERROR_DURING_SPT_RUN);
+			GLogManager.log(String.format("%s: %s",
+			        OmegaConstants.ERROR_DURING_SPT_RUN, e.toString()),
+			        Level.SEVERE);
+			return;
+		}
+
+		try {
+			new SPTTrajectoriesWriter(this.outputDir,
+			        this.parameters.getMinPoints()).write(trajectories);
+		} catch (final IOException e) {
+			this.listener.imageError(this.imageData,
+			        OmegaConstants.ERROR_SPT_SAVE_RESULTS);
+			GLogManager.log(
+			        String.format("%s: %s", "Error writing the results",
+			                e.toString()), Level.SEVERE);
+		}
+
+		this.metrics.add(SPTMetrics.Stage.WRITE_RESULTS, System.nanoTime()
+		        - start);
+	}
+
+	/**
+	 * Fetches the planes of an image and loads them, in frame order, into all
+	 * the given runs.
+	 *
+	 * @param metrics
+	 *            the metrics of the image
+	 * @param keep
+	 *            if not <code>null</code>, receives the planes
+	 * @return false if a plane could not be fetched (an empty plane has been
+	 *         loaded in its place)
+	 */
+	static boolean loadPlanes(final OmeroParametersHandler omeroParameters,
+	        final ImageDataHandler imageData, final List<SPTRun> runs,
+	        final int fetchWorkers, final int fetchBufferDepth,
+	        final SPTRunListener listener, final SPTMetrics metrics,
+	        final PlaneSpool keep) {
+		final PixelSource pixelSource = omeroParameters.getPixelSource();
+		// ID of the pixels
+		final long pixelsID = imageData.getPixelsID();
+		// number of frames for this image
+		final int framesNumber = imageData.getT();
+		// number of bytes of this image
+		final int byteWidth = pixelSource.getByteWidht(pixelsID);
+
+		GLogManager.log(
+		        String.format("processing %d byte per pixel", byteWidth),
+		        Level.INFO);
+
+		final SPTPlanePrefetcher prefetcher = new SPTPlanePrefetcher(pixelSource,
+		        pixelsID, omeroParameters.getZ(), omeroParameters.getC(),
+		        framesNumber, fetchWorkers, fetchBufferDepth);
+		prefetcher.setMetrics(metrics);
+		prefetcher.setPlaceholderSize(imageData.getX() * imageData.getY()
+		        * byteWidth);
+
+		final List<Long> runners = new ArrayList<Long>();
+		final List<SPTDetectionEngine> engines = new ArrayList<SPTDetectionEngine>();
+
+		for (final SPTRun run : runs) {
+			if (run.javaEngine) {
+				engines.add(run.engine);
+			} else {
+				runners.add(run.runner);
+			}
+		}
+
+		final long[] runnerHandles = new long[runners.size()];
+		for (int i = 0; i < runnerHandles.length; i++) {
+			runnerHandles[i] = runners.get(i);
+		}
+
+		// conversion buffers are reused
+		final SPTPlaneLoader planeLoader = new SPTPlaneLoader(runnerHandles,
+		        engines.toArray(new SPTDetectionEngine[engines.size()]),
+		        byteWidth, pixelSource.isBigEndian(pixelsID),
+		        new PlaneBufferPool(2));
+		planeLoader.setMetrics(metrics);
+
+		final long start = System.nanoTime();
+
+		final boolean loaded = prefetcher.run(new SPTPlanePrefetcher.PlaneHandler() {
+			@Override
+			public void handlePlane(final int frame, final byte[] pixels)
+			        throws IOException, InterruptedException {
+				listener.frameLoaded(imageData, frame, framesNumber);
+
+				planeLoader.loadPlane(pixels);
+				metrics.frameLoaded();
+
+				if (keep != null) {
+					keep.write(frame, pixels);
+				}
+			}
+		});
+
+		metrics.add(SPTMetrics.Stage.LOADING, System.nanoTime() - start);
+
+		return loaded;
+	}
+
+	/**
+	 * Waits for the results of the runner, then disposes it.
+	 */
+	private class WriterThread extends Thread {
+		@Override
+		public void run() {
+			final long start = System.nanoTime();
+
+			try {
+				SPTCaller.callWriteResults(SPTRun.this.runner);
+			} catch (final Exception e) {
+				SPTRun.this.listener.imageError(SPTRun.this.imageData,
+				        OmegaConstants.ERROR_SPT_SAVE_RESULTS);
+				GLogManager.log(
+				        String.format("%s: %s", "Error writing the results",
+				                e.toString()), Level.SEVERE);
+			}
+
+			SPTRun.this.metrics.add(SPTMetrics.Stage.WRITE_RESULTS,
+			        System.nanoTime() - start);
+
+			try {
+				SPTCaller.callDisposeRunner(SPTRun.this.runner);
+			} catch (final Exception e) {
+				GLogManager.log(
+				        String.format("%s: %s", "Error disposing the runner",
+				                e.toString()), Level.SEVERE);
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package ch.supsi.omega.tracking;
+
+import ch.supsi.omega.tracking.parameters.ImageDataHandler;
+
+/**
+ * Receives the progress of the SPT runs. The methods are called from the
+ * threads running the images, possibly for several images at once.
+ *
+ * @author galliva
+ */
+public interface SPTRunListener {
+	public void imageStarted(ImageDataHandler imageData);
+
+	public void frameLoaded(ImageDataHandler imageData, int frame,
+	        int framesNumber);
+
+	/**
+	 * An error occurred while running the image (the message is one of the
+	 * <code>OmegaConstants</code> errors). If the error stops the run,
+	 * {@link #imageDone(ImageDataHandler, String)} is not called.
+	 */
+	public void imageError(ImageDataHandler imageData, String message);
+
+	/**
+	 * @param summary
+	 *            the SPT information and the stats written for the image
+	 */
+	public void imageDone(ImageDataHandler imageData, String summary);
+}
@@ -0,0 +1,71 @@
+package ch.supsi.omega.tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks several images at once, each one on its own SPT runner, on a pool
+ * bounded by the number of cores. With a DLL providing only the global runner
+ * the images are still processed one at a time (see
+ * <code>SPTCaller.callCreateRunner()</code>).
+ *
+ * @author galliva
+ */
+public class SPTScheduler {
+	private final List<Runnable> trackers = new ArrayList<Runnable>();
+	private ExecutorService executor = null;
+
+	/**
+	 * Adds an image, an {@link SPTImageTracker} or an
+	 * {@link SPTParameterSweep}.
+	 */
+	public void addImage(final Runnable tracker) {
+		this.trackers.add(tracker);
+	}
+
+	/**
+	 * Runs all the images and waits until they are done.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting, the runs not yet started are
+	 *             cancelled
+	 */
+	public void runAll() throws InterruptedException {
+		if (this.trackers.isEmpty())
+			return;
+
+		final int threads = Math.min(this.trackers.size(), Runtime
+		        .getRuntime().availableProcessors());
+
+		synchronized (this) {
+			this.executor = Executors.newFixedThreadPool(threads);
+		}
+
+		for (final Runnable tracker : this.trackers) {
+			this.executor.execute(tracker);
+		}
+
+		this.executor.shutdown();
+
+		try {
+			while (!this.executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				// wait for all the images
+			}
+		} catch (final InterruptedException e) {
+			this.cancel();
+			throw e;
+		}
+	}
+
+	/**
+	 * Cancels the runs not yet started and interrupts the running ones.
+	 */
+	public synchronized void cancel() {
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+		}
+	}
+}
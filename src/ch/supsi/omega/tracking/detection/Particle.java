@@ -0,0 +1,103 @@
+package ch.supsi.omega.tracking.detection;
+
+/**
+ * A particle detected in a frame, with the same information the SPT DLL gives
+ * for every point of a trajectory. The signal values are measured on the raw
+ * pixels; the SNR, the total signal and the signal count are the ones of
+ * <code>TPoint</code>.
+ * <p>
+ * The coordinates are the image ones (x is the column, y the row), not
+ * swapped as in the files written by the DLL.
+ *
+ * @author galliva
+ */
+public final class Particle {
+	private final int frame;
+	private final double x;
+	private final double y;
+	private final double m0;
+	private final double m2;
+	private final double peakSignal;
+	private final double meanSignal;
+	private final double meanBackground;
+	private final double meanNoise;
+	private final double SNR;
+	private final double totalSignal;
+	private final int cntSignal;
+
+	public Particle(final int frame, final double x, final double y,
+	        final double m0, final double m2, final double peakSignal,
+	        final double meanSignal, final double meanBackground,
+	        final double meanNoise, final double SNR, final double totalSignal,
+	        final int cntSignal) {
+		this.frame = frame;
+		this.x = x;
+		this.y = y;
+		this.m0 = m0;
+		this.m2 = m2;
+		this.peakSignal = peakSignal;
+		this.meanSignal = meanSignal;
+		this.meanBackground = meanBackground;
+		this.meanNoise = meanNoise;
+		this.SNR = SNR;
+		this.totalSignal = totalSignal;
+		this.cntSignal = cntSignal;
+	}
+
+	/**
+	 * @return the frame, starting from 0
+	 */
+	public int getFrame() {
+		return this.frame;
+	}
+
+	public double getX() {
+		return this.x;
+	}
+
+	public double getY() {
+		return this.y;
+	}
+
+	/**
+	 * @return the intensity moment of order 0 (on the filtered image)
+	 */
+	public double getM0() {
+		return this.m0;
+	}
+
+	/**
+	 * @return the intensity moment of order 2 (on the filtered image)
+	 */
+	public double getM2() {
+		return this.m2;
+	}
+
+	public double getPeakSignal() {
+		return this.peakSignal;
+	}
+
+	public double getMeanSignal() {
+		return this.meanSignal;
+	}
+
+	public double getMeanBackground() {
+		return this.meanBackground;
+	}
+
+	public double getMeanNoise() {
+		return this.meanNoise;
+	}
+
+	public double getSNR() {
+		return this.SNR;
+	}
+
+	public double getTotalSignal() {
+		return this.totalSignal;
+	}
+
+	public int getCntSignal() {
+		return this.cntSignal;
+	}
+}
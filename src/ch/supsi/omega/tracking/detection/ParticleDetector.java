@@ -0,0 +1,553 @@
+package ch.supsi.omega.tracking.detection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects the particles of one frame at a time, as the SPT DLL does (feature
+ * point detection of Sbalzarini and Koumoutsakos): normalization, image
+ * restoration (Gaussian minus boxcar filter), local maxima in the upper
+ * percentile, centroid refinement and non-particle discrimination. All the
+ * buffers are allocated once for the image size, a detector is used by a
+ * single thread. The parameters can be changed between two frames, so that
+ * the buffers of a thread serve all the images of its size.
+ * <p>
+ * The signal statistics are measured on the raw pixels: the signal is the
+ * disk of radius p0 around the particle, the background the ring between p0
+ * and 2 * p0; the SNR is (peak signal - mean background) / background
+ * standard deviation, 0 when the background is flat.
+ *
+ * @author galliva
+ */
+class ParticleDetector {
+	/** Correlation length of the noise (lambda_n). */
+	private static final double NOISE_LENGTH = 1.0;
+
+	/** Width of the score kernel of the non-particle discrimination. */
+	private static final double SCORE_SIGMA = 0.1;
+
+	private static final int HISTOGRAM_BINS = 1000;
+
+	private static final int MAX_REFINEMENTS = 10;
+
+	private final int width;
+	private final int height;
+	private int radius = -1;
+	private double cutOff;
+	private double percentile;
+	private double maxValue;
+
+	/** Gaussian kernel, one dimension. */
+	private float[] gauss;
+	/** Normalization of the Gaussian part of the filter. */
+	private float gaussNorm;
+	/** Normalization of the boxcar part of the filter. */
+	private float boxNorm;
+	/** Normalization of the whole filter (K0). */
+	private float filterNorm;
+
+	/** Offsets of the pixels of the particle mask (a disk of radius p0). */
+	private int[] maskX;
+	private int[] maskY;
+
+	// per frame buffers
+	private final int[] raw;
+	private final float[] image;
+	private final float[] gaussRows;
+	private final float[] boxRows;
+	private final float[] filtered;
+	private final int[] histogram = new int[ParticleDetector.HISTOGRAM_BINS];
+
+	/** Frame stamps of the particle positions already taken. */
+	private final int[] taken;
+	private int stamp = 0;
+
+	// candidates, grown when needed
+	private int[] candidates = new int[64];
+	private double[] candidateX = new double[64];
+	private double[] candidateY = new double[64];
+	private double[] candidateM0 = new double[64];
+	private double[] candidateM2 = new double[64];
+	private double[] score = new double[64];
+
+	ParticleDetector(final int width, final int height, final int radius,
+	        final double cutOff, final double percentile,
+	        final double maxValue) {
+		this(width, height);
+		this.setParameters(radius, cutOff, percentile, maxValue);
+	}
+
+	/**
+	 * Allocates the buffers, the parameters have to be set before the first
+	 * frame.
+	 */
+	ParticleDetector(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+
+		final int pixels = width * height;
+		this.raw = new int[pixels];
+		this.image = new float[pixels];
+		this.gaussRows = new float[pixels];
+		this.boxRows = new float[pixels];
+		this.filtered = new float[pixels];
+		this.taken = new int[pixels];
+	}
+
+	boolean hasSize(final int width, final int height) {
+		return (this.width == width) && (this.height == height);
+	}
+
+	/**
+	 * Sets p0, p1, p2 (in percent) and p9, for the next frames.
+	 */
+	void setParameters(final int radius, final double cutOff,
+	        final double percentile, final double maxValue) {
+		if ((this.radius == radius) && (this.cutOff == cutOff)
+		        && (this.percentile == (percentile / 100.0))
+		        && (this.maxValue == maxValue))
+			return;
+
+		this.radius = radius;
+		this.cutOff = cutOff;
+		// given in percent
+		this.percentile = percentile / 100.0;
+		this.maxValue = maxValue;
+
+		final int size = (2 * radius) + 1;
+		this.gauss = new float[size];
+		double gaussSum = 0.0;
+		double gaussSquaredSum = 0.0;
+
+		for (int k = -radius; k <= radius; k++) {
+			this.gauss[k + radius] = (float) Math.exp(-(k * k)
+			        / (4.0 * NOISE_LENGTH * NOISE_LENGTH));
+			gaussSum += this.gauss[k + radius];
+			gaussSquaredSum += Math.exp(-(k * k)
+			        / (2.0 * NOISE_LENGTH * NOISE_LENGTH));
+		}
+
+		final double B = gaussSum * gaussSum;
+		this.gaussNorm = (float) (1.0 / B);
+		this.boxNorm = (float) (1.0 / (size * size));
+		this.filterNorm = (float) (((gaussSquaredSum * gaussSquaredSum) / B) - (B / (size * size)));
+
+		int maskSize = 0;
+		final int[] maskX = new int[size * size];
+		final int[] maskY = new int[size * size];
+
+		for (int j = -radius; j <= radius; j++) {
+			for (int i = -radius; i <= radius; i++) {
+				if (((i * i) + (j * j)) <= (radius * radius)) {
+					maskX[maskSize] = i;
+					maskY[maskSize] = j;
+					maskSize++;
+				}
+			}
+		}
+
+		this.maskX = new int[maskSize];
+		this.maskY = new int[maskSize];
+		System.arraycopy(maskX, 0, this.maskX, 0, maskSize);
+		System.arraycopy(maskY, 0, this.maskY, 0, maskSize);
+	}
+
+	/**
+	 * The buffer receiving the raw pixels of the next frame.
+	 */
+	int[] getRaw() {
+		return this.raw;
+	}
+
+	/**
+	 * Detects the particles of the frame held in {@link #getRaw()}.
+	 */
+	List<Particle> detect(final int frame) {
+		this.normalize();
+		this.restore();
+
+		final float threshold = this.threshold();
+		final int candidatesNumber = this.findMaxima(threshold);
+		final int particlesNumber = this.refine(candidatesNumber);
+
+		this.discriminate(particlesNumber);
+
+		final List<Particle> particles = new ArrayList<Particle>();
+
+		for (int p = 0; p < particlesNumber; p++) {
+			if ((particlesNumber == 1) || (this.score[p] >= this.cutOff)) {
+				particles.add(this.measure(frame, p));
+			}
+		}
+
+		return particles;
+	}
+
+	/**
+	 * Scales the pixels between 0 and 1 (p8 = 0, p9 = maximum value).
+	 */
+	private void normalize() {
+		final float scale = (float) (1.0 / this.maxValue);
+
+		for (int i = 0; i < this.raw.length; i++) {
+			this.image[i] = this.raw[i] * scale;
+		}
+	}
+
+	/**
+	 * Convolves with the Gaussian and the boxcar kernels, both separable,
+	 * replicating the border pixels; negative values are set to 0.
+	 */
+	private void restore() {
+		final int r = this.radius;
+		final int w = this.width;
+
+		for (int y = 0; y < this.height; y++) {
+			final int row = y * w;
+			float box = 0.0f;
+
+			for (int k = -r; k <= r; k++) {
+				box += this.image[row + ParticleDetector.clamp(k, w)];
+			}
+
+			for (int x = 0; x < w; x++) {
+				float sum = 0.0f;
+
+				for (int k = -r; k <= r; k++) {
+					sum += this.gauss[k + r]
+					        * this.image[row + ParticleDetector.clamp(x + k, w)];
+				}
+
+				this.gaussRows[row + x] = sum;
+				this.boxRows[row + x] = box;
+
+				// slide the boxcar window
+				box += this.image[row + ParticleDetector.clamp(x + r + 1, w)]
+				        - this.image[row + ParticleDetector.clamp(x - r, w)];
+			}
+		}
+
+		for (int x = 0; x < w; x++) {
+			float box = 0.0f;
+
+			for (int k = -r; k <= r; k++) {
+				box += this.boxRows[(ParticleDetector.clamp(k, this.height) * w)
+				        + x];
+			}
+
+			for (int y = 0; y < this.height; y++) {
+				float sum = 0.0f;
+
+				for (int k = -r; k <= r; k++) {
+					sum += this.gauss[k + r]
+					        * this.gaussRows[(ParticleDetector.clamp(y + k,
+					                this.height) * w) + x];
+				}
+
+				final float value = ((sum * this.gaussNorm) - (box * this.boxNorm))
+				        / this.filterNorm;
+				this.filtered[(y * w) + x] = value > 0.0f ? value : 0.0f;
+
+				box += this.boxRows[(ParticleDetector.clamp(y + r + 1,
+				        this.height) * w) + x]
+				        - this.boxRows[(ParticleDetector.clamp(y - r,
+				                this.height) * w) + x];
+			}
+		}
+	}
+
+	/**
+	 * @return the intensity above which the upper percentile of the pixels of
+	 *         the filtered image lie
+	 */
+	private float threshold() {
+		float min = Float.MAX_VALUE;
+		float max = -Float.MAX_VALUE;
+
+		for (final float value : this.filtered) {
+			if (value < min) {
+				min = value;
+			}
+			if (value > max) {
+				max = value;
+			}
+		}
+
+		if (max <= min)
+			return Float.MAX_VALUE;
+
+		final int bins = ParticleDetector.HISTOGRAM_BINS;
+		final float scale = (bins - 1) / (max - min);
+
+		for (int i = 0; i < bins; i++) {
+			this.histogram[i] = 0;
+		}
+
+		for (final float value : this.filtered) {
+			this.histogram[Math.min(bins - 1, (int) ((value - min) * scale))]++;
+		}
+
+		final double limit = this.percentile * this.filtered.length;
+		int count = 0;
+
+		for (int i = bins - 1; i >= 0; i--) {
+			count += this.histogram[i];
+
+			if (count > limit)
+				return min + (i / scale);
+		}
+
+		return min;
+	}
+
+	/**
+	 * Finds the pixels above the threshold that are the maximum of their
+	 * mask (the first one in case of a tie).
+	 *
+	 * @return the number of candidates
+	 */
+	private int findMaxima(final float threshold) {
+		int number = 0;
+
+		for (int y = 0; y < this.height; y++) {
+			for (int x = 0; x < this.width; x++) {
+				final int index = (y * this.width) + x;
+				final float value = this.filtered[index];
+
+				if ((value <= 0.0f) || (value < threshold)
+				        || !this.isMaximum(x, y, index, value)) {
+					continue;
+				}
+
+				if (number == this.candidates.length) {
+					this.grow();
+				}
+
+				this.candidates[number++] = index;
+			}
+		}
+
+		return number;
+	}
+
+	private boolean isMaximum(final int x, final int y, final int index,
+	        final float value) {
+		for (int m = 0; m < this.maskX.length; m++) {
+			final int nx = x + this.maskX[m];
+			final int ny = y + this.maskY[m];
+
+			if ((nx < 0) || (nx >= this.width) || (ny < 0)
+			        || (ny >= this.height)) {
+				continue;
+			}
+
+			final int neighbour = (ny * this.width) + nx;
+			final float other = this.filtered[neighbour];
+
+			if ((other > value) || ((other == value) && (neighbour < index)))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Moves every candidate to the centroid of its mask, computing its
+	 * moments; candidates ending on an already taken position are dropped.
+	 *
+	 * @return the number of particles, packed at the beginning of the
+	 *         candidate arrays
+	 */
+	private int refine(final int candidatesNumber) {
+		this.stamp++;
+		int number = 0;
+
+		for (int c = 0; c < candidatesNumber; c++) {
+			int cx = this.candidates[c] % this.width;
+			int cy = this.candidates[c] / this.width;
+			double m0 = 0.0;
+			double ex = 0.0;
+			double ey = 0.0;
+
+			for (int iteration = 0; iteration < ParticleDetector.MAX_REFINEMENTS; iteration++) {
+				m0 = 0.0;
+				ex = 0.0;
+				ey = 0.0;
+
+				for (int m = 0; m < this.maskX.length; m++) {
+					final int nx = cx + this.maskX[m];
+					final int ny = cy + this.maskY[m];
+
+					if ((nx < 0) || (nx >= this.width) || (ny < 0)
+					        || (ny >= this.height)) {
+						continue;
+					}
+
+					final float value = this.filtered[(ny * this.width) + nx];
+					m0 += value;
+					ex += this.maskX[m] * value;
+					ey += this.maskY[m] * value;
+				}
+
+				if (m0 <= 0.0) {
+					break;
+				}
+
+				ex /= m0;
+				ey /= m0;
+
+				int moveX = 0;
+				int moveY = 0;
+
+				if ((ex > 0.5) && (cx < (this.width - 1))) {
+					moveX = 1;
+				} else if ((ex < -0.5) && (cx > 0)) {
+					moveX = -1;
+				}
+
+				if ((ey > 0.5) && (cy < (this.height - 1))) {
+					moveY = 1;
+				} else if ((ey < -0.5) && (cy > 0)) {
+					moveY = -1;
+				}
+
+				if ((moveX == 0) && (moveY == 0)) {
+					break;
+				}
+
+				cx += moveX;
+				cy += moveY;
+			}
+
+			final int position = (cy * this.width) + cx;
+
+			if ((m0 <= 0.0) || (this.taken[position] == this.stamp)) {
+				continue;
+			}
+
+			this.taken[position] = this.stamp;
+
+			double m2 = 0.0;
+
+			for (int m = 0; m < this.maskX.length; m++) {
+				final int nx = cx + this.maskX[m];
+				final int ny = cy + this.maskY[m];
+
+				if ((nx < 0) || (nx >= this.width) || (ny < 0)
+				        || (ny >= this.height)) {
+					continue;
+				}
+
+				final double dx = this.maskX[m] - ex;
+				final double dy = this.maskY[m] - ey;
+				m2 += ((dx * dx) + (dy * dy))
+				        * this.filtered[(ny * this.width) + nx];
+			}
+
+			this.candidates[number] = position;
+			this.candidateX[number] = cx + ex;
+			this.candidateY[number] = cy + ey;
+			this.candidateM0[number] = m0;
+			this.candidateM2[number] = m2 / m0;
+			number++;
+		}
+
+		return number;
+	}
+
+	/**
+	 * Scores every particle by the density of particles with similar moments,
+	 * the particles scoring below p1 are not real particles.
+	 */
+	private void discriminate(final int particlesNumber) {
+		final double sigma = ParticleDetector.SCORE_SIGMA;
+		final double norm = 1.0 / (2.0 * Math.PI * sigma * sigma);
+
+		for (int p = 0; p < particlesNumber; p++) {
+			this.score[p] = 0.0;
+		}
+
+		for (int p = 0; p < particlesNumber; p++) {
+			for (int q = p + 1; q < particlesNumber; q++) {
+				final double d0 = this.candidateM0[p] - this.candidateM0[q];
+				final double d2 = this.candidateM2[p] - this.candidateM2[q];
+				final double s = norm
+				        * Math.exp((-(d0 * d0) / (2.0 * sigma)) - ((d2 * d2) / (2.0 * sigma)));
+				this.score[p] += s;
+				this.score[q] += s;
+			}
+		}
+	}
+
+	/**
+	 * Measures the signal of a particle on the raw pixels.
+	 */
+	private Particle measure(final int frame, final int p) {
+		final int cx = this.candidates[p] % this.width;
+		final int cy = this.candidates[p] / this.width;
+		final int r = this.radius;
+		final int r2 = r * r;
+		final int outer2 = 4 * r2;
+
+		double total = 0.0;
+		double peak = 0.0;
+		int count = 0;
+		double background = 0.0;
+		double background2 = 0.0;
+		int backgroundCount = 0;
+
+		for (int y = Math.max(0, cy - (2 * r)); y <= Math.min(this.height - 1,
+		        cy + (2 * r)); y++) {
+			for (int x = Math.max(0, cx - (2 * r)); x <= Math.min(
+			        this.width - 1, cx + (2 * r)); x++) {
+				final int d2 = ((x - cx) * (x - cx)) + ((y - cy) * (y - cy));
+				final int value = this.raw[(y * this.width) + x];
+
+				if (d2 <= r2) {
+					total += value;
+					count++;
+					if (value > peak) {
+						peak = value;
+					}
+				} else if (d2 <= outer2) {
+					background += value;
+					background2 += (double) value * value;
+					backgroundCount++;
+				}
+			}
+		}
+
+		double meanBackground = 0.0;
+		double noise = 0.0;
+
+		if (backgroundCount > 0) {
+			meanBackground = background / backgroundCount;
+			noise = Math.sqrt(Math.max(0.0, (background2 / backgroundCount)
+			        - (meanBackground * meanBackground)));
+		}
+
+		final double SNR = noise > 0.0 ? (peak - meanBackground) / noise
+		        : 0.0;
+
+		return new Particle(frame, this.candidateX[p], this.candidateY[p],
+		        this.candidateM0[p], this.candidateM2[p], peak, count > 0 ? total
+		                / count : 0.0, meanBackground, noise, SNR, total, count);
+	}
+
+	private void grow() {
+		final int size = this.candidates.length * 2;
+		final int[] candidates = new int[size];
+		System.arraycopy(this.candidates, 0, candidates, 0,
+		        this.candidates.length);
+		this.candidates = candidates;
+		this.candidateX = new double[size];
+		this.candidateY = new double[size];
+		this.candidateM0 = new double[size];
+		this.candidateM2 = new double[size];
+		this.score = new double[size];
+	}
+
+	private static int clamp(final int index, final int size) {
+		return index < 0 ? 0 : (index >= size ? size - 1 : index);
+	}
+}
@@ -0,0 +1,243 @@
+package ch.supsi.omega.tracking.detection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+
+import ch.supsi.omega.tracking.SPTPlaneLoader;
+import ch.supsi.omega.tracking.metrics.SPTMetrics;
+import ch.supsi.omega.tracking.parameters.SPTRunParameters;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * Pure Java particle detection, in place of the detection stage of the SPT
+ * DLL (same meaning of p0 - p2 and p9). The planes are loaded in frame order,
+ * as into a runner, and detected in parallel on a pool of daemon threads
+ * shared by all the engines, one per core, so that several runs at once do
+ * not multiply the threads. Every thread of the pool has its own detector,
+ * whose buffers are allocated once and reused for all the frames of the
+ * images of its size, whatever the engine. At most two planes per thread of
+ * an engine wait to be detected, the loading blocks otherwise.
+ *
+ * @author galliva
+ */
+public class SPTDetectionEngine {
+	private final int width;
+	private final int height;
+	private final int radius;
+	private final double cutOff;
+	private final double percentile;
+	private final double maxValue;
+
+	private static final int THREADS = Runtime.getRuntime()
+	        .availableProcessors();
+
+	private static ExecutorService executor = null;
+
+	/** The detector of each thread of the pool. */
+	private static final ThreadLocal<ParticleDetector> DETECTORS = new ThreadLocal<ParticleDetector>();
+
+	private final int permits;
+	private final Semaphore pending;
+	private volatile boolean cancelled = false;
+
+	/** The particles of each frame, <code>null</code> until detected. */
+	private final AtomicReferenceArray<List<Particle>> frames;
+	private int nextFrame = 0;
+
+	private volatile SPTMetrics metrics = new SPTMetrics(null);
+
+	/**
+	 * Detects up to one frame per core at once.
+	 */
+	public SPTDetectionEngine(final SPTRunParameters parameters,
+	        final int width, final int height, final int framesNumber) {
+		this(parameters, width, height, framesNumber, Runtime.getRuntime()
+		        .availableProcessors());
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if p0, p1, p2 or p9 is not valid
+	 */
+	public SPTDetectionEngine(final SPTRunParameters parameters,
+	        final int width, final int height, final int framesNumber,
+	        final int threadsNumber) {
+		this.width = width;
+		this.height = height;
+
+		try {
+			this.radius = Integer.parseInt(parameters.getRadius().trim());
+			this.cutOff = Double.parseDouble(parameters.getCutOff().trim());
+			this.percentile = Double.parseDouble(parameters.getPercentile()
+			        .trim());
+			this.maxValue = Double.parseDouble(parameters.getMaxValue().trim());
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("%s: %s",
+			        "invalid SPT parameter", e.getMessage()));
+		}
+
+		if ((this.radius <= 0) || (this.cutOff < 0.0)
+		        || (this.percentile <= 0.0) || (this.maxValue <= 0.0))
+			throw new IllegalArgumentException(String.format(
+			        "invalid SPT parameters p0=%d p1=%s p2=%s p9=%s",
+			        this.radius, this.cutOff, this.percentile, this.maxValue));
+
+		this.permits = 2 * Math.max(1, Math.min(threadsNumber,
+		        SPTDetectionEngine.THREADS));
+		this.pending = new Semaphore(this.permits);
+		this.frames = new AtomicReferenceArray<List<Particle>>(framesNumber);
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (SPTDetectionEngine.executor == null) {
+			SPTDetectionEngine.executor = Executors.newFixedThreadPool(
+			        SPTDetectionEngine.THREADS, new ThreadFactory() {
+				        @Override
+				        public Thread newThread(final Runnable runnable) {
+					        final Thread thread = new Thread(runnable,
+					                "SPTDetectionEngine");
+					        thread.setDaemon(true);
+					        return thread;
+				        }
+			        });
+		}
+
+		return SPTDetectionEngine.executor;
+	}
+
+	/**
+	 * @param metrics
+	 *            where the decoding and detection times are recorded
+	 */
+	public void setMetrics(final SPTMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Loads the next frame, its particles are detected in the background.
+	 *
+	 * @param pixels
+	 *            the raw plane, no longer modified by the caller
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a detection to end
+	 */
+	public void loadImage(final byte[] pixels, final int byteWidth,
+	        final boolean bigEndian) throws InterruptedException {
+		final int frame = this.nextFrame++;
+
+		if (frame >= this.frames.length()) {
+			GLogManager.log(String.format("%s: %d", "frame out of range",
+			        frame), Level.WARNING);
+			return;
+		}
+
+		this.pending.acquire();
+
+		try {
+			SPTDetectionEngine.getExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!SPTDetectionEngine.this.cancelled) {
+							SPTDetectionEngine.this.detect(frame, pixels,
+							        byteWidth, bigEndian);
+						}
+					} finally {
+						SPTDetectionEngine.this.pending.release();
+					}
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			this.pending.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the detector of the current thread, set for this engine.
+	 */
+	private ParticleDetector getDetector() {
+		ParticleDetector detector = SPTDetectionEngine.DETECTORS.get();
+
+		if ((detector == null) || !detector.hasSize(this.width, this.height)) {
+			// the buffers of the previous size are dropped
+			SPTDetectionEngine.DETECTORS.remove();
+			detector = new ParticleDetector(this.width, this.height);
+			SPTDetectionEngine.DETECTORS.set(detector);
+		}
+
+		detector.setParameters(this.radius, this.cutOff, this.percentile,
+		        this.maxValue);
+		return detector;
+	}
+
+	private void detect(final int frame, final byte[] pixels,
+	        final int byteWidth, final boolean bigEndian) {
+		List<Particle> particles = Collections.emptyList();
+
+		try {
+			final ParticleDetector detector = this.getDetector();
+			final long start = System.nanoTime();
+			SPTPlaneLoader.decode(pixels, byteWidth, bigEndian,
+			        detector.getRaw());
+			final long decoded = System.nanoTime();
+			particles = detector.detect(frame);
+
+			this.metrics.add(SPTMetrics.Stage.DECODE, decoded - start);
+			this.metrics.add(SPTMetrics.Stage.DETECTION, System.nanoTime()
+			        - decoded);
+		} catch (final RuntimeException e) {
+			GLogManager.log(String.format("%s %d: %s",
+			        "Error detecting the particles of frame", frame,
+			        e.toString()), Level.SEVERE);
+		}
+
+		this.frames.set(frame, particles);
+	}
+
+	/**
+	 * Waits until all the loaded frames have been detected.
+	 *
+	 * @return the particles of each frame (empty for the frames not loaded)
+	 * @throws InterruptedException
+	 *             if interrupted while waiting, the detection is cancelled
+	 */
+	public List<List<Particle>> awaitParticles() throws InterruptedException {
+		try {
+			// all the permits are back once the last frame is detected
+			this.pending.acquire(this.permits);
+			this.pending.release(this.permits);
+		} catch (final InterruptedException e) {
+			this.cancel();
+			throw e;
+		}
+
+		final List<List<Particle>> particles = new ArrayList<List<Particle>>(
+		        this.frames.length());
+
+		for (int frame = 0; frame < this.frames.length(); frame++) {
+			final List<Particle> frameParticles = this.frames.get(frame);
+			particles.add(frameParticles == null ? Collections
+			        .<Particle> emptyList() : frameParticles);
+		}
+
+		return particles;
+	}
+
+	/**
+	 * Drops the frames not yet detected, the ones being detected are
+	 * finished.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+}
@@ -0,0 +1,130 @@
+package ch.supsi.omega.tracking.linking;
+
+/**
+ * Uniform grid over the particles of a frame (spatial hash): the particles
+ * are bucketed by cell with a counting sort, so that the neighbours within
+ * one cell size of a point are found by looking at the 3 x 3 surrounding
+ * cells only. The arrays are kept and reused from one frame to the next.
+ *
+ * @author galliva
+ */
+class ParticleGrid {
+	private double minX;
+	private double minY;
+	private double cellSize;
+	private int cellsX;
+	private int cellsY;
+
+	/** Start of each cell in {@link #items}, one more for the end. */
+	private int[] cellStart = new int[1];
+	/** Indices of the particles, grouped by cell. */
+	private int[] items = new int[0];
+	private int[] cellOf = new int[0];
+
+	/**
+	 * Buckets the given particles.
+	 *
+	 * @param cellSize
+	 *            the minimum size of the cells, at least the search radius
+	 */
+	void build(final double[] x, final double[] y, final int count,
+	        final double cellSize) {
+		this.minX = Double.MAX_VALUE;
+		this.minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE;
+		double maxY = -Double.MAX_VALUE;
+
+		for (int i = 0; i < count; i++) {
+			this.minX = Math.min(this.minX, x[i]);
+			this.minY = Math.min(this.minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+
+		if (count == 0) {
+			this.minX = 0.0;
+			this.minY = 0.0;
+			maxX = 0.0;
+			maxY = 0.0;
+		}
+
+		// not more cells than needed for a few particles per cell
+		final double area = Math.max(1.0, (maxX - this.minX + 1.0)
+		        * (maxY - this.minY + 1.0));
+		this.cellSize = Math.max(Math.max(cellSize, 1e-6),
+		        Math.sqrt(area / Math.max(1, 4 * count)));
+		this.cellsX = (int) ((maxX - this.minX) / this.cellSize) + 1;
+		this.cellsY = (int) ((maxY - this.minY) / this.cellSize) + 1;
+
+		final int cells = this.cellsX * this.cellsY;
+
+		if (this.cellStart.length < (cells + 1)) {
+			this.cellStart = new int[cells + 1];
+		}
+		if (this.items.length < count) {
+			this.items = new int[count];
+			this.cellOf = new int[count];
+		}
+
+		for (int c = 0; c <= cells; c++) {
+			this.cellStart[c] = 0;
+		}
+
+		for (int i = 0; i < count; i++) {
+			this.cellOf[i] = (this.cellY(y[i]) * this.cellsX)
+			        + this.cellX(x[i]);
+			this.cellStart[this.cellOf[i] + 1]++;
+		}
+
+		for (int c = 0; c < cells; c++) {
+			this.cellStart[c + 1] += this.cellStart[c];
+		}
+
+		// filling moves the start of each cell to the start of the next one
+		for (int i = 0; i < count; i++) {
+			this.items[this.cellStart[this.cellOf[i]]++] = i;
+		}
+
+		for (int c = cells; c > 0; c--) {
+			this.cellStart[c] = this.cellStart[c - 1];
+		}
+		this.cellStart[0] = 0;
+	}
+
+	int cellX(final double x) {
+		final int cell = (int) Math.floor((x - this.minX) / this.cellSize);
+		return cell < 0 ? 0 : (cell >= this.cellsX ? this.cellsX - 1 : cell);
+	}
+
+	int cellY(final double y) {
+		final int cell = (int) Math.floor((y - this.minY) / this.cellSize);
+		return cell < 0 ? 0 : (cell >= this.cellsY ? this.cellsY - 1 : cell);
+	}
+
+	int getCellsX() {
+		return this.cellsX;
+	}
+
+	int getCellsY() {
+		return this.cellsY;
+	}
+
+	/**
+	 * @return the position in {@link #item(int)} of the first particle of the
+	 *         cell
+	 */
+	int start(final int cellX, final int cellY) {
+		return this.cellStart[(cellY * this.cellsX) + cellX];
+	}
+
+	/**
+	 * @return the position after the last particle of the cell
+	 */
+	int end(final int cellX, final int cellY) {
+		return this.cellStart[(cellY * this.cellsX) + cellX + 1];
+	}
+
+	int item(final int position) {
+		return this.items[position];
+	}
+}
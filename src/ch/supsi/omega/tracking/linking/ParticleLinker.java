@@ -0,0 +1,213 @@
+package ch.supsi.omega.tracking.linking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.supsi.omega.tracking.detection.Particle;
+
+/**
+ * Links the particles detected in the frames into trajectories, with the
+ * cost of the SPT DLL: the squared displacement plus the squared differences
+ * of the intensity moments m0 and m2. A particle of frame m can be linked to
+ * a particle of frame m + n (1 <= n <= p4) when the cost is at most (n *
+ * p3)^2, so that a particle may disappear for up to p4 - 1 frames. As in the
+ * DLL, the links between succeeding frames are all made first; the particles
+ * left without successor or predecessor are then offered to the links over
+ * 2 frames, and so on.
+ * <p>
+ * The candidates are searched with a spatial hash of each frame, their cost
+ * is computed only within the allowed displacement: the linking grows
+ * linearly with the number of particles. The links are chosen greedily, the
+ * cheapest first, instead of the iterative optimization of the DLL.
+ *
+ * @author galliva
+ */
+public class ParticleLinker {
+	private final double displacement;
+	private final int linkRange;
+
+	private final ParticleGrid grid = new ParticleGrid();
+
+	// candidate links, grown when needed
+	private long[] keys = new long[256];
+	private int[] linkFrom = new int[256];
+	private int[] linkTo = new int[256];
+
+	// coordinates of the particles of the target frame
+	private double[] targetX = new double[256];
+	private double[] targetY = new double[256];
+
+	/**
+	 * @param displacement
+	 *            the maximum displacement between two succeeding frames (p3)
+	 * @param linkRange
+	 *            the number of following frames considered (p4)
+	 */
+	public ParticleLinker(final double displacement, final int linkRange) {
+		if ((displacement <= 0.0) || (linkRange < 1))
+			throw new IllegalArgumentException(String.format(
+			        "invalid SPT parameters p3=%s p4=%d", displacement,
+			        linkRange));
+
+		this.displacement = displacement;
+		this.linkRange = linkRange;
+	}
+
+	/**
+	 * @param frames
+	 *            the particles of each frame
+	 * @return the trajectories, their particles in frame order
+	 */
+	public List<List<Particle>> link(final List<List<Particle>> frames) {
+		final int framesNumber = frames.size();
+		// for each particle, its successor (frame and index) or -1
+		final int[][] nextFrame = new int[framesNumber][];
+		final int[][] nextIndex = new int[framesNumber][];
+		final boolean[][] linked = new boolean[framesNumber][];
+
+		for (int f = 0; f < framesNumber; f++) {
+			final int size = frames.get(f).size();
+			nextFrame[f] = new int[size];
+			nextIndex[f] = new int[size];
+			linked[f] = new boolean[size];
+			Arrays.fill(nextFrame[f], -1);
+		}
+
+		// a gap link must not take a particle from its direct link
+		for (int n = 1; n <= this.linkRange; n++) {
+			for (int m = 0; (m + n) < framesNumber; m++) {
+				this.linkFrames(frames.get(m), frames.get(m + n), m + n, n,
+				        nextFrame[m], nextIndex[m], linked[m + n]);
+			}
+		}
+
+		final List<List<Particle>> trajectories = new ArrayList<List<Particle>>();
+
+		for (int f = 0; f < framesNumber; f++) {
+			for (int i = 0; i < frames.get(f).size(); i++) {
+				if (linked[f][i]) {
+					continue;
+				}
+
+				// a particle without predecessor starts a trajectory
+				final List<Particle> trajectory = new ArrayList<Particle>();
+				int frame = f;
+				int index = i;
+
+				while (frame >= 0) {
+					trajectory.add(frames.get(frame).get(index));
+					final int next = nextFrame[frame][index];
+					index = nextIndex[frame][index];
+					frame = next;
+				}
+
+				trajectories.add(trajectory);
+			}
+		}
+
+		return trajectories;
+	}
+
+	/**
+	 * Links the particles of a frame still without successor to the free
+	 * particles of frame <code>target</code>, n frames later.
+	 */
+	private void linkFrames(final List<Particle> from,
+	        final List<Particle> to, final int target, final int n,
+	        final int[] nextFrame, final int[] nextIndex, final boolean[] linked) {
+		if (from.isEmpty() || to.isEmpty())
+			return;
+
+		final double maxCost = (n * this.displacement) * (n * this.displacement);
+		final double radius = n * this.displacement;
+
+		if (this.targetX.length < to.size()) {
+			this.targetX = new double[to.size() * 2];
+			this.targetY = new double[to.size() * 2];
+		}
+
+		for (int q = 0; q < to.size(); q++) {
+			this.targetX[q] = to.get(q).getX();
+			this.targetY[q] = to.get(q).getY();
+		}
+
+		this.grid.build(this.targetX, this.targetY, to.size(), radius);
+
+		int links = 0;
+
+		for (int p = 0; p < from.size(); p++) {
+			if (nextFrame[p] >= 0) {
+				continue;
+			}
+
+			final Particle particle = from.get(p);
+			final int cellX = this.grid.cellX(particle.getX());
+			final int cellY = this.grid.cellY(particle.getY());
+
+			for (int cy = Math.max(0, cellY - 1); cy <= Math.min(
+			        this.grid.getCellsY() - 1, cellY + 1); cy++) {
+				for (int cx = Math.max(0, cellX - 1); cx <= Math.min(
+				        this.grid.getCellsX() - 1, cellX + 1); cx++) {
+					for (int i = this.grid.start(cx, cy); i < this.grid.end(
+					        cx, cy); i++) {
+						final int q = this.grid.item(i);
+
+						if (linked[q]) {
+							continue;
+						}
+
+						final double cost = ParticleLinker.cost(particle,
+						        to.get(q));
+
+						if (cost > maxCost) {
+							continue;
+						}
+
+						if (links == this.keys.length) {
+							this.grow();
+						}
+
+						// positive float costs sort as their bits
+						this.keys[links] = ((long) Float
+						        .floatToIntBits((float) cost) << 32)
+						        | links;
+						this.linkFrom[links] = p;
+						this.linkTo[links] = q;
+						links++;
+					}
+				}
+			}
+		}
+
+		Arrays.sort(this.keys, 0, links);
+
+		for (int k = 0; k < links; k++) {
+			final int link = (int) (this.keys[k] & 0xffffffffL);
+			final int p = this.linkFrom[link];
+			final int q = this.linkTo[link];
+
+			if ((nextFrame[p] < 0) && !linked[q]) {
+				nextFrame[p] = target;
+				nextIndex[p] = q;
+				linked[q] = true;
+			}
+		}
+	}
+
+	private static double cost(final Particle p, final Particle q) {
+		final double dx = p.getX() - q.getX();
+		final double dy = p.getY() - q.getY();
+		final double d0 = p.getM0() - q.getM0();
+		final double d2 = p.getM2() - q.getM2();
+
+		return (dx * dx) + (dy * dy) + (d0 * d0) + (d2 * d2);
+	}
+
+	private void grow() {
+		final int size = this.keys.length * 2;
+		this.keys = Arrays.copyOf(this.keys, size);
+		this.linkFrom = Arrays.copyOf(this.linkFrom, size);
+		this.linkTo = Arrays.copyOf(this.linkTo, size);
+	}
+}
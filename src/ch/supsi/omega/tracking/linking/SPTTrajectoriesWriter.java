@@ -0,0 +1,86 @@
+package ch.supsi.omega.tracking.linking;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.tracking.detection.Particle;
+
+/**
+ * Writes the trajectories as the SPT DLL wrapper does, one
+ * <code>trj_&lt;n&gt;.out</code> file per trajectory longer than the minimum
+ * number of points, one line per point:
+ *
+ * <pre>
+ * frame x y peak_signal mean_signal mean_background mean_noise SNR m0 m2 total_signal signal_count
+ * </pre>
+ *
+ * The frames start from 1 and, as with the DLL, x and y are swapped when
+ * <code>TrajectoriesLoader</code> swaps them back.
+ *
+ * @author galliva
+ */
+public class SPTTrajectoriesWriter {
+	private final String directory;
+	private final int minPoints;
+
+	public SPTTrajectoriesWriter(final String directory, final int minPoints) {
+		this.directory = directory;
+		this.minPoints = minPoints;
+	}
+
+	/**
+	 * @return the number of trajectory files written
+	 */
+	public int write(final List<List<Particle>> trajectories)
+	        throws IOException {
+		int written = 0;
+
+		for (int id = 0; id < trajectories.size(); id++) {
+			final List<Particle> trajectory = trajectories.get(id);
+
+			if (trajectory.size() <= this.minPoints) {
+				continue;
+			}
+
+			this.write(trajectory, id);
+			written++;
+		}
+
+		return written;
+	}
+
+	private void write(final List<Particle> trajectory, final int id)
+	        throws IOException {
+		final String fileName = String.format("%s%strj_%d.%s",
+		        this.directory, System.getProperty("file.separator"), id,
+		        OmegaConstants.TRACKS_FILES_EXTENSION);
+		final BufferedWriter out = new BufferedWriter(new FileWriter(fileName));
+
+		try {
+			for (final Particle point : trajectory) {
+				final double x = OmegaConstants.INVERT_TRAJECTORY_POINTS ? point
+				        .getY() : point.getX();
+				final double y = OmegaConstants.INVERT_TRAJECTORY_POINTS ? point
+				        .getX() : point.getY();
+
+				// always a dot as decimal separator, as the DLL
+				out.write(String.format(Locale.US,
+				        "%d %f %f %f %f %f %f %f %f %f %f %d",
+				        point.getFrame() + 1, x, y, point.getPeakSignal(),
+				        point.getMeanSignal(), point.getMeanBackground(),
+				        point.getMeanNoise(), point.getSNR(), point.getM0(),
+				        point.getM2(), point.getTotalSignal(),
+				        point.getCntSignal()));
+				out.newLine();
+			}
+
+			out.newLine();
+		} finally {
+			out.close();
+		}
+	}
+}
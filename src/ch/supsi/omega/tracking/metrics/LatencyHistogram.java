@@ -0,0 +1,115 @@
+package ch.supsi.omega.tracking.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies, with buckets doubling from 62.5 us up to
+ * about one minute, plus one bucket for anything slower.
+ *
+ * @author galliva
+ */
+class LatencyHistogram {
+	private static final long FIRST_BOUND = 62500L;
+	private static final int BOUNDS = 21;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(
+	        LatencyHistogram.BOUNDS + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	void record(final long nanos) {
+		this.buckets.incrementAndGet(LatencyHistogram.bucket(nanos));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(nanos);
+
+		long current = this.max.get();
+		while ((nanos > current) && !this.max.compareAndSet(current, nanos)) {
+			current = this.max.get();
+		}
+	}
+
+	private static int bucket(final long nanos) {
+		if (nanos <= LatencyHistogram.FIRST_BOUND)
+			return 0;
+
+		final int bucket = 64 - Long
+		        .numberOfLeadingZeros((nanos - 1) / LatencyHistogram.FIRST_BOUND);
+		return Math.min(bucket, LatencyHistogram.BOUNDS);
+	}
+
+	/**
+	 * @return the upper bounds of the buckets in milliseconds, the last one
+	 *         being infinite
+	 */
+	static double[] getBoundsMillis() {
+		final double[] bounds = new double[LatencyHistogram.BOUNDS + 1];
+
+		for (int i = 0; i < LatencyHistogram.BOUNDS; i++) {
+			bounds[i] = (LatencyHistogram.FIRST_BOUND << i) / 1e6;
+		}
+		bounds[LatencyHistogram.BOUNDS] = Double.POSITIVE_INFINITY;
+
+		return bounds;
+	}
+
+	long[] getCounts() {
+		final long[] counts = new long[this.buckets.length()];
+
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = this.buckets.get(i);
+		}
+
+		return counts;
+	}
+
+	long getCount() {
+		return this.count.get();
+	}
+
+	long getSumNanos() {
+		return this.sum.get();
+	}
+
+	long getMaxNanos() {
+		return this.max.get();
+	}
+
+	/**
+	 * @return the upper bound of the bucket reaching the percentile (at most
+	 *         the maximum), in milliseconds
+	 */
+	double getPercentileMillis(final double percentile) {
+		final long[] counts = this.getCounts();
+		long total = 0;
+		for (final long c : counts) {
+			total += c;
+		}
+
+		if (total == 0)
+			return 0.0;
+
+		final double threshold = (Math.max(0.0, Math.min(100.0, percentile)) / 100.0)
+		        * total;
+		final double[] bounds = LatencyHistogram.getBoundsMillis();
+		long cumulated = 0;
+
+		for (int i = 0; i < LatencyHistogram.BOUNDS; i++) {
+			cumulated += counts[i];
+			if ((cumulated > 0) && (cumulated >= threshold))
+				return Math.min(bounds[i], this.max.get() / 1e6);
+		}
+
+		return this.max.get() / 1e6;
+	}
+
+	void reset() {
+		for (int i = 0; i < this.buckets.length(); i++) {
+			this.buckets.set(i, 0);
+		}
+		this.count.set(0);
+		this.sum.set(0);
+		this.max.set(0);
+	}
+}
@@ -0,0 +1,355 @@
+package ch.supsi.omega.tracking.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.galliva.gallibrary.GLogManager;
+
+/**
+ * Times the stages of the SPT pipeline for one image: the fetch of the planes
+ * (from OMERO or from the local files), their decoding, their loading into
+ * the SPT DLL or the Java engine, the writing of the results and of the
+ * stats. Every stage can be recorded from any thread.
+ * <p>
+ * The metrics of the images being tracked are published as MBeans (domain
+ * <code>ch.supsi.omega</code>, type <code>SPTMetrics</code>) and added to the
+ * totals of the process, published as well.
+ *
+ * @author galliva
+ */
+public class SPTMetrics implements SPTMetricsMBean {
+	/**
+	 * The timed stages, other than the fetch.
+	 */
+	public enum Stage {
+		/** Loading of all the planes, the fetch included (wall time). */
+		LOADING,
+		DECODE,
+		NATIVE_LOAD,
+		ENGINE_LOAD,
+		DETECTION,
+		WRITE_RESULTS,
+		STATS
+	}
+
+	private static final String DOMAIN = "ch.supsi.omega";
+	private static final AtomicInteger sequence = new AtomicInteger();
+	private static SPTMetrics total = null;
+
+	private final String imageName;
+	private final SPTMetrics parent;
+	private ObjectName objectName = null;
+
+	private final LatencyHistogram fetch = new LatencyHistogram();
+	private final AtomicLong fetchErrors = new AtomicLong();
+	private final AtomicLong fetchBytes = new AtomicLong();
+	private final AtomicLong framesLoaded = new AtomicLong();
+	private final AtomicLongArray stages = new AtomicLongArray(
+	        Stage.values().length);
+
+	/**
+	 * Metrics neither published nor added to the totals.
+	 */
+	public SPTMetrics(final String imageName) {
+		this(imageName, null);
+	}
+
+	private SPTMetrics(final String imageName, final SPTMetrics parent) {
+		this.imageName = imageName;
+		this.parent = parent;
+	}
+
+	/**
+	 * @return the totals of the process, published on first use
+	 */
+	public static synchronized SPTMetrics getTotal() {
+		if (SPTMetrics.total == null) {
+			SPTMetrics.total = new SPTMetrics("*");
+			SPTMetrics.total.publish("name=total");
+		}
+
+		return SPTMetrics.total;
+	}
+
+	/**
+	 * Creates and publishes the metrics of an image, until
+	 * {@link #unregister()}.
+	 */
+	public static SPTMetrics register(final String imageName) {
+		final SPTMetrics metrics = new SPTMetrics(imageName,
+		        SPTMetrics.getTotal());
+		metrics.publish(String.format("name=image,image=%s,id=%d",
+		        ObjectName.quote(String.valueOf(imageName)),
+		        SPTMetrics.sequence.incrementAndGet()));
+		return metrics;
+	}
+
+	private void publish(final String properties) {
+		try {
+			final MBeanServer server = ManagementFactory
+			        .getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(String.format(
+			        "%s:type=SPTMetrics,%s", SPTMetrics.DOMAIN, properties));
+			server.registerMBean(this, name);
+			this.objectName = name;
+		} catch (final JMException e) {
+			GLogManager.log(String.format("%s: %s",
+			        "Unable to publish the SPT metrics", e.toString()),
+			        Level.WARNING);
+		}
+	}
+
+	/**
+	 * Removes the MBean of the image, its figures stay in the totals.
+	 */
+	public void unregister() {
+		if (this.objectName == null)
+			return;
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+			        this.objectName);
+		} catch (final JMException e) {
+			GLogManager.log(String.format("%s: %s",
+			        "Unable to remove the SPT metrics", e.toString()),
+			        Level.WARNING);
+		}
+
+		this.objectName = null;
+	}
+
+	public void planeFetched(final long nanos, final int bytes) {
+		this.fetch.record(nanos);
+		this.fetchBytes.addAndGet(bytes);
+
+		if (this.parent != null) {
+			this.parent.planeFetched(nanos, bytes);
+		}
+	}
+
+	public void fetchFailed() {
+		this.fetchErrors.incrementAndGet();
+
+		if (this.parent != null) {
+			this.parent.fetchFailed();
+		}
+	}
+
+	public void frameLoaded() {
+		this.framesLoaded.incrementAndGet();
+
+		if (this.parent != null) {
+			this.parent.frameLoaded();
+		}
+	}
+
+	/**
+	 * @param nanos
+	 *            the time spent in the stage, from {@link System#nanoTime()}
+	 */
+	public void add(final Stage stage, final long nanos) {
+		this.stages.addAndGet(stage.ordinal(), nanos);
+
+		if (this.parent != null) {
+			this.parent.add(stage, nanos);
+		}
+	}
+
+	private double getMillis(final Stage stage) {
+		return this.stages.get(stage.ordinal()) / 1e6;
+	}
+
+	@Override
+	public String getImageName() {
+		return this.imageName;
+	}
+
+	@Override
+	public long getFramesLoaded() {
+		return this.framesLoaded.get();
+	}
+
+	@Override
+	public double getFramesPerSecond() {
+		final long nanos = this.stages.get(Stage.LOADING.ordinal());
+		return nanos == 0 ? 0.0 : (this.framesLoaded.get() * 1e9) / nanos;
+	}
+
+	@Override
+	public long getLoadingMillis() {
+		return Math.round(this.getMillis(Stage.LOADING));
+	}
+
+	@Override
+	public long getFetchCount() {
+		return this.fetch.getCount();
+	}
+
+	@Override
+	public long getFetchErrors() {
+		return this.fetchErrors.get();
+	}
+
+	@Override
+	public long getFetchBytes() {
+		return this.fetchBytes.get();
+	}
+
+	@Override
+	public double getFetchMillis() {
+		return this.fetch.getSumNanos() / 1e6;
+	}
+
+	@Override
+	public double getFetchMeanMillis() {
+		final long count = this.fetch.getCount();
+		return count == 0 ? 0.0 : this.fetch.getSumNanos() / (count * 1e6);
+	}
+
+	@Override
+	public double getFetchMaxMillis() {
+		return this.fetch.getMaxNanos() / 1e6;
+	}
+
+	@Override
+	public double getFetchPercentileMillis(final double percentile) {
+		return this.fetch.getPercentileMillis(percentile);
+	}
+
+	@Override
+	public long[] getFetchLatencyHistogram() {
+		return this.fetch.getCounts();
+	}
+
+	@Override
+	public double[] getFetchLatencyBuckets() {
+		return LatencyHistogram.getBoundsMillis();
+	}
+
+	@Override
+	public double getDecodeMillis() {
+		return this.getMillis(Stage.DECODE);
+	}
+
+	@Override
+	public double getNativeLoadMillis() {
+		return this.getMillis(Stage.NATIVE_LOAD);
+	}
+
+	@Override
+	public double getEngineLoadMillis() {
+		return this.getMillis(Stage.ENGINE_LOAD);
+	}
+
+	@Override
+	public double getDetectionMillis() {
+		return this.getMillis(Stage.DETECTION);
+	}
+
+	@Override
+	public double getWriteResultsMillis() {
+		return this.getMillis(Stage.WRITE_RESULTS);
+	}
+
+	@Override
+	public double getStatsMillis() {
+		return this.getMillis(Stage.STATS);
+	}
+
+	/**
+	 * Clears these metrics only, not the totals.
+	 */
+	@Override
+	public void reset() {
+		this.fetch.reset();
+		this.fetchErrors.set(0);
+		this.fetchBytes.set(0);
+		this.framesLoaded.set(0);
+
+		for (int i = 0; i < this.stages.length(); i++) {
+			this.stages.set(i, 0);
+		}
+	}
+
+	/**
+	 * @return the metrics as lines <code>key = value</code>, as in the SPT
+	 *         information file
+	 */
+	public List<String> getSummary() {
+		final List<String> lines = new ArrayList<String>();
+
+		lines.add(String.format("%-20s = %d", "frames_loaded",
+		        this.getFramesLoaded()));
+		lines.add(String.format("%-20s = %f", "frames_per_second",
+		        this.getFramesPerSecond()));
+		lines.add(String.format("%-20s = %d", "loading_ms",
+		        this.getLoadingMillis()));
+		lines.add(String.format("%-20s = %d", "fetch_count",
+		        this.getFetchCount()));
+		lines.add(String.format("%-20s = %d", "fetch_errors",
+		        this.getFetchErrors()));
+		lines.add(String.format("%-20s = %d", "fetch_bytes",
+		        this.getFetchBytes()));
+		lines.add(String.format("%-20s = %f", "fetch_ms",
+		        this.getFetchMillis()));
+		lines.add(String.format("%-20s = %f", "fetch_mean_ms",
+		        this.getFetchMeanMillis()));
+		lines.add(String.format("%-20s = %f", "fetch_p50_ms",
+		        this.getFetchPercentileMillis(50.0)));
+		lines.add(String.format("%-20s = %f", "fetch_p95_ms",
+		        this.getFetchPercentileMillis(95.0)));
+		lines.add(String.format("%-20s = %f", "fetch_max_ms",
+		        this.getFetchMaxMillis()));
+		lines.add(String.format("%-20s = %s", "fetch_histogram_ms",
+		        this.formatHistogram()));
+		lines.add(String.format("%-20s = %f", "decode_ms",
+		        this.getDecodeMillis()));
+		lines.add(String.format("%-20s = %f", "native_load_ms",
+		        this.getNativeLoadMillis()));
+		lines.add(String.format("%-20s = %f", "engine_load_ms",
+		        this.getEngineLoadMillis()));
+		lines.add(String.format("%-20s = %f", "detection_ms",
+		        this.getDetectionMillis()));
+		lines.add(String.format("%-20s = %f", "write_results_ms",
+		        this.getWriteResultsMillis()));
+		lines.add(String.format("%-20s = %f", "stats_ms",
+		        this.getStatsMillis()));
+
+		return lines;
+	}
+
+	/**
+	 * @return the non empty buckets, as <code>bound:count</code>
+	 */
+	private String formatHistogram() {
+		final long[] counts = this.fetch.getCounts();
+		final double[] bounds = LatencyHistogram.getBoundsMillis();
+		final StringBuilder histogram = new StringBuilder();
+
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0) {
+				continue;
+			}
+
+			if (histogram.length() > 0) {
+				histogram.append(' ');
+			}
+
+			histogram.append(Double.isInfinite(bounds[i]) ? "inf" : String
+			        .valueOf(bounds[i]));
+			histogram.append(':');
+			histogram.append(counts[i]);
+		}
+
+		return histogram.length() == 0 ? "-" : histogram.toString();
+	}
+}
@@ -0,0 +1,79 @@
+package ch.supsi.omega.tracking.metrics;
+
+/**
+ * Management interface of the SPT pipeline metrics, one MBean per image being
+ * tracked plus one with the totals of the process. The times are in
+ * milliseconds, summed over all the planes (and over all the worker threads
+ * for the fetch and the Java detection).
+ *
+ * @author galliva
+ */
+public interface SPTMetricsMBean {
+	public String getImageName();
+
+	public long getFramesLoaded();
+
+	/**
+	 * @return the frames loaded per second, while the planes are loaded
+	 */
+	public double getFramesPerSecond();
+
+	public long getLoadingMillis();
+
+	public long getFetchCount();
+
+	public long getFetchErrors();
+
+	public long getFetchBytes();
+
+	public double getFetchMillis();
+
+	public double getFetchMeanMillis();
+
+	public double getFetchMaxMillis();
+
+	/**
+	 * @return the upper bound of the fetch latency bucket containing the
+	 *         given percentile (0 - 100)
+	 */
+	public double getFetchPercentileMillis(double percentile);
+
+	/**
+	 * @return the number of fetches per latency bucket, see
+	 *         {@link #getFetchLatencyBuckets()}
+	 */
+	public long[] getFetchLatencyHistogram();
+
+	/**
+	 * @return the upper bounds (in milliseconds) of the latency buckets
+	 */
+	public double[] getFetchLatencyBuckets();
+
+	public double getDecodeMillis();
+
+	/**
+	 * @return the time spent loading the planes into the SPT DLL runners
+	 */
+	public double getNativeLoadMillis();
+
+	/**
+	 * @return the time spent handing the planes to the Java detection
+	 *         engines, including the waits when they lag behind
+	 */
+	public double getEngineLoadMillis();
+
+	/**
+	 * @return the time spent detecting the particles in the Java engines
+	 */
+	public double getDetectionMillis();
+
+	/**
+	 * @return the time spent writing the trajectories, in the SPT DLL (
+	 *         <code>callWriteResults</code>) or linking them in Java
+	 */
+	public double getWriteResultsMillis();
+
+	public double getStatsMillis();
+
+	public void reset();
+}
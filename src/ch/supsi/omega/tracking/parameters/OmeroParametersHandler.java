@@ -2,6 +2,7 @@ package ch.supsi.omega.tracking.parameters;
 
 import java.util.ArrayList;
 import ch.supsi.omega.omero.Gateway;
+import ch.supsi.omega.pixels.PixelSource;
 
 public class OmeroParametersHandler
 {
@@ -9,6 +10,11 @@ public class OmeroParametersHandler
 	 * Gateway object used to get the images planes (same for all the images processed).
 	 */
 	private Gateway gateway = null;
+
+	/**
+	 * Source of the images planes: the gateway, or local files.
+	 */
+	private PixelSource pixelSource = null;
 		
 	/**
 	 * Plane of the images to be processed (same for all the images processed).
@@ -33,6 +39,12 @@ public class OmeroParametersHandler
 	public void setGateway(Gateway gateway)
 	{
 		this.gateway = gateway;
+		this.pixelSource = gateway;
+	}
+
+	public PixelSource getPixelSource()
+	{
+		return pixelSource;
 	}
 
 	public int getZ()
@@ -73,6 +85,19 @@ public class OmeroParametersHandler
 	{
 		super();
 		this.gateway = gateway;
+		this.pixelSource = gateway;
+		Z = z;
+		C = c;
+		this.images = new ArrayList<ImageDataHandler>();
+	}
+
+	/**
+	 * Images read from a source other than the OMERO server, the gateway
+	 * is <code>null</code>.
+	 */
+	public OmeroParametersHandler(PixelSource pixelSource, int z, int c)
+	{
+		this.pixelSource = pixelSource;
 		Z = z;
 		C = c;
 		this.images = new ArrayList<ImageDataHandler>();
@@ -0,0 +1,152 @@
+package ch.supsi.omega.tracking.parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SPT parameters chosen by the user, the same for all the images of a run
+ * (p0 - p4 and p9 of the SPT DLL, plus the minimum number of points).
+ */
+public class SPTRunParameters {
+	private String radius = "3";
+	private String cutOff = "3.0";
+	private String percentile = "0.1";
+	private String displacement = "10";
+	private String linkRange = "2";
+	private String maxValue = "65535";
+	private int minPoints = 10;
+
+	public SPTRunParameters() {
+		super();
+	}
+
+	public SPTRunParameters(final String radius, final String cutOff,
+	        final String percentile, final String displacement,
+	        final String linkRange, final String maxValue, final int minPoints) {
+		super();
+		this.radius = radius;
+		this.cutOff = cutOff;
+		this.percentile = percentile;
+		this.displacement = displacement;
+		this.linkRange = linkRange;
+		this.maxValue = maxValue;
+		this.minPoints = minPoints;
+	}
+
+	public String getRadius() {
+		return this.radius;
+	}
+
+	public void setRadius(final String radius) {
+		this.radius = radius;
+	}
+
+	public String getCutOff() {
+		return this.cutOff;
+	}
+
+	public void setCutOff(final String cutOff) {
+		this.cutOff = cutOff;
+	}
+
+	public String getPercentile() {
+		return this.percentile;
+	}
+
+	public void setPercentile(final String percentile) {
+		this.percentile = percentile;
+	}
+
+	public String getDisplacement() {
+		return this.displacement;
+	}
+
+	public void setDisplacement(final String displacement) {
+		this.displacement = displacement;
+	}
+
+	public String getLinkRange() {
+		return this.linkRange;
+	}
+
+	public void setLinkRange(final String linkRange) {
+		this.linkRange = linkRange;
+	}
+
+	public String getMaxValue() {
+		return this.maxValue;
+	}
+
+	public void setMaxValue(final String maxValue) {
+		this.maxValue = maxValue;
+	}
+
+	public int getMinPoints() {
+		return this.minPoints;
+	}
+
+	public void setMinPoints(final int minPoints) {
+		this.minPoints = minPoints;
+	}
+
+	/**
+	 * @return a name for this parameter set, usable as a directory name
+	 */
+	public String getName() {
+		return String.format("p0_%s_p1_%s_p2_%s_p3_%s_p4_%s", this.radius,
+		        this.cutOff, this.percentile, this.displacement, this.linkRange);
+	}
+
+	/**
+	 * Returns all the combinations of the given values (parameter sweep), each
+	 * of p0 - p4 can hold several values separated by commas.
+	 */
+	public static List<SPTRunParameters> grid(final String radius,
+	        final String cutOff, final String percentile,
+	        final String displacement, final String linkRange,
+	        final String maxValue, final int minPoints) {
+		final List<SPTRunParameters> grid = new ArrayList<SPTRunParameters>();
+
+		for (final String p0 : SPTRunParameters.split(radius)) {
+			for (final String p1 : SPTRunParameters.split(cutOff)) {
+				for (final String p2 : SPTRunParameters.split(percentile)) {
+					for (final String p3 : SPTRunParameters.split(displacement)) {
+						for (final String p4 : SPTRunParameters.split(linkRange)) {
+							grid.add(new SPTRunParameters(p0, p1, p2, p3, p4,
+							        maxValue, minPoints));
+						}
+					}
+				}
+			}
+		}
+
+		return grid;
+	}
+
+	private static List<String> split(final String values) {
+		final List<String> split = new ArrayList<String>();
+
+		for (final String value : values.split(",")) {
+			if (value.trim().length() > 0) {
+				split.add(value.trim());
+			}
+		}
+
+		if (split.isEmpty())
+			throw new IllegalArgumentException("missing parameter value");
+
+		return split;
+	}
+
+	/**
+	 * Returns the information to be written in the SPT information file of
+	 * the given image.
+	 */
+	public SPTExecutionInfoHandler toExecutionInfo(
+	        final OmeroParametersHandler omeroParameters,
+	        final ImageDataHandler imageData) {
+		return new SPTExecutionInfoHandler(omeroParameters, imageData,
+		        this.radius, this.cutOff, this.percentile, this.displacement,
+		        this.linkRange);
+	}
+}
@@ -5,6 +5,7 @@ import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -13,13 +14,16 @@ import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import ch.supsi.omega.common.OmegaConstants;
-import ch.supsi.omega.common.StringHelper;
-
 public class SPTStatsFileReader {
-	private String folder = "";
 	private String fileName = "";
 
+	/**
+	 * The frames of stats.txt and their mean SNR, read once by the first
+	 * getMinimunFrameMeanSNR.
+	 */
+	private int[] frames = null;
+	private double[] meanSNRs = null;
+
 	private double minSNR = 0.0;
 	private double maxSNR = 0.0;
 	private double minVar = 0.0;
@@ -42,7 +46,6 @@ public class SPTStatsFileReader {
 	}
 
 	public SPTStatsFileReader(String directory) {
-		this.folder = directory;
 		this.fileName = directory + System.getProperty("file.separator")
 		        + "stats.txt";
 	}
@@ -143,60 +146,49 @@ public class SPTStatsFileReader {
 	}
 
 	/**
-	 * Returns the minimum frame MEAN SNR for a specified trajectory.
+	 * Returns the minimum frame MEAN SNR for the time window of a trajectory.
+	 * The window is given by the offsets, the trajectory file is not read.
 	 * 
 	 * @param trajectoryFileName
 	 * @return
 	 */
 	public double getMinimunFrameMeanSNR(String trajectoryFileName,
 	        int offset1, int offset2) {
-		String file = folder + System.getProperty("file.separator")
-		        + trajectoryFileName;
-
-		int minB = 1;
-		int maxB = 1;
-
-		try {
-			FileInputStream fstream = new FileInputStream(file);
-			DataInputStream in = new DataInputStream(fstream);
-			BufferedReader br = new BufferedReader(new InputStreamReader(in));
-
-			String strLine;
-
-			minB = Integer.valueOf(StringHelper.splitString(br.readLine(),
-			        OmegaConstants.TRACKS_FILES_LINE_SEPARATOR)[0]);
-
-			while ((strLine = br.readLine()) != null) {
-				if (strLine.length() > 5) {
-					String[] splitted = StringHelper.splitString(br.readLine(),
-					        OmegaConstants.TRACKS_FILES_LINE_SEPARATOR);
-
-					if (splitted.length == OmegaConstants.TRAJECTORY_FILE_COLUMN_NUMBER) {
-						maxB = Integer.valueOf(splitted[0]);
-					}
-				}
-			}
-
-			in.close();
-		} catch (Exception e) {
-		}
-
-		minB = +offset1;
-		maxB = +offset2;
-
-		return getMinimunFrameMeanSNR(minB, maxB);
+		return getMinimunFrameMeanSNR(offset1, offset2);
 	}
 
 	/**
 	 * Returns the minimum frame MEAN SNR for a specified time window.
+	 * stats.txt is read by the first call only, reuse the reader for the
+	 * windows of the same folder.
 	 * 
 	 * @param minFrame
 	 * @param maxFrame
 	 * @return
 	 */
 	public double getMinimunFrameMeanSNR(int minFrame, int maxFrame) {
+		if (frames == null)
+			ReadFrames();
+
 		double minMeanSNR = Double.MAX_VALUE;
 
+		for (int i = 0; i < frames.length; i++) {
+			if (frames[i] >= minFrame && frames[i] <= maxFrame
+			        && meanSNRs[i] < minMeanSNR)
+				minMeanSNR = meanSNRs[i];
+		}
+
+		return minMeanSNR;
+	}
+
+	/**
+	 * Reads the frames and their mean SNR, up to the first empty line.
+	 */
+	private void ReadFrames() {
+		int n = 0;
+		frames = new int[256];
+		meanSNRs = new double[256];
+
 		DataInputStream in = null;
 		try {
 			FileInputStream fstream = new FileInputStream(fileName);
@@ -207,18 +199,20 @@ public class SPTStatsFileReader {
 
 			br.readLine();
 
-			while ((strLine = br.readLine()).length() > 0) {
+			while ((strLine = br.readLine()) != null && strLine.length() > 0) {
 				String[] splitted = strLine.trim().split(" ");
 
-				if (Integer.valueOf(splitted[0]) >= minFrame
-				        && Integer.valueOf(splitted[0]) <= maxFrame) {
-					double meanSNR = Double.valueOf(splitted[3]);
-
-					if (meanSNR < minMeanSNR)
-						minMeanSNR = meanSNR;
+				if (n == frames.length) {
+					frames = Arrays.copyOf(frames, n * 2);
+					meanSNRs = Arrays.copyOf(meanSNRs, n * 2);
 				}
+
+				frames[n] = Integer.valueOf(splitted[0]);
+				meanSNRs[n] = Double.valueOf(splitted[3]);
+				n++;
 			}
 		} catch (Exception e) {
+			// the frames read so far are kept, as the window scan did
 		} finally {
 			try {
 				in.close();
@@ -226,7 +220,8 @@ public class SPTStatsFileReader {
 			}
 		}
 
-		return minMeanSNR;
+		frames = Arrays.copyOf(frames, n);
+		meanSNRs = Arrays.copyOf(meanSNRs, n);
 	}
 
 	// public static void main(String[] args)
@@ -19,6 +19,8 @@ public class SPTStatsFileWriter {
 	private int framesNumber = 0;
 	private FileWriter fstream = null;
 	private BufferedWriter out = null;
+	private int trajectoriesNumber = 0;
+	private double minSNR = 0.0;
 
 	public SPTStatsFileWriter(final MainFrame parent, final String directory,
 	        final int framesNumber) {
@@ -155,12 +157,32 @@ public class SPTStatsFileWriter {
 
 		}
 
+		if (trajectories != null) {
+			this.trajectoriesNumber = trajectories.size();
+			this.minSNR = image_minSNR;
+		}
+
 		return String
 		        .format("trajectories found: %d\n\nminimum SNR: %f (on frame %d)\nminimum SNR variance: %f (frame %d)",
 		                trajectories.size(), image_minSNR, image_minSNR_frame,
 		                image_minVar, image_minVar_frame);
 	}
 
+	/**
+	 * @return the number of trajectories found by the last
+	 *         calculateAndWriteStats()
+	 */
+	public int getTrajectoriesNumber() {
+		return this.trajectoriesNumber;
+	}
+
+	/**
+	 * @return the minimum SNR found by the last calculateAndWriteStats()
+	 */
+	public double getMinSNR() {
+		return this.minSNR;
+	}
+
 	public void closeWriter() {
 		if (this.out == null)
 			return;
@@ -0,0 +1,69 @@
+package ch.supsi.omega.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class NumberTokenizerTest extends TestCase
+{
+	private static NumberTokenizer tokenizer(String text)
+	{
+		return new NumberTokenizer(new ByteArrayInputStream(text.getBytes()));
+	}
+
+	@Test
+	public void testReadDoubles() throws IOException
+	{
+		String[] tokens = { "1", "12.345678", "-0.000123", "3.5e-7", "1E10", "123456789.123456789", "0.1", "-0.0" };
+		StringBuilder line = new StringBuilder();
+		for (String token : tokens)
+			line.append(token).append(" \t");
+
+		NumberTokenizer tokenizer = tokenizer(line.toString() + "\r\n\n7 8 9");
+		GrowableDoubleArray values = new GrowableDoubleArray(2);
+
+		assertEquals(tokens.length, tokenizer.readLine(values));
+		for (int i = 0; i < tokens.length; i++)
+			assertEquals(Double.doubleToLongBits(Double.parseDouble(tokens[i])), Double.doubleToLongBits(values.get(i)));
+
+		// empty line
+		assertEquals(0, tokenizer.readLine(values));
+
+		// last line, without line end
+		assertEquals(3, tokenizer.readLine(values));
+		assertEquals(9.0, values.get(2));
+
+		assertEquals(-1, tokenizer.readLine(values));
+	}
+
+	@Test
+	public void testReadInts() throws IOException
+	{
+		NumberTokenizer tokenizer = tokenizer("3\n1 0 4 -2\n2 x 1\n2147483647\n");
+		GrowableIntArray values = new GrowableIntArray();
+
+		assertEquals(true, tokenizer.skipLine());
+
+		assertEquals(4, tokenizer.readLine(values));
+		assertEquals(4, values.get(2));
+		assertEquals(-2, values.get(3));
+		assertEquals(3, values.toArray(1).length);
+
+		try
+		{
+			tokenizer.readLine(values);
+			fail();
+		}
+		catch (NumberFormatException e)
+		{
+			// the rest of the line is skipped
+		}
+
+		assertEquals(1, tokenizer.readLine(values));
+		assertEquals(Integer.MAX_VALUE, values.get(0));
+		assertEquals(false, tokenizer.skipLine());
+	}
+}
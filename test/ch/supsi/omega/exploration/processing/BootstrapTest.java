@@ -0,0 +1,107 @@
+package ch.supsi.omega.exploration.processing;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class BootstrapTest extends TestCase
+{
+	private double[]	x;
+	private double[]	y;
+
+	private void randomWalk(int length, long seed)
+	{
+		Random random = new Random(seed);
+		x = new double[length];
+		y = new double[length];
+
+		for (int i = 1; i < length; i++)
+		{
+			x[i] = x[i - 1] + random.nextGaussian() * 0.1;
+			y[i] = y[i - 1] + random.nextGaussian() * 0.1;
+		}
+	}
+
+	private static Bootstrap bootstrap(int threads)
+	{
+		Bootstrap bootstrap = new Bootstrap();
+		bootstrap.setReplicates(200);
+		bootstrap.setThreads(threads);
+		bootstrap.setSeed(42);
+
+		return bootstrap;
+	}
+
+	@Test
+	public void testThreads()
+	{
+		randomWalk(300, 1);
+		double[][] expected = bootstrap(1).gamma__D__S_MSS(x, y, 0.02, 50, 250);
+		double[][] intervals = bootstrap(3).gamma__D__S_MSS(x, y, 0.02, 50, 250);
+
+		for (int i = 0; i < 3; i++)
+		{
+			assertEquals(expected[i][0], intervals[i][0], 0.0);
+			assertEquals(expected[i][1], intervals[i][1], 0.0);
+		}
+	}
+
+	@Test
+	public void testIntervals()
+	{
+		randomWalk(300, 2);
+		int[] zeros = new int[x.length - 1];
+		Stats stats = new Stats(x, y, 0.02, zeros);
+		double[] gamma = new double[Stats.MAX_NU + 1];
+		double[] D = new double[Stats.MAX_NU + 1];
+		double[] fit = new double[3];
+		stats.gamma__D__S_MSS(gamma, D, fit);
+
+		double[][] intervals = bootstrap(2).gamma__D__S_MSS(x, y, 0.02, 0, x.length - 1);
+		double[] estimates = { gamma[2], D[2], fit[0] };
+
+		for (int i = 0; i < 3; i++)
+		{
+			assertTrue(intervals[i][0] < intervals[i][1]);
+			assertTrue(intervals[i][0] <= estimates[i] && estimates[i] <= intervals[i][1]);
+		}
+	}
+
+	@Test
+	public void testInterrupted()
+	{
+		randomWalk(300, 3);
+		Thread.currentThread().interrupt();
+
+		try
+		{
+			bootstrap(3).gamma__D__S_MSS(x, y, 0.02, 0, x.length - 1);
+			fail();
+		}
+		catch (IllegalStateException e)
+		{
+			// the replicates are stopped
+		}
+		finally
+		{
+			Thread.interrupted();
+		}
+	}
+
+	@Test
+	public void testMean()
+	{
+		double[] values = new double[100];
+		for (int i = 0; i < values.length; i++)
+			values[i] = i;
+
+		double[] interval = bootstrap(1).mean(values);
+
+		assertTrue(interval[0] < 49.5 && 49.5 < interval[1]);
+		// about 2 standard errors (2.9) on each side
+		assertEquals(49.5 - 5.7, interval[0], 1.5);
+		assertEquals(49.5 + 5.7, interval[1], 1.5);
+	}
+}
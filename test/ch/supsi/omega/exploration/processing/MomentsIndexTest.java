@@ -0,0 +1,116 @@
+package ch.supsi.omega.exploration.processing;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MomentsIndexTest extends TestCase
+{
+	private double[]	x;
+	private double[]	y;
+	private int[]		segmentation;
+
+	private void randomWalk(int length, long seed)
+	{
+		Random random = new Random(seed);
+		x = new double[length];
+		y = new double[length];
+		segmentation = new int[length - 1];
+
+		for (int i = 1; i < length; i++)
+		{
+			x[i] = x[i - 1] + random.nextGaussian();
+			y[i] = y[i - 1] + random.nextGaussian() + 0.05;
+			segmentation[i - 1] = i < length / 3 ? 1 : i < length / 2 ? 2 : 3;
+		}
+	}
+
+	private static void assertClose(double expected, double actual)
+	{
+		assertEquals(expected, actual, Math.abs(expected) * 1e-9);
+	}
+
+	private void assertSegments(MomentsIndex index)
+	{
+		Stats stats = new Stats(x, y, 0.02, segmentation);
+		double[] gamma = new double[Stats.MAX_NU + 1];
+		double[] D = new double[Stats.MAX_NU + 1];
+		double[] fit = new double[3];
+		double[] expectedGamma = new double[Stats.MAX_NU + 1];
+		double[] expectedD = new double[Stats.MAX_NU + 1];
+		double[] expectedFit = new double[3];
+
+		for (int segment = 0; segment < stats.labelsLength(); segment++)
+		{
+			int from = stats.from(segment);
+			int to = stats.to(segment);
+
+			for (int nu = 1; nu <= Stats.MAX_NU; nu++)
+				for (int Delta_n = 1; Delta_n <= (to - from) / 3; Delta_n += 7)
+					assertClose(stats.mu(nu, Delta_n, segment), index.mu(nu, Delta_n, from, to));
+
+			stats.gamma__D__S_MSS(segment, expectedGamma, expectedD, expectedFit);
+			index.gamma__D__S_MSS(from, to, gamma, D, fit);
+
+			for (int nu = 1; nu <= Stats.MAX_NU; nu++)
+			{
+				assertClose(expectedGamma[nu], gamma[nu]);
+				assertClose(expectedD[nu], D[nu]);
+			}
+
+			for (int i = 0; i < 3; i++)
+				assertClose(expectedFit[i], fit[i]);
+		}
+	}
+
+	@Test
+	public void testSegments()
+	{
+		randomWalk(600, 5);
+		MomentsIndex index = new MomentsIndex(x, y, 0.02);
+
+		assertEquals(600 / 3, index.indexedLags());
+		assertSegments(index);
+	}
+
+	@Test
+	public void testConfinedAfterFast()
+	{
+		// the prefix sums of the fast part dwarf the moments of the confined
+		// one
+		Random random = new Random(7);
+		x = new double[3000];
+		y = new double[3000];
+		segmentation = new int[2999];
+
+		for (int i = 1; i < 3000; i++)
+		{
+			double step = i < 1500 ? 20.0 : 0.02;
+			double drift = i < 1500 ? 5.0 : 0.0;
+			x[i] = x[i - 1] + random.nextGaussian() * step + drift;
+			y[i] = y[i - 1] + random.nextGaussian() * step;
+			segmentation[i - 1] = i < 1500 ? 1 : 2;
+		}
+
+		MomentsIndex index = new MomentsIndex(x, y, 0.02);
+		double[] gamma = new double[Stats.MAX_NU + 1];
+		double[] fit = new double[3];
+		index.gamma__D__S_MSS(1500, 2999, gamma, null, fit);
+
+		assertFalse(Double.isNaN(fit[0]));
+		assertSegments(index);
+	}
+
+	@Test
+	public void testPartialIndex()
+	{
+		// 1 MB: 7 lags of 3000 points, the others are summed
+		randomWalk(3000, 6);
+		MomentsIndex index = new MomentsIndex(x, y, 0.02, 1);
+
+		assertEquals(7, index.indexedLags());
+		assertSegments(index);
+	}
+}
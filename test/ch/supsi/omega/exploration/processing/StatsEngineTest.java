@@ -0,0 +1,189 @@
+package ch.supsi.omega.exploration.processing;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class StatsEngineTest extends TestCase
+{
+	private static final int	TRAJECTORIES	= 6;
+
+	private File					folder;
+	private double[][]			x				= new double[TRAJECTORIES][];
+	private double[][]			y				= new double[TRAJECTORIES][];
+	private int[][]				segmentation	= new int[TRAJECTORIES][];
+
+	@Override
+	protected void setUp() throws IOException
+	{
+		folder = File.createTempFile("stats", "");
+		folder.delete();
+		folder.mkdir();
+
+		Random random = new Random(3);
+
+		for (int t = 0; t < TRAJECTORIES; t++)
+		{
+			int length = 50 + random.nextInt(300);
+			x[t] = new double[length];
+			y[t] = new double[length];
+			segmentation[t] = new int[length - 1];
+
+			PrintWriter out = new PrintWriter(new FileWriter(new File(folder, "trajectory" + t + ".out")));
+			out.println(1 + " " + x[t][0] + " " + y[t][0]);
+
+			for (int i = 1; i < length; i++)
+			{
+				x[t][i] = x[t][i - 1] + random.nextGaussian();
+				y[t][i] = y[t][i - 1] + random.nextGaussian();
+				segmentation[t][i - 1] = i < length / 3 ? 1 : 3;
+				out.println((i + 1) + " " + x[t][i] + " " + y[t][i]);
+			}
+
+			out.close();
+		}
+
+		// the rows of the labels file follow the order of File.list
+		String[] files = folder.list();
+		PrintWriter labels = new PrintWriter(new FileWriter(new File(folder, "labels.dat")));
+		labels.println(TRAJECTORIES);
+
+		for (int i = 0; i < files.length; i++)
+		{
+			labels.print(i);
+			for (int label : segmentation[trajectory(files[i])])
+				labels.print(" " + label);
+			labels.println();
+		}
+
+		labels.close();
+	}
+
+	@Override
+	protected void tearDown()
+	{
+		for (File file : folder.listFiles())
+			file.delete();
+
+		folder.delete();
+		TrajectoryCache.clear();
+	}
+
+	private static int trajectory(String name)
+	{
+		return Integer.parseInt(name.substring("trajectory".length(), name.indexOf('.')));
+	}
+
+	private static void assertSame(double expected, double actual)
+	{
+		assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+	}
+
+	private StatsResults process(int threads)
+	{
+		StatsEngine engine = new StatsEngine();
+		engine.setThreads(threads);
+		engine.setUseLabels(true);
+
+		return engine.process(Arrays.asList(folder.getPath()), null);
+	}
+
+	@Test
+	public void testSegments()
+	{
+		StatsResults results = process(1);
+		assertEquals(0, results.getFailedNumber());
+		// the whole trajectory and 2 segments
+		assertEquals(TRAJECTORIES * 3, results.size());
+
+		double[] gamma = new double[Stats.MAX_NU + 1];
+		double[] D = new double[Stats.MAX_NU + 1];
+		double[] fit = new double[3];
+
+		for (int row = 0; row < results.size(); row++)
+		{
+			int t = trajectory(results.getFileName(0, results.getTrajectory(row)));
+			Stats stats = new Stats(x[t], y[t], 0.02, segmentation[t]);
+			int segment = results.getSegment(row);
+
+			if (segment == StatsResults.WHOLE_TRAJECTORY)
+			{
+				stats.gamma__D__S_MSS(gamma, D, fit);
+				assertEquals(0, results.getFrom(row));
+				assertEquals(stats.intervals(), results.getTo(row));
+				assertSame(Stats.mean(stats.log_delta_t__log_mu__gamma__D(2)[1]), results.getMeanLogMSD(row));
+			}
+			else
+			{
+				stats.gamma__D__S_MSS(segment, gamma, D, fit);
+				assertEquals(stats.labels(segment), results.getLabel(row));
+				assertEquals(stats.from(segment), results.getFrom(row));
+				assertEquals(stats.to(segment), results.getTo(row));
+			}
+
+			assertSame(D[2], results.getD(row));
+			assertSame(gamma[2], results.getGamma(row));
+			assertSame(fit[0], results.getS_MSS(row));
+			assertSame(fit[2], results.getCorrelation(row));
+		}
+	}
+
+	@Test
+	public void testThreads()
+	{
+		StatsResults expected = process(1);
+		StatsResults results = process(4);
+
+		assertEquals(expected.size(), results.size());
+
+		for (int row = 0; row < results.size(); row++)
+		{
+			assertEquals(expected.getTrajectory(row), results.getTrajectory(row));
+			assertEquals(expected.getSegment(row), results.getSegment(row));
+			assertSame(expected.getD(row), results.getD(row));
+			assertSame(expected.getS_MSS(row), results.getS_MSS(row));
+		}
+	}
+
+	@Test
+	public void testFailed() throws IOException
+	{
+		PrintWriter out = new PrintWriter(new FileWriter(new File(folder, "broken.out")));
+		out.println("1 not a number");
+		out.close();
+
+		StatsEngine engine = new StatsEngine();
+		StatsResults results = engine.process(Arrays.asList(folder.getPath()), null);
+
+		// the other trajectories are processed: the whole trajectory and a
+		// single segment
+		assertEquals(1, results.getFailedNumber());
+		assertEquals(TRAJECTORIES * 2, results.size());
+		assertEquals("broken.out", results.getFileName(results.getFailedFolder(0), results.getFailedTrajectory(0)));
+	}
+
+	@Test
+	public void testCancel()
+	{
+		final StatsEngine engine = new StatsEngine();
+		engine.setThreads(2);
+		engine.setProgressListener(new StatsEngine.ProgressListener()
+		{
+			@Override
+			public void progress(int done, int total)
+			{
+				assertEquals(TRAJECTORIES, total);
+				engine.cancel();
+			}
+		});
+
+		assertNull(engine.process(Arrays.asList(folder.getPath()), null));
+	}
+}
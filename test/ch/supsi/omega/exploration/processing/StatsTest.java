@@ -0,0 +1,129 @@
+package ch.supsi.omega.exploration.processing;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class StatsTest extends TestCase
+{
+	private double[]	x;
+	private double[]	y;
+	private int[]		segmentation;
+
+	private void randomWalk(int length, long seed)
+	{
+		Random random = new Random(seed);
+		x = new double[length];
+		y = new double[length];
+		segmentation = new int[length - 1];
+
+		for (int i = 1; i < length; i++)
+		{
+			x[i] = x[i - 1] + random.nextGaussian();
+			y[i] = y[i - 1] + random.nextGaussian() + 0.05;
+			segmentation[i - 1] = i < length / 2 ? 1 : 2;
+		}
+	}
+
+	private static void assertSame(double expected, double actual)
+	{
+		assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+	}
+
+	@Test
+	public void testMSSKernel()
+	{
+		randomWalk(400, 1);
+		Stats stats = new Stats(x, y, 0.02, segmentation);
+		double[] gamma = new double[Stats.MAX_NU + 1];
+		double[] D = new double[Stats.MAX_NU + 1];
+		double[] fit = new double[3];
+
+		stats.gamma__D__S_MSS(gamma, D, fit);
+
+		for (int nu = 0; nu <= Stats.MAX_NU; nu++)
+		{
+			double[] expected = stats.log_delta_t__log_mu__gamma__D(nu)[2];
+			assertSame(expected[0], gamma[nu]);
+			assertSame(expected[3], D[nu]);
+		}
+
+		double[] expectedFit = Stats.linear_fit(stats.nu__gamma__S_MSS()[0], gamma);
+
+		for (int i = 0; i < 3; i++)
+			assertSame(expectedFit[i], fit[i]);
+
+		// a segment, with the same buffers
+		stats.gamma__D__S_MSS(1, gamma, null, fit);
+
+		for (int nu = 0; nu <= Stats.MAX_NU; nu++)
+			assertSame(stats.log_delta_t__log_mu__gamma__D(nu, 1)[2][0], gamma[nu]);
+
+		assertSame(stats.nu__gamma__S_MSS(1)[2][0], fit[0]);
+	}
+
+	@Test
+	public void testUncachedNorms()
+	{
+		randomWalk(400, 2);
+		Stats cached = new Stats(x, y, 0.02, segmentation);
+		// more lags than M / 3: all the lags, without the cache
+		Stats uncached = new Stats(x, y, 0.02, segmentation, 1000);
+
+		assertTrue(Arrays.equals(cached.nu__gamma__S_MSS()[1], uncached.nu__gamma__S_MSS()[1]));
+		assertTrue(Arrays.equals(cached.log_delta_t__log_mu__gamma__D(2, 1)[2], uncached.log_delta_t__log_mu__gamma__D(2, 1)[2]));
+		assertTrue(Arrays.equals(cached.instantVelocities(), uncached.instantVelocities()));
+	}
+
+	@Test
+	public void testLogSpacedLags()
+	{
+		randomWalk(30000, 3);
+		Stats stats = new Stats(x, y, 0.02, segmentation, 24);
+
+		double[][] msd = stats.log_delta_t__log_mu__gamma__D(2);
+		assertTrue(msd[0].length <= 25);
+		assertSame(Math.log(0.02), msd[0][1]);
+		assertEquals(Math.log(0.02 * 10000), msd[0][msd[0].length - 1], 1e-12);
+
+		// a random walk with a small drift: gamma of the MSD close to 1
+		assertEquals(1.0, msd[2][0], 0.5);
+		assertFalse(Double.isNaN(stats.nu__gamma__S_MSS()[2][0]));
+	}
+
+	@Test
+	public void testFFTMeanSquareDisplacement()
+	{
+		randomWalk(3000, 4);
+		// offset positions, as pixels far from the origin
+		for (int i = 0; i < x.length; i++)
+		{
+			x[i] += 400.0;
+			y[i] += 300.0;
+		}
+
+		Stats stats = new Stats(x, y, 0.02, segmentation);
+
+		double[][] msd = stats.log_delta_t__log_mu__gamma__D(2);
+		double[] log_mu = new double[msd[1].length];
+
+		for (int Delta_n = 1; Delta_n < log_mu.length; Delta_n++)
+		{
+			log_mu[Delta_n] = Math.log(stats.mu(2, Delta_n));
+			assertEquals(log_mu[Delta_n], msd[1][Delta_n], 1e-9);
+		}
+
+		double[] fit = Stats.linear_fit(msd[0], log_mu, 1, log_mu.length - 1);
+		assertEquals(fit[0], msd[2][0], 1e-9);
+		assertEquals(Math.exp(fit[1]) / 4.0, msd[2][3], 1e-9 * msd[2][3]);
+
+		// a segment
+		msd = stats.log_delta_t__log_mu__gamma__D(2, 1);
+
+		for (int Delta_n = 1; Delta_n < msd[1].length; Delta_n++)
+			assertEquals(Math.log(stats.mu(2, Delta_n, 1)), msd[1][Delta_n], 1e-9);
+	}
+}
@@ -0,0 +1,125 @@
+package ch.supsi.omega.math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.apache.commons.math3.analysis.interpolation.SplineInterpolator;
+import org.apache.commons.math3.analysis.polynomials.PolynomialSplineFunction;
+import org.junit.Test;
+
+import ch.supsi.omega.math.SplineInterpolation.Size;
+
+public class TestInterpolants
+{
+	private static final double[]	SNR		= { 1.291059, 1.990510, 2.846111, 3.494379, 4.556798, 6.516668, 8.832892, 11.632132, 15.067460, 19.326731, 24.642859, 31.306549 };
+	private static final double[]	BIAS	= { 0.6135, 0.3918, 0.2131, 0.1435, 0.0833, 0.0417, 0.0267, 0.0182, 0.0130, 0.0100, 0.0084, 0.0071 };
+
+	private static ArrayList<SurfacePoint> loadSurface() throws Exception
+	{
+		ArrayList<SurfacePoint> points = new ArrayList<SurfacePoint>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(TestInterpolants.class.getResourceAsStream("/ch/supsi/omega/common/resources/SMSS_interpolation_data_2D.csv")));
+
+		try
+		{
+			String line;
+			while ((line = br.readLine()) != null)
+			{
+				String[] splitted = line.split(";");
+				points.add(new SurfacePoint(Double.valueOf(splitted[0]), Double.valueOf(splitted[1]).intValue(), Double.valueOf(splitted[2])));
+			}
+		}
+		finally
+		{
+			br.close();
+		}
+
+		return points;
+	}
+
+	@Test
+	public void testSpline()
+	{
+		// the natural cubic spline of commons-math
+		PolynomialSplineFunction expected = new SplineInterpolator().interpolate(SNR, BIAS);
+		SplineInterpolant spline = new SplineInterpolant(SNR, BIAS);
+
+		for (double snr = SNR[0]; snr <= SNR[SNR.length - 1]; snr += 0.0731)
+			assertEquals(expected.value(snr), spline.interpolate(snr), 1E-12);
+
+		for (int i = 0; i < SNR.length; i++)
+			assertEquals(BIAS[i], spline.interpolate(SNR[i]), 1E-15);
+
+		assertSame(SplineInterpolation.getInterpolant(Size.BIAS), SplineInterpolation.getInterpolant(Size.BIAS));
+		assertEquals(spline.interpolate(5.6), SplineInterpolation.interpolate(5.6, Size.BIAS), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSplineOutOfRange()
+	{
+		new SplineInterpolant(SNR, BIAS).interpolate(SNR[SNR.length - 1] + 1.0);
+	}
+
+	private static void assertSameAsScan(ArrayList<SurfacePoint> points, BilinearInterpolant interpolant)
+	{
+		Random random = new Random(7);
+
+		for (int i = 0; i < 1000; i++)
+		{
+			double snr = 1.0 + random.nextDouble() * 31.0;
+			int l = 40 + random.nextInt(120);
+
+			ArrayList<SurfacePoint> closest4Points = BilinearInterpolation.getClosest4Points(points, snr, l);
+
+			assertEquals(!closest4Points.contains(null), interpolant.contains(snr, l));
+
+			if (interpolant.contains(snr, l))
+				assertEquals(BilinearInterpolation.doInterpolation(snr, l, closest4Points), interpolant.interpolate(snr, l), 0.0);
+		}
+	}
+
+	@Test
+	public void testBilinearGrid() throws Exception
+	{
+		ArrayList<SurfacePoint> points = loadSurface();
+		BilinearInterpolant interpolant = new BilinearInterpolant(points);
+
+		assertTrue(interpolant.isGrid());
+		assertSameAsScan(points, interpolant);
+	}
+
+	@Test
+	public void testBilinearPoints() throws Exception
+	{
+		// not a full grid: the corners are searched among the points
+		ArrayList<SurfacePoint> points = loadSurface();
+		points.remove(points.size() / 2);
+		BilinearInterpolant interpolant = new BilinearInterpolant(points);
+
+		assertFalse(interpolant.isGrid());
+		assertSameAsScan(points, interpolant);
+	}
+
+	@Test
+	public void testBilinearBatch() throws Exception
+	{
+		BilinearInterpolant interpolant = new BilinearInterpolant(loadSurface());
+
+		double[] snr = { 1.30, 0.5, 12.0, 31.306549 };
+		int[] l = { 69, 69, 1000, 100 };
+		double[] result = new double[4];
+		boolean[] outOfRange = new boolean[4];
+
+		assertEquals(2, interpolant.interpolate(snr, l, result, outOfRange));
+		assertEquals(interpolant.interpolate(1.30, 69), result[0], 0.0);
+		assertTrue(outOfRange[1] && Double.isNaN(result[1]));
+		assertTrue(outOfRange[2] && Double.isNaN(result[2]));
+		assertFalse(outOfRange[3]);
+	}
+}
@@ -1,10 +1,17 @@
 package ch.supsi.omega.math;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
 
 import org.junit.Test;
 
 import ch.supsi.omega.math.interpolation4d.FileLoader;
+import ch.supsi.omega.math.interpolation4d.HyperPoint;
+import ch.supsi.omega.math.interpolation4d.InterpolationGrid;
 import ch.supsi.omega.math.interpolation4d.InterpolationType;
 import ch.supsi.omega.math.interpolation4d.Interpolator4d;
 
@@ -66,6 +73,71 @@ public class TestInterpolator4D
 		assertEquals(0.0667260824385207, interpolator4d.interpolate(19.326731, 100, 0.4, 0.005), 10E-10);
 	}
 	
+	@Test
+	public void testGrid()
+	{
+		FileLoader fileLoader = new FileLoader();
+		fileLoader.loadHyperPoints(InterpolationType.D);
+
+		InterpolationGrid grid = InterpolationGrid.getInstance(InterpolationType.D);
+
+		assertSame(grid, InterpolationGrid.getInstance(InterpolationType.D));
+		assertEquals(fileLoader.getHyperPoints().size(), grid.getSNRValues().length * grid.getLValues().length * grid.getSMSSValues().length * grid.getDValues().length);
+
+		// the hyper-points themselves, the largest values included
+		for (int i = 0; i < fileLoader.getHyperPoints().size(); i += 97)
+		{
+			HyperPoint h = fileLoader.getHyperPoints().get(i);
+			assertEquals(h.value, grid.interpolate(h.SNR, h.L, h.SMSS, h.D), 1E-12);
+		}
+
+		HyperPoint last = fileLoader.getHyperPoints().get(fileLoader.getHyperPoints().size() - 1);
+		assertEquals(last.value, grid.interpolate(last.SNR, last.L, last.SMSS, last.D), 1E-12);
+		assertTrue(grid.contains(last.SNR, last.L, last.SMSS, last.D));
+		assertFalse(grid.contains(last.SNR * 2, last.L, last.SMSS, last.D));
+	}
+
+	@Test
+	public void testBatch()
+	{
+		InterpolationGrid grid = InterpolationGrid.getInstance(InterpolationType.SMSS);
+		double[] SNRs = grid.getSNRValues();
+		double[] Ls = grid.getLValues();
+		double[] SMSSs = grid.getSMSSValues();
+		double[] Ds = grid.getDValues();
+
+		// enough points to be split in chunks, every tenth out of range
+		int n = 10000;
+		Random random = new Random(3);
+		double[] SNR = new double[n];
+		int[] L = new int[n];
+		double[] SMSS = new double[n];
+		double[] D = new double[n];
+
+		for (int i = 0; i < n; i++)
+		{
+			SNR[i] = SNRs[0] + random.nextDouble() * (SNRs[SNRs.length - 1] - SNRs[0]);
+			L[i] = (int) Ls[0] + random.nextInt((int) (Ls[Ls.length - 1] - Ls[0]) + 1);
+			SMSS[i] = SMSSs[0] + random.nextDouble() * (SMSSs[SMSSs.length - 1] - SMSSs[0]);
+			D[i] = i % 10 == 0 ? Ds[Ds.length - 1] * 2 : Ds[0] + random.nextDouble() * (Ds[Ds.length - 1] - Ds[0]);
+		}
+
+		double[] result = new double[n];
+		boolean[] outOfRange = new boolean[n];
+
+		assertEquals(n / 10, new Interpolator4d(InterpolationType.SMSS).interpolate(SNR, L, SMSS, D, result, outOfRange));
+
+		for (int i = 0; i < n; i++)
+		{
+			assertEquals(i % 10 == 0, outOfRange[i]);
+
+			if (outOfRange[i])
+				assertTrue(Double.isNaN(result[i]));
+			else
+				assertEquals(grid.interpolate(SNR[i], L[i], SMSS[i], D[i]), result[i], 0.0);
+		}
+	}
+
 	@Test(expected = IllegalArgumentException.class)  
 	public void testException()
 	{
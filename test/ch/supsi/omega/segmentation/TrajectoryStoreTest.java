@@ -0,0 +1,114 @@
+package ch.supsi.omega.segmentation;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.supsi.omega.common.OmegaConstants;
+import ch.supsi.omega.segmentation.trajectory.TrajectoryStore;
+
+public class TrajectoryStoreTest
+{
+	private File	directory;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = File.createTempFile("store", "");
+		directory.delete();
+		directory.mkdir();
+
+		write("1.out", "0 1.0 2.0\n1 1.5 2.5\n2 2.0 3.0\n");
+		write("2.out", "3 5.0 6.0\n4 5.5 6.5\n");
+	}
+
+	@After
+	public void tearDown()
+	{
+		TrajectoryStore.delete(directory);
+
+		for (File file : directory.listFiles())
+			file.delete();
+
+		directory.delete();
+	}
+
+	private File write(String name, String content) throws IOException
+	{
+		File file = new File(directory, name);
+		FileWriter out = new FileWriter(file);
+
+		try
+		{
+			out.write(content);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		return file;
+	}
+
+	@Test
+	public void testFind() throws IOException
+	{
+		assertNull(TrajectoryStore.find(directory));
+		assertEquals(2, TrajectoryStore.importDirectory(directory));
+
+		TrajectoryStore store = TrajectoryStore.find(directory);
+
+		assertNotNull(store);
+		assertSame(store, TrajectoryStore.find(directory));
+		assertEquals(3, store.getLength(store.indexOf("1.out")));
+		assertEquals(5.5, store.getValue(store.indexOf("2.out"), 1, TrajectoryStore.X), 0.0);
+	}
+
+	@Test
+	public void testNewerTrajectoryFile() throws IOException
+	{
+		TrajectoryStore.importDirectory(directory);
+		File store = new File(directory, OmegaConstants.TRAJECTORIES_STORE_FILE);
+		store.setLastModified(store.lastModified() - 10000);
+		new File(directory, "1.out").setLastModified(store.lastModified() - 10000);
+
+		File file = write("2.out", "3 7.0 8.0\n");
+		file.setLastModified(store.lastModified() + 5000);
+
+		// the store is not used for the directory, nor for that file
+		assertNull(TrajectoryStore.find(directory));
+		assertNull(TrajectoryStore.find(directory, "2.out"));
+		assertNotNull(TrajectoryStore.find(directory, "1.out"));
+	}
+
+	@Test
+	public void testCorruptedHeader() throws IOException
+	{
+		TrajectoryStore.importDirectory(directory);
+		File store = new File(directory, OmegaConstants.TRAJECTORIES_STORE_FILE);
+		long modified = store.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(store, "rw");
+
+		try
+		{
+			// a huge number of points
+			raf.seek(16);
+			raf.writeInt(Integer.MAX_VALUE / 2);
+		}
+		finally
+		{
+			raf.close();
+		}
+
+		store.setLastModified(modified + 2000);
+
+		assertNull(TrajectoryStore.find(directory));
+	}
+}
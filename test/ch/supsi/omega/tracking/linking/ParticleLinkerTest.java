@@ -0,0 +1,69 @@
+package ch.supsi.omega.tracking.linking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ch.supsi.omega.tracking.detection.Particle;
+
+public class ParticleLinkerTest extends TestCase
+{
+	private static Particle particle(int frame, double x, double y)
+	{
+		return new Particle(frame, x, y, 1.0, 1.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0);
+	}
+
+	@Test
+	public void testSucceedingFrames()
+	{
+		List<List<Particle>> frames = new ArrayList<List<Particle>>();
+
+		for (int f = 0; f < 5; f++)
+			frames.add(Arrays.asList(particle(f, f, 0.0), particle(f, 50.0, f)));
+
+		List<List<Particle>> trajectories = new ParticleLinker(2.0, 2).link(frames);
+
+		assertEquals(2, trajectories.size());
+		assertEquals(5, trajectories.get(0).size());
+		assertEquals(5, trajectories.get(1).size());
+	}
+
+	@Test
+	public void testGap()
+	{
+		List<List<Particle>> frames = new ArrayList<List<Particle>>();
+		frames.add(Arrays.asList(particle(0, 0.0, 0.0)));
+		frames.add(new ArrayList<Particle>());
+		frames.add(Arrays.asList(particle(2, 3.0, 0.0)));
+
+		List<List<Particle>> trajectories = new ParticleLinker(2.0, 2).link(frames);
+
+		assertEquals(1, trajectories.size());
+		assertEquals(2, trajectories.get(0).size());
+	}
+
+	@Test
+	public void testDirectLinksFirst()
+	{
+		// A (frame 0) can reach C (frame 2) over the gap, but B (frame 1)
+		// reaches it directly: the direct link wins
+		Particle a = particle(0, 0.0, 0.0);
+		Particle b = particle(1, 14.0, 0.0);
+		Particle c = particle(2, 9.0, 0.0);
+
+		List<List<Particle>> frames = new ArrayList<List<Particle>>();
+		frames.add(Arrays.asList(a));
+		frames.add(Arrays.asList(b));
+		frames.add(Arrays.asList(c));
+
+		List<List<Particle>> trajectories = new ParticleLinker(5.0, 2).link(frames);
+
+		assertEquals(2, trajectories.size());
+		assertEquals(Arrays.asList(a), trajectories.get(0));
+		assertEquals(Arrays.asList(b, c), trajectories.get(1));
+	}
+}